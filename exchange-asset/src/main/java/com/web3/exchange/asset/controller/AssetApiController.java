@@ -1,5 +1,6 @@
 package com.web3.exchange.asset.controller;
 
+import com.web3.exchange.asset.engine.AccountEngine;
 import com.web3.exchange.asset.service.AccountService;
 import com.web3.exchange.asset.service.AssetAddressService;
 import com.web3.exchange.asset.service.LedgerService;
@@ -30,12 +31,14 @@ public class AssetApiController {
     private final AccountService accountService;
     private final AssetAddressService assetAddressService;
     private final LedgerService ledgerService;
+    private final AccountEngine accountEngine;
 
     public AssetApiController(AccountService accountService, AssetAddressService assetAddressService,
-                              LedgerService ledgerService) {
+                              LedgerService ledgerService, AccountEngine accountEngine) {
         this.accountService = accountService;
         this.assetAddressService = assetAddressService;
         this.ledgerService = ledgerService;
+        this.accountEngine = accountEngine;
     }
 
     /**
@@ -44,7 +47,7 @@ public class AssetApiController {
     @Operation(summary = "查询用户资产总览")
     @GetMapping("/accounts")
     public Result<List<AccountVO>> accounts(@RequestParam("userId") Long userId) {
-        return Result.success(accountService.listByUser(userId));
+        return Result.success(accountService.listByUser(userId).stream().map(accountEngine::overlay).toList());
     }
 
     /**
@@ -54,7 +57,7 @@ public class AssetApiController {
     @GetMapping("/balance")
     public Result<AccountVO> balance(@RequestParam("userId") Long userId,
                                      @RequestParam("symbol") String symbol) {
-        return Result.success(accountService.getBalance(userId, symbol));
+        return Result.success(accountEngine.overlay(accountService.getBalance(userId, symbol)));
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.web3.exchange.asset.controller;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.web3.exchange.asset.engine.AccountEngine;
 import com.web3.exchange.asset.service.AccountService;
 import com.web3.exchange.asset.service.LedgerService;
 import com.web3.exchange.common.asset.dto.AccountVO;
@@ -26,6 +27,10 @@ import java.util.List;
  * 所有资金操作请求须携带调用方生成的 requestId 以保证幂等；金额一律为最小单位 long。
  * 所有写操作内部为同一本地事务（写流水 + 更新余额），配行锁 + 乐观锁，失败整体回滚。
  * </p>
+ * <p>
+ * 开启内存账户引擎（{@code asset.engine.enabled=true}）时，资金操作改由 {@link AccountEngine} 在内存分片中串行执行、
+ * 写 WAL 即返回（异步投影落库），余额查询以内存余额覆盖库中值。
+ * </p>
  */
 @RestController
 @RequestMapping("/internal/asset")
@@ -34,10 +39,13 @@ public class InternalAssetController {
 
     private final AccountService accountService;
     private final LedgerService ledgerService;
+    private final AccountEngine accountEngine;
 
-    public InternalAssetController(AccountService accountService, LedgerService ledgerService) {
+    public InternalAssetController(AccountService accountService, LedgerService ledgerService,
+                                   AccountEngine accountEngine) {
         this.accountService = accountService;
         this.ledgerService = ledgerService;
+        this.accountEngine = accountEngine;
     }
 
     /**
@@ -58,7 +66,7 @@ public class InternalAssetController {
     @Operation(summary = "查询单账户余额")
     public Result<AccountVO> balance(@RequestParam("userId") Long userId,
                                      @RequestParam("symbol") String symbol) {
-        return Result.success(accountService.getBalance(userId, symbol));
+        return Result.success(accountEngine.overlay(accountService.getBalance(userId, symbol)));
     }
 
     /**
@@ -67,7 +75,7 @@ public class InternalAssetController {
     @GetMapping("/account/list")
     @Operation(summary = "按用户列出全部币种账户")
     public Result<List<AccountVO>> list(@RequestParam("userId") Long userId) {
-        return Result.success(accountService.listByUser(userId));
+        return Result.success(accountService.listByUser(userId).stream().map(accountEngine::overlay).toList());
     }
 
     /**
@@ -76,7 +84,7 @@ public class InternalAssetController {
     @PostMapping("/freeze")
     @Operation(summary = "冻结")
     public Result<LedgerVO> freeze(@Valid @RequestBody FreezeRequest req) {
-        return Result.success(ledgerService.freeze(req));
+        return Result.success(accountEngine.isEnabled() ? accountEngine.freeze(req) : ledgerService.freeze(req));
     }
 
     /**
@@ -85,7 +93,7 @@ public class InternalAssetController {
     @PostMapping("/unfreeze")
     @Operation(summary = "解冻")
     public Result<LedgerVO> unfreeze(@Valid @RequestBody UnfreezeRequest req) {
-        return Result.success(ledgerService.unfreeze(req));
+        return Result.success(accountEngine.isEnabled() ? accountEngine.unfreeze(req) : ledgerService.unfreeze(req));
     }
 
     /**
@@ -95,7 +103,7 @@ public class InternalAssetController {
     @PostMapping("/transfer")
     @Operation(summary = "过户")
     public Result<LedgerVO> transfer(@Valid @RequestBody TransferRequest req) {
-        return Result.success(ledgerService.transfer(req));
+        return Result.success(accountEngine.isEnabled() ? accountEngine.transfer(req) : ledgerService.transfer(req));
     }
 
     /**
@@ -105,7 +113,7 @@ public class InternalAssetController {
     @PostMapping("/credit")
     @Operation(summary = "充值入账")
     public Result<LedgerVO> credit(@Valid @RequestBody CreditRequest req) {
-        return Result.success(ledgerService.credit(req));
+        return Result.success(accountEngine.isEnabled() ? accountEngine.credit(req) : ledgerService.credit(req));
     }
 
     /**
@@ -0,0 +1,525 @@
+package com.web3.exchange.asset.engine;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.web3.exchange.asset.entity.Ledger;
+import com.web3.exchange.asset.mapper.LedgerMapper;
+import com.web3.exchange.asset.mq.producer.AssetEventProducer;
+import com.web3.exchange.asset.service.AccountService;
+import com.web3.exchange.asset.service.BizType;
+import com.web3.exchange.asset.service.Direction;
+import com.web3.exchange.asset.service.LedgerService;
+import com.web3.exchange.common.asset.dto.AccountVO;
+import com.web3.exchange.common.asset.dto.CreditRequest;
+import com.web3.exchange.common.asset.dto.FreezeRequest;
+import com.web3.exchange.common.asset.dto.LedgerVO;
+import com.web3.exchange.common.asset.dto.TransferRequest;
+import com.web3.exchange.common.asset.dto.UnfreezeRequest;
+import com.web3.exchange.common.exception.BusinessException;
+import com.web3.exchange.common.exception.ServiceException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 内存账户引擎（可选模式，{@code asset.engine.enabled=true} 开启）——冻结/解冻/过户/入账不再逐笔行锁 + 乐观锁写库。
+ * <p>
+ * 余额按 userId 分片常驻内存，每个分片一个写线程（{@link AccountShard}）串行修改，变动先写分片 WAL
+ * （{@link AccountJournal}）即向调用方确认，再由 {@link AccountProjector} 异步批量投影到
+ * {@code t_asset_ledger} / {@code t_wallet_account} 并在提交后发布 ASSET-CHANGE。
+ * 流水 before/after、幂等号、业务类型与 {@code LedgerServiceImpl} 完全一致，两种模式写出的账本可直接对账。
+ * </p>
+ * <p>
+ * 过户拆成两腿：转出方分片写 FROZEN_OUT（记录携带入账腿信息）提交后，再向收款方分片提交 IN；
+ * 入账腿失败按退避重试直到成功，转出记录所在分片的 checkpoint 在入账腿提交前不推进，
+ * 崩溃重启时据 WAL 补发未入账的转入腿。
+ * </p>
+ * <p>
+ * 开启后本服务须是账户余额的唯一写者：投影按内存 after 值覆盖账户行，绕过引擎直接改库的变更会被覆盖。
+ * </p>
+ */
+@Component
+public class AccountEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountEngine.class);
+
+    private static final String INSERT_LEDGER = "INSERT IGNORE INTO t_asset_ledger (id, request_id, user_id, account_id, "
+            + "coin_id, symbol, biz_type, direction, amount, before_available, after_available, before_frozen, "
+            + "after_frozen, ref_no, status, remark, create_time, update_time) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 1, ?, ?, ?)";
+    private static final String UPDATE_ACCOUNT = "UPDATE t_wallet_account SET available = ?, frozen = ?, total = ?, "
+            + "version = version + 1, update_time = NOW() WHERE id = ?";
+    /** 按 id 分页加载已落库流水的 request_id（构建布隆过滤器） */
+    private static final String SELECT_REQUEST_IDS = "SELECT id, request_id FROM t_asset_ledger WHERE id > ? "
+            + "ORDER BY id LIMIT ?";
+    private static final String SELECT_LEDGER_IDS = "SELECT id, request_id FROM t_asset_ledger WHERE request_id IN (%s)";
+    private static final int FILTER_PAGE = 10_000;
+    private static final double FILTER_FPP = 0.01;
+    private static final long CREDIT_RETRY_MS = 1000;
+
+    private final AccountService accountService;
+    private final LedgerService ledgerService;
+    private final LedgerMapper ledgerMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AssetEventProducer assetEventProducer;
+    private final boolean enabled;
+    private final int shardCount;
+    private final String walDir;
+    private final boolean fsync;
+    private final int batchSize;
+    private final int projectBatchSize;
+    private final int dedupCapacity;
+    private final int warmupLedgers;
+    private final long persistedFilterCapacity;
+    private final long waitTimeoutMs;
+
+    private AccountShard[] shards;
+    private AccountProjector projector;
+    private RequestIdFilter persistedIds;
+    private ScheduledExecutorService retryExecutor;
+
+    public AccountEngine(AccountService accountService,
+                         LedgerService ledgerService,
+                         LedgerMapper ledgerMapper,
+                         JdbcTemplate jdbcTemplate,
+                         TransactionTemplate transactionTemplate,
+                         AssetEventProducer assetEventProducer,
+                         @Value("${asset.engine.enabled:false}") boolean enabled,
+                         @Value("${asset.engine.shards:4}") int shardCount,
+                         @Value("${asset.engine.wal-dir:./data/asset-wal}") String walDir,
+                         @Value("${asset.engine.fsync:false}") boolean fsync,
+                         @Value("${asset.engine.batch-size:256}") int batchSize,
+                         @Value("${asset.engine.project-batch-size:1000}") int projectBatchSize,
+                         @Value("${asset.engine.dedup-capacity:200000}") int dedupCapacity,
+                         @Value("${asset.engine.warmup-ledgers:200000}") int warmupLedgers,
+                         @Value("${asset.engine.persisted-filter-capacity:10000000}") long persistedFilterCapacity,
+                         @Value("${asset.engine.wait-timeout-ms:5000}") long waitTimeoutMs) {
+        this.accountService = accountService;
+        this.ledgerService = ledgerService;
+        this.ledgerMapper = ledgerMapper;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.assetEventProducer = assetEventProducer;
+        this.enabled = enabled;
+        this.shardCount = Math.max(1, shardCount);
+        this.walDir = walDir;
+        this.fsync = fsync;
+        this.batchSize = batchSize;
+        this.projectBatchSize = projectBatchSize;
+        this.dedupCapacity = dedupCapacity;
+        this.warmupLedgers = Math.max(0, warmupLedgers);
+        this.persistedFilterCapacity = Math.max(1, persistedFilterCapacity);
+        this.waitTimeoutMs = waitTimeoutMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        persistedIds = new RequestIdFilter(persistedFilterCapacity, FILTER_FPP);
+        shards = new AccountShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            AccountJournal journal = new AccountJournal(Path.of(walDir, "shard-" + i), fsync, 64L * 1024 * 1024);
+            shards[i] = new AccountShard(i, journal, accountService::open, this::findPersisted, this::committed,
+                    batchSize, dedupCapacity);
+        }
+        projector = new AccountProjector(this::project, shards, this::published, projectBatchSize);
+        retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "asset-engine-credit-retry");
+            t.setDaemon(true);
+            return t;
+        });
+        recover();
+        log.info("内存账户引擎已启动 shards={} wal={} fsync={} dedupCapacity={}", shardCount, walDir, fsync, dedupCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (shards == null) {
+            return;
+        }
+        retryExecutor.shutdownNow();
+        for (AccountShard s : shards) {
+            s.stop();
+        }
+        projector.stop();
+        for (AccountShard s : shards) {
+            try {
+                s.journal().close();
+            } catch (IOException e) {
+                log.warn("关闭账户日志失败 shard={}: {}", s.index(), e.getMessage());
+            }
+        }
+    }
+
+    /** 是否为内存账户引擎模式。 */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== 资金操作（语义同 LedgerService） ====================
+
+    public LedgerVO freeze(FreezeRequest req) {
+        requirePositive(req.getAmount());
+        return await(change(req.getRequestId(), req.getUserId(), req.getSymbol(),
+                nvl(req.getBizType(), BizType.FREEZE), Direction.FROZEN, req.getAmount(), req.getRefNo(), req.getRemark()));
+    }
+
+    public LedgerVO unfreeze(UnfreezeRequest req) {
+        requirePositive(req.getAmount());
+        return await(change(req.getRequestId(), req.getUserId(), req.getSymbol(),
+                nvl(req.getBizType(), BizType.UNFREEZE), Direction.UNFROZEN, req.getAmount(), req.getRefNo(), req.getRemark()));
+    }
+
+    public LedgerVO credit(CreditRequest req) {
+        requirePositive(req.getAmount());
+        return await(change(req.getRequestId(), req.getUserId(), req.getSymbol(),
+                nvl(req.getBizType(), BizType.DEPOSIT), Direction.IN, req.getAmount(), req.getRefNo(), req.getRemark()));
+    }
+
+    /** 过户：返回转出流水（入账腿提交后才返回）。 */
+    public LedgerVO transfer(TransferRequest req) {
+        requirePositive(req.getAmount());
+        return await(transferAsync(req.getRequestId(), req.getFromUserId(), req.getToUserId(), req.getSymbol(),
+                req.getAmount(), req.getRefNo(), req.getRemark()));
+    }
+
+    /**
+     * 异步过户：转出腿（FROZEN_OUT，幂等号 {@code requestId_OUT}）提交后再提交入账腿（IN，{@code requestId_IN}），
+     * 入账腿提交后完成。
+     * <p>入账腿一律由本次请求参数推出，不取转出记录上的入账字段：幂等命中的转出记录可能是启动时由已落库流水
+     * 还原的（不含入账腿信息）。此时先确认入账流水是否已落库，已落库则直接返回，避免重复入账。</p>
+     */
+    public CompletableFuture<LedgerVO> transferAsync(String requestId, long fromUserId, long toUserId, String symbol,
+                                                     long amount, String refNo, String remark) {
+        checkRunning();
+        String creditRequestId = requestId + "_IN";
+        AccountShard.Command out = new AccountShard.Command(requestId + "_OUT", fromUserId, symbol,
+                BizType.TRANSFER_OUT, Direction.FROZEN_OUT, amount, refNo, remark, toUserId, creditRequestId);
+        return shardFor(fromUserId).submit(out).thenCompose(rec -> {
+            CreditLeg leg = new CreditLeg(rec.seq, fromUserId, toUserId, creditRequestId, symbol, amount, refNo, remark);
+            if (rec.creditRequestId != null) {
+                return deliverCredit(leg).thenApply(ignored -> toVO(rec));
+            }
+            // 由落库流水还原的转出记录：入账腿可能早已落库（幂等索引容量外），查库确认后再决定是否补发
+            return CompletableFuture.supplyAsync(() -> ledgerExists(creditRequestId), retryExecutor)
+                    .thenCompose(exists -> exists ? CompletableFuture.<Void>completedFuture(null) : deliverCredit(leg))
+                    .thenApply(ignored -> toVO(rec));
+        });
+    }
+
+    /** 查询内存余额（引擎已加载该账户时），未加载返回 null 由调用方回落到库。 */
+    public AccountVO balance(long userId, String symbol) {
+        if (shards == null) {
+            return null;
+        }
+        long[] b = shardFor(userId).peek(userId, symbol);
+        if (b == null) {
+            return null;
+        }
+        AccountVO vo = new AccountVO();
+        vo.setAccountId(b[0]);
+        vo.setUserId(userId);
+        vo.setCoinId(b[1]);
+        vo.setSymbol(symbol);
+        vo.setAvailable(b[2]);
+        vo.setFrozen(b[3]);
+        vo.setTotal(b[2] + b[3]);
+        vo.setStatus(1);
+        return vo;
+    }
+
+    /** 以内存余额覆盖库中查询结果（投影有延迟，库中余额可能落后）。 */
+    public AccountVO overlay(AccountVO fromDb) {
+        AccountVO mem = fromDb == null ? null : balance(fromDb.getUserId(), fromDb.getSymbol());
+        if (mem == null) {
+            return fromDb;
+        }
+        fromDb.setAvailable(mem.getAvailable());
+        fromDb.setFrozen(mem.getFrozen());
+        fromDb.setTotal(mem.getTotal());
+        return fromDb;
+    }
+
+    /** 诊断：各分片排队命令数与待投影记录数。 */
+    public Map<String, Integer> backlog() {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        if (shards == null) {
+            return out;
+        }
+        for (AccountShard s : shards) {
+            out.put("shard-" + s.index(), s.queued());
+        }
+        out.put("projector", projector.pending());
+        return out;
+    }
+
+    // ==================== 内部 ====================
+
+    private CompletableFuture<AccountRecord> change(String requestId, long userId, String symbol, String bizType,
+                                                    int direction, long amount, String refNo, String remark) {
+        checkRunning();
+        return shardFor(userId).submit(new AccountShard.Command(requestId, userId, symbol, bizType, direction,
+                amount, refNo, remark, null, null));
+    }
+
+    /**
+     * 过户入账腿：转出记录的 seq / 用户（入账后释放该分片 checkpoint；幂等命中还原的记录 seq 为 0，无需释放）
+     * 与入账参数。
+     */
+    record CreditLeg(long outSeq, long outUserId, long creditUserId, String creditRequestId, String symbol,
+                     long amount, String refNo, String remark) {
+
+        /** 由 WAL 中的过户转出记录还原（该记录必然携带入账腿信息）。 */
+        static CreditLeg of(AccountRecord out) {
+            return new CreditLeg(out.seq, out.userId, out.creditUserId, out.creditRequestId, out.symbol,
+                    out.amount, out.refNo, out.remark);
+        }
+    }
+
+    /** 提交过户入账腿，失败按固定间隔重试直到成功；成功后释放转出分片的 checkpoint。 */
+    private CompletableFuture<Void> deliverCredit(CreditLeg leg) {
+        CompletableFuture<Void> delivered = new CompletableFuture<>();
+        sendCredit(leg, delivered);
+        return delivered;
+    }
+
+    private void sendCredit(CreditLeg leg, CompletableFuture<Void> delivered) {
+        AccountShard.Command in = new AccountShard.Command(leg.creditRequestId(), leg.creditUserId(), leg.symbol(),
+                BizType.TRANSFER_IN, Direction.IN, leg.amount(), leg.refNo(), leg.remark(), null, null);
+        shardFor(leg.creditUserId()).submit(in).whenComplete((rec, err) -> {
+            if (err == null) {
+                shardFor(leg.outUserId()).awaitingCredit.remove(leg.outSeq());
+                delivered.complete(null);
+                return;
+            }
+            if (retryExecutor.isShutdown()) {
+                delivered.completeExceptionally(err);
+                return;
+            }
+            log.error("过户入账腿提交失败，{}ms 后重试 requestId={}: {}", CREDIT_RETRY_MS, leg.creditRequestId(), err.getMessage());
+            retryExecutor.schedule(() -> sendCredit(leg, delivered), CREDIT_RETRY_MS, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    /** 分片写 WAL 成功：记入布隆过滤器，交给投影落库。 */
+    private void committed(List<AccountRecord> records) {
+        for (AccountRecord r : records) {
+            persistedIds.put(r.requestId);
+        }
+        projector.submit(records);
+    }
+
+    /**
+     * 幂等索引未命中（LRU 已淘汰或重启前的请求）：布隆过滤器判定可能已受理时回库确认，返回已落库的首次记录。
+     */
+    private AccountRecord findPersisted(String requestId) {
+        if (!persistedIds.mightContain(requestId)) {
+            return null;
+        }
+        Ledger l = ledgerMapper.selectOne(new LambdaQueryWrapper<Ledger>()
+                .eq(Ledger::getRequestId, requestId).last("limit 1"), false);
+        return l == null ? null : AccountRecord.of(l);
+    }
+
+    /** 投影已提交：发布 ASSET-CHANGE。 */
+    private void published(List<AccountRecord> batch) {
+        for (AccountRecord r : batch) {
+            assetEventProducer.publishAssetChange(toVO(r));
+        }
+    }
+
+    /**
+     * 一个事务内：流水 INSERT IGNORE（id / request_id 去重）+ 每账户按最后一条记录的 after 值覆盖。
+     * <p>有流水未确认插入（被忽略或驱动未返回行数）时按 request_id 回查：库中同号流水必须就是本条（重放时已落库），
+     * 否则说明同一请求被受理了两次，抛异常回滚整批，投影停在这里报警，不把重复推演的余额写进账户行。</p>
+     */
+    private void project(List<AccountRecord> batch) {
+        List<Object[]> ledgerArgs = new ArrayList<>(batch.size());
+        Map<Long, AccountRecord> latest = new LinkedHashMap<>();
+        for (AccountRecord r : batch) {
+            Timestamp ts = new Timestamp(r.time);
+            ledgerArgs.add(new Object[]{r.ledgerId, r.requestId, r.userId, r.accountId, r.coinId, r.symbol, r.bizType,
+                    r.direction, r.amount, r.beforeAvailable, r.afterAvailable, r.beforeFrozen, r.afterFrozen,
+                    r.refNo, r.remark, ts, ts});
+            latest.put(r.accountId, r);
+        }
+        List<Object[]> accountArgs = new ArrayList<>(latest.size());
+        for (AccountRecord r : latest.values()) {
+            accountArgs.add(new Object[]{r.afterAvailable, r.afterFrozen, r.afterAvailable + r.afterFrozen, r.accountId});
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            int[] inserted = jdbcTemplate.batchUpdate(INSERT_LEDGER, ledgerArgs);
+            for (int n : inserted) {
+                if (n != 1) {
+                    verifyLedgers(batch);
+                    break;
+                }
+            }
+            jdbcTemplate.batchUpdate(UPDATE_ACCOUNT, accountArgs);
+        });
+        log.debug("账户投影落库 流水{}条 账户{}行", ledgerArgs.size(), accountArgs.size());
+    }
+
+    /** 校验本批每条记录的 request_id 在库中对应的正是本条流水。 */
+    private void verifyLedgers(List<AccountRecord> batch) {
+        Map<String, Long> stored = new HashMap<>(batch.size() * 2);
+        Object[] requestIds = new Object[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            requestIds[i] = batch.get(i).requestId;
+        }
+        String sql = String.format(SELECT_LEDGER_IDS, String.join(",", Collections.nCopies(batch.size(), "?")));
+        for (Map<String, Object> row : jdbcTemplate.queryForList(sql, requestIds)) {
+            stored.put((String) row.get("request_id"), ((Number) row.get("id")).longValue());
+        }
+        for (AccountRecord r : batch) {
+            Long id = stored.get(r.requestId);
+            if (id == null || id != r.ledgerId) {
+                log.error("流水幂等号冲突 requestId={} 库中流水id={} 本条id={}，同一请求被重复受理，投影停止待人工处理",
+                        r.requestId, id, r.ledgerId);
+                throw new IllegalStateException("流水幂等号冲突 requestId=" + r.requestId + " 库中流水id=" + id
+                        + " 本条id=" + r.ledgerId);
+            }
+        }
+    }
+
+    /** 按 id 分页把全部已落库流水的 request_id 载入布隆过滤器。 */
+    private long loadPersistedIds() {
+        long[] lastId = {0L};
+        long total = 0;
+        int[] page = new int[1];
+        do {
+            page[0] = 0;
+            jdbcTemplate.query(SELECT_REQUEST_IDS, (RowCallbackHandler) rs -> {
+                lastId[0] = rs.getLong(1);
+                persistedIds.put(rs.getString(2));
+                page[0]++;
+            }, lastId[0], FILTER_PAGE);
+            total += page[0];
+        } while (page[0] == FILTER_PAGE);
+        return total;
+    }
+
+    /**
+     * 启动恢复：加载已落库 request_id 的布隆过滤器 → 预热幂等索引 → 按分片重放未落库记录（余额取 after 值）并重新投影 → 启动写线程 →
+     * 补发 WAL 中尚未入账的过户入账腿。
+     */
+    private void recover() {
+        long start = System.currentTimeMillis();
+        long loaded = loadPersistedIds();
+        log.info("已落库流水 requestId 过滤器加载 {} 条 耗时{}ms", loaded, System.currentTimeMillis() - start);
+        if (warmupLedgers > 0) {
+            List<Ledger> recentLedgers = ledgerMapper.selectList(new LambdaQueryWrapper<Ledger>()
+                    .orderByDesc(Ledger::getId)
+                    .last("limit " + warmupLedgers));
+            for (int i = recentLedgers.size() - 1; i >= 0; i--) {
+                AccountRecord r = AccountRecord.of(recentLedgers.get(i));
+                shardFor(r.userId).remember(r);
+            }
+        }
+        List<AccountRecord> pendingCredits = new ArrayList<>();
+        int replayed = 0;
+        for (AccountShard s : shards) {
+            List<AccountRecord> pending = s.journal().pending();
+            for (AccountRecord r : pending) {
+                s.replay(r);
+                persistedIds.put(r.requestId);
+                if (r.creditRequestId != null && r.creditUserId != null) {
+                    s.awaitingCredit.add(r.seq);
+                    pendingCredits.add(r);
+                }
+            }
+            if (!pending.isEmpty()) {
+                log.info("账户日志重放 shard={} {}条 (checkpoint={})", s.index(), pending.size(), s.journal().checkpointSeq());
+                projector.submit(pending);
+                replayed += pending.size();
+            }
+        }
+        // 幂等索引只能由写线程访问，入账腿是否已提交须在分片启动前判定
+        List<CreditLeg> resend = new ArrayList<>();
+        for (AccountRecord out : pendingCredits) {
+            if (shardFor(out.creditUserId).seen(out.creditRequestId) || ledgerExists(out.creditRequestId)) {
+                shardFor(out.userId).awaitingCredit.remove(out.seq);
+            } else {
+                resend.add(CreditLeg.of(out));
+            }
+        }
+        projector.start();
+        for (AccountShard s : shards) {
+            s.start();
+        }
+        int resent = resend.size();
+        resend.forEach(this::deliverCredit);
+        if (replayed > 0 || resent > 0) {
+            log.info("内存账户引擎恢复完成 重放{}条 补发入账腿{}笔", replayed, resent);
+        }
+    }
+
+    private boolean ledgerExists(String requestId) {
+        return ledgerMapper.exists(new LambdaQueryWrapper<Ledger>().eq(Ledger::getRequestId, requestId));
+    }
+
+    private AccountShard shardFor(long userId) {
+        return shards[AccountShard.shardOf(userId, shards.length)];
+    }
+
+    private void checkRunning() {
+        if (shards == null) {
+            throw new ServiceException("内存账户引擎未启用");
+        }
+    }
+
+    private LedgerVO await(CompletableFuture<?> f) {
+        try {
+            Object r = f.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+            return r instanceof AccountRecord rec ? toVO(rec) : (LedgerVO) r;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new ServiceException("账户引擎处理失败", e.getCause());
+        } catch (TimeoutException e) {
+            throw new ServiceException("账户引擎处理超时，请用同一 requestId 重试");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException("账户引擎处理被中断");
+        }
+    }
+
+    private LedgerVO toVO(AccountRecord r) {
+        return ledgerService.toVO(r.toLedger());
+    }
+
+    private static void requirePositive(Long amount) {
+        if (amount == null || amount <= 0) {
+            throw new BusinessException("金额必须大于0");
+        }
+    }
+
+    private static String nvl(String s, String def) {
+        return (s == null || s.isBlank()) ? def : s;
+    }
+}
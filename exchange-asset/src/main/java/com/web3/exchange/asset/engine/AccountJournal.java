@@ -0,0 +1,214 @@
+package com.web3.exchange.asset.engine;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 账户引擎分片的预写日志（append-only，一行一条 JSON）。
+ * <p>
+ * 分片写线程把一批 {@link AccountRecord} 分配连续 seq 后一次写入 {@code account.wal}（可选 fsync），
+ * 写成功才向调用方确认；投影落库提交后 {@link #checkpoint} 把已落库的最大 seq 原子写入 {@code account.checkpoint}。
+ * 重启时 {@link #pending} 返回 seq &gt; checkpoint 的记录供重放；崩溃时写了一半的尾行解析失败即视为未写入。
+ * </p>
+ * <p>日志在全部落库（checkpoint == 最新 seq）时截断；超过 {@code compactBytes} 时只保留未落库尾部重写。</p>
+ */
+public class AccountJournal implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountJournal.class);
+
+    private static final String JOURNAL = "account.wal";
+    private static final String CHECKPOINT = "account.checkpoint";
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final Path dir;
+    private final boolean fsync;
+    private final long compactBytes;
+    private FileChannel channel;
+    /** 最新已追加 seq */
+    private long lastSeq;
+    /** 已落库 seq */
+    private long checkpoint;
+    /** 最近一次读取时完整记录的字节长度 */
+    private long validBytes;
+
+    public AccountJournal(Path dir, boolean fsync, long compactBytes) {
+        this.dir = dir;
+        this.fsync = fsync;
+        this.compactBytes = compactBytes;
+        try {
+            Files.createDirectories(dir);
+            Path cp = dir.resolve(CHECKPOINT);
+            this.checkpoint = Files.exists(cp) ? Long.parseLong(Files.readString(cp).trim()) : 0L;
+            this.lastSeq = checkpoint;
+            for (AccountRecord r : readAll()) {
+                lastSeq = Math.max(lastSeq, r.seq);
+            }
+            this.channel = open();
+            if (validBytes < channel.size()) {
+                // 截掉崩溃残留的半行，否则后续追加会拼接到残行上而无法解析
+                channel.truncate(validBytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开账户日志失败: " + dir, e);
+        }
+    }
+
+    /**
+     * 追加一批记录（一次 write + 可选一次 fsync），按顺序分配 seq。
+     * 失败时 seq 回退、已写入的部分截掉，整批视为未写入。
+     */
+    public synchronized void appendAll(List<AccountRecord> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        long firstSeq = lastSeq + 1;
+        long position = -1;
+        try {
+            StringBuilder sb = new StringBuilder(records.size() * 320);
+            long seq = lastSeq;
+            for (AccountRecord r : records) {
+                r.seq = ++seq;
+                sb.append(mapper.writeValueAsString(r)).append('\n');
+            }
+            position = channel.size();
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            lastSeq = seq;
+        } catch (IOException e) {
+            for (AccountRecord r : records) {
+                r.seq = 0;
+            }
+            if (position >= 0) {
+                try {
+                    channel.truncate(position);
+                } catch (IOException ignore) {
+                    // 截断失败：残行在下次打开时按不完整尾部丢弃
+                }
+            }
+            throw new UncheckedIOException("写账户日志失败 seq=" + firstSeq, e);
+        }
+    }
+
+    /** 尚未落库（seq &gt; checkpoint）的记录，按 seq 升序。 */
+    public synchronized List<AccountRecord> pending() {
+        List<AccountRecord> out = new ArrayList<>();
+        for (AccountRecord r : readAll()) {
+            if (r.seq > checkpoint) {
+                out.add(r);
+            }
+        }
+        return out;
+    }
+
+    /** 记录已落库的最大 seq（原子替换 checkpoint 文件），并按需截断/压缩日志。 */
+    public synchronized void checkpoint(long seq) {
+        if (seq <= checkpoint) {
+            return;
+        }
+        try {
+            Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+            Files.writeString(tmp, Long.toString(seq));
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpoint = seq;
+            if (checkpoint == lastSeq) {
+                channel.truncate(0);
+            } else if (channel.size() > compactBytes) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写账户日志 checkpoint 失败 seq=" + seq, e);
+        }
+    }
+
+    /** 已落库 seq。 */
+    public synchronized long checkpointSeq() {
+        return checkpoint;
+    }
+
+    /** 最新已追加 seq。 */
+    public synchronized long lastSeq() {
+        return lastSeq;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /** 仅保留未落库尾部：写临时文件后原子替换并重新打开。 */
+    private void compact() throws IOException {
+        List<AccountRecord> tail = pending();
+        Path tmp = dir.resolve(JOURNAL + ".tmp");
+        StringBuilder sb = new StringBuilder();
+        for (AccountRecord r : tail) {
+            sb.append(mapper.writeValueAsString(r)).append('\n');
+        }
+        Files.writeString(tmp, sb.toString());
+        channel.close();
+        Files.move(tmp, dir.resolve(JOURNAL), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open();
+        log.info("账户日志压缩完成 dir={} 保留{}条 checkpoint={}", dir, tail.size(), checkpoint);
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(dir.resolve(JOURNAL),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<AccountRecord> readAll() {
+        Path file = dir.resolve(JOURNAL);
+        List<AccountRecord> out = new ArrayList<>();
+        validBytes = 0;
+        if (!Files.exists(file)) {
+            return out;
+        }
+        try {
+            byte[] data = Files.readAllBytes(file);
+            int start = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                String line = new String(data, start, i - start, StandardCharsets.UTF_8);
+                if (!line.isBlank()) {
+                    try {
+                        out.add(mapper.readValue(line, AccountRecord.class));
+                    } catch (IOException torn) {
+                        log.warn("账户日志记录不完整，忽略其后内容: {}", torn.getMessage());
+                        return out;
+                    }
+                }
+                start = i + 1;
+                validBytes = start;
+            }
+            if (start < data.length) {
+                log.warn("账户日志尾部不完整（{} 字节），已忽略", data.length - start);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读账户日志失败: " + file, e);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,152 @@
+package com.web3.exchange.asset.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 账户引擎的异步投影：把各分片已写 WAL 的记录批量落到 {@code t_asset_ledger} / {@code t_wallet_account}。
+ * <p>
+ * 单个后台线程 {@code asset-engine-projector} 攒批（最多 {@code batchSize} 条）交给 {@link Store} 在一个事务内写入，
+ * 提交后推进各分片 checkpoint 并回调 {@code afterCommit}（发布 ASSET-CHANGE）。落库失败按退避重试同一批，
+ * 不丢不乱序；分片 checkpoint 不越过仍在等待入账腿的过户转出（{@link AccountShard#awaitingCredit}）。
+ * </p>
+ */
+final class AccountProjector {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountProjector.class);
+
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    /** 落库动作：一个事务内插入流水（request_id 去重）并按 after 值覆盖账户余额。 */
+    interface Store {
+        void project(List<AccountRecord> batch);
+    }
+
+    private final Store store;
+    private final AccountShard[] shards;
+    private final Consumer<List<AccountRecord>> afterCommit;
+    private final int batchSize;
+
+    private final BlockingQueue<AccountRecord> queue = new LinkedBlockingQueue<>();
+    /** 各分片已落库的最大 seq */
+    private final long[] projected;
+    private Thread worker;
+    private volatile boolean running;
+
+    AccountProjector(Store store, AccountShard[] shards, Consumer<List<AccountRecord>> afterCommit, int batchSize) {
+        this.store = store;
+        this.shards = shards;
+        this.afterCommit = afterCommit;
+        this.batchSize = Math.max(1, batchSize);
+        this.projected = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            projected[i] = shards[i].journal().checkpointSeq();
+        }
+    }
+
+    void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "asset-engine-projector");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /** 停止前尽量把队列中的记录落完（失败的留在 WAL，重启重放）。 */
+    void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        List<AccountRecord> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            try {
+                flush(rest);
+            } catch (RuntimeException e) {
+                log.warn("账户投影关闭时落库失败，{}条留待重启重放: {}", rest.size(), e.getMessage());
+            }
+        }
+    }
+
+    /** 分片写线程提交已写 WAL 的记录。 */
+    void submit(List<AccountRecord> records) {
+        queue.addAll(records);
+    }
+
+    int pending() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        List<AccountRecord> batch = new ArrayList<>(batchSize);
+        long backoff = 100;
+        while (running || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    AccountRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        advanceCheckpoints();
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, batchSize - 1);
+                }
+                flush(batch);
+                batch.clear();
+                backoff = 100;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("账户投影落库失败，{}ms 后重试同一批({}条): {}", backoff, batch.size(), e.getMessage());
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MS);
+            }
+        }
+        // 未落库的批次回到队首，由 stop() 兜底再试一次
+        if (!batch.isEmpty()) {
+            List<AccountRecord> rest = new ArrayList<>(batch);
+            queue.drainTo(rest);
+            queue.addAll(rest);
+        }
+    }
+
+    private void flush(List<AccountRecord> batch) {
+        store.project(batch);
+        for (AccountRecord r : batch) {
+            int s = AccountShard.shardOf(r.userId, shards.length);
+            projected[s] = Math.max(projected[s], r.seq);
+        }
+        advanceCheckpoints();
+        afterCommit.accept(batch);
+    }
+
+    /** checkpoint = min(已落库 seq, 最早未入账过户转出 seq - 1)。 */
+    private void advanceCheckpoints() {
+        for (int i = 0; i < shards.length; i++) {
+            long cp = projected[i];
+            Long waiting = shards[i].awaitingCredit.ceiling(Long.MIN_VALUE);
+            if (waiting != null) {
+                cp = Math.min(cp, waiting - 1);
+            }
+            shards[i].journal().checkpoint(cp);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.web3.exchange.asset.engine;
+
+import com.web3.exchange.asset.entity.Ledger;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * 账户引擎预写日志（WAL）的一条记录：一次资金变动 = 一条流水（含变动前后<b>绝对</b>余额）。
+ * <p>
+ * 记录在写入 WAL 前已分配流水 id，投影落库时流水按 id / request_id 去重、账户余额按 after 值覆盖，
+ * 因此按 seq 顺序重放是幂等的。过户转出记录额外携带入账腿（{@link #creditUserId} / {@link #creditRequestId}），
+ * 崩溃后据此补发尚未入账的转入。
+ * </p>
+ */
+public class AccountRecord {
+
+    /** 分片内日志序号（单调递增，崩溃恢复的断点） */
+    public long seq;
+    /** 流水ID（写 WAL 前分配，重放复用） */
+    public long ledgerId;
+    public String requestId;
+    public long userId;
+    public long accountId;
+    public long coinId;
+    public String symbol;
+    public String bizType;
+    public int direction;
+    public long amount;
+    public long beforeAvailable;
+    public long afterAvailable;
+    public long beforeFrozen;
+    public long afterFrozen;
+    public String refNo;
+    public String remark;
+    /** 变动时间（epoch 毫秒） */
+    public long time;
+    /** 过户转出：对应入账腿的收款用户（非过户为 null） */
+    public Long creditUserId;
+    /** 过户转出：对应入账腿的幂等号（{@code requestId_IN}） */
+    public String creditRequestId;
+
+    public AccountRecord() {
+    }
+
+    /** 由已落库流水还原（预热幂等索引用）。 */
+    public static AccountRecord of(Ledger l) {
+        AccountRecord r = new AccountRecord();
+        r.ledgerId = l.getId();
+        r.requestId = l.getRequestId();
+        r.userId = l.getUserId();
+        r.accountId = l.getAccountId();
+        r.coinId = l.getCoinId();
+        r.symbol = l.getSymbol();
+        r.bizType = l.getBizType();
+        r.direction = l.getDirection();
+        r.amount = l.getAmount();
+        r.beforeAvailable = l.getBeforeAvailable();
+        r.afterAvailable = l.getAfterAvailable();
+        r.beforeFrozen = l.getBeforeFrozen();
+        r.afterFrozen = l.getAfterFrozen();
+        r.refNo = l.getRefNo();
+        r.remark = l.getRemark();
+        r.time = l.getCreateTime() == null ? 0L
+                : l.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return r;
+    }
+
+    /** 转为流水实体（投影落库用）。 */
+    public Ledger toLedger() {
+        Ledger l = new Ledger()
+                .setRequestId(requestId)
+                .setUserId(userId)
+                .setAccountId(accountId)
+                .setCoinId(coinId)
+                .setSymbol(symbol)
+                .setBizType(bizType)
+                .setDirection(direction)
+                .setAmount(amount)
+                .setBeforeAvailable(beforeAvailable)
+                .setAfterAvailable(afterAvailable)
+                .setBeforeFrozen(beforeFrozen)
+                .setAfterFrozen(afterFrozen)
+                .setRefNo(refNo)
+                .setStatus(1)
+                .setRemark(remark);
+        l.setId(ledgerId);
+        l.setCreateTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault()));
+        return l;
+    }
+}
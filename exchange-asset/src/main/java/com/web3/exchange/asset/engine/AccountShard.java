@@ -0,0 +1,382 @@
+package com.web3.exchange.asset.engine;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.web3.exchange.asset.service.Direction;
+import com.web3.exchange.common.asset.dto.AccountVO;
+import com.web3.exchange.common.exception.BusinessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 账户引擎的一个分片：该分片用户的全部余额只由一个写线程修改（单写者，无锁无行锁）。
+ * <p>
+ * 写线程每轮取出一批命令，逐条：幂等索引命中直接返回首次结果 → 首次触达的账户从库加载 →
+ * 按资金方向校验并推演余额、生成 {@link AccountRecord}；随后整批一次写入 {@link AccountJournal}，
+ * 写成功才完成各命令的 future 并交给投影落库。WAL 写失败则逆序还原本批推演，整批失败返回。
+ * </p>
+ * <p>幂等索引为有界 LRU（requestId → 首次记录），只淘汰已投影落库（seq ≤ checkpoint）的记录；未命中时经
+ * {@link PersistedLookup} 查已落库流水（布隆过滤器 + 回库确认），容量外的旧请求重试仍返回首次结果，
+ * 见 docs/asset-domain.md §5.2.2。</p>
+ */
+final class AccountShard {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountShard.class);
+
+    /** 首次触达账户时加载（不存在则开户）；币种不存在抛 BusinessException。 */
+    interface AccountLoader {
+        AccountVO load(long userId, String symbol);
+    }
+
+    /** 幂等索引未命中时查已落库流水：不存在返回 null；查询失败抛异常（该命令失败，调用方重试）。 */
+    interface PersistedLookup {
+        AccountRecord find(String requestId);
+    }
+
+    /** 账户键：(用户, 币种) */
+    record AccountKey(long userId, String symbol) {
+    }
+
+    /** 分片内存余额 */
+    static final class Balance {
+        final long accountId;
+        final long coinId;
+        long available;
+        long frozen;
+
+        Balance(long accountId, long coinId, long available, long frozen) {
+            this.accountId = accountId;
+            this.coinId = coinId;
+            this.available = available;
+            this.frozen = frozen;
+        }
+    }
+
+    /** 一条资金变动命令 */
+    static final class Command {
+        final String requestId;
+        final long userId;
+        final String symbol;
+        final String bizType;
+        final int direction;
+        final long amount;
+        final String refNo;
+        final String remark;
+        final Long creditUserId;
+        final String creditRequestId;
+        final CompletableFuture<AccountRecord> done = new CompletableFuture<>();
+        /** 本批新生成的记录（幂等命中时为 null） */
+        AccountRecord fresh;
+        AccountRecord result;
+        RuntimeException error;
+
+        Command(String requestId, long userId, String symbol, String bizType, int direction, long amount,
+                String refNo, String remark, Long creditUserId, String creditRequestId) {
+            this.requestId = requestId;
+            this.userId = userId;
+            this.symbol = symbol;
+            this.bizType = bizType;
+            this.direction = direction;
+            this.amount = amount;
+            this.refNo = refNo;
+            this.remark = remark;
+            this.creditUserId = creditUserId;
+            this.creditRequestId = creditRequestId;
+        }
+    }
+
+    private final int index;
+    private final AccountJournal journal;
+    private final AccountLoader loader;
+    private final PersistedLookup persisted;
+    private final Consumer<List<AccountRecord>> committed;
+    private final int batchSize;
+
+    private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+    /** 以下状态只由写线程（启动前由恢复线程）访问 */
+    private final Map<AccountKey, Balance> balances = new HashMap<>();
+    private final LinkedHashMap<String, AccountRecord> recent;
+    /** 只读视图：供查询线程读取余额（写线程每批提交后刷新） */
+    private final Map<AccountKey, long[]> published = new ConcurrentHashMap<>();
+    /** 已提交但入账腿尚未提交的过户转出 seq（其后的 checkpoint 暂不推进） */
+    final ConcurrentSkipListSet<Long> awaitingCredit = new ConcurrentSkipListSet<>();
+
+    private Thread writer;
+    private volatile boolean running;
+
+    AccountShard(int index, AccountJournal journal, AccountLoader loader, PersistedLookup persisted,
+                 Consumer<List<AccountRecord>> committed, int batchSize, int dedupCapacity) {
+        this.index = index;
+        this.journal = journal;
+        this.loader = loader;
+        this.persisted = persisted;
+        this.committed = committed;
+        this.batchSize = Math.max(1, batchSize);
+        int capacity = Math.max(1, dedupCapacity);
+        this.recent = new LinkedHashMap<>(Math.min(capacity, 1 << 16), 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AccountRecord> eldest) {
+                // 未落库的记录回库查不到，留在索引里直到投影追上
+                return size() > capacity && eldest.getValue().seq <= journal.checkpointSeq();
+            }
+        };
+    }
+
+    /** 用户所在分片：同一用户的全部币种账户落在同一分片。 */
+    static int shardOf(long userId, int shards) {
+        return (int) Math.floorMod(userId, (long) shards);
+    }
+
+    int index() {
+        return index;
+    }
+
+    AccountJournal journal() {
+        return journal;
+    }
+
+    // ==================== 启动前恢复（单线程） ====================
+
+    /** 预热幂等索引（已落库的近期流水）。 */
+    void remember(AccountRecord r) {
+        recent.put(r.requestId, r);
+    }
+
+    /** 重放一条未落库记录：余额取 after 绝对值。 */
+    void replay(AccountRecord r) {
+        AccountKey key = new AccountKey(r.userId, r.symbol);
+        Balance b = balances.get(key);
+        if (b == null) {
+            b = new Balance(r.accountId, r.coinId, r.afterAvailable, r.afterFrozen);
+            balances.put(key, b);
+        }
+        b.available = r.afterAvailable;
+        b.frozen = r.afterFrozen;
+        published.put(key, new long[]{b.accountId, b.coinId, b.available, b.frozen});
+        recent.put(r.requestId, r);
+    }
+
+    /** 幂等索引是否含该请求（恢复时判断入账腿是否已提交）。 */
+    boolean seen(String requestId) {
+        return recent.containsKey(requestId);
+    }
+
+    // ==================== 运行期 ====================
+
+    void start() {
+        running = true;
+        writer = new Thread(this::runLoop, "asset-engine-shard-" + index);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void stop() {
+        running = false;
+        if (writer != null) {
+            writer.interrupt();
+            try {
+                writer.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Command c;
+        while ((c = queue.poll()) != null) {
+            c.done.completeExceptionally(new IllegalStateException("账户引擎关闭"));
+        }
+    }
+
+    CompletableFuture<AccountRecord> submit(Command c) {
+        if (!running) {
+            c.done.completeExceptionally(new IllegalStateException("账户引擎未运行"));
+            return c.done;
+        }
+        queue.add(c);
+        return c.done;
+    }
+
+    /** 当前余额快照 {accountId, coinId, available, frozen}；未加载返回 null。 */
+    long[] peek(long userId, String symbol) {
+        return published.get(new AccountKey(userId, symbol));
+    }
+
+    int queued() {
+        return queue.size();
+    }
+
+    private void runLoop() {
+        List<Command> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Command first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Command c : batch) {
+                    c.done.completeExceptionally(new IllegalStateException("账户引擎关闭"));
+                }
+                return;
+            } catch (RuntimeException e) {
+                log.error("账户引擎分片{}处理异常: {}", index, e.getMessage(), e);
+                for (Command c : batch) {
+                    c.done.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** 推演一批命令 → 一次写 WAL → 完成 future。 */
+    void process(List<Command> batch) {
+        List<AccountRecord> records = new ArrayList<>(batch.size());
+        List<Balance> undoTargets = new ArrayList<>(batch.size());
+        for (Command c : batch) {
+            try {
+                apply(c, records, undoTargets);
+            } catch (RuntimeException e) {
+                c.error = e;
+            }
+        }
+        if (!records.isEmpty()) {
+            try {
+                journal.appendAll(records);
+            } catch (UncheckedIOException e) {
+                log.error("账户日志写入失败，本批{}条回滚: {}", records.size(), e.getMessage());
+                rollback(records, undoTargets);
+                for (Command c : batch) {
+                    if (c.error == null && (c.fresh != null || records.contains(c.result))) {
+                        c.error = e;
+                    }
+                }
+                records.clear();
+            }
+        }
+        for (AccountRecord r : records) {
+            if (r.creditRequestId != null) {
+                awaitingCredit.add(r.seq);
+            }
+        }
+        for (int i = 0; i < records.size(); i++) {
+            Balance b = undoTargets.get(i);
+            AccountRecord r = records.get(i);
+            published.put(new AccountKey(r.userId, r.symbol), new long[]{b.accountId, b.coinId, b.available, b.frozen});
+        }
+        if (!records.isEmpty()) {
+            committed.accept(records);
+        }
+        for (Command c : batch) {
+            if (c.error != null) {
+                c.done.completeExceptionally(c.error);
+            } else {
+                c.done.complete(c.result);
+            }
+        }
+    }
+
+    private void apply(Command c, List<AccountRecord> records, List<Balance> undoTargets) {
+        AccountRecord dup = recent.get(c.requestId);
+        if (dup == null) {
+            dup = persisted.find(c.requestId);
+            if (dup != null) {
+                recent.put(c.requestId, dup);
+            }
+        }
+        if (dup != null) {
+            c.result = dup;
+            return;
+        }
+        AccountKey key = new AccountKey(c.userId, c.symbol);
+        Balance b = balances.get(key);
+        if (b == null) {
+            AccountVO acct = loader.load(c.userId, c.symbol);
+            b = new Balance(acct.getAccountId(), acct.getCoinId(), nz(acct.getAvailable()), nz(acct.getFrozen()));
+            balances.put(key, b);
+        }
+        long ba = b.available;
+        long bf = b.frozen;
+        long aa = ba, af = bf;
+        switch (c.direction) {
+            case Direction.IN -> aa = ba + c.amount;
+            case Direction.OUT -> {
+                if (ba < c.amount) throw new BusinessException(409, "可用余额不足");
+                aa = ba - c.amount;
+            }
+            case Direction.FROZEN -> {
+                if (ba < c.amount) throw new BusinessException(409, "可用余额不足");
+                aa = ba - c.amount;
+                af = bf + c.amount;
+            }
+            case Direction.UNFROZEN -> {
+                if (bf < c.amount) throw new BusinessException(409, "冻结余额不足");
+                aa = ba + c.amount;
+                af = bf - c.amount;
+            }
+            case Direction.FROZEN_OUT -> {
+                if (bf < c.amount) throw new BusinessException(409, "冻结余额不足");
+                af = bf - c.amount;
+            }
+            default -> throw new BusinessException("未知资金方向: " + c.direction);
+        }
+        AccountRecord r = new AccountRecord();
+        r.ledgerId = IdWorker.getId();
+        r.requestId = c.requestId;
+        r.userId = c.userId;
+        r.accountId = b.accountId;
+        r.coinId = b.coinId;
+        r.symbol = c.symbol;
+        r.bizType = c.bizType;
+        r.direction = c.direction;
+        r.amount = c.amount;
+        r.beforeAvailable = ba;
+        r.afterAvailable = aa;
+        r.beforeFrozen = bf;
+        r.afterFrozen = af;
+        r.refNo = c.refNo;
+        r.remark = c.remark;
+        r.time = System.currentTimeMillis();
+        r.creditUserId = c.creditUserId;
+        r.creditRequestId = c.creditRequestId;
+
+        b.available = aa;
+        b.frozen = af;
+        recent.put(c.requestId, r);
+        records.add(r);
+        undoTargets.add(b);
+        c.fresh = r;
+        c.result = r;
+    }
+
+    /** 逆序还原本批推演并移出幂等索引。 */
+    private void rollback(List<AccountRecord> records, List<Balance> undoTargets) {
+        for (int i = records.size() - 1; i >= 0; i--) {
+            AccountRecord r = records.get(i);
+            Balance b = undoTargets.get(i);
+            b.available = r.beforeAvailable;
+            b.frozen = r.beforeFrozen;
+            recent.remove(r.requestId);
+        }
+    }
+
+    private static long nz(Long v) {
+        return v == null ? 0L : v;
+    }
+}
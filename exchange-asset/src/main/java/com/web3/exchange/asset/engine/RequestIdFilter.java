@@ -0,0 +1,72 @@
+package com.web3.exchange.asset.engine;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 已落库 / 已受理流水 requestId 的布隆过滤器。
+ * <p>
+ * 分片幂等索引（有界 LRU）未命中时先查它：返回 false 则一定是新请求，直接受理；返回 true 才回库按 request_id
+ * 确认（误判率约 {@code fpp}）。启动时按 id 分页加载全部流水的 request_id，运行期每条写入 WAL 的记录随即加入，
+ * 只增不删。各分片写线程并发置位（CAS），无锁。超出预估容量后误判率上升，只多回库、不影响正确性。
+ * </p>
+ */
+final class RequestIdFilter {
+
+    private final AtomicLongArray words;
+    private final long bitCount;
+    private final int hashes;
+
+    RequestIdFilter(long expected, double fpp) {
+        long n = Math.max(1, expected);
+        long bits = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, (bits + 63) >>> 6));
+        this.words = new AtomicLongArray(wordCount);
+        this.bitCount = (long) wordCount << 6;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+
+    void put(String requestId) {
+        long h1 = hash(requestId);
+        long h2 = fmix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            int w = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long cur;
+            while (((cur = words.get(w)) & mask) == 0 && !words.compareAndSet(w, cur, cur | mask)) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    boolean mightContain(String requestId) {
+        long h1 = hash(requestId);
+        long h2 = fmix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 64 位 FNV-1a + murmur3 fmix64。 */
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return fmix(h);
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
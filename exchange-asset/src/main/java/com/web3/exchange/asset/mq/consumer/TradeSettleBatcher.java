@@ -0,0 +1,214 @@
+package com.web3.exchange.asset.mq.consumer;
+
+import com.web3.exchange.asset.engine.AccountEngine;
+import com.web3.exchange.asset.mq.producer.AssetEventProducer;
+import com.web3.exchange.asset.service.TradeSettlementService;
+import com.web3.exchange.common.asset.dto.LedgerVO;
+import com.web3.exchange.common.exception.BusinessException;
+import com.web3.exchange.common.order.dto.TradeSettleDTO;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ORDER-TRADE 成交结算组提交器：多个消费线程提交的消息由单个后台线程攒成微批，一次事务结算。
+ * <p>
+ * {@link TradeSettleConsumer} 每条消息调用 {@link #submit} 后阻塞等待结果，消费 ACK 语义不变（提交成功才返回，
+ * 失败抛异常触发重投）。后台线程 {@code asset-settle-batcher} 取到第一条后最多再等 {@code max-delay-ms}，
+ * 凑满 {@code batch-trades} 笔成交即交给 {@link TradeSettlementService#settle}：
+ * </p>
+ * <ul>
+ *   <li>个别消息业务校验失败（冻结余额不足等）只让该消息失败，同批其他消息正常提交；</li>
+ *   <li>整批事务失败（撞唯一索引、乐观锁冲突、DB 异常）则逐条消息单独重试一次，隔离出真正失败的那条。</li>
+ * </ul>
+ * <p>事务提交后再逐条发布 ASSET-CHANGE 事件（原单笔路径在提交前发送）。</p>
+ * <p>
+ * 开启内存账户引擎时不走批量事务：每笔成交的 Q/B 两笔过户直接提交给 {@link AccountEngine}（分片写线程本身即组提交），
+ * 全部过户提交后消息完成；某笔失败时已提交的过户按幂等号在重投时跳过，只补未完成的部分。
+ * </p>
+ */
+@Component
+public class TradeSettleBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(TradeSettleBatcher.class);
+
+    private static final String ENGINE_REMARK = "ORDER-TRADE 成交过户";
+
+    private final TradeSettlementService settlementService;
+    private final AssetEventProducer assetEventProducer;
+    private final AccountEngine accountEngine;
+    private final int batchTrades;
+    private final long maxDelayMs;
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private Thread worker;
+    private volatile boolean running;
+
+    /** 一条待结算消息 */
+    private record Pending(List<TradeSettleDTO> trades, CompletableFuture<Void> done) {
+    }
+
+    public TradeSettleBatcher(TradeSettlementService settlementService,
+                              AssetEventProducer assetEventProducer,
+                              AccountEngine accountEngine,
+                              @Value("${asset.settle.batch-trades:500}") int batchTrades,
+                              @Value("${asset.settle.max-delay-ms:2}") long maxDelayMs) {
+        this.settlementService = settlementService;
+        this.assetEventProducer = assetEventProducer;
+        this.accountEngine = accountEngine;
+        this.batchTrades = Math.max(1, batchTrades);
+        this.maxDelayMs = Math.max(0, maxDelayMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        worker = new Thread(this::runLoop, "asset-settle-batcher");
+        worker.setDaemon(true);
+        worker.start();
+        log.info("成交结算组提交已启动 batchTrades={} maxDelayMs={}", batchTrades, maxDelayMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+            try {
+                worker.join(10_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 未结算的消息失败返回，由 MQ 重投
+        Pending p;
+        while ((p = queue.poll()) != null) {
+            p.done.completeExceptionally(new IllegalStateException("结算服务关闭"));
+        }
+    }
+
+    /**
+     * 提交一条消息的成交，返回其结算结果（提交成功完成，失败异常完成）。
+     */
+    public CompletableFuture<Void> submit(List<TradeSettleDTO> trades) {
+        if (accountEngine.isEnabled()) {
+            return submitToEngine(trades);
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (!running) {
+            done.completeExceptionally(new IllegalStateException("结算服务未运行"));
+            return done;
+        }
+        queue.add(new Pending(trades, done));
+        return done;
+    }
+
+    /** 内存账户引擎模式：逐笔提交 Q/B 过户（幂等号同批量路径），全部完成即消息完成。 */
+    private CompletableFuture<Void> submitToEngine(List<TradeSettleDTO> trades) {
+        List<CompletableFuture<?>> legs = new ArrayList<>(trades.size() * 2);
+        try {
+            for (TradeSettleDTO t : trades) {
+                if (t.getQuoteAmount() == null || t.getQuoteAmount() <= 0 || t.getQuantity() == null || t.getQuantity() <= 0) {
+                    throw new BusinessException("金额必须大于0");
+                }
+                legs.add(accountEngine.transferAsync(t.getTradeNo() + ":Q", t.getBuyUserId(), t.getSellUserId(),
+                        t.getQuoteCoin(), t.getQuoteAmount(), t.getTradeNo(), ENGINE_REMARK));
+                legs.add(accountEngine.transferAsync(t.getTradeNo() + ":B", t.getSellUserId(), t.getBuyUserId(),
+                        t.getBaseCoin(), t.getQuantity(), t.getTradeNo(), ENGINE_REMARK));
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return CompletableFuture.allOf(legs.toArray(new CompletableFuture[0]));
+    }
+
+    private void runLoop() {
+        List<Pending> batch = new ArrayList<>();
+        while (running) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                int trades = first.trades.size();
+                // 攒批：最多等待 maxDelayMs 凑满 batchTrades 笔成交
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (trades < batchTrades) {
+                    long left = deadline - System.nanoTime();
+                    Pending next = left > 0 ? queue.poll(left, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    trades += next.trades.size();
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Pending p : batch) {
+                    p.done.completeExceptionally(new IllegalStateException("结算服务关闭"));
+                }
+                return;
+            } catch (RuntimeException e) {
+                log.error("成交结算组提交异常: {}", e.getMessage(), e);
+                for (Pending p : batch) {
+                    p.done.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        List<List<TradeSettleDTO>> groups = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            groups.add(p.trades);
+        }
+        TradeSettlementService.BatchResult result;
+        try {
+            result = settlementService.settle(groups);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).done.completeExceptionally(e);
+                return;
+            }
+            // 整批回滚：逐条单独结算，隔离失败消息
+            log.warn("成交结算整批失败，逐条重试。消息{}条, err={}", batch.size(), e.getMessage());
+            for (Pending p : batch) {
+                flush(List.of(p));
+            }
+            return;
+        }
+        for (LedgerVO vo : result.ledgers()) {
+            assetEventProducer.publishAssetChange(vo);
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            RuntimeException rejected = result.rejected().get(i);
+            if (rejected == null) {
+                batch.get(i).done.complete(null);
+            } else {
+                batch.get(i).done.completeExceptionally(rejected);
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("成交结算组提交完成。消息{}条, 流水{}条, 剔除{}条", batch.size(), result.ledgers().size(), result.rejected().size());
+        }
+    }
+
+    /** 当前排队消息数（诊断用）。 */
+    public int pending() {
+        return queue.size();
+    }
+}
@@ -2,19 +2,23 @@ package com.web3.exchange.asset.mq.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.web3.exchange.asset.mq.Topics;
-import com.web3.exchange.asset.service.LedgerService;
-import com.web3.exchange.common.asset.dto.TransferRequest;
+import com.web3.exchange.common.order.dto.TradeSettleBatchDTO;
 import com.web3.exchange.common.order.dto.TradeSettleDTO;
 import org.apache.rocketmq.common.message.MessageExt;
 import org.apache.rocketmq.spring.annotation.RocketMQMessageListener;
 import org.apache.rocketmq.spring.core.RocketMQListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * ORDER-TRADE 幂等消费者——消费 order 的成交结算指令，幂等过户驱动资金最终一致。
@@ -28,6 +32,15 @@ import java.time.Duration;
  * ② 业务层复用 {@code /internal/asset/transfer} 的 requestId 幂等（tradeNo:Q / tradeNo:B，
  * 见 docs/asset-domain.md §4.2/§5.1），即便 SETNX 失效，transfer 也会按 uk_request_id 兜底不重复扣账。
  * </p>
+ * <p>
+ * <b>批量消息</b>（Tag = BATCH，{@link TradeSettleBatchDTO}）：一条消息承载一个吃单的全部成交，bizKey = batchNo，
+ * 批内逐笔过户；中途失败释放去重键后整批重投，已过户的成交由 requestId 幂等跳过。
+ * </p>
+ * <p>
+ * <b>组提交</b>：过户不再逐笔调用 {@code LedgerService.transfer}（每笔各自一个事务、各锁两次账户行），
+ * 而是交给 {@link TradeSettleBatcher} 与其他消费线程的消息攒成微批、一个事务内净额结算（见 {@code TradeSettlementService}），
+ * 本线程等待所在批次提交后再 ACK；结算失败仍释放去重键并抛异常触发重投。
+ * </p>
  */
 @Component
 @RocketMQMessageListener(
@@ -43,14 +56,17 @@ public class TradeSettleConsumer implements RocketMQListener<MessageExt> {
 
     private final StringRedisTemplate redisTemplate;
     private final ObjectMapper objectMapper;
-    private final LedgerService ledgerService;
+    private final TradeSettleBatcher batcher;
+    private final long waitTimeoutMs;
 
     public TradeSettleConsumer(StringRedisTemplate redisTemplate,
                                ObjectMapper objectMapper,
-                               LedgerService ledgerService) {
+                               TradeSettleBatcher batcher,
+                               @Value("${asset.settle.wait-timeout-ms:30000}") long waitTimeoutMs) {
         this.redisTemplate = redisTemplate;
         this.objectMapper = objectMapper;
-        this.ledgerService = ledgerService;
+        this.batcher = batcher;
+        this.waitTimeoutMs = waitTimeoutMs;
     }
 
     @Override
@@ -65,63 +81,46 @@ public class TradeSettleConsumer implements RocketMQListener<MessageExt> {
             return;
         }
 
-        // 2. 解析结算指令
-        TradeSettleDTO dto;
+        // 2. 解析结算指令：Tag=BATCH 为批量消息体，否则为单笔
+        List<TradeSettleDTO> trades;
         try {
             String body = new String(msg.getBody(), StandardCharsets.UTF_8);
-            dto = objectMapper.readValue(body, TradeSettleDTO.class);
+            trades = TradeSettleBatchDTO.TAG.equals(msg.getTags())
+                    ? objectMapper.readValue(body, TradeSettleBatchDTO.class).getTrades()
+                    : List.of(objectMapper.readValue(body, TradeSettleDTO.class));
         } catch (Exception e) {
+            redisTemplate.delete(DEDUP_KEY_PREFIX + bizKey);
             log.error("消费 ORDER-TRADE 消息体解析失败。bizKey={}, err={}", bizKey, e.getMessage(), e);
             throw new IllegalArgumentException("ORDER-TRADE 消息体解析失败: " + bizKey, e); // 触发重投
         }
-        if (dto == null || dto.getTradeNo() == null || dto.getBuyUserId() == null || dto.getSellUserId() == null) {
-            log.error("ORDER-TRADE 消息体不完整，触发重投。bizKey={}, body={}",
-                    bizKey, new String(msg.getBody(), StandardCharsets.UTF_8));
-            throw new IllegalArgumentException("ORDER-TRADE 消息体不完整: " + bizKey);
+        for (TradeSettleDTO dto : trades) {
+            if (dto == null || dto.getTradeNo() == null || dto.getBuyUserId() == null || dto.getSellUserId() == null
+                    || dto.getBaseCoin() == null || dto.getQuoteCoin() == null) {
+                redisTemplate.delete(DEDUP_KEY_PREFIX + bizKey);
+                log.error("ORDER-TRADE 消息体不完整，触发重投。bizKey={}, body={}",
+                        bizKey, new String(msg.getBody(), StandardCharsets.UTF_8));
+                throw new IllegalArgumentException("ORDER-TRADE 消息体不完整: " + bizKey);
+            }
         }
 
-        // 3. 幂等过户：计价币 Q（买方→卖方）+ 基础币 B（卖方→买方）
-        //    transfer 内部以 requestId（tradeNo:Q / tradeNo:B）幂等兜底，重复不重复扣账
+        // 3. 组提交过户：计价币 Q（买方→卖方）+ 基础币 B（卖方→买方），等待所在批次提交
+        //    过户以 requestId（tradeNo:Q / tradeNo:B）幂等兜底，重投时已过户的成交不重复扣账
         try {
-            TransferRequest quote = buildTransfer(dto, true);
-            ledgerService.transfer(quote);
-            TransferRequest base = buildTransfer(dto, false);
-            ledgerService.transfer(base);
-            log.info("消费 ORDER-TRADE 过户成功。tradeNo={}, symbol={}, price={}, qty={}, quoteAmount={}, "
-                            + "buy={}, sell={}：Q(计价币 {} {}→{}) + B(基础币 {} {}→{})",
-                    dto.getTradeNo(), dto.getSymbol(), dto.getPrice(), dto.getQuantity(), dto.getQuoteAmount(),
-                    dto.getBuyUserId(), dto.getSellUserId(),
-                    dto.getQuoteCoin(), dto.getBuyUserId(), dto.getSellUserId(),
-                    dto.getBaseCoin(), dto.getSellUserId(), dto.getBuyUserId());
-        } catch (Exception e) {
-            // 过户失败：抛异常触发重投（默认 16 次后进死信）；requestId 幂等保证重投不重复扣账
-            log.error("消费 ORDER-TRADE 过户失败，待重投。tradeNo={}, err={}", dto.getTradeNo(), e.getMessage(), e);
-            throw e;
-        }
-    }
-
-    /**
-     * 组装过户请求。{@code quote=true} 计价币过户（买方冻结→卖方可用，requestId=tradeNo:Q）；
-     * {@code quote=false} 基础币过户（卖方冻结→买方可用，requestId=tradeNo:B）。
-     */
-    private TransferRequest buildTransfer(TradeSettleDTO dto, boolean quote) {
-        TransferRequest req = new TransferRequest();
-        if (quote) {
-            req.setRequestId(dto.getTradeNo() + ":Q");
-            req.setFromUserId(dto.getBuyUserId());
-            req.setToUserId(dto.getSellUserId());
-            req.setSymbol(dto.getQuoteCoin());
-            req.setAmount(dto.getQuoteAmount());
-        } else {
-            req.setRequestId(dto.getTradeNo() + ":B");
-            req.setFromUserId(dto.getSellUserId());
-            req.setToUserId(dto.getBuyUserId());
-            req.setSymbol(dto.getBaseCoin());
-            req.setAmount(dto.getQuantity());
+            batcher.submit(trades).get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            // 过户失败：释放去重键并抛异常触发重投（默认 16 次后进死信）；超时的批次若随后提交，重投时按 requestId 跳过
+            redisTemplate.delete(DEDUP_KEY_PREFIX + bizKey);
+            log.error("消费 ORDER-TRADE 过户失败，待重投。bizKey={}, 成交{}笔, err={}",
+                    bizKey, trades.size(), cause.getMessage(), cause);
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            throw new IllegalStateException("ORDER-TRADE 过户失败: " + bizKey, cause);
         }
-        req.setBizType("TRANSFER");
-        req.setRefNo(dto.getTradeNo());
-        req.setRemark("ORDER-TRADE 成交过户");
-        return req;
+        log.info("消费 ORDER-TRADE 过户成功。bizKey={}, 成交{}笔", bizKey, trades.size());
     }
 }
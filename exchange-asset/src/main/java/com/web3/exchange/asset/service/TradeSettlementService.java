@@ -0,0 +1,37 @@
+package com.web3.exchange.asset.service;
+
+import com.web3.exchange.common.asset.dto.LedgerVO;
+import com.web3.exchange.common.order.dto.TradeSettleDTO;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 成交批量结算服务——ORDER-TRADE 成交过户的组提交入口。
+ * <p>
+ * 一次调用结算多条消息（每条消息一组成交）：同批内按 (用户, 币种) 净额、每个账户行只锁一次（固定顺序）、
+ * 流水批量插入，全部在一个本地事务内完成；过户幂等号与单笔 {@link LedgerService#transfer} 一致
+ * （{@code tradeNo:Q} / {@code tradeNo:B}），两条路径可混用。
+ * </p>
+ */
+public interface TradeSettlementService {
+
+    /**
+     * 在一个事务内结算多组成交。
+     * <p>某组因业务校验失败（冻结余额不足、金额非法）时只剔除该组，其余组照常提交；
+     * 数据库异常（唯一索引冲突、乐观锁冲突等）整批回滚并抛出，由调用方逐组重试。</p>
+     *
+     * @param groups 每条消息的成交列表
+     * @return 本次写入的流水与被剔除的组
+     */
+    BatchResult settle(List<List<TradeSettleDTO>> groups);
+
+    /**
+     * 批量结算结果。
+     *
+     * @param ledgers  本次写入的流水（提交后用于发布 ASSET-CHANGE）
+     * @param rejected 被剔除的组下标 → 原因
+     */
+    record BatchResult(List<LedgerVO> ledgers, Map<Integer, RuntimeException> rejected) {
+    }
+}
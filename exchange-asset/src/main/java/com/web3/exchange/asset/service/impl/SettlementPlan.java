@@ -0,0 +1,220 @@
+package com.web3.exchange.asset.service.impl;
+
+import com.web3.exchange.asset.entity.Account;
+import com.web3.exchange.asset.entity.Ledger;
+import com.web3.exchange.asset.service.BizType;
+import com.web3.exchange.asset.service.Direction;
+import com.web3.exchange.common.exception.BusinessException;
+import com.web3.exchange.common.order.dto.TradeSettleDTO;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 一批成交的结算计划（纯内存，不访问数据库）。
+ * <p>
+ * 每笔成交拆成两笔过户：计价币 Q（买方冻结 → 卖方可用）、基础币 B（卖方冻结 → 买方可用），
+ * 每笔过户写 {@code _OUT}（FROZEN_OUT）与 {@code _IN}（IN）两条流水，幂等号与 {@code LedgerServiceImpl#transfer} 一致。
+ * </p>
+ * <p>
+ * 流程：{@link #skipDone} 剔除已落账 / 批内重复的过户 → {@link #accountKeys} 给出需加锁账户（按 userId、币种排序，
+ * 所有批次同一顺序加锁，不会互相死锁）→ {@link #apply} 在锁定的账户快照上按组顺序逐笔推演余额，
+ * 生成带 before/after 的流水；某组冻结余额不足则回滚该组的推演并记入 {@link #rejected}，不影响其他组。
+ * 推演结束后每个账户只有一个最终余额（同批多笔净额），由调用方一次条件更新。
+ * </p>
+ */
+final class SettlementPlan {
+
+    /** 账户键：(用户, 币种)，排序即加锁顺序 */
+    record AccountKey(long userId, String symbol) {
+        static final Comparator<AccountKey> ORDER =
+                Comparator.comparingLong(AccountKey::userId).thenComparing(AccountKey::symbol);
+    }
+
+    /** 一笔过户 */
+    private record Transfer(String requestId, AccountKey from, AccountKey to, Long amount, String refNo) {
+    }
+
+    /** 账户推演余额 */
+    static final class Balance {
+        final Account account;
+        long available;
+        long frozen;
+
+        Balance(Account account) {
+            this.account = account;
+            this.available = nz(account.getAvailable());
+            this.frozen = nz(account.getFrozen());
+        }
+
+        boolean changed() {
+            return available != nz(account.getAvailable()) || frozen != nz(account.getFrozen());
+        }
+    }
+
+    private static final String REMARK = "ORDER-TRADE 成交过户";
+
+    private final List<List<Transfer>> groups;
+    private final List<Ledger> ledgers = new ArrayList<>();
+    private final Map<Integer, RuntimeException> rejected = new LinkedHashMap<>();
+    private final Map<AccountKey, Balance> balances = new HashMap<>();
+
+    private SettlementPlan(List<List<Transfer>> groups) {
+        this.groups = groups;
+    }
+
+    /** 由多条消息的成交构建计划（组下标即消息下标）。 */
+    static SettlementPlan of(List<List<TradeSettleDTO>> messages) {
+        List<List<Transfer>> groups = new ArrayList<>(messages.size());
+        for (List<TradeSettleDTO> trades : messages) {
+            List<Transfer> g = new ArrayList<>(trades.size() * 2);
+            for (TradeSettleDTO t : trades) {
+                AccountKey buyer = new AccountKey(t.getBuyUserId(), t.getQuoteCoin());
+                AccountKey seller = new AccountKey(t.getSellUserId(), t.getQuoteCoin());
+                g.add(new Transfer(t.getTradeNo() + ":Q", buyer, seller, t.getQuoteAmount(), t.getTradeNo()));
+                AccountKey sellerBase = new AccountKey(t.getSellUserId(), t.getBaseCoin());
+                AccountKey buyerBase = new AccountKey(t.getBuyUserId(), t.getBaseCoin());
+                g.add(new Transfer(t.getTradeNo() + ":B", sellerBase, buyerBase, t.getQuantity(), t.getTradeNo()));
+            }
+            groups.add(g);
+        }
+        return new SettlementPlan(groups);
+    }
+
+    /** 全部过户的转出流水幂等号（{@code requestId_OUT}），用于一次查询已落账的过户。 */
+    Set<String> outRequestIds() {
+        Set<String> ids = new HashSet<>();
+        for (List<Transfer> g : groups) {
+            for (Transfer t : g) {
+                ids.add(t.requestId + "_OUT");
+            }
+        }
+        return ids;
+    }
+
+    /** 剔除已落账（转出流水已存在）与批内重复的过户。 */
+    void skipDone(Set<String> doneOutRequestIds) {
+        Set<String> seen = new HashSet<>();
+        for (List<Transfer> g : groups) {
+            g.removeIf(t -> doneOutRequestIds.contains(t.requestId + "_OUT") || !seen.add(t.requestId));
+        }
+    }
+
+    /** 待结算过户涉及的账户（加锁顺序）。 */
+    Collection<AccountKey> accountKeys() {
+        TreeSet<AccountKey> keys = new TreeSet<>(AccountKey.ORDER);
+        for (List<Transfer> g : groups) {
+            for (Transfer t : g) {
+                keys.add(t.from);
+                keys.add(t.to);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * 在已锁定账户上推演全部组，生成流水。
+     *
+     * @param locked accountKeys() 中每个键对应的（已行锁）账户
+     */
+    void apply(Map<AccountKey, Account> locked) {
+        for (Map.Entry<AccountKey, Account> e : locked.entrySet()) {
+            balances.put(e.getKey(), new Balance(e.getValue()));
+        }
+        ArrayDeque<long[]> undo = new ArrayDeque<>();
+        List<Balance> undoTargets = new ArrayList<>();
+        for (int gi = 0; gi < groups.size(); gi++) {
+            int ledgerMark = ledgers.size();
+            undo.clear();
+            undoTargets.clear();
+            try {
+                for (Transfer t : groups.get(gi)) {
+                    if (t.amount == null || t.amount <= 0) {
+                        throw new BusinessException("金额必须大于0");
+                    }
+                    Balance from = balances.get(t.from);
+                    Balance to = balances.get(t.to);
+                    if (from.frozen < t.amount) {
+                        throw new BusinessException(409, "冻结余额不足");
+                    }
+                    // 转出方：冻结减少
+                    undoTargets.add(from);
+                    undo.push(new long[]{from.available, from.frozen});
+                    ledgers.add(ledger(t.requestId + "_OUT", from, BizType.TRANSFER_OUT, Direction.FROZEN_OUT,
+                            t.amount, from.available, from.frozen - t.amount, t.refNo));
+                    from.frozen -= t.amount;
+                    // 转入方：可用增加
+                    undoTargets.add(to);
+                    undo.push(new long[]{to.available, to.frozen});
+                    ledgers.add(ledger(t.requestId + "_IN", to, BizType.TRANSFER_IN, Direction.IN,
+                            t.amount, to.available + t.amount, to.frozen, t.refNo));
+                    to.available += t.amount;
+                }
+            } catch (BusinessException ex) {
+                // 逆序还原本组推演，剔除本组流水
+                for (int i = undoTargets.size() - 1; i >= 0; i--) {
+                    long[] before = undo.pop();
+                    undoTargets.get(i).available = before[0];
+                    undoTargets.get(i).frozen = before[1];
+                }
+                ledgers.subList(ledgerMark, ledgers.size()).clear();
+                rejected.put(gi, ex);
+            }
+        }
+    }
+
+    private static Ledger ledger(String requestId, Balance b, String bizType, int direction, long amount,
+                                 long afterAvailable, long afterFrozen, String refNo) {
+        Account acct = b.account;
+        return new Ledger()
+                .setRequestId(requestId)
+                .setUserId(acct.getUserId())
+                .setAccountId(acct.getId())
+                .setCoinId(acct.getCoinId())
+                .setSymbol(acct.getSymbol())
+                .setBizType(bizType)
+                .setDirection(direction)
+                .setAmount(amount)
+                .setBeforeAvailable(b.available)
+                .setAfterAvailable(afterAvailable)
+                .setBeforeFrozen(b.frozen)
+                .setAfterFrozen(afterFrozen)
+                .setRefNo(refNo)
+                .setStatus(1)
+                .setRemark(REMARK);
+    }
+
+    /** 待插入流水（按推演顺序）。 */
+    List<Ledger> ledgers() {
+        return ledgers;
+    }
+
+    /** 被剔除的组下标 → 原因。 */
+    Map<Integer, RuntimeException> rejected() {
+        return rejected;
+    }
+
+    /** 余额有变化的账户（每个账户一条最终余额）。 */
+    List<Balance> changedBalances() {
+        List<Balance> out = new ArrayList<>();
+        for (Balance b : balances.values()) {
+            if (b.changed()) {
+                out.add(b);
+            }
+        }
+        return out;
+    }
+
+    private static long nz(Long v) {
+        return v == null ? 0L : v;
+    }
+}
@@ -0,0 +1,96 @@
+package com.web3.exchange.asset.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.web3.exchange.asset.entity.Account;
+import com.web3.exchange.asset.entity.Ledger;
+import com.web3.exchange.asset.service.AccountService;
+import com.web3.exchange.asset.service.LedgerService;
+import com.web3.exchange.asset.service.TradeSettlementService;
+import com.web3.exchange.common.exception.BusinessException;
+import com.web3.exchange.common.order.dto.TradeSettleDTO;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 成交批量结算实现：一个事务内 ① 一次查询已落账过户（幂等）② 按 (userId, 币种) 顺序逐个行锁涉及账户（每行一次）
+ * ③ 内存推演余额、生成流水（见 {@link SettlementPlan}）④ 流水 saveBatch ⑤ 每个账户一次乐观锁条件更新。
+ * <p>
+ * 与 {@link LedgerServiceImpl#transfer} 的差别只在批量：行锁、乐观锁、request_id 唯一索引三重保障不变；
+ * 做市商等热点账户在一批内只锁一次、只更新一次，不再每笔成交各锁一次。
+ * </p>
+ */
+@Service
+public class TradeSettlementServiceImpl implements TradeSettlementService {
+
+    /** 幂等查询 IN 列表分片大小 */
+    private static final int QUERY_CHUNK = 1000;
+
+    private final AccountService accountService;
+    private final LedgerService ledgerService;
+
+    public TradeSettlementServiceImpl(AccountService accountService, LedgerService ledgerService) {
+        this.accountService = accountService;
+        this.ledgerService = ledgerService;
+    }
+
+    @Override
+    @Transactional(rollbackFor = Exception.class)
+    public BatchResult settle(List<List<TradeSettleDTO>> groups) {
+        SettlementPlan plan = SettlementPlan.of(groups);
+        // 1. 幂等：已存在转出流水的过户整笔跳过
+        plan.skipDone(findExisting(plan.outRequestIds()));
+
+        // 2. 固定顺序行锁（不存在则开户），每个账户一次
+        Map<SettlementPlan.AccountKey, Account> locked = new HashMap<>();
+        for (SettlementPlan.AccountKey k : plan.accountKeys()) {
+            locked.put(k, accountService.lockByUserAndSymbol(k.userId(), k.symbol()));
+        }
+
+        // 3. 推演余额、生成流水（余额不足的组被剔除）
+        plan.apply(locked);
+
+        // 4. 流水批量插入（request_id 唯一索引兜底：并发撞键整批回滚，由调用方逐组重试）
+        List<Ledger> ledgers = plan.ledgers();
+        if (!ledgers.isEmpty()) {
+            ledgerService.saveBatch(ledgers, QUERY_CHUNK);
+        }
+
+        // 5. 每个账户一次净额更新（行锁已串行化 + version 乐观锁兜底）
+        for (SettlementPlan.Balance b : plan.changedBalances()) {
+            Account acct = b.account;
+            LambdaUpdateWrapper<Account> uw = new LambdaUpdateWrapper<>();
+            uw.eq(Account::getId, acct.getId())
+                    .set(Account::getAvailable, b.available)
+                    .set(Account::getFrozen, b.frozen)
+                    .set(Account::getTotal, b.available + b.frozen)
+                    .set(Account::getVersion, acct.getVersion() + 1)
+                    .eq(Account::getVersion, acct.getVersion());
+            if (!accountService.update(uw)) {
+                throw new BusinessException(409, "余额更新冲突，请重试");
+            }
+        }
+        return new BatchResult(ledgers.stream().map(ledgerService::toVO).toList(), plan.rejected());
+    }
+
+    private Set<String> findExisting(Set<String> requestIds) {
+        Set<String> done = new HashSet<>();
+        List<String> ids = new ArrayList<>(requestIds);
+        for (int i = 0; i < ids.size(); i += QUERY_CHUNK) {
+            List<String> chunk = ids.subList(i, Math.min(i + QUERY_CHUNK, ids.size()));
+            for (Ledger l : ledgerService.list(new LambdaQueryWrapper<Ledger>()
+                    .select(Ledger::getRequestId)
+                    .in(Ledger::getRequestId, chunk))) {
+                done.add(l.getRequestId());
+            }
+        }
+        return done;
+    }
+}
@@ -0,0 +1,238 @@
+package com.web3.exchange.asset.engine;
+
+import com.web3.exchange.asset.entity.Ledger;
+import com.web3.exchange.asset.mapper.LedgerMapper;
+import com.web3.exchange.asset.mq.producer.AssetEventProducer;
+import com.web3.exchange.asset.service.AccountService;
+import com.web3.exchange.asset.service.BizType;
+import com.web3.exchange.asset.service.Direction;
+import com.web3.exchange.asset.service.LedgerService;
+import com.web3.exchange.common.asset.dto.AccountVO;
+import com.web3.exchange.common.asset.dto.LedgerVO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * AccountEngine 单测：过户两腿与重复请求幂等、重启后由落库流水还原的转出记录重试过户（不 NPE、不重复入账）、
+ * WAL 重放恢复余额并补发未入账的入账腿、投影发现同一 requestId 已有另一条流水时拒绝落库。
+ */
+class AccountEngineTest {
+
+    private static final long FROM = 1L, TO = 2L;
+    private static final String USDT = "USDT";
+
+    @TempDir
+    Path dir;
+
+    private final AccountService accountService = mock(AccountService.class);
+    private final LedgerService ledgerService = mock(LedgerService.class);
+    private final LedgerMapper ledgerMapper = mock(LedgerMapper.class);
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final TransactionTemplate tx = mock(TransactionTemplate.class);
+    private AccountEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    @Test
+    void transfer_movesFrozenToReceiver_andRetryIsIdempotent() throws Exception {
+        engine = start();
+
+        LedgerVO first = transfer("T1", 200);
+        assertEquals("T1_OUT", first.getRequestId());
+        assertEquals(300L, engine.balance(FROM, USDT).getFrozen());
+        assertEquals(1200L, engine.balance(TO, USDT).getAvailable());
+
+        LedgerVO again = transfer("T1", 200);
+        assertEquals(first.getId(), again.getId());
+        assertEquals(300L, engine.balance(FROM, USDT).getFrozen());
+        assertEquals(1200L, engine.balance(TO, USDT).getAvailable());
+    }
+
+    @Test
+    void retryAfterRestart_withOutLegRestoredFromLedger_creditsOnce() throws Exception {
+        // 重启前转出腿已落库，入账腿未落库；预热只还原出不含入账腿信息的转出记录
+        when(ledgerMapper.selectList(any())).thenReturn(List.of(outLedger("T2_OUT", 200)));
+        when(ledgerMapper.exists(any())).thenReturn(false);
+        engine = start();
+
+        LedgerVO out = transfer("T2", 200);
+        assertEquals("T2_OUT", out.getRequestId());
+        assertNull(engine.balance(FROM, USDT));
+        assertEquals(1200L, engine.balance(TO, USDT).getAvailable());
+
+        // 再次重试：入账腿已在幂等索引中，不重复入账
+        transfer("T2", 200);
+        assertEquals(1200L, engine.balance(TO, USDT).getAvailable());
+    }
+
+    @Test
+    void retryAfterRestart_whenCreditLegAlreadyPersisted_skipsCredit() throws Exception {
+        when(ledgerMapper.selectList(any())).thenReturn(List.of(outLedger("T3_OUT", 200)));
+        when(ledgerMapper.exists(any())).thenReturn(true);
+        engine = start();
+
+        assertEquals("T3_OUT", transfer("T3", 200).getRequestId());
+        assertNull(engine.balance(TO, USDT));
+    }
+
+    @Test
+    void recover_replaysWal_andResendsMissingCreditLeg() throws Exception {
+        // 崩溃前：转出腿已写 WAL（未落库），入账腿未提交
+        AccountJournal journal = new AccountJournal(dir.resolve("shard-" + AccountShard.shardOf(FROM, 2)), false, 1 << 20);
+        AccountRecord out = new AccountRecord();
+        out.ledgerId = 900L;
+        out.requestId = "T4_OUT";
+        out.userId = FROM;
+        out.accountId = 100L + FROM;
+        out.coinId = 2L;
+        out.symbol = USDT;
+        out.bizType = BizType.TRANSFER_OUT;
+        out.direction = Direction.FROZEN_OUT;
+        out.amount = 200;
+        out.beforeAvailable = 1000;
+        out.afterAvailable = 1000;
+        out.beforeFrozen = 500;
+        out.afterFrozen = 300;
+        out.time = System.currentTimeMillis();
+        out.creditUserId = TO;
+        out.creditRequestId = "T4_IN";
+        journal.appendAll(List.of(out));
+        journal.close();
+
+        engine = start();
+        awaitAvailable(TO, 1200L);
+        assertEquals(300L, engine.balance(FROM, USDT).getFrozen());
+
+        // 调用方超时后用同一 requestId 重试：转出腿命中 WAL 重放记录，入账腿幂等
+        assertEquals(900L, transfer("T4", 200).getId());
+        assertEquals(1200L, engine.balance(TO, USDT).getAvailable());
+    }
+
+    @Test
+    void project_failsWhenLedgerRowOfRequestBelongsToAnotherRecord() {
+        engine = start();
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(tx).executeWithoutResult(any());
+        // 流水被 INSERT IGNORE 忽略：库中同一 requestId 已有另一条流水（同一请求被受理了两次）
+        when(jdbc.batchUpdate(anyString(), anyList())).thenReturn(new int[]{0});
+        when(jdbc.queryForList(anyString(), any(Object[].class)))
+                .thenReturn(List.of(Map.of("id", 800L, "request_id", "D1")));
+        AccountRecord dup = new AccountRecord();
+        dup.ledgerId = 901L;
+        dup.requestId = "D1";
+        dup.userId = FROM;
+        dup.accountId = 100L + FROM;
+        dup.symbol = USDT;
+        dup.time = System.currentTimeMillis();
+
+        assertThrows(IllegalStateException.class,
+                () -> ReflectionTestUtils.invokeMethod(engine, "project", List.of(dup)));
+        // 账户行不被覆盖
+        verify(jdbc, times(1)).batchUpdate(anyString(), anyList());
+
+        // 重放已落库的同一条流水（id 相同）照常投影
+        when(jdbc.queryForList(anyString(), any(Object[].class)))
+                .thenReturn(List.of(Map.of("id", 901L, "request_id", "D1")));
+        ReflectionTestUtils.invokeMethod(engine, "project", List.of(dup));
+        verify(jdbc, times(3)).batchUpdate(anyString(), anyList());
+    }
+
+    private AccountEngine start() {
+        when(accountService.open(anyLong(), anyString())).thenAnswer(inv -> account(inv.getArgument(0), inv.getArgument(1)));
+        when(ledgerService.toVO(any())).thenAnswer(inv -> {
+            Ledger l = inv.getArgument(0);
+            LedgerVO vo = new LedgerVO();
+            vo.setId(l.getId());
+            vo.setRequestId(l.getRequestId());
+            vo.setUserId(l.getUserId());
+            vo.setAmount(l.getAmount());
+            return vo;
+        });
+        AccountEngine e = new AccountEngine(accountService, ledgerService, ledgerMapper, jdbc,
+                tx, mock(AssetEventProducer.class), true, 2, dir.toString(), false,
+                64, 100, 1000, 1000, 10_000, 5000);
+        e.start();
+        return e;
+    }
+
+    private LedgerVO transfer(String requestId, long amount) throws Exception {
+        return engine.transferAsync(requestId, FROM, TO, USDT, amount, "REF-" + requestId, null)
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    private void awaitAvailable(long userId, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline) {
+            AccountVO b = engine.balance(userId, USDT);
+            if (b != null && b.getAvailable() == expected) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        assertEquals(expected, engine.balance(userId, USDT) == null ? null : engine.balance(userId, USDT).getAvailable());
+    }
+
+    private static Ledger outLedger(String requestId, long amount) {
+        Ledger l = new Ledger()
+                .setRequestId(requestId)
+                .setUserId(FROM)
+                .setAccountId(100L + FROM)
+                .setCoinId(2L)
+                .setSymbol(USDT)
+                .setBizType(BizType.TRANSFER_OUT)
+                .setDirection(Direction.FROZEN_OUT)
+                .setAmount(amount)
+                .setBeforeAvailable(1000L)
+                .setAfterAvailable(1000L)
+                .setBeforeFrozen(500L)
+                .setAfterFrozen(500L - amount)
+                .setRefNo("REF")
+                .setStatus(1);
+        l.setId(800L);
+        l.setCreateTime(LocalDateTime.now());
+        return l;
+    }
+
+    private static AccountVO account(long userId, String symbol) {
+        AccountVO vo = new AccountVO();
+        vo.setAccountId(100L + userId);
+        vo.setUserId(userId);
+        vo.setCoinId(2L);
+        vo.setSymbol(symbol);
+        vo.setAvailable(1000L);
+        vo.setFrozen(500L);
+        return vo;
+    }
+}
@@ -0,0 +1,138 @@
+package com.web3.exchange.asset.engine;
+
+import com.web3.exchange.asset.service.BizType;
+import com.web3.exchange.asset.service.Direction;
+import com.web3.exchange.common.asset.dto.AccountVO;
+import com.web3.exchange.common.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * AccountShard / AccountJournal 单测：批内推演与余额不足只拒单条、requestId 幂等（含幂等索引淘汰后回库确认）、
+ * WAL 重放恢复余额与幂等索引、checkpoint 后截断。
+ */
+class AccountShardTest {
+
+    private static final long USER = 7L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void process_appliesBatch_rejectsInsufficient_andDedups() throws Exception {
+        List<AccountRecord> committed = new ArrayList<>();
+        AccountShard shard = shard(new AccountJournal(dir, false, 1 << 20), committed);
+
+        AccountShard.Command f1 = freeze("F1", 600);
+        AccountShard.Command f2 = freeze("F2", 600);   // 可用只剩 400，拒绝
+        AccountShard.Command f1Again = freeze("F1", 600);
+        AccountShard.Command u1 = new AccountShard.Command("U1", USER, "USDT", BizType.UNFREEZE, Direction.UNFROZEN,
+                100, "O1", null, null, null);
+        shard.process(List.of(f1, f2, f1Again, u1));
+
+        assertEquals(600, f1.done.get().amount);
+        ExecutionException ex = assertThrows(ExecutionException.class, () -> f2.done.get());
+        assertInstanceOf(BusinessException.class, ex.getCause());
+        assertSame(f1.done.get(), f1Again.done.get());
+        assertEquals(2, committed.size());
+        assertEquals(List.of(1L, 2L), committed.stream().map(r -> r.seq).toList());
+        // 流水 before/after 首尾相接
+        assertEquals(400, committed.get(0).afterAvailable);
+        assertEquals(400, committed.get(1).beforeAvailable);
+        assertEquals(500, committed.get(1).afterAvailable);
+        assertEquals(500, committed.get(1).afterFrozen);
+        assertEquals(500, shard.peek(USER, "USDT")[2]);
+    }
+
+    @Test
+    void replay_restoresBalances_andDedupIndex() throws Exception {
+        AccountJournal journal = new AccountJournal(dir, false, 1 << 20);
+        AccountShard shard = shard(journal, new ArrayList<>());
+        shard.process(List.of(freeze("F1", 300), freeze("F2", 200)));
+        journal.checkpoint(1);
+        journal.close();
+
+        // 重启：只有 checkpoint 之后的记录待重放
+        AccountJournal reopened = new AccountJournal(dir, false, 1 << 20);
+        List<AccountRecord> pending = reopened.pending();
+        assertEquals(1, pending.size());
+        assertEquals("F2", pending.get(0).requestId);
+
+        AccountShard recovered = shard(reopened, new ArrayList<>());
+        pending.forEach(recovered::replay);
+        assertEquals(500, recovered.peek(USER, "USDT")[2]);
+        assertEquals(500, recovered.peek(USER, "USDT")[3]);
+
+        AccountShard.Command dup = freeze("F2", 200);
+        AccountShard.Command next = freeze("F3", 100);
+        recovered.process(List.of(dup, next));
+        assertEquals(2L, dup.done.get().seq);
+        assertEquals(3L, next.done.get().seq);
+        assertEquals(400, next.done.get().afterAvailable);
+
+        reopened.checkpoint(3);
+        assertTrue(reopened.pending().isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void evictedRequest_isConfirmedAgainstPersistedLedger() throws Exception {
+        AccountJournal journal = new AccountJournal(dir, false, 1 << 20);
+        List<AccountRecord> committed = new ArrayList<>();
+        // 已落库流水替身：投影追上的记录
+        Map<String, AccountRecord> ledger = new HashMap<>();
+        AccountShard shard = new AccountShard(0, journal, AccountShardTest::account, ledger::get, committed::addAll, 64, 1);
+
+        AccountShard.Command f1 = freeze("F1", 300);
+        shard.process(List.of(f1));
+        // F1 未落库：容量已满也不淘汰，F2 之后重试 F1 仍命中索引
+        shard.process(List.of(freeze("F2", 100)));
+        AccountShard.Command retry = freeze("F1", 300);
+        shard.process(List.of(retry));
+        assertSame(f1.done.get(), retry.done.get());
+
+        // 投影追上后 F1 被淘汰，迟到的重试回库确认，不重复冻结
+        committed.forEach(r -> ledger.put(r.requestId, r));
+        journal.checkpoint(2);
+        shard.process(List.of(freeze("F3", 100)));
+        AccountShard.Command late = freeze("F1", 300);
+        shard.process(List.of(late));
+        assertEquals(f1.done.get().ledgerId, late.done.get().ledgerId);
+        assertEquals(500, shard.peek(USER, "USDT")[2]);
+        assertEquals(3, committed.size());
+        journal.close();
+    }
+
+    private static AccountShard shard(AccountJournal journal, List<AccountRecord> committed) {
+        return new AccountShard(0, journal, AccountShardTest::account, requestId -> null, committed::addAll, 64, 1000);
+    }
+
+    private static AccountShard.Command freeze(String requestId, long amount) {
+        return new AccountShard.Command(requestId, USER, "USDT", BizType.FREEZE, Direction.FROZEN,
+                amount, "O-" + requestId, null, null, null);
+    }
+
+    private static AccountVO account(long userId, String symbol) {
+        AccountVO vo = new AccountVO();
+        vo.setAccountId(100L);
+        vo.setUserId(userId);
+        vo.setCoinId(2L);
+        vo.setSymbol(symbol);
+        vo.setAvailable(1000L);
+        vo.setFrozen(0L);
+        return vo;
+    }
+}
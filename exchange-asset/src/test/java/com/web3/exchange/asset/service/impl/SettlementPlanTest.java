@@ -0,0 +1,126 @@
+package com.web3.exchange.asset.service.impl;
+
+import com.web3.exchange.asset.entity.Account;
+import com.web3.exchange.asset.entity.Ledger;
+import com.web3.exchange.common.exception.BusinessException;
+import com.web3.exchange.common.order.dto.TradeSettleDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * SettlementPlan 单测：同批多笔对同一账户净额（每账户一个最终余额、流水 before/after 连续）、
+ * 固定加锁顺序、冻结不足只剔除该组、已落账与批内重复的过户跳过。
+ */
+class SettlementPlanTest {
+
+    private static final long MAKER = 1L;
+    private static final long TAKER_A = 2L;
+    private static final long TAKER_B = 3L;
+
+    @Test
+    void nets_perAccount_andChainsLedgerBalances() {
+        // 做市商 1 连续卖给 2、3（两条消息）
+        SettlementPlan plan = SettlementPlan.of(List.of(
+                List.of(trade("T1", TAKER_A, MAKER, 2, 200)),
+                List.of(trade("T2", TAKER_B, MAKER, 3, 300))));
+        plan.skipDone(Set.of());
+        assertEquals(List.of(
+                        new SettlementPlan.AccountKey(MAKER, "BTC"), new SettlementPlan.AccountKey(MAKER, "USDT"),
+                        new SettlementPlan.AccountKey(TAKER_A, "BTC"), new SettlementPlan.AccountKey(TAKER_A, "USDT"),
+                        new SettlementPlan.AccountKey(TAKER_B, "BTC"), new SettlementPlan.AccountKey(TAKER_B, "USDT")),
+                List.copyOf(plan.accountKeys()));
+
+        Map<SettlementPlan.AccountKey, Account> accounts = accounts(plan, 10, 1000);
+        plan.apply(accounts);
+
+        assertTrue(plan.rejected().isEmpty());
+        List<Ledger> ledgers = plan.ledgers();
+        assertEquals(8, ledgers.size());
+        // 做市商 BTC：冻结 1000 → 998 → 995，两条 TRANSFER_OUT 流水首尾相接
+        List<Ledger> makerBase = ledgers.stream()
+                .filter(l -> l.getUserId() == MAKER && "BTC".equals(l.getSymbol())).toList();
+        assertEquals(List.of(1000L, 998L), makerBase.stream().map(Ledger::getBeforeFrozen).toList());
+        assertEquals(List.of(998L, 995L), makerBase.stream().map(Ledger::getAfterFrozen).toList());
+        assertEquals(List.of("T1:B_OUT", "T2:B_OUT"), makerBase.stream().map(Ledger::getRequestId).toList());
+
+        Map<String, SettlementPlan.Balance> changed = new HashMap<>();
+        for (SettlementPlan.Balance b : plan.changedBalances()) {
+            changed.put(b.account.getUserId() + ":" + b.account.getSymbol(), b);
+        }
+        assertEquals(6, changed.size());
+        assertEquals(995L, changed.get("1:BTC").frozen);
+        assertEquals(10L + 500L, changed.get("1:USDT").available);
+        assertEquals(1000L - 200L, changed.get("2:USDT").frozen);
+        assertEquals(10L + 3L, changed.get("3:BTC").available);
+    }
+
+    @Test
+    void insufficientFrozen_rejectsOnlyThatGroup() {
+        SettlementPlan plan = SettlementPlan.of(List.of(
+                List.of(trade("T1", TAKER_A, MAKER, 2, 200)),
+                List.of(trade("T2", TAKER_B, MAKER, 2, 5000)),   // 买方 3 冻结 USDT 不足
+                List.of(trade("T3", TAKER_A, MAKER, 1, 100))));
+        plan.skipDone(Set.of());
+        Map<SettlementPlan.AccountKey, Account> accounts = accounts(plan, 0, 1000);
+        plan.apply(accounts);
+
+        assertEquals(Set.of(1), plan.rejected().keySet());
+        assertInstanceOf(BusinessException.class, plan.rejected().get(1));
+        assertEquals(8, plan.ledgers().size());
+        assertTrue(plan.ledgers().stream().noneMatch(l -> l.getRefNo().equals("T2")));
+        // 被剔除组的推演已还原：做市商 BTC 只减 T1、T3
+        SettlementPlan.Balance makerBase = plan.changedBalances().stream()
+                .filter(b -> b.account.getUserId() == MAKER && "BTC".equals(b.account.getSymbol()))
+                .findFirst().orElseThrow();
+        assertEquals(997L, makerBase.frozen);
+        assertTrue(plan.changedBalances().stream().noneMatch(b -> b.account.getUserId() == TAKER_B));
+    }
+
+    @Test
+    void skipDone_dropsSettledAndDuplicateTransfers() {
+        SettlementPlan plan = SettlementPlan.of(List.of(
+                List.of(trade("T1", TAKER_A, MAKER, 2, 200)),
+                List.of(trade("T1", TAKER_A, MAKER, 2, 200))));   // 同批重复投递
+        plan.skipDone(Set.of("T1:Q_OUT"));
+        plan.apply(accounts(plan, 0, 1000));
+        assertEquals(List.of("T1:B_OUT", "T1:B_IN"), plan.ledgers().stream().map(Ledger::getRequestId).toList());
+    }
+
+    private static Map<SettlementPlan.AccountKey, Account> accounts(SettlementPlan plan, long available, long frozen) {
+        Map<SettlementPlan.AccountKey, Account> out = new HashMap<>();
+        long id = 100;
+        for (SettlementPlan.AccountKey k : plan.accountKeys()) {
+            Account a = new Account()
+                    .setUserId(k.userId())
+                    .setSymbol(k.symbol())
+                    .setCoinId("BTC".equals(k.symbol()) ? 1L : 2L)
+                    .setAvailable(available)
+                    .setFrozen(frozen);
+            a.setId(id++);
+            a.setVersion(0);
+            out.put(k, a);
+        }
+        return out;
+    }
+
+    private static TradeSettleDTO trade(String tradeNo, long buyer, long seller, long qty, long quoteAmount) {
+        TradeSettleDTO t = new TradeSettleDTO();
+        t.setTradeNo(tradeNo);
+        t.setSymbol("BTC/USDT");
+        t.setBaseCoin("BTC");
+        t.setQuoteCoin("USDT");
+        t.setQuantity(qty);
+        t.setQuoteAmount(quoteAmount);
+        t.setBuyUserId(buyer);
+        t.setSellUserId(seller);
+        return t;
+    }
+}
@@ -0,0 +1,39 @@
+package com.web3.exchange.bench;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * benchmarks.jar 入口：接受全部 JMH 命令行参数，并默认挂上 GC profiler，
+ * 每个基准都输出 {@code gc.alloc.rate.norm}（B/op）——撮合热路径的分配回归与耗时回归同等重要。
+ * <pre>
+ * java -jar exchange-bench/target/benchmarks.jar                      # 全部基准
+ * java -jar exchange-bench/target/benchmarks.jar MatchingEngine -p levels=1000
+ * java -jar exchange-bench/target/benchmarks.jar -l                   # 列出基准
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        if (cli.shouldHelp() || cli.shouldList() || cli.shouldListWithParams() || cli.shouldListProfilers()
+                || cli.shouldListResultFormats()) {
+            Main.main(args);
+            return;
+        }
+        OptionsBuilder opts = new OptionsBuilder();
+        opts.parent(cli);
+        boolean hasGc = cli.getProfilers().stream().anyMatch(p -> p.getKlass().equals("gc")
+                || p.getKlass().equals(GCProfiler.class.getName()));
+        if (!hasGc) {
+            opts.addProfiler(GCProfiler.class);
+        }
+        new Runner(opts.build()).run();
+    }
+}
@@ -0,0 +1,104 @@
+package com.web3.exchange.bench;
+
+import com.web3.exchange.futures.engine.FuturesMatchingEngine;
+import com.web3.exchange.futures.entity.FuturesOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 合约撮合 {@link FuturesMatchingEngine}：限价吃单（单档 / 扫档）与挂撤单。
+ * <p>
+ * 盘口为买卖各 {@code levels} 档、每档 {@code perLevel} 张 1~4 手的挂单；吃单方向为开多（买），
+ * 被吃掉的挂单每次撤下后按原数量 {@link FuturesMatchingEngine#restore} 回簿，盘口形状保持不变。
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FuturesMatchingEngineBenchmark {
+
+    private static final String SYMBOL = "BTCUSDT";
+    private static final int SIDE_OPEN_LONG = 1;
+    private static final int SIDE_OPEN_SHORT = 2;
+
+    @Param({"50", "1000"})
+    public int levels;
+
+    @Param({"10"})
+    public int perLevel;
+
+    @Param({"100"})
+    public int sweepLots;
+
+    private FuturesMatchingEngine engine;
+    private OrderFlow.IdSeq ids;
+
+    @Setup
+    public void setup() {
+        engine = new FuturesMatchingEngine();
+        ids = new OrderFlow.IdSeq(1);
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int l = 1; l <= levels; l++) {
+            for (int k = 0; k < perLevel; k++) {
+                engine.restore(SYMBOL, OrderFlow.futures(ids.next(), SYMBOL, SIDE_OPEN_SHORT,
+                        OrderFlow.MID + l, OrderFlow.LOT * (1 + rnd.nextInt(4))));
+                engine.restore(SYMBOL, OrderFlow.futures(ids.next(), SYMBOL, SIDE_OPEN_LONG,
+                        OrderFlow.MID - l, OrderFlow.LOT * (1 + rnd.nextInt(4))));
+            }
+        }
+    }
+
+    private FuturesOrder taker(long price, long qty) {
+        FuturesOrder o = OrderFlow.futures(ids.next(), SYMBOL, SIDE_OPEN_LONG, price, qty);
+        o.setUserId(1_000_000L);
+        return o;
+    }
+
+    private FuturesMatchingEngine.FillResult placeAndRefill(FuturesOrder o) {
+        FuturesMatchingEngine.FillResult r = engine.place(o);
+        for (FuturesOrder maker : r.touchedMakers) {
+            if (maker.getRemaining() > 0) {
+                engine.cancel(SYMBOL, maker.getOrderNo());
+            }
+            maker.setRemaining(maker.getQuantity());
+            maker.setFilled(0L);
+            engine.restore(SYMBOL, maker);
+        }
+        return r;
+    }
+
+    /** 开多 1 手 @卖一：只吃最优档一张挂单。 */
+    @Benchmark
+    public FuturesMatchingEngine.FillResult limitTopOfBook() {
+        return placeAndRefill(taker(OrderFlow.MID + 1, OrderFlow.LOT));
+    }
+
+    /** 开多扫档：{@code sweepLots} 手、限价放到盘口最深处。 */
+    @Benchmark
+    public FuturesMatchingEngine.FillResult limitSweep() {
+        return placeAndRefill(taker(OrderFlow.MID + levels, sweepLots * OrderFlow.LOT));
+    }
+
+    /** 不交叉限价单入簿后立即撤单（做市报价路径）。 */
+    @Benchmark
+    public boolean placeCancel() {
+        FuturesOrder o = taker(OrderFlow.MID, OrderFlow.LOT);
+        engine.place(o);
+        return engine.cancel(SYMBOL, o.getOrderNo());
+    }
+}
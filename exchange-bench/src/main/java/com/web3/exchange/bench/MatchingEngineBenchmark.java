@@ -0,0 +1,184 @@
+package com.web3.exchange.bench;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.entity.Trade;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 现货撮合 {@link MatchingEngine#match}：限价 / 市价按金额 / IOC / FOK / PostOnly，以及做市商撤挂流。
+ * <p>
+ * 盘口为买卖各 {@code levels} 档、每档 {@code perLevel} 张 1~4 手的挂单（卖一 = MID + 1）。
+ * 吃单方向统一为买入，吃掉的挂单每次由 {@link OrderFlow#replenish} 补回；
+ * 撮合结果缓冲按生产写后路径复用（{@code sweepFreshResult} 除外）。
+ * </p>
+ * <p>扫档吃单 {@code sweepLots} 手约吃穿 {@code sweepLots / (2.5 × perLevel)} 档。</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchingEngineBenchmark {
+
+    private static final PrecisionContext CTX = new PrecisionContext(2, 6, 6);
+
+    @Param({"50", "1000"})
+    public int levels;
+
+    @Param({"10"})
+    public int perLevel;
+
+    @Param({"100"})
+    public int sweepLots;
+
+    private MatchingEngine engine;
+    private OrderFlow.IdSeq ids;
+    private MatchingEngine.MatchResult result;
+    private Order taker;
+    /** 做市商撤挂流使用独立引擎（只有做市报价，不含深盘口） */
+    private MatchingEngine mmEngine;
+    private OrderFlow.MarketMakerFlow mmFlow;
+
+    @Setup
+    public void setup() {
+        engine = new MatchingEngine();
+        ids = new OrderFlow.IdSeq(1);
+        OrderFlow.seedDeepBook(engine, ids, levels, perLevel);
+        result = new MatchingEngine.MatchResult(64);
+        taker = OrderFlow.limit(0, OrderConstant.SIDE_BUY, OrderFlow.MID, OrderFlow.LOT);
+        taker.setUserId(1_000_000L);
+
+        mmEngine = new MatchingEngine();
+        mmFlow = new OrderFlow.MarketMakerFlow(mmEngine, new OrderFlow.IdSeq(1), 2 * levels, Math.min(levels, 20));
+    }
+
+    /** 复用吃单对象：换新 id、重置为指定方向/类型/TIF/价格/数量。 */
+    private Order taker(int type, int tif, long price, long qty) {
+        taker.setId(ids.next());
+        taker.setOrderType(type);
+        taker.setTimeInForce(tif);
+        taker.setPrice(price);
+        taker.setQuoteAmount(0L);
+        OrderFlow.reset(taker, qty);
+        return taker;
+    }
+
+    private MatchingEngine.MatchResult matchAndRefill(Order o) {
+        MatchingEngine.MatchResult r = engine.match(o, CTX, result);
+        OrderFlow.replenish(engine, r, ids);
+        return r;
+    }
+
+    /** 限价买 1 手 @卖一：只吃最优档的一张挂单（最常见的小额吃单）。 */
+    @Benchmark
+    public MatchingEngine.MatchResult limitTopOfBook() {
+        return matchAndRefill(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_GTC, OrderFlow.MID + 1, OrderFlow.LOT));
+    }
+
+    /** 限价扫档：{@code sweepLots} 手、限价放到盘口最深处，连续吃掉若干档。 */
+    @Benchmark
+    public MatchingEngine.MatchResult limitSweep() {
+        return matchAndRefill(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_GTC,
+                OrderFlow.MID + levels, sweepLots * OrderFlow.LOT));
+    }
+
+    /** 同 {@link #limitSweep}，但每次新建结果缓冲（非复用路径的分配基线）。 */
+    @Benchmark
+    public MatchingEngine.MatchResult sweepFreshResult() {
+        MatchingEngine.MatchResult r = engine.match(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_GTC,
+                OrderFlow.MID + levels, sweepLots * OrderFlow.LOT), CTX);
+        OrderFlow.replenish(engine, r, ids);
+        return r;
+    }
+
+    /**
+     * 同 {@link #limitSweep}，并做写后置监听在交易对锁内的交接：只拷贝原始类型成交（{@link MatchingEngine.Fills}），
+     * 不分配成交 id/实体（物化由写线程完成，见 {@link #limitSweepWithTrades}）。
+     */
+    @Benchmark
+    public MatchingEngine.Fills limitSweepWithFills() {
+        MatchingEngine.MatchResult r = engine.match(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_GTC,
+                OrderFlow.MID + levels, sweepLots * OrderFlow.LOT), CTX, result);
+        MatchingEngine.Fills fills = r.fills();
+        OrderFlow.replenish(engine, r, ids);
+        return fills;
+    }
+
+    /** 同 {@link #limitSweep}，并物化成交实体（写后落库 / MQ 通知需要的完整成本）。 */
+    @Benchmark
+    public List<Trade> limitSweepWithTrades() {
+        MatchingEngine.MatchResult r = engine.match(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_GTC,
+                OrderFlow.MID + levels, sweepLots * OrderFlow.LOT), CTX, result);
+        List<Trade> trades = r.trades();
+        OrderFlow.replenish(engine, r, ids);
+        return trades;
+    }
+
+    /** 市价买（按计价币金额）：预算约等于 {@code sweepLots} 手的名义额。 */
+    @Benchmark
+    public MatchingEngine.MatchResult marketByQuote() {
+        Order o = taker(OrderConstant.TYPE_MARKET, OrderConstant.TIF_GTC, 0L, 0L);
+        o.setQuoteAmount(CTX.quoteAmount(OrderFlow.MID, sweepLots * OrderFlow.LOT));
+        return matchAndRefill(o);
+    }
+
+    /** IOC：限价只放到第 3 档，吃完前 3 档后剩余作废。 */
+    @Benchmark
+    public MatchingEngine.MatchResult iocPartial() {
+        return matchAndRefill(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_IOC,
+                OrderFlow.MID + 3, sweepLots * OrderFlow.LOT));
+    }
+
+    /** FOK 可全成：先评估整簿可成交量，再照常扫档。 */
+    @Benchmark
+    public MatchingEngine.MatchResult fokFill() {
+        return matchAndRefill(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_FOK,
+                OrderFlow.MID + levels, sweepLots * OrderFlow.LOT));
+    }
+
+    /** FOK 不可全成：需求超过整簿卖盘总量，评估后整单取消（不成交）。 */
+    @Benchmark
+    public MatchingEngine.MatchResult fokReject() {
+        return engine.match(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_FOK,
+                OrderFlow.MID + levels, 5L * levels * perLevel * OrderFlow.LOT), CTX, result);
+    }
+
+    /** PostOnly 不交叉：挂到买一之上（仍低于卖一）入簿，随后撤掉保持盘口不变。 */
+    @Benchmark
+    public Order postOnlyRest() {
+        Order o = taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_POST_ONLY, OrderFlow.MID, OrderFlow.LOT);
+        engine.match(o, CTX, result);
+        return engine.takeBookOrder(o);
+    }
+
+    /** PostOnly 交叉：价格触及卖一，整单拒绝。 */
+    @Benchmark
+    public MatchingEngine.MatchResult postOnlyReject() {
+        return engine.match(taker(OrderConstant.TYPE_LIMIT, OrderConstant.TIF_POST_ONLY,
+                OrderFlow.MID + 1, OrderFlow.LOT), CTX, result);
+    }
+
+    /** 做市商撤挂：撤最旧报价 + 挂新报价（撤单占比 50% 的高频报价流）。 */
+    @Benchmark
+    public MatchingEngine.MatchResult marketMakerCancelReplace() {
+        mmFlow.step(mmEngine, result);
+        return result;
+    }
+}
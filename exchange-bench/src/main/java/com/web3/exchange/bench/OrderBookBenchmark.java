@@ -0,0 +1,101 @@
+package com.web3.exchange.bench;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.engine.OrderBook;
+import com.web3.exchange.order.entity.Order;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OrderBook} 纯数据结构操作（无锁、无撮合）：入簿/撤单、取最优价、深度聚合。
+ * <p>盘口为买卖各 {@code levels} 档、每档 {@code perLevel} 张；入簿/撤单成对执行，盘口规模恒定。</p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    private static final int MASK = 4095;
+
+    @Param({"50", "1000"})
+    public int levels;
+
+    @Param({"10"})
+    public int perLevel;
+
+    private OrderBook book;
+    /** 预建的入簿订单池（价格随机分布在已有档位内，方向交替） */
+    private Order[] pool;
+    private int i;
+    private long nextId;
+
+    @Setup
+    public void setup() {
+        book = new OrderBook();
+        OrderFlow.IdSeq ids = new OrderFlow.IdSeq(1);
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int l = 1; l <= levels; l++) {
+            for (int k = 0; k < perLevel; k++) {
+                book.add(OrderFlow.limit(ids.next(), OrderConstant.SIDE_SELL, OrderFlow.MID + l, OrderFlow.LOT));
+                book.add(OrderFlow.limit(ids.next(), OrderConstant.SIDE_BUY, OrderFlow.MID - l, OrderFlow.LOT));
+            }
+        }
+        pool = new Order[MASK + 1];
+        for (int k = 0; k <= MASK; k++) {
+            long offset = 1 + rnd.nextInt(levels);
+            pool[k] = (k & 1) == 0
+                    ? OrderFlow.limit(0, OrderConstant.SIDE_SELL, OrderFlow.MID + offset, OrderFlow.LOT)
+                    : OrderFlow.limit(0, OrderConstant.SIDE_BUY, OrderFlow.MID - offset, OrderFlow.LOT);
+        }
+        nextId = ids.next();
+    }
+
+    private Order nextOrder() {
+        Order o = pool[i++ & MASK];
+        o.setId(nextId++);
+        return o;
+    }
+
+    /** 挂单入簿后立即按对象撤出。 */
+    @Benchmark
+    public int addRemove() {
+        Order o = nextOrder();
+        book.add(o);
+        book.remove(o);
+        return book.size();
+    }
+
+    /** 挂单入簿后按 side/price/orderId 撤单（撤单服务的实际路径）。 */
+    @Benchmark
+    public Order addTakeById() {
+        Order o = nextOrder();
+        book.add(o);
+        return book.takeById(o.getSide(), o.getPrice(), o.getId());
+    }
+
+    @Benchmark
+    public Order bestAsk() {
+        return book.bestAsk();
+    }
+
+    /** 行情推送常用的 20 档深度。 */
+    @Benchmark
+    public OrderBook.DepthSnapshot depth20() {
+        return book.depth(20);
+    }
+}
@@ -0,0 +1,173 @@
+package com.web3.exchange.bench;
+
+import com.web3.exchange.futures.entity.FuturesOrder;
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+
+import java.util.SplittableRandom;
+
+/**
+ * 基准用订单流生成器：深盘口、做市商高频撤挂、扫档吃单。
+ * <p>
+ * 随机数在 {@code @Setup} 阶段预生成为数组，基准方法内只按游标取值，避免把 RNG 开销计入被测路径；
+ * 种子固定，多次运行的订单流一致、结果可比。
+ * </p>
+ * <p>
+ * 吃单基准会消耗盘口流动性，每次撮合后用 {@link #replenish} 把被吃掉的挂单原样补回，
+ * 盘口形状在整个测量期内保持不变（补单开销计入结果，各吃单基准口径一致）。
+ * </p>
+ */
+public final class OrderFlow {
+
+    public static final String SYMBOL = "BTC/USDT";
+    public static final long MID = 6_500_000L;   // 65000.00（price_precision=2）
+    public static final long TICK = 1L;
+    public static final long LOT = 1_000L;       // 0.001 BTC（amount_precision=6）
+
+    private OrderFlow() {
+    }
+
+    /** 单调 id 序列（雪花 id 的替身：同档 FIFO 以 id 兜底，保证补单总是追加到档尾）。 */
+    public static final class IdSeq {
+        private long next;
+
+        public IdSeq(long start) {
+            this.next = start;
+        }
+
+        public long next() {
+            return next++;
+        }
+    }
+
+    /** 活跃限价单（createTime 留空，同价按 id 先后排序，省去 LocalDateTime 分配）。 */
+    public static Order limit(long id, int side, long price, long qty) {
+        Order o = new Order();
+        o.setId(id);
+        o.setOrderNo(Long.toString(id));
+        o.setUserId(id & 1023);
+        o.setSymbol(SYMBOL);
+        o.setBaseCoin("BTC");
+        o.setQuoteCoin("USDT");
+        o.setSide(side);
+        o.setOrderType(OrderConstant.TYPE_LIMIT);
+        o.setTimeInForce(OrderConstant.TIF_GTC);
+        o.setPrice(price);
+        o.setQuantity(qty);
+        o.setQuoteAmount(0L);
+        reset(o, qty);
+        return o;
+    }
+
+    /** 把订单恢复为未成交状态（复用吃单/补单对象）。 */
+    public static void reset(Order o, long qty) {
+        o.setQuantity(qty);
+        o.setRemaining(qty);
+        o.setFilledAmount(0L);
+        o.setFilledQuoteAmount(0L);
+        o.setAvgPrice(0L);
+        o.setTradeCount(0);
+        o.setStatus(OrderConstant.STATUS_NEW);
+    }
+
+    /**
+     * 深盘口：买卖各 {@code levels} 档、每档 {@code perLevel} 张挂单，围绕 {@link #MID} 逐 tick 排开
+     * （卖一 = MID + 1，买一 = MID - 1），每张挂单数量在 1~4 手之间。
+     */
+    public static void seedDeepBook(MatchingEngine engine, IdSeq ids, int levels, int perLevel) {
+        SplittableRandom rnd = new SplittableRandom(42);
+        for (int l = 1; l <= levels; l++) {
+            for (int k = 0; k < perLevel; k++) {
+                engine.addRestingOrder(limit(ids.next(), OrderConstant.SIDE_SELL, MID + l * TICK, LOT * (1 + rnd.nextInt(4))));
+                engine.addRestingOrder(limit(ids.next(), OrderConstant.SIDE_BUY, MID - l * TICK, LOT * (1 + rnd.nextInt(4))));
+            }
+        }
+    }
+
+    /**
+     * 补单：把本次撮合吃掉的挂单按原数量重新挂回档尾（部分成交的先撤下再挂），盘口恢复原状。
+     */
+    public static void replenish(MatchingEngine engine, MatchingEngine.MatchResult r, IdSeq ids) {
+        for (int i = 0, n = r.fillCount(); i < n; i++) {
+            Order maker = r.maker(i);
+            if (maker.getRemaining() > 0) {
+                engine.takeBookOrder(maker);
+            }
+            reset(maker, maker.getQuantity());
+            maker.setId(ids.next());
+            engine.addRestingOrder(maker);
+        }
+    }
+
+    /**
+     * 做市商撤挂流：维护一个固定大小的报价环，每步撤掉最旧报价、在中间价附近重新挂一张，
+     * 价格偏移与方向预生成；撤单:挂单 = 1:1，盘口挂单数恒定。
+     */
+    public static final class MarketMakerFlow {
+        private final Order[] quotes;
+        private final long[] prices;
+        private final int[] sides;
+        private final IdSeq ids;
+        private int cursor;
+        private int slot;
+
+        /**
+         * @param quotes 做市商同时在簿的报价数
+         * @param spread 报价距中间价的最大 tick 数（≥ 1，不交叉）
+         */
+        public MarketMakerFlow(MatchingEngine engine, IdSeq ids, int quotes, int spread) {
+            this.ids = ids;
+            this.quotes = new Order[quotes];
+            this.prices = new long[1 << 16];
+            this.sides = new int[prices.length];
+            SplittableRandom rnd = new SplittableRandom(7);
+            for (int i = 0; i < prices.length; i++) {
+                sides[i] = rnd.nextBoolean() ? OrderConstant.SIDE_BUY : OrderConstant.SIDE_SELL;
+                long offset = 1 + rnd.nextInt(spread);
+                prices[i] = sides[i] == OrderConstant.SIDE_BUY ? MID - offset * TICK : MID + offset * TICK;
+            }
+            for (int i = 0; i < quotes; i++) {
+                this.quotes[i] = next();
+                engine.addRestingOrder(this.quotes[i]);
+            }
+        }
+
+        private Order next() {
+            int i = cursor++ & (prices.length - 1);
+            return limit(ids.next(), sides[i], prices[i], LOT);
+        }
+
+        /** 一步：撤最旧报价 + 挂新报价（走撮合入口，新报价不交叉直接入簿）。 */
+        public void step(MatchingEngine engine, MatchingEngine.MatchResult into) {
+            Order old = quotes[slot];
+            engine.takeBookOrder(old);
+            Order fresh = next();
+            engine.match(fresh, PrecisionContext.ZERO, into);
+            quotes[slot] = fresh;
+            slot = (slot + 1) % quotes.length;
+        }
+    }
+
+    // ------------------------------------------------------------------ 合约
+
+    /** 合约限价单（side 1=开多 为买方，2=开空 为卖方）。 */
+    public static FuturesOrder futures(long id, String symbol, int side, long price, long qty) {
+        FuturesOrder o = new FuturesOrder();
+        o.setId(id);
+        o.setOrderNo("F" + id);
+        o.setUserId(id & 1023);
+        o.setSymbol(symbol);
+        o.setSide(side);
+        o.setOrderType(1);
+        o.setPrice(price);
+        o.setQuantity(qty);
+        o.setRemaining(qty);
+        o.setFilled(0L);
+        o.setLeverage(10);
+        o.setMarginMode(1);
+        o.setStatus(0);
+        return o;
+    }
+}
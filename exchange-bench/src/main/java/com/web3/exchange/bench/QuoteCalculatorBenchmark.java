@@ -0,0 +1,74 @@
+package com.web3.exchange.bench;
+
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 名义额换算 {@link PrecisionContext#quoteAmount}：每次成交、冻结与市价预算都要调用。
+ * <ul>
+ *   <li>{@code spot}：BTC/USDT 常见精度（2/6/6），走 long 快路径；</li>
+ *   <li>{@code weiScale}：18 位精度的基础币（计价 USDT=6），price × qty 溢出 long，回退 BigDecimal；</li>
+ *   <li>{@code zero}：全 0 精度（单测/兜底口径）。</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuoteCalculatorBenchmark {
+
+    private static final int MASK = 1023;
+
+    private final PrecisionContext spot = new PrecisionContext(2, 6, 6);
+    private final PrecisionContext wei = new PrecisionContext(2, 18, 6);
+
+    private long[] prices;
+    private long[] lots;
+    private long[] weiLots;
+    private int i;
+
+    @Setup
+    public void setup() {
+        SplittableRandom rnd = new SplittableRandom(11);
+        prices = new long[MASK + 1];
+        lots = new long[MASK + 1];
+        weiLots = new long[MASK + 1];
+        for (int k = 0; k <= MASK; k++) {
+            prices[k] = OrderFlow.MID - 500 + rnd.nextInt(1000);
+            lots[k] = OrderFlow.LOT * (1 + rnd.nextInt(100));
+            weiLots[k] = 1_000_000_000_000_000L * (1 + rnd.nextInt(5)); // 1~5 个代币（18 位）
+        }
+    }
+
+    @Benchmark
+    public long spot() {
+        int k = i++ & MASK;
+        return spot.quoteAmount(prices[k], lots[k]);
+    }
+
+    @Benchmark
+    public long weiScale() {
+        int k = i++ & MASK;
+        return wei.quoteAmount(prices[k], weiLots[k]);
+    }
+
+    @Benchmark
+    public long zero() {
+        int k = i++ & MASK;
+        return PrecisionContext.ZERO.quoteAmount(prices[k], lots[k]);
+    }
+}
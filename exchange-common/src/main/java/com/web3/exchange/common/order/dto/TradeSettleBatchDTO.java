@@ -0,0 +1,54 @@
+package com.web3.exchange.common.order.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Data;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量成交结算指令（ORDER-TRADE 事务消息体，Tag = {@link #TAG}）——一条消息承载一个吃单的全部成交
+ * （或写后置一个落库批次的全部成交），order 生产、asset/market/notify 消费。
+ * <p>
+ * 批内每笔仍是完整的 {@link TradeSettleDTO}，过户幂等号不变（{@code tradeNo:Q} / {@code tradeNo:B}），
+ * 批次重投或部分过户后重投都不会重复扣账。{@code KEYS = batchNo = "B" + 首笔 tradeNo}：
+ * 同一批成交重发得到同一批次号，order 事务回查据此还原首笔 tradeNo（同批成交同一本地事务提交）。
+ * </p>
+ */
+@Data
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Schema(description = "批量成交结算指令（ORDER-TRADE 批量消息体）")
+public class TradeSettleBatchDTO implements Serializable {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** ORDER-TRADE 主题下批量消息的 Tag（单笔消息无 Tag，消费端按 Tag 区分消息体） */
+    public static final String TAG = "BATCH";
+
+    /** 批次号前缀 */
+    private static final String BATCH_PREFIX = "B";
+
+    /** 批次号（消息 KEYS / 消费幂等键）= "B" + 首笔成交号 */
+    @Schema(description = "批次号")
+    private String batchNo;
+
+    /** 本批成交（按撮合顺序） */
+    @Schema(description = "本批成交")
+    private List<TradeSettleDTO> trades = new ArrayList<>();
+
+    /** 由首笔成交号生成批次号。 */
+    public static String batchNoOf(String firstTradeNo) {
+        return BATCH_PREFIX + firstTradeNo;
+    }
+
+    /** 从消息 KEYS 还原首笔成交号；非批次号返回 null。 */
+    public static String firstTradeNoOf(String keys) {
+        if (keys == null || !keys.startsWith(BATCH_PREFIX) || keys.length() == BATCH_PREFIX.length()) {
+            return null;
+        }
+        return keys.substring(BATCH_PREFIX.length());
+    }
+}
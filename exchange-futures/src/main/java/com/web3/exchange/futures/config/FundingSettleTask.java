@@ -7,7 +7,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
- * 资金费率定时结算任务（M4）。演示环境每分钟结算，便于观察；生产应为 8 小时。
+ * 资金费率定时结算任务（M4）。演示环境每分钟触发；结算期由 server-settings.funding.interval-minutes 对齐，同一期重复触发幂等跳过。
  */
 @Slf4j
 @Component
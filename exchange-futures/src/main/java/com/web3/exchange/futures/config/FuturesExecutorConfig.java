@@ -0,0 +1,28 @@
+package com.web3.exchange.futures.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * 合约模块线程池：由容器管理生命周期（停机时等待在途任务），不在业务方法里临时建池。
+ */
+@Configuration
+public class FuturesExecutorConfig {
+
+    /** 资金费率按合约并行结算（线程数 = server-settings.funding.parallelism）。 */
+    @Bean
+    public ThreadPoolTaskExecutor fundingExecutor(@Value("${server-settings.funding.parallelism:4}") int parallelism) {
+        int threads = Math.max(1, parallelism);
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setThreadNamePrefix("futures-funding-");
+        executor.setDaemon(true);
+        // 一页一个事务，停机时等在途页提交，未完成的窗口下次按游标续跑
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+}
@@ -7,7 +7,10 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 /**
- * 强平引擎定时扫描任务（M5）。每 10 秒用标记价盯市一次。
+ * 强平引擎定时对账任务（M5）。
+ * <p>实时检测由标记价刷新增量驱动（MarkPriceServiceImpl → LiquidationService#onMarkPrice）；
+ * 本任务启动即跑一次建立强平索引，之后按 {@code server-settings.liquidation.reconcile-interval-ms}（默认 60 秒）
+ * 与库对账，兜底索引外的持仓变动（其他实例、手工改库、回滚的事务）。</p>
  */
 @Slf4j
 @Component
@@ -16,15 +19,15 @@ public class LiquidationTask {
 
     private final LiquidationService liquidationService;
 
-    @Scheduled(fixedDelay = 10_000)
+    @Scheduled(fixedDelayString = "${server-settings.liquidation.reconcile-interval-ms:60000}")
     public void run() {
         try {
             int n = liquidationService.scanAndLiquidate();
             if (n > 0) {
-                log.info("强平扫描完成: 强平 {} 个持仓", n);
+                log.info("强平对账完成: 强平 {} 个持仓", n);
             }
         } catch (Exception e) {
-            log.error("强平扫描任务异常: {}", e.getMessage());
+            log.error("强平对账任务异常: {}", e.getMessage());
         }
     }
 }
@@ -0,0 +1,42 @@
+package com.web3.exchange.futures.controller;
+
+import com.web3.exchange.common.model.Result;
+import com.web3.exchange.futures.engine.ContractRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 合约<b>内部</b>接口（/internal/futures/**）——仅供服务间调用/运维，网关不路由 /internal/**。
+ * <p>管理端修改 t_swap_contract 后调用 refresh，使进程内合约注册表立即生效（否则等定时重载）。</p>
+ */
+@RestController
+@RequestMapping("/internal/futures")
+@RequiredArgsConstructor
+public class FuturesInternalController {
+
+    private final ContractRegistry contractRegistry;
+
+    /** 从库重载合约规格。 */
+    @PostMapping("/contracts/refresh")
+    public Result<Long> refreshContracts() {
+        contractRegistry.reload();
+        return Result.success(contractRegistry.version(), "合约注册表已重载");
+    }
+
+    /** 注册表状态（运维/验证用）。 */
+    @GetMapping("/contracts/registry")
+    public Result<Map<String, Object>> registry() {
+        ContractRegistry.Snapshot snap = contractRegistry.snapshot();
+        Map<String, Object> m = new HashMap<>();
+        m.put("version", snap.version());
+        m.put("contracts", snap.contracts().size());
+        m.put("marks", snap.marks());
+        return Result.success(m);
+    }
+}
@@ -1,9 +1,8 @@
 package com.web3.exchange.futures.controller;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.web3.exchange.common.model.Result;
+import com.web3.exchange.futures.engine.ContractRegistry;
 import com.web3.exchange.futures.entity.SwapContract;
-import com.web3.exchange.futures.mapper.SwapContractMapper;
 import com.web3.exchange.futures.service.MarkPriceService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -21,14 +20,13 @@ import java.util.List;
 @RequiredArgsConstructor
 public class FuturesPublicController {
 
-    private final SwapContractMapper contractMapper;
+    private final ContractRegistry contractRegistry;
     private final MarkPriceService markPriceService;
 
     /** 上架合约列表。 */
     @GetMapping("/contracts")
     public Result<List<SwapContract>> contracts() {
-        List<SwapContract> list = contractMapper.selectList(
-                new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getStatus, 0));
+        List<SwapContract> list = contractRegistry.listed();
         return Result.success(list);
     }
 
@@ -0,0 +1,128 @@
+package com.web3.exchange.futures.engine;
+
+import com.web3.exchange.futures.entity.MarkPrice;
+import com.web3.exchange.futures.entity.SwapContract;
+import com.web3.exchange.futures.mapper.MarkPriceMapper;
+import com.web3.exchange.futures.mapper.SwapContractMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 合约规格 + 标记价的进程内注册表（撮合 / 强平 / 资金费率热路径只读内存，不再按 symbol 逐次查库）。
+ * <p>
+ * 全部数据在一个不可变 {@link Snapshot}（带单调递增版本号）里，volatile 发布，读方无锁取当前快照；
+ * 写方（{@link #putMark}、{@link #reload}）串行化，拷贝后整体替换。首次读取时从库加载。
+ * </p>
+ * <ul>
+ *   <li>标记价：{@code MarkPriceServiceImpl} 每次写库后 {@link #putMark}，即写即可见；</li>
+ *   <li>合约规格：管理端改合约后调 {@code POST /internal/futures/contracts/refresh} 立即 {@link #reload}，
+ *       另按 {@code server-settings.registry.refresh-interval-ms}（默认 60 秒）定时重载兜底直接改库。</li>
+ * </ul>
+ * <p>快照里的 {@link SwapContract} 为共享只读对象，调用方不得修改。</p>
+ */
+@Slf4j
+@Component
+public class ContractRegistry {
+
+    /** 不可变快照：symbol → 合约（含下架）、symbol → 标记价 */
+    public record Snapshot(long version, Map<String, SwapContract> contracts, Map<String, Long> marks) {
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(0, Map.of(), Map.of());
+
+    private final SwapContractMapper contractMapper;
+    private final MarkPriceMapper markPriceMapper;
+
+    private volatile Snapshot snapshot = EMPTY;
+
+    public ContractRegistry(SwapContractMapper contractMapper, MarkPriceMapper markPriceMapper) {
+        this.contractMapper = contractMapper;
+        this.markPriceMapper = markPriceMapper;
+    }
+
+    /** 当前快照（首次访问触发加载）。 */
+    public Snapshot snapshot() {
+        Snapshot s = snapshot;
+        if (s == EMPTY) {
+            reload();
+            s = snapshot;
+        }
+        return s;
+    }
+
+    public long version() {
+        return snapshot().version();
+    }
+
+    /** 按 symbol 取合约（含下架）；不存在返回 null。 */
+    public SwapContract contract(String symbol) {
+        return symbol == null ? null : snapshot().contracts().get(symbol);
+    }
+
+    /** 按 symbol 取上架合约（status=0）；不存在或已下架返回 null。 */
+    public SwapContract listed(String symbol) {
+        SwapContract c = contract(symbol);
+        return c != null && c.getStatus() != null && c.getStatus() == 0 ? c : null;
+    }
+
+    /** 全部上架合约（按 id 排序）。 */
+    public List<SwapContract> listed() {
+        List<SwapContract> out = new ArrayList<>();
+        for (SwapContract c : snapshot().contracts().values()) {
+            if (c.getStatus() != null && c.getStatus() == 0) {
+                out.add(c);
+            }
+        }
+        out.sort(Comparator.comparing(SwapContract::getId, Comparator.nullsLast(Comparator.naturalOrder())));
+        return out;
+    }
+
+    /** 最新标记价（最小单位）；未知返回 null。 */
+    public Long markPrice(String symbol) {
+        return symbol == null ? null : snapshot().marks().get(symbol);
+    }
+
+    /** 发布新标记价（写库成功后调用）。 */
+    public synchronized void putMark(String symbol, long mark) {
+        Snapshot s = snapshot();
+        Map<String, Long> marks = new HashMap<>(s.marks());
+        marks.put(symbol, mark);
+        snapshot = new Snapshot(s.version() + 1, s.contracts(), Map.copyOf(marks));
+    }
+
+    /**
+     * 从库重载合约规格；标记价只补内存中没有的（内存值由本实例刷新写入，不被库里可能更旧的值覆盖）。
+     */
+    public synchronized void reload() {
+        Map<String, SwapContract> contracts = new HashMap<>();
+        for (SwapContract c : contractMapper.selectList(null)) {
+            contracts.put(c.getSymbol(), c);
+        }
+        Snapshot s = snapshot;
+        Map<String, Long> marks = new HashMap<>(s.marks());
+        for (MarkPrice mp : markPriceMapper.selectList(null)) {
+            if (mp.getMarkPrice() != null) {
+                marks.putIfAbsent(mp.getSymbol(), mp.getMarkPrice());
+            }
+        }
+        snapshot = new Snapshot(s.version() + 1, Map.copyOf(contracts), Map.copyOf(marks));
+        log.debug("[futures] 合约注册表已加载: {} 个合约, {} 个标记价, version={}", contracts.size(), marks.size(), s.version() + 1);
+    }
+
+    @Scheduled(fixedDelayString = "${server-settings.registry.refresh-interval-ms:60000}",
+            initialDelayString = "${server-settings.registry.refresh-interval-ms:60000}")
+    public void scheduledReload() {
+        try {
+            reload();
+        } catch (Exception e) {
+            log.error("[futures] 合约注册表重载失败，沿用旧快照: {}", e.getMessage());
+        }
+    }
+}
@@ -2,107 +2,280 @@ package com.web3.exchange.futures.engine;
 
 import com.web3.exchange.futures.dto.FuturesFill;
 import com.web3.exchange.futures.entity.FuturesOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * 单机内存合约撮合引擎。
  * <p>
  * 复用现货撮合思想（价格优先 + 时间优先），但面向合约双向方向：开多/平空=买方(BUY)，
- * 开空/平多=卖方(SELL)。容器 {@link ConcurrentHashMap#symbol -> 买卖订单簿}，同一交易对
- * synchronized 串行化保证严格有序。
+ * 开空/平多=卖方(SELL)。容器 {@link ConcurrentHashMap#symbol -> 买卖订单簿}，每个合约一把独立
+ * {@link ReentrantLock} 串行化该合约的撮合/撤单/恢复，不同合约之间互不阻塞，吞吐随合约数与核数扩展。
+ * </p>
+ * <p>
+ * 买一/卖一在每次改簿后于锁内发布为不可变快照（volatile），{@link #best} 无锁读取，不与撮合竞争。
  * </p>
  * <p>
  * 撮合规则：BUY 吃卖盘（最低价），SELL 吃买盘（最高价）；成交价 = 对方挂单价（maker）。
  * 本引擎只产出成交(FuturesFill)并移除成交挂单，<b>不直接改持仓/账户</b>——由服务层核算。
  * </p>
+ * <p>
+ * 防自成交（STP）：taker 碰到同用户挂单时按 {@link StpMode} 处置，每档维护「用户 → 该用户本档挂单链」索引，
+ * 撤单与 STP 处置都是 O(1) 摘链，不扫描档位列表。
+ * </p>
  */
 @Component
 public class FuturesMatchingEngine {
 
-    /** 交易对 → 订单簿 */
+    /** 交易对 → 订单簿（簿内含该合约独立的锁） */
     private final ConcurrentHashMap<String, OrderBook> books = new ConcurrentHashMap<>();
 
+    private final StpMode stpMode;
+
+    /**
+     * 防自成交模式。
+     */
+    public enum StpMode {
+        /** 撤新单：taker 剩余部分撤销（不挂簿），同用户挂单保留 */
+        CANCEL_NEWEST,
+        /** 撤旧单：撤掉该档上 taker 用户的全部挂单，taker 继续撮合 */
+        CANCEL_OLDEST,
+        /** 双减：taker 与该挂单各减去二者较小数量（不成交），减到 0 的一方撤销 */
+        DECREMENT_BOTH;
+
+        /** 解析配置值（cancel-newest / cancel-oldest / decrement-both，大小写与 -/_ 不敏感）。 */
+        public static StpMode parse(String v) {
+            return valueOf(v.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    /** 默认撤旧单（基准测试 / 手工构造用）。 */
+    public FuturesMatchingEngine() {
+        this(StpMode.CANCEL_OLDEST);
+    }
+
+    public FuturesMatchingEngine(StpMode stpMode) {
+        this.stpMode = stpMode;
+    }
+
+    @Autowired
+    public FuturesMatchingEngine(@Value("${server-settings.matching.stp-mode:cancel-oldest}") String stpMode) {
+        this(StpMode.parse(stpMode));
+    }
+
     /** 撤单结果 */
     public static class FillResult {
         public final List<FuturesFill> fills = new ArrayList<>();
         /** 被完全成交/部分成交而需更新DB的挂单 */
         public final List<FuturesOrder> touchedMakers = new ArrayList<>();
+        /** 因 STP 被撤销的挂单（需置撤销状态） */
+        public final List<FuturesOrder> cancelledMakers = new ArrayList<>();
+        /** 因 STP 撤销/双减而不再成交的挂单数量（需释放对应保证金） */
+        public final List<StpRelease> makerReleases = new ArrayList<>();
+        /** taker 因 STP 不再成交的数量（撤销的剩余 + 双减量） */
+        public long takerReleased = 0;
         /** 是否完全成交（无剩余） */
         public boolean fullyFilled = false;
+        /** taker 剩余部分是否因 STP 被撤销（不挂簿） */
+        public boolean takerCancelled = false;
+    }
+
+    /** STP 释放：某挂单不再成交的数量 */
+    public record StpRelease(FuturesOrder order, long quantity) {
+    }
+
+    /** 买一/卖一快照（无挂单为 0） */
+    private record Top(long bid, long ask) {
+        static final Top EMPTY = new Top(0, 0);
     }
 
     /** 挂单入簿。返回撮合结果（含 taker 成交 + 被消费的 maker）。 */
-    public synchronized FillResult place(FuturesOrder order) {
+    public FillResult place(FuturesOrder order) {
         OrderBook book = books.computeIfAbsent(order.getSymbol(), k -> new OrderBook());
-        return book.match(order);
+        book.lock.lock();
+        try {
+            return book.match(order, stpMode);
+        } finally {
+            book.publishTop();
+            book.lock.unlock();
+        }
     }
 
     /** 撤单：从簿移除指定 orderNo 的挂单。返回是否移除成功。 */
-    public synchronized boolean cancel(String symbol, String orderNo) {
+    public boolean cancel(String symbol, String orderNo) {
+        return take(symbol, orderNo, null) != null;
+    }
+
+    /**
+     * 撤单：从簿移除指定 orderNo 的挂单并返回簿内对象（撮合/STP 后的最新 remaining）。
+     *
+     * @param userId 挂单所属用户，不匹配时不移除；null 不校验
+     * @return 被移除的挂单，不在簿中（或不属于该用户）返回 null
+     */
+    public FuturesOrder take(String symbol, String orderNo, Long userId) {
         OrderBook book = books.get(symbol);
-        return book != null && book.remove(orderNo);
+        if (book == null) {
+            return null;
+        }
+        book.lock.lock();
+        try {
+            return book.remove(orderNo, userId);
+        } finally {
+            book.publishTop();
+            book.lock.unlock();
+        }
     }
 
     /** 重启恢复：将一活跃限价单直接挂入对应交易对订单簿（不撮合）。供启动重建。 */
-    public synchronized void restore(String symbol, FuturesOrder order) {
+    public void restore(String symbol, FuturesOrder order) {
         OrderBook book = books.computeIfAbsent(symbol, k -> new OrderBook());
-        book.restoreMaker(order);
+        book.lock.lock();
+        try {
+            book.restoreMaker(order);
+        } finally {
+            book.publishTop();
+            book.lock.unlock();
+        }
     }
 
-    /** 查询当前买一/卖一（合约深度，公开用）。 */
-    public synchronized long[] best(String symbol) {
+    /** 查询当前买一/卖一（合约深度，公开用）。无锁读取最近一次改簿后发布的快照。 */
+    public long[] best(String symbol) {
         OrderBook book = books.get(symbol);
-        if (book == null) return new long[]{0, 0};
-        return book.best();
+        Top top = book == null ? Top.EMPTY : book.top;
+        return new long[]{top.bid, top.ask};
     }
 
     /* ============ 内部订单簿 ============ */
 
+    /** 在簿挂单节点：同时挂在档位 FIFO 链与该档「同用户」链上，两条链都可 O(1) 摘除。 */
+    private static final class Node {
+        final FuturesOrder order;
+        final Level level;
+        Node prev, next;
+        Node userPrev, userNext;
+
+        Node(FuturesOrder order, Level level) {
+            this.order = order;
+            this.level = level;
+        }
+    }
+
+    /** 同一用户在某档的挂单链（按时间先后） */
+    private static final class UserChain {
+        Node head, tail;
+    }
+
+    /** 一个价格档：时间优先 FIFO + 用户索引 */
+    private static final class Level {
+        final long price;
+        Node head, tail;
+        final Map<Long, UserChain> users = new HashMap<>();
+
+        Level(long price) {
+            this.price = price;
+        }
+
+        void append(Node n) {
+            n.prev = tail;
+            if (tail == null) head = n; else tail.next = n;
+            tail = n;
+            UserChain uc = users.computeIfAbsent(n.order.getUserId(), k -> new UserChain());
+            n.userPrev = uc.tail;
+            if (uc.tail == null) uc.head = n; else uc.tail.userNext = n;
+            uc.tail = n;
+        }
+
+        void unlink(Node n) {
+            if (n.prev == null) head = n.next; else n.prev.next = n.next;
+            if (n.next == null) tail = n.prev; else n.next.prev = n.prev;
+            UserChain uc = users.get(n.order.getUserId());
+            if (n.userPrev == null) uc.head = n.userNext; else n.userPrev.userNext = n.userNext;
+            if (n.userNext == null) uc.tail = n.userPrev; else n.userNext.userPrev = n.userPrev;
+            if (uc.head == null) users.remove(n.order.getUserId());
+            n.prev = n.next = n.userPrev = n.userNext = null;
+        }
+
+        boolean isEmpty() {
+            return head == null;
+        }
+    }
+
     private static class OrderBook {
+        /** 本合约撮合锁 */
+        private final ReentrantLock lock = new ReentrantLock();
+        /** 最近一次改簿后的买一/卖一（锁内写，无锁读） */
+        private volatile Top top = Top.EMPTY;
         /** 卖盘（按价格升序） */
-        private final java.util.TreeMap<Long, List<FuturesOrder>> asks = new java.util.TreeMap<>();
-        /** 买盘（按价格降序） */
-        private final java.util.TreeMap<Long, List<FuturesOrder>> bids = new java.util.TreeMap<>();
-        /** orderNo → 当前在簿挂单（快速撤单） */
-        private final ConcurrentHashMap<String, FuturesOrder> index = new ConcurrentHashMap<>();
+        private final TreeMap<Long, Level> asks = new TreeMap<>();
+        /** 买盘（按价格降序，firstEntry 即买一） */
+        private final TreeMap<Long, Level> bids = new TreeMap<>(Comparator.reverseOrder());
+        /** orderNo → 在簿节点（O(1) 撤单；锁内访问） */
+        private final Map<String, Node> index = new HashMap<>();
 
         private boolean isBuy(FuturesOrder o) {
             return o.getSide() == 1 || o.getSide() == 4; // 开多/平空=买方
         }
 
-        FillResult match(FuturesOrder taker) {
+        FillResult match(FuturesOrder taker, StpMode stpMode) {
             FillResult res = new FillResult();
             long remaining = taker.getQuantity();
+            long filled = 0;
             boolean buy = isBuy(taker);
+            TreeMap<Long, Level> opposite = buy ? asks : bids;
 
             while (remaining > 0) {
-                // 定位可撮合档位（跳过与 taker 同用户的整档，防止自成交）
-                long price = 0;
-                FuturesOrder maker = null;
-                if (buy) {
-                    while (!asks.isEmpty()) {
-                        var e = asks.firstEntry();
-                        if (taker.getOrderType() == 1 && e.getKey() > taker.getPrice()) break;
-                        FuturesOrder m = findNonSelf(e.getValue(), taker.getUserId());
-                        if (m != null) { price = e.getKey(); maker = m; break; }
-                        asks.remove(e.getKey()); // 整档都是同用户，跳过该价档
+                Map.Entry<Long, Level> e = opposite.firstEntry();
+                if (e == null) break;
+                long price = e.getKey();
+                if (taker.getOrderType() == 1 && (buy ? price > taker.getPrice() : price < taker.getPrice())) break;
+                Level level = e.getValue();
+                Node head = level.head;
+                FuturesOrder maker = head.order;
+
+                if (maker.getUserId().equals(taker.getUserId())) {
+                    // 防自成交
+                    if (stpMode == StpMode.CANCEL_NEWEST) {
+                        res.takerCancelled = true;
+                        res.takerReleased += remaining;
+                        break;
+                    }
+                    if (stpMode == StpMode.CANCEL_OLDEST) {
+                        UserChain uc = level.users.get(taker.getUserId());
+                        for (Node n = uc.head; n != null; ) {
+                            Node nextOwn = n.userNext;
+                            detach(n);
+                            res.cancelledMakers.add(n.order);
+                            res.makerReleases.add(new StpRelease(n.order, n.order.getRemaining()));
+                            n = nextOwn;
+                        }
+                        continue;
                     }
-                } else {
-                    while (!bids.isEmpty()) {
-                        var e = bids.firstEntry();
-                        if (taker.getOrderType() == 1 && e.getKey() < taker.getPrice()) break;
-                        FuturesOrder m = findNonSelf(e.getValue(), taker.getUserId());
-                        if (m != null) { price = e.getKey(); maker = m; break; }
-                        bids.remove(e.getKey());
+                    // DECREMENT_BOTH
+                    long dec = Math.min(remaining, maker.getRemaining());
+                    remaining -= dec;
+                    res.takerReleased += dec;
+                    maker.setRemaining(maker.getRemaining() - dec);
+                    res.makerReleases.add(new StpRelease(maker, dec));
+                    if (maker.getRemaining() == 0) {
+                        detach(head);
+                        res.cancelledMakers.add(maker);
+                    } else {
+                        res.touchedMakers.add(maker);
                     }
+                    continue;
                 }
-                if (maker == null) break;
 
-                List<FuturesOrder> makers = (buy ? asks : bids).get(price);
                 long matchQty = Math.min(remaining, maker.getRemaining());
 
                 // 记录成交（taker 与 maker 各一笔，各自 userId 与 side）
@@ -121,76 +294,72 @@ public class FuturesMatchingEngine {
                 res.fills.add(mf);
 
                 remaining -= matchQty;
+                filled += matchQty;
 
                 // 更新 maker
                 maker.setRemaining(maker.getRemaining() - matchQty);
                 maker.setFilled(maker.getFilled() + matchQty);
                 res.touchedMakers.add(maker);
                 if (maker.getRemaining() == 0) {
-                    final String makerOrderNo = maker.getOrderNo();
-                    makers.removeIf(x -> x.getOrderNo().equals(makerOrderNo));
-                    index.remove(makerOrderNo);
-                    if (makers.isEmpty()) {
-                        if (buy) asks.remove(price);
-                        else bids.remove(price);
-                    }
+                    detach(head);
                 }
             }
 
             // taker 剩余
             taker.setRemaining(remaining);
-            taker.setFilled(taker.getQuantity() - remaining);
-            res.fullyFilled = remaining == 0;
+            taker.setFilled(filled);
+            res.fullyFilled = filled == taker.getQuantity();
+            if (!res.fullyFilled && remaining == 0) {
+                // 双减把 taker 减到 0：未成交部分视为撤销
+                res.takerCancelled = true;
+            }
             // 若还有剩余且是限价单，挂入簿
-            if (remaining > 0 && taker.getOrderType() == 1) {
-                List<FuturesOrder> list = (buy ? bids : asks).computeIfAbsent(taker.getPrice(), k -> new ArrayList<>());
-                list.add(taker);
-                index.put(taker.getOrderNo(), taker);
+            if (remaining > 0 && taker.getOrderType() == 1 && !res.takerCancelled) {
+                rest(taker, buy);
             }
             return res;
         }
 
         /** 恢复：将一活跃限价单直接挂入簿（不撮合，用其 remaining）。供重启重建订单簿。 */
         void restoreMaker(FuturesOrder o) {
-            boolean buy = isBuy(o);
-            List<FuturesOrder> list = (buy ? bids : asks).computeIfAbsent(o.getPrice(), k -> new ArrayList<>());
             // 避免重复恢复（幂等）
             if (index.containsKey(o.getOrderNo())) {
                 return;
             }
-            list.add(o);
-            index.put(o.getOrderNo(), o);
-        }
-
-        boolean remove(String orderNo) {
-            FuturesOrder o = index.remove(orderNo);
-            if (o == null) return false;
-            boolean buy = o.getSide() == 1 || o.getSide() == 4;
-            List<FuturesOrder> list = (buy ? bids : asks).get(o.getPrice());
-            if (list != null) {
-                list.removeIf(x -> x.getOrderNo().equals(orderNo));
-                if (list.isEmpty()) {
-                    if (buy) bids.remove(o.getPrice());
-                    else asks.remove(o.getPrice());
-                }
-            }
-            return true;
+            rest(o, isBuy(o));
         }
 
-        /** 从某价档列表找一个非 taker 用户的订单（防自成交）；找不到返回 null。 */
-        private FuturesOrder findNonSelf(List<FuturesOrder> list, Long takerUserId) {
-            for (FuturesOrder o : list) {
-                if (!o.getUserId().equals(takerUserId)) {
-                    return o;
-                }
+        FuturesOrder remove(String orderNo, Long userId) {
+            Node n = index.get(orderNo);
+            if (n == null || (userId != null && !userId.equals(n.order.getUserId()))) return null;
+            detach(n);
+            return n.order;
+        }
+
+        private void rest(FuturesOrder o, boolean buy) {
+            Level level = (buy ? bids : asks).computeIfAbsent(o.getPrice(), Level::new);
+            Node n = new Node(o, level);
+            level.append(n);
+            index.put(o.getOrderNo(), n);
+        }
+
+        /** 摘除在簿节点：两条链 O(1) 摘链，档位空则删档。 */
+        private void detach(Node n) {
+            Level level = n.level;
+            level.unlink(n);
+            index.remove(n.order.getOrderNo());
+            if (level.isEmpty()) {
+                (isBuy(n.order) ? bids : asks).remove(level.price);
             }
-            return null;
         }
 
-        long[] best() {
+        /** 锁内调用：发布当前买一/卖一。 */
+        void publishTop() {
             long ask = asks.isEmpty() ? 0 : asks.firstKey();
-            long bid = bids.isEmpty() ? 0 : bids.lastKey();
-            return new long[]{bid, ask};
+            long bid = bids.isEmpty() ? 0 : bids.firstKey();
+            if (top.bid != bid || top.ask != ask) {
+                top = new Top(bid, ask);
+            }
         }
     }
 }
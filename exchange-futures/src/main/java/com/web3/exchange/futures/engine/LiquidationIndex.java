@@ -0,0 +1,217 @@
+package com.web3.exchange.futures.engine;
+
+import com.web3.exchange.futures.entity.FuturesPosition;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 强平风险索引：按合约、按方向把持仓以预计算的强平价排序。
+ * <p>
+ * 逐仓强平条件（见 LiquidationServiceImpl）：保证金 + 未实现盈亏 &lt; 名义价值 × MMR，对标记价解出阈值：
+ * 多仓 {@code mark ≤ (entry − margin×1e8/size) / (1 − mmr)}，空仓 {@code mark ≥ (entry + margin×1e8/size) / (1 + mmr)}。
+ * 标记价更新时只需取出「多仓强平价 ≥ mark」与「空仓强平价 ≤ mark」两段有序子集，不再全表扫描。
+ * </p>
+ * <p>
+ * 索引只做候选筛选：阈值按偏向触发的方向取整，命中后仍由服务层以库中最新持仓精确复核。
+ * 每个合约一把独立 {@link ReentrantLock}；每条记录带全局递增版本号，供 {@link #reconcile} 对账时
+ * 不覆盖对账开始之后才写入的新值。
+ * </p>
+ */
+@Component
+public class LiquidationIndex {
+
+    private static final BigDecimal PRICE_SCALE = BigDecimal.valueOf(1_0000_0000L);
+    private static final BigDecimal BPS = BigDecimal.valueOf(10000);
+
+    /** 一条持仓的风险快照 */
+    public record Entry(long positionId, long userId, String symbol, int side, long liqPrice, long version) {
+    }
+
+    private static final Comparator<Entry> BY_PRICE = Comparator.comparingLong(Entry::liqPrice)
+            .thenComparingLong(Entry::positionId);
+
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+
+    /** 单个合约的多空两侧有序集合 */
+    private static final class Book {
+        final ReentrantLock lock = new ReentrantLock();
+        final TreeSet<Entry> longs = new TreeSet<>(BY_PRICE);
+        final TreeSet<Entry> shorts = new TreeSet<>(BY_PRICE);
+        final Map<Long, Entry> byId = new HashMap<>();
+
+        void put(Entry e) {
+            drop(e.positionId());
+            (e.side() == 1 ? longs : shorts).add(e);
+            byId.put(e.positionId(), e);
+        }
+
+        void drop(long positionId) {
+            Entry old = byId.remove(positionId);
+            if (old != null) {
+                (old.side() == 1 ? longs : shorts).remove(old);
+            }
+        }
+    }
+
+    /**
+     * 逐仓强平价（最小单位）。多仓向上取整、空仓向下取整，保证候选集不漏；
+     * 无持仓返回 0，MMR ≥ 100% 时多仓恒触发（返回 Long.MAX_VALUE）。
+     *
+     * @param mmr 维持保证金率（基点，null 按 5000）
+     */
+    public static long liquidationPrice(int side, long size, long entryPrice, long margin, Integer mmr) {
+        if (size <= 0 || entryPrice <= 0) {
+            return 0L;
+        }
+        int m = mmr == null ? 5000 : mmr;
+        BigDecimal cushion = BigDecimal.valueOf(Math.max(0, margin)).multiply(PRICE_SCALE)
+                .divide(BigDecimal.valueOf(size), 8, RoundingMode.HALF_UP);
+        BigDecimal entry = BigDecimal.valueOf(entryPrice);
+        if (side == 1) {
+            if (m >= 10000) {
+                return Long.MAX_VALUE;
+            }
+            BigDecimal p = entry.subtract(cushion).multiply(BPS)
+                    .divide(BigDecimal.valueOf(10000 - m), 0, RoundingMode.CEILING);
+            return Math.max(0L, p.longValue());
+        }
+        return entry.add(cushion).multiply(BPS)
+                .divide(BigDecimal.valueOf(10000 + m), 0, RoundingMode.FLOOR).longValue();
+    }
+
+    /** 按持仓当前字段计算强平价。 */
+    public static long liquidationPrice(FuturesPosition pos, Integer mmr) {
+        return liquidationPrice(pos.getSide(), nz(pos.getSize()), nz(pos.getEntryPrice()),
+                nz(pos.getIsolatedMargin()), mmr);
+    }
+
+    /** 当前版本号：对账前取一次，传给 {@link #reconcile}。 */
+    public long version() {
+        return versions.get();
+    }
+
+    /** 写入持仓最新状态（取其 liqPrice）；已平仓或数量为 0 则移出索引。 */
+    public void track(FuturesPosition pos) {
+        if (pos.getId() == null || pos.getSymbol() == null) {
+            return;
+        }
+        if (pos.getStatus() == null || pos.getStatus() != 0 || nz(pos.getSize()) <= 0) {
+            remove(pos.getSymbol(), pos.getId());
+            return;
+        }
+        Book b = books.computeIfAbsent(pos.getSymbol(), k -> new Book());
+        b.lock.lock();
+        try {
+            b.put(entryOf(pos, versions.incrementAndGet()));
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    public void remove(String symbol, long positionId) {
+        Book b = books.get(symbol);
+        if (b == null) {
+            return;
+        }
+        b.lock.lock();
+        try {
+            b.drop(positionId);
+        } finally {
+            b.lock.unlock();
+        }
+    }
+
+    /** 标记价为 mark 时越过强平阈值的持仓（多仓在前，按强平价由高到低；空仓按由低到高）。 */
+    public List<Entry> crossed(String symbol, long mark) {
+        Book b = books.get(symbol);
+        if (b == null) {
+            return List.of();
+        }
+        List<Entry> out = new ArrayList<>();
+        b.lock.lock();
+        try {
+            out.addAll(b.longs.tailSet(new Entry(Long.MIN_VALUE, 0, symbol, 1, mark, 0), true).descendingSet());
+            out.addAll(b.shorts.headSet(new Entry(Long.MAX_VALUE, 0, symbol, 2, mark, 0), true));
+        } finally {
+            b.lock.unlock();
+        }
+        return out;
+    }
+
+    /**
+     * 与库中全量持仓对账：写入 loaded（跳过对账开始后已更新的记录），并移出 since 之前写入、
+     * 但已不在 loaded 中的陈旧记录。
+     *
+     * @param loaded 库中当前持仓中的仓位（liqPrice 已按最新 MMR 计算）
+     * @param since  读库前取的 {@link #version()}
+     */
+    public void reconcile(List<FuturesPosition> loaded, long since) {
+        Map<String, List<FuturesPosition>> bySymbol = new HashMap<>();
+        for (FuturesPosition p : loaded) {
+            bySymbol.computeIfAbsent(p.getSymbol(), k -> new ArrayList<>()).add(p);
+        }
+        for (String symbol : books.keySet()) {
+            bySymbol.putIfAbsent(symbol, List.of());
+        }
+        for (var e : bySymbol.entrySet()) {
+            Book b = books.computeIfAbsent(e.getKey(), k -> new Book());
+            b.lock.lock();
+            try {
+                Set<Long> live = new HashSet<>();
+                for (FuturesPosition p : e.getValue()) {
+                    live.add(p.getId());
+                    Entry cur = b.byId.get(p.getId());
+                    if (cur == null || cur.version() <= since) {
+                        b.put(entryOf(p, versions.incrementAndGet()));
+                    }
+                }
+                List<Long> stale = new ArrayList<>();
+                for (Entry cur : b.byId.values()) {
+                    if (cur.version() <= since && !live.contains(cur.positionId())) {
+                        stale.add(cur.positionId());
+                    }
+                }
+                stale.forEach(b::drop);
+            } finally {
+                b.lock.unlock();
+            }
+        }
+    }
+
+    /** 索引中的持仓数。 */
+    public int size() {
+        int n = 0;
+        for (Book b : books.values()) {
+            b.lock.lock();
+            try {
+                n += b.byId.size();
+            } finally {
+                b.lock.unlock();
+            }
+        }
+        return n;
+    }
+
+    private static Entry entryOf(FuturesPosition pos, long version) {
+        return new Entry(pos.getId(), nz(pos.getUserId()), pos.getSymbol(), pos.getSide(),
+                nz(pos.getLiqPrice()), version);
+    }
+
+    private static long nz(Long v) {
+        return v == null ? 0L : v;
+    }
+}
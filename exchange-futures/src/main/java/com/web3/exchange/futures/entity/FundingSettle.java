@@ -25,7 +25,14 @@ public class FundingSettle implements Serializable {
     private Long markPrice;
     /** 基础价/现货价 */
     private Long basePrice;
+    /** 本期结算时间点（按结算周期对齐，与 symbol 唯一） */
     private LocalDateTime fundingTime;
+    /** 0结算中 1已完成 */
+    private Integer status;
+    /** 已结算到的持仓id（分页游标，续跑起点） */
+    private Long cursorId;
+    /** 已结算持仓数 */
+    private Integer positionCount;
     @TableField(fill = FieldFill.INSERT)
     private LocalDateTime createTime;
 }
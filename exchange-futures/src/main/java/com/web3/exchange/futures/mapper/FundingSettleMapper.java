@@ -3,7 +3,20 @@ package com.web3.exchange.futures.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.web3.exchange.futures.entity.FundingSettle;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface FundingSettleMapper extends BaseMapper<FundingSettle> {
+
+    /** 某合约某结算期的窗口（symbol + funding_time 唯一）。 */
+    @Select("SELECT * FROM t_funding_settle WHERE symbol = #{symbol} AND funding_time = #{fundingTime} LIMIT 1")
+    FundingSettle selectWindow(@Param("symbol") String symbol, @Param("fundingTime") LocalDateTime fundingTime);
+
+    /** 某合约未完成（status=0）的窗口，按结算时间升序（先补完旧期再开新期）。 */
+    @Select("SELECT * FROM t_funding_settle WHERE symbol = #{symbol} AND status = 0 ORDER BY funding_time ASC")
+    List<FundingSettle> selectUnfinished(@Param("symbol") String symbol);
 }
@@ -3,7 +3,30 @@ package com.web3.exchange.futures.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.web3.exchange.futures.entity.FuturesOrder;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Update;
 
 @Mapper
 public interface FuturesOrderMapper extends BaseMapper<FuturesOrder> {
+
+    /**
+     * 挂单被成交/STP 双减后回写撮合结果。仅对活跃挂单生效，且 remaining 只减不增（并发事务乱序提交时旧结果不覆盖新结果）。
+     *
+     * @return 影响行数，0 表示订单已终态或库中已是更新的结果
+     */
+    @Update("UPDATE t_futures_order SET remaining = #{remaining}, filled = #{filled}, status = #{status}, "
+            + "version = version + 1, update_time = NOW() "
+            + "WHERE order_no = #{orderNo} AND status IN (0,1) AND remaining >= #{remaining}")
+    int updateMatched(@Param("orderNo") String orderNo, @Param("remaining") long remaining,
+                      @Param("filled") long filled, @Param("status") int status);
+
+    /**
+     * 活跃挂单置撤销并写入撤销时的剩余量（撤单 / STP 撤销）。
+     *
+     * @return 影响行数，0 表示订单已终态（重复撤单）或不属于该用户
+     */
+    @Update("UPDATE t_futures_order SET status = 3, remaining = #{remaining}, version = version + 1, update_time = NOW() "
+            + "WHERE order_no = #{orderNo} AND user_id = #{userId} AND status IN (0,1)")
+    int cancelResting(@Param("orderNo") String orderNo, @Param("userId") Long userId,
+                      @Param("remaining") long remaining);
 }
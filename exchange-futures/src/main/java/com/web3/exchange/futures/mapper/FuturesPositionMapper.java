@@ -3,7 +3,19 @@ package com.web3.exchange.futures.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.web3.exchange.futures.entity.FuturesPosition;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
 
 @Mapper
 public interface FuturesPositionMapper extends BaseMapper<FuturesPosition> {
+
+    /**
+     * 资金费率结算分页：某合约持仓中的仓位按 id 游标顺序取一页（只取结算需要的列）。
+     */
+    @Select("SELECT id, user_id, side, size FROM t_futures_position WHERE symbol = #{symbol} AND status = 0 "
+            + "AND size > 0 AND id > #{afterId} ORDER BY id ASC LIMIT #{limit}")
+    List<FuturesPosition> selectFundingPage(@Param("symbol") String symbol, @Param("afterId") long afterId,
+                                            @Param("limit") int limit);
 }
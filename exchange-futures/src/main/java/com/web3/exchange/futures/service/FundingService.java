@@ -6,6 +6,6 @@ package com.web3.exchange.futures.service;
  */
 public interface FundingService {
 
-    /** 对所有上架合约执行一次资金费率结算。返回处理的交易对数。 */
+    /** 对所有上架合约执行一次资金费率结算（当期已完成的合约跳过，未完成的续跑）。返回本次结算的持仓数。 */
     int settleAll();
 }
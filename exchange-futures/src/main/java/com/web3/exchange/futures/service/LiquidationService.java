@@ -1,11 +1,17 @@
 package com.web3.exchange.futures.service;
 
+import com.web3.exchange.futures.entity.SwapContract;
+
 /**
  * 强平引擎服务（M5）。
  * <p>用标记价盯市：逐仓账户权益 = 初始保证金 + 未实现盈亏。当 权益 &lt; 维持保证金（名义价值 × MMR）时触发强平。</p>
+ * <p>持仓按强平价索引在内存（{@code LiquidationIndex}），标记价刷新时增量检测；全量扫描只作定时对账兜底。</p>
  */
 public interface LiquidationService {
 
-    /** 扫描所有持仓，触发强平检测并处置。返回强平数量。 */
+    /** 对账：从库重建强平索引，并按各合约当前标记价检测一遍。返回强平数量。 */
     int scanAndLiquidate();
+
+    /** 标记价更新：只检测该合约越过强平阈值的持仓。返回强平数量。 */
+    int onMarkPrice(SwapContract contract, long markPrice);
 }
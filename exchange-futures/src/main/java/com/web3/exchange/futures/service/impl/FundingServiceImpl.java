@@ -1,109 +1,208 @@
 package com.web3.exchange.futures.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import com.web3.exchange.futures.engine.ContractRegistry;
 import com.web3.exchange.futures.entity.FundingSettle;
-import com.web3.exchange.futures.entity.FuturesAccount;
 import com.web3.exchange.futures.entity.FuturesPosition;
-import com.web3.exchange.futures.entity.MarkPrice;
 import com.web3.exchange.futures.entity.SwapContract;
 import com.web3.exchange.futures.mapper.FundingSettleMapper;
-import com.web3.exchange.futures.mapper.FuturesAccountMapper;
 import com.web3.exchange.futures.mapper.FuturesPositionMapper;
-import com.web3.exchange.futures.mapper.MarkPriceMapper;
-import com.web3.exchange.futures.mapper.SwapContractMapper;
 import com.web3.exchange.futures.service.FundingService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
 
 /**
  * 资金费率结算服务实现。
  * <p>资金费率 rate 为基点（1基点=0.01%，默认演示 10 基点=0.1%）。结算额 = 名义价值 × rate。
  * 多头支付给空头（rate>0 时多头付费），计入账户 margin 与 realized_pnl。</p>
+ * <p>
+ * 按「合约 × 结算期」窗口结算：开窗时 {@code INSERT IGNORE} 一条 {@code t_funding_settle}（symbol + funding_time 唯一）
+ * 并固定本期标记价与费率；随后按持仓 id 游标分页读取（只取 id/user_id/side/size），页内按用户汇总净额，
+ * 一个事务内批量 {@code UPDATE t_futures_account} 并推进窗口游标——每页恰好生效一次，中断后从游标续跑，
+ * 整期完成置 status=1，重复触发直接跳过。每次结算先按时间顺序补完该合约所有 status=0 的旧窗口
+ * （进程在窗口中途退出、下次运行已跨入新一期时不丢上期剩余持仓），再开当期窗口。
+ * 不同合约在容器管理的 {@code fundingExecutor} 线程池内并行。
+ * </p>
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class FundingServiceImpl implements FundingService {
 
-    private final SwapContractMapper contractMapper;
+    private static final String OPEN_WINDOW = "INSERT IGNORE INTO t_funding_settle "
+            + "(id, symbol, rate, mark_price, base_price, funding_time, status, cursor_id, position_count) "
+            + "VALUES (?,?,?,?,?,?,0,0,0)";
+
+    private static final String APPLY_FUNDING = "UPDATE t_futures_account SET margin_balance = margin_balance + ?, "
+            + "available_balance = GREATEST(0, available_balance + ?), realized_pnl = realized_pnl + ?, version = version + 1 "
+            + "WHERE user_id = ? AND coin = ?";
+
+    /** 游标只能从读到的位置前进（并发实例抢同一窗口时只有一个生效） */
+    private static final String ADVANCE_CURSOR = "UPDATE t_funding_settle SET cursor_id = ?, position_count = position_count + ?, "
+            + "status = ? WHERE id = ? AND cursor_id = ? AND status = 0";
+
+    private final ContractRegistry contractRegistry;
     private final FuturesPositionMapper positionMapper;
-    private final FuturesAccountMapper accountMapper;
-    private final MarkPriceMapper markPriceMapper;
     private final FundingSettleMapper settleMapper;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor fundingExecutor;
+
+    /** 结算周期（分钟）；0 = 按合约 funding_interval_hours */
+    @Value("${server-settings.funding.interval-minutes:0}")
+    private int intervalMinutes;
+
+    /** 每页持仓数（一页一个事务） */
+    @Value("${server-settings.funding.page-size:1000}")
+    private int pageSize;
 
     @Override
-    @Transactional
     public int settleAll() {
-        var contracts = contractMapper.selectList(
-                new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getStatus, 0));
-        int handled = 0;
+        var contracts = contractRegistry.listed();
+        if (contracts.isEmpty()) return 0;
+        List<Future<Integer>> futures = new ArrayList<>(contracts.size());
         for (SwapContract c : contracts) {
+            futures.add(fundingExecutor.submit(() -> {
+                try {
+                    return settleContract(c);
+                } catch (Exception e) {
+                    log.error("资金费率结算异常 symbol={}: {}", c.getSymbol(), e.getMessage());
+                    return 0;
+                }
+            }));
+        }
+        int handled = 0;
+        for (Future<Integer> f : futures) {
             try {
-                handled += settleContract(c);
+                handled += f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
             } catch (Exception e) {
-                log.error("资金费率结算异常 symbol={}: {}", c.getSymbol(), e.getMessage());
+                log.error("资金费率结算异常: {}", e.getMessage());
             }
         }
         return handled;
     }
 
+    /**
+     * 结算一个合约：先按时间顺序补完未完成的旧窗口，再开当期窗口（已完成则跳过，未完成从游标续跑）。
+     * 返回本次结算的持仓数。
+     */
     private int settleContract(SwapContract c) {
-        MarkPrice mp = markPriceMapper.selectOne(
-                new LambdaQueryWrapper<MarkPrice>().eq(MarkPrice::getSymbol, c.getSymbol()).last("LIMIT 1"));
-        if (mp == null || mp.getMarkPrice() == null) return 0;
-        long mark = mp.getMarkPrice();
-
-        var positions = positionMapper.selectList(
-                new LambdaQueryWrapper<FuturesPosition>()
-                        .eq(FuturesPosition::getSymbol, c.getSymbol())
-                        .eq(FuturesPosition::getStatus, 0)
-                        .gt(FuturesPosition::getSize, 0));
-        if (positions.isEmpty()) return 0;
-
-        // 演示资金费率：固定 10 基点 = 0.001（真实应为标记价-现货价差计算）
-        long rateBps = 10;
-        BigDecimal rate = BigDecimal.valueOf(rateBps).divide(BigDecimal.valueOf(10000), 8, RoundingMode.HALF_UP);
+        LocalDateTime fundingTime = windowOf(c, System.currentTimeMillis());
+        int count = 0;
+        for (FundingSettle unfinished : settleMapper.selectUnfinished(c.getSymbol())) {
+            if (unfinished.getFundingTime().isBefore(fundingTime)) {
+                log.info("续跑未完成的资金费率窗口 symbol={} fundingTime={} cursor={}",
+                        c.getSymbol(), unfinished.getFundingTime(), unfinished.getCursorId());
+                count += settleWindow(c, unfinished);
+            }
+        }
+        FundingSettle window = openWindow(c, fundingTime);
+        if (window != null) {
+            count += settleWindow(c, window);
+        }
+        return count;
+    }
 
+    /** 按窗口固定的标记价与费率从游标续跑到本期完成；已完成或游标被并发推进时返回。 */
+    private int settleWindow(SwapContract c, FundingSettle window) {
+        if (window.getStatus() == null || window.getStatus() != 0) return 0;
+        long mark = window.getMarkPrice();
+        BigDecimal rate = BigDecimal.valueOf(window.getRate()).divide(BigDecimal.valueOf(10000), 8, RoundingMode.HALF_UP);
+        int limit = Math.max(1, pageSize);
+        long cursor = window.getCursorId() == null ? 0 : window.getCursorId();
         int count = 0;
-        for (FuturesPosition pos : positions) {
+        while (true) {
+            List<FuturesPosition> page = positionMapper.selectFundingPage(c.getSymbol(), cursor, limit);
+            boolean last = page.size() < limit;
+            long from = cursor;
+            long to = page.isEmpty() ? cursor : page.get(page.size() - 1).getId();
+            Boolean applied = transactionTemplate.execute(s -> {
+                if (applyPage(window, c.getQuote(), mark, rate, page, from, to, last)) return true;
+                s.setRollbackOnly();
+                return false;
+            });
+            if (!Boolean.TRUE.equals(applied)) {
+                log.warn("资金费率窗口游标已被并发推进，放弃本次 symbol={} fundingTime={}", c.getSymbol(), window.getFundingTime());
+                return count;
+            }
+            count += page.size();
+            cursor = to;
+            if (last) break;
+        }
+        return count;
+    }
+
+    /**
+     * 一页一个事务：按用户汇总本页资金费 → 批量更新账户 → 推进游标（条件更新，游标已变返回 false 由调用方回滚整页）。
+     */
+    private boolean applyPage(FundingSettle window, String quote, long mark, BigDecimal rate,
+                              List<FuturesPosition> page, long from, long to, boolean last) {
+        Map<Long, Long> byUser = new LinkedHashMap<>();
+        for (FuturesPosition pos : page) {
             // 名义价值 = size × mark ÷ 1e8；结算额 = 名义价值 × rate
             long notionalVal = BigDecimal.valueOf(pos.getSize())
                     .multiply(BigDecimal.valueOf(mark))
                     .divide(BigDecimal.valueOf(1_0000_0000L), 0, RoundingMode.HALF_UP)
                     .longValue();
-            BigDecimal fee = BigDecimal.valueOf(notionalVal).multiply(rate).setScale(0, RoundingMode.HALF_UP);
-            long feeLong = fee.longValue();
+            long feeLong = BigDecimal.valueOf(notionalVal).multiply(rate).setScale(0, RoundingMode.HALF_UP).longValue();
             // 多头支付给空头：rate>0 时多头扣、空头加
             long amount = pos.getSide() == 1 ? -feeLong : feeLong;
-
-            FuturesAccount acc = accountMapper.selectOne(
-                    new LambdaQueryWrapper<FuturesAccount>()
-                            .eq(FuturesAccount::getUserId, pos.getUserId())
-                            .eq(FuturesAccount::getCoin, c.getQuote()).last("LIMIT 1"));
-            if (acc == null) continue;
-
-            acc.setMarginBalance(acc.getMarginBalance() + amount);
-            acc.setAvailableBalance(Math.max(0, acc.getAvailableBalance() + amount));
-            acc.setRealizedPnl((acc.getRealizedPnl() == null ? 0 : acc.getRealizedPnl()) + amount);
-            accountMapper.updateById(acc);
-            count++;
+            byUser.merge(pos.getUserId(), amount, Long::sum);
+        }
+        List<Object[]> args = new ArrayList<>(byUser.size());
+        for (var e : byUser.entrySet()) {
+            if (e.getValue() != 0) {
+                args.add(new Object[]{e.getValue(), e.getValue(), e.getValue(), e.getKey(), quote});
+            }
         }
+        if (!args.isEmpty()) {
+            jdbcTemplate.batchUpdate(APPLY_FUNDING, args);
+        }
+        return jdbcTemplate.update(ADVANCE_CURSOR, to, page.size(), last ? 1 : 0, window.getId(), from) > 0;
+    }
 
-        // 记录结算
-        FundingSettle settle = new FundingSettle();
-        settle.setSymbol(c.getSymbol());
-        settle.setRate((int) rateBps);
-        settle.setMarkPrice(mark);
-        settle.setBasePrice(mark);
-        settle.setFundingTime(LocalDateTime.now());
-        settleMapper.insert(settle);
-        return count;
+    /** 开窗（幂等）：首次开窗固定本期标记价与费率；无标记价不开窗。返回当前窗口记录。 */
+    private FundingSettle openWindow(SwapContract c, LocalDateTime fundingTime) {
+        FundingSettle window = findWindow(c.getSymbol(), fundingTime);
+        if (window != null) return window;
+        Long mark = contractRegistry.markPrice(c.getSymbol());
+        if (mark == null) return null;
+        // 演示资金费率：固定 10 基点 = 0.001（真实应为标记价-现货价差计算）
+        int rateBps = 10;
+        jdbcTemplate.update(OPEN_WINDOW, IdWorker.getId(), c.getSymbol(), rateBps, mark, mark, Timestamp.valueOf(fundingTime));
+        return findWindow(c.getSymbol(), fundingTime);
+    }
+
+    private FundingSettle findWindow(String symbol, LocalDateTime fundingTime) {
+        return settleMapper.selectWindow(symbol, fundingTime);
+    }
+
+    /** 本期结算时间点：按结算周期对齐到 epoch 整倍数（8 小时周期即 UTC 00/08/16 点）。 */
+    private LocalDateTime windowOf(SwapContract c, long nowMillis) {
+        long minutes = intervalMinutes > 0 ? intervalMinutes
+                : (c.getFundingIntervalHours() == null || c.getFundingIntervalHours() <= 0 ? 8 : c.getFundingIntervalHours()) * 60L;
+        long periodMillis = minutes * 60_000L;
+        long start = Math.floorDiv(nowMillis, periodMillis) * periodMillis;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneId.systemDefault());
     }
 }
@@ -5,28 +5,28 @@ import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.web3.exchange.common.exception.BusinessException;
 import com.web3.exchange.futures.dto.FuturesFill;
 import com.web3.exchange.futures.dto.PlaceFuturesOrderDTO;
+import com.web3.exchange.futures.engine.ContractRegistry;
 import com.web3.exchange.futures.engine.FuturesMatchingEngine;
+import com.web3.exchange.futures.engine.LiquidationIndex;
 import com.web3.exchange.futures.entity.FuturesOrder;
 import com.web3.exchange.futures.entity.FuturesPosition;
 import com.web3.exchange.futures.entity.SwapContract;
 import com.web3.exchange.futures.entity.FuturesFillEntity;
 import com.web3.exchange.futures.mapper.FuturesOrderMapper;
 import com.web3.exchange.futures.mapper.FuturesPositionMapper;
-import com.web3.exchange.futures.mapper.SwapContractMapper;
 import com.web3.exchange.futures.mapper.FuturesFillMapper;
 import com.web3.exchange.futures.service.FuturesAccountService;
 import com.web3.exchange.futures.service.FuturesTradeService;
 import com.web3.exchange.futures.service.MarkPriceService;
-import com.github.benmanes.caffeine.cache.Cache;
-import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.Duration;
 import java.util.List;
 
 /**
@@ -40,24 +40,19 @@ public class FuturesTradeServiceImpl implements FuturesTradeService {
     /** 常数：1=开多 2=开空 3=平多 4=平空 */
     private static final int OPEN_LONG = 1, OPEN_SHORT = 2, CLOSE_LONG = 3, CLOSE_SHORT = 4;
 
-    /** 合约配置本地缓存（读多写少，低频变化，5 分钟过期） */
-    private static final Cache<String, SwapContract> CONTRACT_CACHE = Caffeine.newBuilder()
-            .maximumSize(500)
-            .expireAfterWrite(Duration.ofMinutes(5))
-            .build();
-
     private final FuturesOrderMapper orderMapper;
     private final FuturesPositionMapper positionMapper;
-    private final SwapContractMapper contractMapper;
     private final FuturesFillMapper fillMapper;
     private final FuturesMatchingEngine matchingEngine;
     private final FuturesAccountService accountService;
     private final MarkPriceService markPriceService;
+    private final LiquidationIndex riskIndex;
+    private final ContractRegistry contractRegistry;
 
     @Override
     @Transactional
     public FuturesOrder placeOrder(Long userId, PlaceFuturesOrderDTO dto) {
-        SwapContract contract = getContract(dto.getSymbol());
+        SwapContract contract = contractRegistry.listed(dto.getSymbol());
         if (contract == null) {
             throw new BusinessException("合约交易对不存在或已下架");
         }
@@ -95,9 +90,10 @@ public class FuturesTradeServiceImpl implements FuturesTradeService {
 
         // 开仓预冻结保证金 = 数量 × 价 / 杠杆（逐仓），市价单用标记价预估
         boolean isOpen = side == OPEN_LONG || side == OPEN_SHORT;
+        long refPrice = 0;
         if (isOpen) {
-            long refPrice = limitPrice > 0 ? limitPrice : (markPriceService.getMarkPrice(dto.getSymbol()) == null
-                    ? fallbackPrice(contract) : markPriceService.getMarkPrice(dto.getSymbol()));
+            Long mark = limitPrice > 0 ? null : markPriceService.getMarkPrice(dto.getSymbol());
+            refPrice = limitPrice > 0 ? limitPrice : (mark == null ? fallbackPrice(contract) : mark);
             // 保证金 = 名义金额 / 杠杆；名义 = qtyMin×priceMin/1e8
             long margin = notional(qtyMin, refPrice)
                     / leverage;
@@ -112,12 +108,47 @@ public class FuturesTradeServiceImpl implements FuturesTradeService {
 
         // 更新订单状态与DB
         order.setAvgPrice(computeAvg(res.fills));
-        order.setStatus(res.fullyFilled ? 2 : (order.getFilled() > 0 ? 1 : 0));
+        order.setStatus(res.takerCancelled ? 3 : res.fullyFilled ? 2 : (order.getFilled() > 0 ? 1 : 0));
         orderMapper.insert(order);
 
+        // 防自成交：taker 不再成交的部分与被撤/被减的挂单释放保证金
+        if (isOpen && res.takerReleased > 0) {
+            accountService.releasePositionMargin(userId, contract.getQuote(),
+                    notional(res.takerReleased, refPrice) / leverage);
+        }
+        applyStp(contract, res);
+
         return order;
     }
 
+    /**
+     * 挂单撮合结果落库：被成交/双减的挂单回写 remaining、filled 与状态，被 STP 撤销的置撤销；
+     * 开仓挂单按不再成交的数量释放保证金。落库的 remaining 即之后撤单时释放保证金的依据，不回写会重复释放。
+     */
+    private void applyStp(SwapContract c, FuturesMatchingEngine.FillResult res) {
+        for (FuturesOrder m : res.touchedMakers) {
+            int status = m.getRemaining() == 0 ? 2 : (m.getFilled() > 0 ? 1 : 0);
+            if (orderMapper.updateMatched(m.getOrderNo(), m.getRemaining(), m.getFilled(), status) == 0) {
+                log.warn("[futures] 挂单撮合结果未回写(已终态或库中更新) order={} remaining={}",
+                        m.getOrderNo(), m.getRemaining());
+            }
+        }
+        for (FuturesOrder m : res.cancelledMakers) {
+            orderMapper.cancelResting(m.getOrderNo(), m.getUserId(), m.getRemaining());
+        }
+        for (FuturesMatchingEngine.StpRelease r : res.makerReleases) {
+            FuturesOrder m = r.order();
+            boolean open = m.getSide() == OPEN_LONG || m.getSide() == OPEN_SHORT;
+            if (open && r.quantity() > 0) {
+                accountService.releasePositionMargin(m.getUserId(), c.getQuote(),
+                        notional(r.quantity(), m.getPrice()) / m.getLeverage());
+            }
+        }
+        if (!res.cancelledMakers.isEmpty()) {
+            log.info("[futures] STP 撤销挂单 {} 笔 symbol={}", res.cancelledMakers.size(), c.getSymbol());
+        }
+    }
+
     /** 逐笔成交更新持仓：按 userId 分组，开仓增加/均价加权，平仓减少并结算盈亏。 */
     private void applyFills(Long callerUserId, SwapContract c, FuturesOrder order, List<FuturesFill> fills) {
         // 按 userId 分组：taker 与 maker 各自核算
@@ -201,13 +232,31 @@ public class FuturesTradeServiceImpl implements FuturesTradeService {
                 if (newSize <= 0) {
                     pos.setSize(0L);
                     pos.setStatus(1); // 已平仓
+                    pos.setLiqPrice(0L);
                     positionMapper.updateById(pos);
+                    trackRisk(pos);
                     return;
                 }
                 pos.setSize(newSize);
                 pos.setUnrealizedPnl(computeUnrealized(pos, f.getPrice()));
             }
+            pos.setLiqPrice(LiquidationIndex.liquidationPrice(pos, c.getMmr()));
             positionMapper.updateById(pos);
+            trackRisk(pos);
+    }
+
+    /** 持仓变动在事务提交后同步到强平索引（回滚则不写入，由定时对账兜底）。 */
+    private void trackRisk(FuturesPosition pos) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            riskIndex.track(pos);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                riskIndex.track(pos);
+            }
+        });
     }
 
     private long computeUnrealized(FuturesPosition pos, long mark) {
@@ -276,21 +325,6 @@ public class FuturesTradeServiceImpl implements FuturesTradeService {
                 .longValue();
     }
 
-    /** 查上架合约（status=0），走 Caffeine 本地缓存减少下单高频路径 DB 查询。 */
-    private SwapContract getContract(String symbol) {
-        SwapContract cached = CONTRACT_CACHE.getIfPresent(symbol);
-        if (cached != null) {
-            return cached;
-        }
-        SwapContract c = contractMapper.selectOne(
-                new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getSymbol, symbol)
-                        .eq(SwapContract::getStatus, 0).last("LIMIT 1"));
-        if (c != null) {
-            CONTRACT_CACHE.put(symbol, c);
-        }
-        return c;
-    }
-
     private long toMinUnit(String val, Integer decimals) {
         if (val == null || val.isBlank()) return 0;
         int dec = decimals == null ? 8 : decimals;
@@ -304,19 +338,15 @@ public class FuturesTradeServiceImpl implements FuturesTradeService {
     @Override
     @Transactional
     public boolean cancel(Long userId, String symbol, String orderNo) {
-        boolean removed = matchingEngine.cancel(symbol, orderNo);
-        if (!removed) return false;
-        FuturesOrder order = orderMapper.selectOne(
-                new LambdaQueryWrapper<FuturesOrder>().eq(FuturesOrder::getOrderNo, orderNo)
-                        .eq(FuturesOrder::getUserId, userId).last("LIMIT 1"));
-        if (order != null && (order.getStatus() == 0 || order.getStatus() == 1)) {
-            order.setStatus(3);
-            orderMapper.updateById(order);
+        // 簿内对象的 remaining 已扣除成交与 STP 双减，比库中读出的更可靠
+        FuturesOrder order = matchingEngine.take(symbol, orderNo, userId);
+        if (order == null) return false;
+        // 条件更新：仅活跃挂单置撤销，重复撤单/已被 STP 撤销时不再释放
+        if (orderMapper.cancelResting(orderNo, userId, order.getRemaining()) == 1) {
             // 释放剩余保证金
             boolean isOpen = order.getSide() == OPEN_LONG || order.getSide() == OPEN_SHORT;
             if (isOpen && order.getRemaining() > 0) {
-                SwapContract c = contractMapper.selectOne(
-                        new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getSymbol, symbol).last("LIMIT 1"));
+                SwapContract c = contractRegistry.contract(symbol);
                 long refPrice = order.getPrice() > 0 ? order.getPrice() : fallbackPrice(c);
                 // 释放保证金 = 剩余未成交名义 / 杠杆
                 long margin = notional(order.getRemaining(), refPrice) / order.getLeverage();
@@ -1,27 +1,30 @@
 package com.web3.exchange.futures.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.web3.exchange.futures.engine.ContractRegistry;
+import com.web3.exchange.futures.engine.LiquidationIndex;
 import com.web3.exchange.futures.entity.FuturesAccount;
 import com.web3.exchange.futures.entity.FuturesPosition;
-import com.web3.exchange.futures.entity.MarkPrice;
 import com.web3.exchange.futures.entity.SwapContract;
 import com.web3.exchange.futures.mapper.FuturesAccountMapper;
 import com.web3.exchange.futures.mapper.FuturesPositionMapper;
-import com.web3.exchange.futures.mapper.MarkPriceMapper;
-import com.web3.exchange.futures.mapper.SwapContractMapper;
 import com.web3.exchange.futures.service.LiquidationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 强平引擎服务实现（M5）。
  * <p>逐仓：账户权益 = isolated_margin + 该仓未实现盈亏（用标记价）。当 权益 &lt; 名义价值 × MMR 触发强平。
  * 强平 = 按标记价平仓（结算盈亏、释放保证金、清空仓位）。</p>
+ * <p>检测由标记价刷新驱动：{@link LiquidationIndex} 取出越过阈值的候选，逐个按主键重读持仓精确复核，
+ * 每个强平单独一个事务（持仓乐观锁冲突则放弃本次，下一次标记价再判）。{@link #scanAndLiquidate} 只做定时对账。</p>
  */
 @Slf4j
 @Service
@@ -30,41 +33,73 @@ public class LiquidationServiceImpl implements LiquidationService {
 
     private final FuturesPositionMapper positionMapper;
     private final FuturesAccountMapper accountMapper;
-    private final MarkPriceMapper markPriceMapper;
-    private final SwapContractMapper contractMapper;
+    private final ContractRegistry contractRegistry;
+    private final LiquidationIndex riskIndex;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
-    @Transactional
     public int scanAndLiquidate() {
-        var positions = positionMapper.selectList(
+        long since = riskIndex.version();
+        ContractRegistry.Snapshot snap = contractRegistry.snapshot();
+        Map<String, SwapContract> contracts = snap.contracts();
+        List<FuturesPosition> positions = positionMapper.selectList(
                 new LambdaQueryWrapper<FuturesPosition>()
                         .eq(FuturesPosition::getStatus, 0)
                         .gt(FuturesPosition::getSize, 0));
-        int liquidated = 0;
         for (FuturesPosition pos : positions) {
+            SwapContract c = contracts.get(pos.getSymbol());
+            pos.setLiqPrice(LiquidationIndex.liquidationPrice(pos, c == null ? null : c.getMmr()));
+        }
+        riskIndex.reconcile(positions, since);
+
+        int liquidated = 0;
+        for (var mp : snap.marks().entrySet()) {
+            SwapContract c = contracts.get(mp.getKey());
+            if (c != null) {
+                liquidated += onMarkPrice(c, mp.getValue());
+            }
+        }
+        return liquidated;
+    }
+
+    @Override
+    public int onMarkPrice(SwapContract c, long mark) {
+        List<LiquidationIndex.Entry> candidates = riskIndex.crossed(c.getSymbol(), mark);
+        int liquidated = 0;
+        for (LiquidationIndex.Entry e : candidates) {
             try {
-                if (isLiquidatable(pos)) {
-                    liquidate(pos);
+                if (Boolean.TRUE.equals(transactionTemplate.execute(s -> evaluate(e, c, mark)))) {
                     liquidated++;
                 }
-            } catch (Exception e) {
-                log.error("强平检测异常 userId={} symbol={}: {}", pos.getUserId(), pos.getSymbol(), e.getMessage());
+            } catch (Exception ex) {
+                log.error("强平检测异常 userId={} symbol={}: {}", e.userId(), c.getSymbol(), ex.getMessage());
             }
         }
         return liquidated;
     }
 
-    /** 判断是否触发强平：账户权益 < 名义价值 × MMR。 */
-    private boolean isLiquidatable(FuturesPosition pos) {
-        MarkPrice mp = markPriceMapper.selectOne(
-                new LambdaQueryWrapper<MarkPrice>().eq(MarkPrice::getSymbol, pos.getSymbol()).last("LIMIT 1"));
-        if (mp == null || mp.getMarkPrice() == null) return false;
-        long mark = mp.getMarkPrice();
-
-        SwapContract c = contractMapper.selectOne(
-                new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getSymbol, pos.getSymbol()).last("LIMIT 1"));
-        if (c == null) return false;
+    /** 按主键重读候选持仓并精确复核，触发则强平；索引同步为库中最新状态。 */
+    private boolean evaluate(LiquidationIndex.Entry e, SwapContract c, long mark) {
+        FuturesPosition pos = positionMapper.selectById(e.positionId());
+        if (pos == null || pos.getStatus() == null || pos.getStatus() != 0 || pos.getSize() == null || pos.getSize() <= 0) {
+            riskIndex.remove(c.getSymbol(), e.positionId());
+            return false;
+        }
+        if (!isLiquidatable(pos, c, mark)) {
+            // 索引里的强平价已过期（加仓/减仓/MMR 调整），按最新持仓重算
+            pos.setLiqPrice(LiquidationIndex.liquidationPrice(pos, c.getMmr()));
+            riskIndex.track(pos);
+            return false;
+        }
+        if (!liquidate(pos, c.getQuote(), mark)) {
+            return false;
+        }
+        riskIndex.remove(c.getSymbol(), e.positionId());
+        return true;
+    }
 
+    /** 判断是否触发强平：账户权益 < 名义价值 × MMR。 */
+    private boolean isLiquidatable(FuturesPosition pos, SwapContract c, long mark) {
         // 未实现盈亏（用标记价）；(价差 × 数量 ÷ 1e8)
         long upnl;
         if (pos.getSide() == 1) {
@@ -86,12 +121,8 @@ public class LiquidationServiceImpl implements LiquidationService {
         return trigger;
     }
 
-    /** 强平处置：按标记价平仓。 */
-    private void liquidate(FuturesPosition pos) {
-        MarkPrice mp = markPriceMapper.selectOne(
-                new LambdaQueryWrapper<MarkPrice>().eq(MarkPrice::getSymbol, pos.getSymbol()).last("LIMIT 1"));
-        long mark = mp != null && mp.getMarkPrice() != null ? mp.getMarkPrice() : pos.getEntryPrice();
-
+    /** 强平处置：按标记价平仓。持仓版本冲突（并发成交改了仓位）返回 false，不动账户。 */
+    private boolean liquidate(FuturesPosition pos, String quote, long mark) {
         // 结算盈亏 (价差 × 数量 ÷ 1e8)
         long pnl;
         if (pos.getSide() == 1) {
@@ -100,32 +131,32 @@ public class LiquidationServiceImpl implements LiquidationService {
             pnl = notional(pos.getSize(), pos.getEntryPrice() - mark);
         }
         // 平仓后剩余保证金 = isolated_margin + pnl（可为负，从账户扣减）
-        long remainingMargin = (pos.getIsolatedMargin() == null ? 0 : pos.getIsolatedMargin()) + pnl;
+        long isolated = pos.getIsolatedMargin() == null ? 0 : pos.getIsolatedMargin();
+        long remainingMargin = isolated + pnl;
+
+        pos.setSize(0L);
+        pos.setStatus(1); // 已平仓（强平）
+        pos.setLiqPrice(0L);
+        pos.setRealizedPnl((pos.getRealizedPnl() == null ? 0 : pos.getRealizedPnl()) + pnl);
+        if (positionMapper.updateById(pos) == 0) {
+            log.warn("强平跳过（持仓已被并发修改） userId={} symbol={} side={}", pos.getUserId(), pos.getSymbol(), pos.getSide());
+            return false;
+        }
 
         FuturesAccount acc = accountMapper.selectOne(
                 new LambdaQueryWrapper<FuturesAccount>()
                         .eq(FuturesAccount::getUserId, pos.getUserId())
-                        .eq(FuturesAccount::getCoin, quoteOf(pos)).last("LIMIT 1"));
+                        .eq(FuturesAccount::getCoin, quote == null ? "USDT" : quote).last("LIMIT 1"));
         if (acc != null) {
             // 原占用保证金全部释放（用 pnl 修正：实际到账 = 保证金 + pnl）
-            acc.setPositionMargin(Math.max(0, acc.getPositionMargin() - (pos.getIsolatedMargin() == null ? 0 : pos.getIsolatedMargin())));
+            acc.setPositionMargin(Math.max(0, acc.getPositionMargin() - isolated));
             acc.setAvailableBalance(Math.max(0, acc.getAvailableBalance() + remainingMargin));
             acc.setMarginBalance(Math.max(0, acc.getMarginBalance() + pnl));
             acc.setRealizedPnl((acc.getRealizedPnl() == null ? 0 : acc.getRealizedPnl()) + pnl);
             accountMapper.updateById(acc);
         }
-
-        pos.setSize(0L);
-        pos.setStatus(1); // 已平仓（强平）
-        pos.setRealizedPnl((pos.getRealizedPnl() == null ? 0 : pos.getRealizedPnl()) + pnl);
-        positionMapper.updateById(pos);
         log.info("已强平 userId={} symbol={} side={} mark={} pnl={}", pos.getUserId(), pos.getSymbol(), pos.getSide(), mark, pnl);
-    }
-
-    private String quoteOf(FuturesPosition pos) {
-        SwapContract c = contractMapper.selectOne(
-                new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getSymbol, pos.getSymbol()).last("LIMIT 1"));
-        return c != null ? c.getQuote() : "USDT";
+        return true;
     }
 
     /**
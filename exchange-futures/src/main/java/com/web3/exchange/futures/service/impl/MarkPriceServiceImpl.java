@@ -1,13 +1,14 @@
 package com.web3.exchange.futures.service.impl;
 
-import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.web3.exchange.common.model.Result;
 import com.web3.exchange.futures.dto.SpotTickerVO;
+import com.web3.exchange.futures.engine.ContractRegistry;
 import com.web3.exchange.futures.entity.MarkPrice;
 import com.web3.exchange.futures.entity.SwapContract;
 import com.web3.exchange.futures.feign.MarketClient;
 import com.web3.exchange.futures.mapper.MarkPriceMapper;
-import com.web3.exchange.futures.mapper.SwapContractMapper;
+import com.web3.exchange.futures.service.LiquidationService;
 import com.web3.exchange.futures.service.MarkPriceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -27,27 +28,27 @@ import java.util.List;
 public class MarkPriceServiceImpl implements MarkPriceService {
 
     private final MarkPriceMapper markPriceMapper;
-    private final SwapContractMapper contractMapper;
+    private final ContractRegistry contractRegistry;
     private final MarketClient marketClient;
+    private final LiquidationService liquidationService;
 
     /** 基差因子（现货价 × (1 + 因子) = 标记价），默认 0.0002 */
     @Value("${server-settings.mark.basis-factor:0.0002}")
     private double basisFactor;
 
+    /** 读进程内注册表（本实例每次刷新写库后即更新），不查库。 */
     @Override
     public Long getMarkPrice(String symbol) {
-        MarkPrice mp = markPriceMapper.selectOne(
-                new LambdaQueryWrapper<MarkPrice>().eq(MarkPrice::getSymbol, symbol).last("LIMIT 1"));
-        return mp == null ? null : mp.getMarkPrice();
+        return contractRegistry.markPrice(symbol);
     }
 
     /**
      * 刷新所有上架合约的标记价：现货价 × (1 + 基差)。
+     * 每个合约写库后立即驱动强平增量检测（只看越过阈值的持仓）。
      * 返回更新的交易对数。
      */
     public int refreshAll() {
-        var contracts = contractMapper.selectList(
-                new LambdaQueryWrapper<SwapContract>().eq(SwapContract::getStatus, 0));
+        var contracts = contractRegistry.listed();
         int updated = 0;
         for (SwapContract c : contracts) {
             Long spotPrice = fetchSpotPrice(c);
@@ -60,6 +61,14 @@ public class MarkPriceServiceImpl implements MarkPriceService {
             long mark = spot.multiply(factor).setScale(0, RoundingMode.HALF_UP).longValue();
             saveMarkPrice(c.getSymbol(), mark);
             updated++;
+            try {
+                int n = liquidationService.onMarkPrice(c, mark);
+                if (n > 0) {
+                    log.info("标记价驱动强平 symbol={} mark={} 强平 {} 个持仓", c.getSymbol(), mark, n);
+                }
+            } catch (Exception e) {
+                log.error("强平检测异常 symbol={}: {}", c.getSymbol(), e.getMessage());
+            }
         }
         return updated;
     }
@@ -100,17 +109,17 @@ public class MarkPriceServiceImpl implements MarkPriceService {
         }
     }
 
+    /** 按 symbol 直接更新（无行再插入），成功后发布到注册表。 */
     private void saveMarkPrice(String symbol, long mark) {
-        MarkPrice exist = markPriceMapper.selectOne(
-                new LambdaQueryWrapper<MarkPrice>().eq(MarkPrice::getSymbol, symbol).last("LIMIT 1"));
-        if (exist == null) {
+        int updated = markPriceMapper.update(null, new LambdaUpdateWrapper<MarkPrice>()
+                .eq(MarkPrice::getSymbol, symbol)
+                .set(MarkPrice::getMarkPrice, mark));
+        if (updated == 0) {
             MarkPrice mp = new MarkPrice();
             mp.setSymbol(symbol);
             mp.setMarkPrice(mark);
             markPriceMapper.insert(mp);
-        } else {
-            exist.setMarkPrice(mark);
-            markPriceMapper.updateById(exist);
         }
+        contractRegistry.putMark(symbol, mark);
     }
 }
@@ -0,0 +1,83 @@
+package com.web3.exchange.futures.engine;
+
+import com.web3.exchange.futures.entity.MarkPrice;
+import com.web3.exchange.futures.entity.SwapContract;
+import com.web3.exchange.futures.mapper.MarkPriceMapper;
+import com.web3.exchange.futures.mapper.SwapContractMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * ContractRegistry 单测：首次读取才加载且只加载一次、上架过滤、标记价即写即读、
+ * 重载刷新合约但不以库中旧标记价覆盖内存值。
+ */
+class ContractRegistryTest {
+
+    private final SwapContractMapper contractMapper = mock(SwapContractMapper.class);
+    private final MarkPriceMapper markPriceMapper = mock(MarkPriceMapper.class);
+    private final ContractRegistry registry = new ContractRegistry(contractMapper, markPriceMapper);
+
+    @Test
+    void lazyLoad_filtersListed_andServesReadsFromMemory() {
+        when(contractMapper.selectList(any())).thenReturn(List.of(contract(2L, "ETH-USDT-SWAP", 5000, 0),
+                contract(1L, "BTC-USDT-SWAP", 5000, 0), contract(3L, "DOGE-USDT-SWAP", 5000, 1)));
+        when(markPriceMapper.selectList(any())).thenReturn(List.of(mark("BTC-USDT-SWAP", 100L)));
+
+        assertEquals(List.of("BTC-USDT-SWAP", "ETH-USDT-SWAP"),
+                registry.listed().stream().map(SwapContract::getSymbol).toList());
+        assertNull(registry.listed("DOGE-USDT-SWAP"));
+        assertEquals(1, registry.contract("DOGE-USDT-SWAP").getStatus());
+        assertEquals(100L, registry.markPrice("BTC-USDT-SWAP"));
+        assertNull(registry.markPrice("ETH-USDT-SWAP"));
+
+        verify(contractMapper, times(1)).selectList(any());
+        verify(markPriceMapper, times(1)).selectList(any());
+    }
+
+    @Test
+    void putMark_bumpsVersion_andReloadKeepsNewerMarks() {
+        when(contractMapper.selectList(any())).thenReturn(List.of(contract(1L, "BTC-USDT-SWAP", 5000, 0)));
+        when(markPriceMapper.selectList(any())).thenReturn(List.of(mark("BTC-USDT-SWAP", 100L)));
+        long v0 = registry.version();
+
+        registry.putMark("BTC-USDT-SWAP", 120L);
+        assertEquals(120L, registry.markPrice("BTC-USDT-SWAP"));
+        assertTrue(registry.version() > v0);
+
+        // 管理端把 MMR 改为 100，库中标记价仍是旧值
+        when(contractMapper.selectList(any())).thenReturn(List.of(contract(1L, "BTC-USDT-SWAP", 100, 0)));
+        long v1 = registry.version();
+        registry.reload();
+
+        assertEquals(100, registry.listed("BTC-USDT-SWAP").getMmr());
+        assertEquals(120L, registry.markPrice("BTC-USDT-SWAP"));
+        assertTrue(registry.version() > v1);
+    }
+
+    private static SwapContract contract(long id, String symbol, int mmr, int status) {
+        SwapContract c = new SwapContract();
+        c.setId(id);
+        c.setSymbol(symbol);
+        c.setQuote("USDT");
+        c.setMmr(mmr);
+        c.setStatus(status);
+        return c;
+    }
+
+    private static MarkPrice mark(String symbol, long price) {
+        MarkPrice mp = new MarkPrice();
+        mp.setSymbol(symbol);
+        mp.setMarkPrice(price);
+        return mp;
+    }
+}
@@ -0,0 +1,117 @@
+package com.web3.exchange.futures.engine;
+
+import com.web3.exchange.futures.entity.FuturesOrder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * FuturesMatchingEngine 单测：三种 STP 模式、同用户整档不再被丢弃、O(1) 撤单、买盘最优价优先。
+ */
+class FuturesMatchingEngineTest {
+
+    private static final String SYMBOL = "BTCUSDT";
+    private static final int OPEN_LONG = 1, OPEN_SHORT = 2;
+    private static final long MM = 1L, TAKER = 2L;
+
+    private long seq;
+
+    @Test
+    void cancelOldest_cancelsOwnLevelOrders_andKeepsMatching() {
+        FuturesMatchingEngine engine = new FuturesMatchingEngine(FuturesMatchingEngine.StpMode.CANCEL_OLDEST);
+        FuturesOrder own1 = rest(engine, ask(MM, 100, 5));
+        FuturesOrder other = rest(engine, ask(TAKER + 1, 100, 5));
+        FuturesOrder own2 = rest(engine, ask(MM, 100, 5));
+
+        FuturesMatchingEngine.FillResult r = engine.place(bid(MM, 100, 5));
+
+        assertEquals(List.of(own1, own2), r.cancelledMakers);
+        assertEquals(10, r.makerReleases.stream().mapToLong(FuturesMatchingEngine.StpRelease::quantity).sum());
+        assertTrue(r.fullyFilled);
+        assertEquals(0, other.getRemaining());
+        assertArrayEquals(new long[]{0, 0}, engine.best(SYMBOL));
+    }
+
+    @Test
+    void cancelNewest_keepsRestingOrders_andDropsTakerRemainder() {
+        FuturesMatchingEngine engine = new FuturesMatchingEngine(FuturesMatchingEngine.StpMode.CANCEL_NEWEST);
+        rest(engine, ask(MM, 100, 5));
+        rest(engine, ask(TAKER, 101, 5));
+
+        FuturesOrder taker = bid(MM, 101, 8);
+        FuturesMatchingEngine.FillResult r = engine.place(taker);
+
+        assertTrue(r.takerCancelled);
+        assertEquals(8, r.takerReleased);
+        assertTrue(r.fills.isEmpty());
+        // 原实现会把整档同用户挂单从簿中丢掉；现在挂单保留，taker 也不挂簿
+        assertArrayEquals(new long[]{0, 100}, engine.best(SYMBOL));
+    }
+
+    @Test
+    void decrementBoth_reducesBothWithoutFill() {
+        FuturesMatchingEngine engine = new FuturesMatchingEngine(FuturesMatchingEngine.StpMode.DECREMENT_BOTH);
+        FuturesOrder own = rest(engine, ask(MM, 100, 3));
+        FuturesOrder other = rest(engine, ask(TAKER, 100, 10));
+
+        FuturesOrder taker = bid(MM, 100, 5);
+        FuturesMatchingEngine.FillResult r = engine.place(taker);
+
+        assertEquals(List.of(own), r.cancelledMakers);
+        assertEquals(3, r.takerReleased);
+        assertEquals(2, taker.getFilled());
+        assertFalse(r.fullyFilled);
+        assertEquals(8, other.getRemaining());
+        assertEquals(2, r.fills.size());
+    }
+
+    @Test
+    void cancel_removesOrder_andSellTakerHitsHighestBid() {
+        FuturesMatchingEngine engine = new FuturesMatchingEngine();
+        FuturesOrder low = rest(engine, bid(TAKER, 99, 5));
+        FuturesOrder high = rest(engine, bid(TAKER, 101, 5));
+        assertArrayEquals(new long[]{101, 0}, engine.best(SYMBOL));
+
+        FuturesMatchingEngine.FillResult r = engine.place(ask(MM, 90, 5));
+        assertEquals(101, r.fills.get(0).getPrice());
+        assertEquals(0, high.getRemaining());
+
+        assertTrue(engine.cancel(SYMBOL, low.getOrderNo()));
+        assertFalse(engine.cancel(SYMBOL, low.getOrderNo()));
+        assertArrayEquals(new long[]{0, 0}, engine.best(SYMBOL));
+    }
+
+    /** 挂一张不交叉的限价单。 */
+    private static FuturesOrder rest(FuturesMatchingEngine engine, FuturesOrder o) {
+        engine.restore(SYMBOL, o);
+        return o;
+    }
+
+    private FuturesOrder bid(long userId, long price, long qty) {
+        return order(userId, OPEN_LONG, price, qty);
+    }
+
+    private FuturesOrder ask(long userId, long price, long qty) {
+        return order(userId, OPEN_SHORT, price, qty);
+    }
+
+    private FuturesOrder order(long userId, int side, long price, long qty) {
+        FuturesOrder o = new FuturesOrder();
+        o.setOrderNo("F" + (++seq));
+        o.setUserId(userId);
+        o.setSymbol(SYMBOL);
+        o.setSide(side);
+        o.setOrderType(1);
+        o.setPrice(price);
+        o.setQuantity(qty);
+        o.setRemaining(qty);
+        o.setFilled(0L);
+        o.setLeverage(10);
+        return o;
+    }
+}
@@ -0,0 +1,83 @@
+package com.web3.exchange.futures.engine;
+
+import com.web3.exchange.futures.entity.FuturesPosition;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LiquidationIndex 单测：强平价公式、按标记价只取越过阈值的多/空仓、平仓移出、对账不覆盖新写入。
+ */
+class LiquidationIndexTest {
+
+    private static final String SYMBOL = "BTCUSDT";
+    private static final long COIN = 1_0000_0000L;
+    private static final int MMR = 50;
+
+    @Test
+    void liquidationPrice_matchesIsolatedMarginFormula() {
+        // 多仓 100U 开 1 张、保证金 10U、MMR 0.5%：(100 − 10) / 0.995
+        assertEquals(9045226131L, LiquidationIndex.liquidationPrice(1, COIN, 100 * COIN, 10 * COIN, MMR));
+        // 空仓：(100 + 10) / 1.005
+        assertEquals(10945273631L, LiquidationIndex.liquidationPrice(2, COIN, 100 * COIN, 10 * COIN, MMR));
+        assertEquals(0L, LiquidationIndex.liquidationPrice(1, 0, 100 * COIN, 10 * COIN, MMR));
+    }
+
+    @Test
+    void crossed_returnsOnlyPositionsPastThreshold() {
+        LiquidationIndex index = new LiquidationIndex();
+        index.track(pos(1, 1, 100, 10));   // 强平价 ≈ 90.45
+        index.track(pos(2, 1, 100, 50));   // ≈ 50.25
+        index.track(pos(3, 2, 100, 10));   // ≈ 109.45
+        index.track(pos(4, 2, 100, 50));   // ≈ 149.25
+
+        assertTrue(index.crossed(SYMBOL, 100 * COIN).isEmpty());
+        assertEquals(List.of(1L), ids(index.crossed(SYMBOL, 90 * COIN)));
+        assertEquals(List.of(1L, 2L), ids(index.crossed(SYMBOL, 50 * COIN)));
+        assertEquals(List.of(3L), ids(index.crossed(SYMBOL, 110 * COIN)));
+
+        FuturesPosition closed = pos(1, 1, 100, 10);
+        closed.setStatus(1);
+        index.track(closed);
+        assertEquals(List.of(2L), ids(index.crossed(SYMBOL, 50 * COIN)));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void reconcile_dropsStale_andKeepsNewerWrites() {
+        LiquidationIndex index = new LiquidationIndex();
+        index.track(pos(1, 1, 100, 10));
+        index.track(pos(2, 1, 100, 10));
+        long since = index.version();
+
+        // 对账读库之后，仓位 2 又被成交加了保证金（强平价降到 ≈ 50.25）
+        index.track(pos(2, 1, 100, 50));
+        // 库快照：仓位 1 已不在，仓位 2 仍是旧值，仓位 3 为索引外新增
+        index.reconcile(List.of(pos(2, 1, 100, 10), pos(3, 1, 100, 10)), since);
+
+        assertEquals(2, index.size());
+        assertEquals(List.of(3L), ids(index.crossed(SYMBOL, 90 * COIN)));
+        assertEquals(List.of(3L, 2L), ids(index.crossed(SYMBOL, 50 * COIN)));
+    }
+
+    private static List<Long> ids(List<LiquidationIndex.Entry> entries) {
+        return entries.stream().map(LiquidationIndex.Entry::positionId).toList();
+    }
+
+    private static FuturesPosition pos(long id, int side, long entry, long margin) {
+        FuturesPosition p = new FuturesPosition();
+        p.setId(id);
+        p.setUserId(100 + id);
+        p.setSymbol(SYMBOL);
+        p.setSide(side);
+        p.setSize(COIN);
+        p.setEntryPrice(entry * COIN);
+        p.setIsolatedMargin(margin * COIN);
+        p.setStatus(0);
+        p.setLiqPrice(LiquidationIndex.liquidationPrice(p, MMR));
+        return p;
+    }
+}
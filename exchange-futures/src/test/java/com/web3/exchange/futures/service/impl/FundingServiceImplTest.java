@@ -0,0 +1,187 @@
+package com.web3.exchange.futures.service.impl;
+
+import com.web3.exchange.futures.engine.ContractRegistry;
+import com.web3.exchange.futures.entity.FundingSettle;
+import com.web3.exchange.futures.entity.FuturesPosition;
+import com.web3.exchange.futures.entity.SwapContract;
+import com.web3.exchange.futures.mapper.FundingSettleMapper;
+import com.web3.exchange.futures.mapper.FuturesPositionMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * FundingServiceImpl 单测（窗口表 / 持仓 / 账户用内存替身）：当期窗口从游标续跑、跨期后先补完上期未完成窗口再结算当期、
+ * 重复运行不重复扣费。
+ */
+class FundingServiceImplTest {
+
+    private static final String SYMBOL = "BTC-USDT-SWAP";
+    private static final long COIN = 1_0000_0000L;
+    /** 1 张 × 标记价 100 × 10 基点 */
+    private static final long FEE = COIN / 10;
+
+    private final ContractRegistry registry = mock(ContractRegistry.class);
+    private final FuturesPositionMapper positionMapper = mock(FuturesPositionMapper.class);
+    private final FundingSettleMapper settleMapper = mock(FundingSettleMapper.class);
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final TransactionTemplate tx = mock(TransactionTemplate.class);
+    private final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+
+    /** funding_time → 窗口 */
+    private final TreeMap<LocalDateTime, FundingSettle> windows = new TreeMap<>();
+    private final List<FuturesPosition> positions = new ArrayList<>();
+    private final Map<Long, Long> balances = new HashMap<>();
+    private FundingServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        executor.setCorePoolSize(2);
+        executor.initialize();
+        service = new FundingServiceImpl(registry, positionMapper, settleMapper, jdbc, tx, executor);
+        ReflectionTestUtils.setField(service, "intervalMinutes", 60);
+        ReflectionTestUtils.setField(service, "pageSize", 2);
+
+        SwapContract c = new SwapContract();
+        c.setId(1L);
+        c.setSymbol(SYMBOL);
+        c.setQuote("USDT");
+        when(registry.listed()).thenReturn(List.of(c));
+        when(registry.markPrice(SYMBOL)).thenReturn(100 * COIN);
+        for (long id = 1; id <= 4; id++) {
+            FuturesPosition p = new FuturesPosition();
+            p.setId(id);
+            p.setUserId(id);
+            p.setSide(id % 2 == 1 ? 1 : 2);
+            p.setSize(COIN);
+            positions.add(p);
+        }
+        wireFakes();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void settleAll_finishesPartialPreviousWindowBeforeCurrent_andRerunIsNoop() {
+        // 上期窗口在第一页（持仓 1、2）提交后中断，本次运行已跨入新一期
+        FundingSettle previous = window(currentWindow().minusHours(1));
+        previous.setCursorId(2L);
+        previous.setPositionCount(2);
+        windows.put(previous.getFundingTime(), previous);
+
+        assertEquals(2 + 4, service.settleAll());
+        assertEquals(1, previous.getStatus());
+        assertEquals(4, previous.getPositionCount());
+        FundingSettle current = windows.get(currentWindow());
+        assertEquals(1, current.getStatus());
+        assertEquals(4, current.getPositionCount());
+        // 多头付费、空头收费；持仓 3、4 在上期剩余部分与当期各结算一次
+        assertEquals(Map.of(1L, -FEE, 2L, FEE, 3L, -2 * FEE, 4L, 2 * FEE), balances);
+
+        assertEquals(0, service.settleAll());
+        assertEquals(Map.of(1L, -FEE, 2L, FEE, 3L, -2 * FEE, 4L, 2 * FEE), balances);
+        assertEquals(2, windows.size());
+    }
+
+    @Test
+    void settleAll_resumesCurrentWindowFromCursor() {
+        FundingSettle current = window(currentWindow());
+        current.setCursorId(3L);
+        current.setPositionCount(3);
+        windows.put(current.getFundingTime(), current);
+
+        assertEquals(1, service.settleAll());
+        assertEquals(1, current.getStatus());
+        assertEquals(4, current.getPositionCount());
+        assertEquals(Map.of(4L, FEE), balances);
+        assertEquals(0, service.settleAll());
+    }
+
+    /** 与实现一致的当期对齐（60 分钟周期）。 */
+    private static LocalDateTime currentWindow() {
+        long period = 60 * 60_000L;
+        long start = Math.floorDiv(System.currentTimeMillis(), period) * period;
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneId.systemDefault());
+    }
+
+    private static FundingSettle window(LocalDateTime fundingTime) {
+        FundingSettle w = new FundingSettle();
+        w.setId((long) fundingTime.getHour() + 1000);
+        w.setSymbol(SYMBOL);
+        w.setRate(10);
+        w.setMarkPrice(100 * COIN);
+        w.setFundingTime(fundingTime);
+        w.setStatus(0);
+        w.setCursorId(0L);
+        w.setPositionCount(0);
+        return w;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void wireFakes() {
+        when(tx.execute(any())).thenAnswer(inv ->
+                ((TransactionCallback<Object>) inv.getArgument(0)).doInTransaction(mock(TransactionStatus.class)));
+        when(settleMapper.selectWindow(anyString(), any())).thenAnswer(inv -> windows.get(inv.<LocalDateTime>getArgument(1)));
+        when(settleMapper.selectUnfinished(anyString())).thenAnswer(inv ->
+                windows.values().stream().filter(w -> w.getStatus() == 0).toList());
+        when(positionMapper.selectFundingPage(anyString(), anyLong(), anyInt())).thenAnswer(inv -> {
+            long after = inv.getArgument(1);
+            int limit = inv.getArgument(2);
+            return positions.stream().filter(p -> p.getId() > after).limit(limit).toList();
+        });
+        when(jdbc.batchUpdate(anyString(), anyList())).thenAnswer(inv -> {
+            for (Object[] a : inv.<List<Object[]>>getArgument(1)) {
+                balances.merge((Long) a[3], (Long) a[0], Long::sum);
+            }
+            return new int[0];
+        });
+        when(jdbc.update(anyString(), any(Object[].class))).thenAnswer(inv -> {
+            String sql = inv.getArgument(0);
+            Object[] a = Arrays.copyOfRange(inv.getArguments(), 1, inv.getArguments().length);
+            if (sql.startsWith("INSERT IGNORE INTO t_funding_settle")) {
+                LocalDateTime t = ((Timestamp) a[5]).toLocalDateTime();
+                windows.putIfAbsent(t, window(t));
+                return 1;
+            }
+            // ADVANCE_CURSOR: cursor_id, +count, status WHERE id, cursor_id(from), status=0
+            for (FundingSettle w : windows.values()) {
+                if (w.getId().equals(a[3]) && w.getCursorId().equals(a[4]) && w.getStatus() == 0) {
+                    w.setCursorId((Long) a[0]);
+                    w.setPositionCount(w.getPositionCount() + (Integer) a[1]);
+                    w.setStatus((Integer) a[2]);
+                    return 1;
+                }
+            }
+            return 0;
+        });
+    }
+}
@@ -0,0 +1,143 @@
+package com.web3.exchange.futures.service.impl;
+
+import com.web3.exchange.futures.dto.PlaceFuturesOrderDTO;
+import com.web3.exchange.futures.engine.ContractRegistry;
+import com.web3.exchange.futures.engine.FuturesMatchingEngine;
+import com.web3.exchange.futures.engine.LiquidationIndex;
+import com.web3.exchange.futures.entity.FuturesOrder;
+import com.web3.exchange.futures.entity.SwapContract;
+import com.web3.exchange.futures.mapper.FuturesFillMapper;
+import com.web3.exchange.futures.mapper.FuturesOrderMapper;
+import com.web3.exchange.futures.mapper.FuturesPositionMapper;
+import com.web3.exchange.futures.service.FuturesAccountService;
+import com.web3.exchange.futures.service.MarkPriceService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * FuturesTradeServiceImpl 单测（t_futures_order 与保证金账户用内存替身）：STP 双减后挂单的剩余量落库，
+ * 之后撤单只释放剩余部分的保证金，冻结与释放总额相等。
+ */
+class FuturesTradeServiceImplTest {
+
+    private static final String SYMBOL = "BTC-USDT-SWAP";
+    private static final long COIN = 1_0000_0000L;
+    private static final long USER = 7L;
+
+    private final FuturesOrderMapper orderMapper = mock(FuturesOrderMapper.class);
+    private final FuturesAccountService accountService = mock(FuturesAccountService.class);
+    private final ContractRegistry registry = mock(ContractRegistry.class);
+
+    /** orderNo → 库中订单行 */
+    private final Map<String, FuturesOrder> rows = new HashMap<>();
+    private long frozen;
+    private long released;
+    private FuturesTradeServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        SwapContract c = new SwapContract();
+        c.setSymbol(SYMBOL);
+        c.setBase("BTC");
+        c.setQuote("USDT");
+        c.setPriceDecimals(8);
+        c.setQtyDecimals(8);
+        c.setMaxLeverage(100);
+        c.setMmr(50);
+        when(registry.listed(SYMBOL)).thenReturn(c);
+        when(registry.contract(SYMBOL)).thenReturn(c);
+
+        when(orderMapper.insert(any(FuturesOrder.class))).thenAnswer(inv -> {
+            FuturesOrder o = inv.getArgument(0);
+            rows.put(o.getOrderNo(), copy(o));
+            return 1;
+        });
+        when(orderMapper.updateMatched(anyString(), anyLong(), anyLong(), anyInt())).thenAnswer(inv -> {
+            FuturesOrder row = rows.get(inv.<String>getArgument(0));
+            long remaining = inv.getArgument(1);
+            if (row == null || row.getStatus() > 1 || row.getRemaining() < remaining) {
+                return 0;
+            }
+            row.setRemaining(remaining);
+            row.setFilled(inv.getArgument(2));
+            row.setStatus(inv.getArgument(3));
+            return 1;
+        });
+        when(orderMapper.cancelResting(anyString(), any(), anyLong())).thenAnswer(inv -> {
+            FuturesOrder row = rows.get(inv.<String>getArgument(0));
+            if (row == null || !row.getUserId().equals(inv.getArgument(1)) || row.getStatus() > 1) {
+                return 0;
+            }
+            row.setStatus(3);
+            row.setRemaining(inv.getArgument(2));
+            return 1;
+        });
+        when(accountService.addPositionMargin(any(), anyString(), anyLong())).thenAnswer(inv -> {
+            frozen += inv.<Long>getArgument(2);
+            return null;
+        });
+        when(accountService.releasePositionMargin(any(), anyString(), anyLong())).thenAnswer(inv -> {
+            released += inv.<Long>getArgument(2);
+            return null;
+        });
+
+        service = new FuturesTradeServiceImpl(orderMapper, mock(FuturesPositionMapper.class),
+                mock(FuturesFillMapper.class), new FuturesMatchingEngine(FuturesMatchingEngine.StpMode.DECREMENT_BOTH),
+                accountService, mock(MarkPriceService.class), mock(LiquidationIndex.class), registry);
+    }
+
+    private static PlaceFuturesOrderDTO limit(int side, String qty) {
+        PlaceFuturesOrderDTO dto = new PlaceFuturesOrderDTO();
+        dto.setSymbol(SYMBOL);
+        dto.setSide(side);
+        dto.setOrderType(1);
+        dto.setPrice("100");
+        dto.setQuantity(qty);
+        dto.setLeverage(10);
+        return dto;
+    }
+
+    private static FuturesOrder copy(FuturesOrder o) {
+        FuturesOrder c = new FuturesOrder();
+        c.setOrderNo(o.getOrderNo());
+        c.setUserId(o.getUserId());
+        c.setSide(o.getSide());
+        c.setPrice(o.getPrice());
+        c.setQuantity(o.getQuantity());
+        c.setRemaining(o.getRemaining());
+        c.setFilled(o.getFilled());
+        c.setLeverage(o.getLeverage());
+        c.setStatus(o.getStatus());
+        return c;
+    }
+
+    @Test
+    void decrementBoth_thenCancel_releasesMakerMarginOnce() {
+        FuturesOrder maker = service.placeOrder(USER, limit(1, "10"));
+        // 同用户反向开空 4 张：双减，taker 减到 0 撤销，挂单剩 6
+        FuturesOrder taker = service.placeOrder(USER, limit(2, "4"));
+        assertEquals(3, taker.getStatus());
+        assertEquals(6 * COIN, rows.get(maker.getOrderNo()).getRemaining());
+
+        assertTrue(service.cancel(USER, SYMBOL, maker.getOrderNo()));
+        assertFalse(service.cancel(USER, SYMBOL, maker.getOrderNo()));
+
+        assertEquals(3, rows.get(maker.getOrderNo()).getStatus());
+        // 冻结：10 张 + 4 张（×100 / 10 倍杠杆）；释放：taker 双减 4 + 挂单双减 4 + 撤单剩余 6
+        assertEquals(140 * COIN, frozen);
+        assertEquals(frozen, released);
+    }
+}
@@ -0,0 +1,78 @@
+package com.web3.exchange.market.config;
+
+import com.web3.exchange.market.market.KlineInterval;
+import com.web3.exchange.market.market.model.Kline;
+import com.web3.exchange.market.market.model.Ticker;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 行情 WebSocket 二进制帧编码（订阅时 {@code "format":"binary"} 选用，见 docs/ws-realtime.md §七）。
+ * <p>
+ * 定长布局、小端序，价格 / 数量与 JSON 一样是 Long 最小单位（i64），不做任何缩放：
+ * <pre>
+ * 帧头   u8 version(=2) | u8 type | u8 symbolLen | symbol(UTF-8, symbolLen 字节)
+ * ticker type=1：i64 lastPrice | i64 change24h | i64 high24h | i64 low24h | i64 volume24h | i64 quoteVolume24h
+ *                | i64 openPrice | i64 count24h
+ * kline  type=2：u8 period({@link KlineInterval#code}) | i64 openTime | i64 open | i64 high | i64 low | i64 close | i64 volume | i64 quoteVolume
+ * </pre>
+ * type 3（depth）/ 4（trade）预留给后续盘口与逐笔成交频道。缺省字段（null）编码为 0。
+ * </p>
+ * <p>version 2 在 ticker 末尾追加 openPrice / count24h，覆盖 {@link Ticker} 全部行情字段，前 6 个字段布局不变。</p>
+ */
+public final class MarketBinaryCodec {
+
+    public static final byte VERSION = 2;
+    public static final byte TYPE_TICKER = 1;
+    public static final byte TYPE_KLINE = 2;
+    public static final byte TYPE_DEPTH = 3;
+    public static final byte TYPE_TRADE = 4;
+
+    private MarketBinaryCodec() {
+    }
+
+    /** 编码 ticker 帧。 */
+    public static ByteBuffer encodeTicker(String symbol, Ticker t) {
+        byte[] sym = symbol.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = header(TYPE_TICKER, sym, 8 * Long.BYTES);
+        buf.putLong(nz(t.getLastPrice()))
+                .putLong(nz(t.getChange24h()))
+                .putLong(nz(t.getHigh24h()))
+                .putLong(nz(t.getLow24h()))
+                .putLong(nz(t.getVolume24h()))
+                .putLong(nz(t.getQuoteVolume24h()))
+                .putLong(nz(t.getOpenPrice()))
+                .putLong(nz(t.getCount24h()));
+        return buf.flip();
+    }
+
+    /** 编码 kline 帧。 */
+    public static ByteBuffer encodeKline(String symbol, KlineInterval interval, Kline k) {
+        byte[] sym = symbol.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = header(TYPE_KLINE, sym, 1 + 7 * Long.BYTES);
+        buf.put((byte) interval.code())
+                .putLong(nz(k.getOpenTime()))
+                .putLong(nz(k.getOpen()))
+                .putLong(nz(k.getHigh()))
+                .putLong(nz(k.getLow()))
+                .putLong(nz(k.getClose()))
+                .putLong(nz(k.getVolume()))
+                .putLong(nz(k.getQuoteVolume()));
+        return buf.flip();
+    }
+
+    private static ByteBuffer header(byte type, byte[] symbol, int bodyBytes) {
+        if (symbol.length > 0xFF) {
+            throw new IllegalArgumentException("symbol 过长: " + symbol.length);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(3 + symbol.length + bodyBytes).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put(VERSION).put(type).put((byte) symbol.length).put(symbol);
+        return buf;
+    }
+
+    private static long nz(Long v) {
+        return v == null ? 0L : v;
+    }
+}
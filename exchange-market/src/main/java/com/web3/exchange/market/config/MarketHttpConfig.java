@@ -0,0 +1,26 @@
+package com.web3.exchange.market.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * 行情模块 HTTP 客户端配置。
+ * <p>
+ * {@link RestTemplate} 供外部行情源（Binance 深度快照、CoinGecko 轮询）共用；配置连接/读超时，
+ * 外部接口挂起时快照线程与定时拉取不会无限阻塞。
+ * </p>
+ */
+@Configuration
+public class MarketHttpConfig {
+
+    @Bean
+    public RestTemplate marketRestTemplate(@Value("${server-settings.external-price.http-timeout-ms:5000}") int timeoutMs) {
+        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
+        factory.setConnectTimeout(timeoutMs);
+        factory.setReadTimeout(timeoutMs);
+        return new RestTemplate(factory);
+    }
+}
@@ -9,46 +9,51 @@ import com.web3.exchange.market.market.model.Ticker;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 行情 WebSocket 处理器（实时推送 ticker / kline）。
  * <p>
  * 协议见 docs/ws-realtime.md：客户端发 {@code {"op":"subscribe","channel":"ticker|kline","symbol":"BTC/USDT"[,"period":"1m"]}}
- * / {@code unsubscribe} / {@code ping}；服务端回订阅确认 / pong / error，并约 1s 推送一次最新行情。
+ * / {@code unsubscribe} / {@code ping}；服务端回订阅确认 / pong / error，订阅成功立即补发一帧当前行情，
+ * 之后由 {@link MarketWsDispatcher} 在行情变化时推送。
  * </p>
- * <p>维护 {@code session -> 订阅key集合}（如 {@code ticker:BTC/USDT}、{@code kline:BTC/USDT:1m}），重复订阅幂等。
- * 序列化使用 Spring 注入的 {@link ObjectMapper}，Long 金额/价格保留为 JSON number。</p>
+ * <p>订阅关系（频道 key 如 {@code ticker:BTC/USDT}、{@code kline:BTC/USDT:1m}）与出站发送统一由
+ * {@link MarketWsBroadcaster} 维护，重复订阅幂等；本类只负责协议解析与行情帧构建。
+ * 序列化使用 Spring 注入的 {@link ObjectMapper}，Long 金额/价格保留为 JSON number；
+ * 订阅时指定 {@code "format":"binary"} 则推送 {@link MarketBinaryCodec} 定长小端二进制帧（控制回复仍为 JSON）。</p>
  */
 @Component
 public class MarketWebSocketHandler extends TextWebSocketHandler {
 
     private static final Logger log = LoggerFactory.getLogger(MarketWebSocketHandler.class);
 
-    /** session -> 订阅 key 集合（ticker:{symbol} / kline:{symbol}:{period}） */
-    private final Map<WebSocketSession, Set<String>> subscriptions = new ConcurrentHashMap<>();
+    /** 二进制订阅的频道 key 后缀 */
+    public static final String BINARY_SUFFIX = "|bin";
 
     private final ObjectMapper objectMapper;
     private final MarketAggregator aggregator;
+    private final MarketWsBroadcaster broadcaster;
 
-    public MarketWebSocketHandler(ObjectMapper objectMapper, MarketAggregator aggregator) {
+    public MarketWebSocketHandler(ObjectMapper objectMapper, MarketAggregator aggregator,
+                                  MarketWsBroadcaster broadcaster) {
         this.objectMapper = objectMapper;
         this.aggregator = aggregator;
+        this.broadcaster = broadcaster;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         // 空闲超时(60s)由 ServletServerContainerFactoryBean 统一配置；此处仅登记 session
-        subscriptions.put(session, ConcurrentHashMap.newKeySet());
+        broadcaster.register(session);
         log.debug("[market-ws] 连接建立 sessionId={}", session.getId());
     }
 
@@ -71,14 +76,14 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        subscriptions.remove(session);
+        broadcaster.unregister(session);
         log.debug("[market-ws] 连接关闭 sessionId={} status={}", session.getId(), status);
     }
 
     @Override
     public void handleTransportError(WebSocketSession session, Throwable exception) {
         log.warn("[market-ws] 传输异常 sessionId={} err={}", session.getId(), exception.getMessage());
-        subscriptions.remove(session);
+        broadcaster.unregister(session);
     }
 
     private void doSubscribe(WebSocketSession session, JsonNode node) {
@@ -86,25 +91,48 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
         if (key == null) {
             return; // 错误已发送
         }
-        subscriptions.computeIfAbsent(session, s -> ConcurrentHashMap.newKeySet()).add(key); // 幂等
+        boolean added = broadcaster.subscribe(session, key); // 幂等
         log.debug("[market-ws] 订阅 {} sessionId={}", key, session.getId());
-        send(session, buildMessage(Map.of("channel", "subscribed", "channelName", key)));
+        send(session, buildMessage(isBinary(key)
+                ? Map.of("channel", "subscribed", "channelName", baseKey(key), "format", "binary")
+                : Map.of("channel", "subscribed", "channelName", key)));
+        if (added) {
+            // 变化驱动推送：行情不动就不会有下一帧，新订阅者先拿一帧当前快照
+            WebSocketMessage<?> snapshot = buildChannelFrame(key);
+            if (snapshot != null) {
+                broadcaster.send(session, snapshot);
+            }
+        }
     }
 
+    /** 取消订阅：指定 format 只取消该格式；未指定时 JSON 与二进制订阅一并取消。 */
     private void doUnsubscribe(WebSocketSession session, JsonNode node) {
         String key = resolveKey(node, session);
         if (key == null) {
             return;
         }
-        Set<String> set = subscriptions.get(session);
-        if (set != null) {
-            set.remove(key);
+        broadcaster.unsubscribe(session, key);
+        if (!node.hasNonNull("format")) {
+            broadcaster.unsubscribe(session, key + BINARY_SUFFIX);
         }
         log.debug("[market-ws] 取消订阅 {} sessionId={}", key, session.getId());
     }
 
-    /** 解析并校验订阅 key；参数非法时发送 error 并返回 null。 */
+    /**
+     * 解析并校验订阅 key；参数非法时发送 error 并返回 null。
+     * {@code "format":"binary"} 的订阅使用独立频道 key（追加 {@link #BINARY_SUFFIX}），与 JSON 订阅者分开序列化与分发。
+     */
     private String resolveKey(JsonNode node, WebSocketSession session) {
+        String format = node.path("format").asText("json");
+        String suffix;
+        if ("binary".equalsIgnoreCase(format)) {
+            suffix = BINARY_SUFFIX;
+        } else if ("json".equalsIgnoreCase(format)) {
+            suffix = "";
+        } else {
+            sendError(session, "不支持的 format: " + format);
+            return null;
+        }
         String channel = node.path("channel").asText("");
         String symbol = node.path("symbol").asText("").trim();
         if (symbol.isEmpty()) {
@@ -112,7 +140,7 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
             return null;
         }
         if ("ticker".equals(channel)) {
-            return "ticker:" + symbol;
+            return "ticker:" + symbol + suffix;
         }
         if ("kline".equals(channel)) {
             String period = node.path("period").asText("").trim();
@@ -121,12 +149,54 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
                 sendError(session, "不支持的 kline period: " + period);
                 return null;
             }
-            return "kline:" + symbol + ":" + iv.intervalName();
+            return "kline:" + symbol + ":" + iv.intervalName() + suffix;
         }
         sendError(session, "不支持的 channel: " + channel);
         return null;
     }
 
+    /** 频道 key 是否为二进制订阅。 */
+    public static boolean isBinary(String key) {
+        return key.endsWith(BINARY_SUFFIX);
+    }
+
+    /** 去掉二进制后缀的频道 key。 */
+    public static String baseKey(String key) {
+        return isBinary(key) ? key.substring(0, key.length() - BINARY_SUFFIX.length()) : key;
+    }
+
+    /** 按频道 key 构建推送帧：二进制订阅为 {@link BinaryMessage}，否则为 JSON {@link TextMessage}；暂无行情返回 null。 */
+    public WebSocketMessage<?> buildChannelFrame(String key) {
+        if (!isBinary(key)) {
+            String json = buildChannelMessage(key);
+            return json == null ? null : new TextMessage(json);
+        }
+        String base = baseKey(key);
+        if (base.startsWith("ticker:")) {
+            String symbol = base.substring("ticker:".length());
+            Ticker t = aggregator.getTicker(symbol);
+            return t == null ? null : new BinaryMessage(MarketBinaryCodec.encodeTicker(symbol, t));
+        }
+        if (base.startsWith("kline:")) {
+            String[] parts = base.split(":", 3); // kline, symbol, period
+            KlineInterval iv = KlineInterval.fromName(parts[2]);
+            Kline k = iv == null ? null : aggregator.getLatestKline(parts[1], parts[2]);
+            return k == null ? null : new BinaryMessage(MarketBinaryCodec.encodeKline(parts[1], iv, k));
+        }
+        return null;
+    }
+
+    /** 按频道 key 构建推送 JSON；不支持的频道或暂无行情返回 null。 */
+    public String buildChannelMessage(String key) {
+        if (key.startsWith("ticker:")) {
+            return buildTickerMessage(key);
+        }
+        if (key.startsWith("kline:")) {
+            return buildKlineMessage(key);
+        }
+        return null;
+    }
+
     /**
      * 构建 ticker 推送 JSON；该 symbol 暂无行情时返回 null（调用方跳过本次推送）。
      */
@@ -157,11 +227,10 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
         String[] parts = key.split(":", 3); // kline, symbol, period
         String symbol = parts[1];
         String period = parts[2];
-        List<Kline> list = aggregator.getKlines(symbol, period, 1);
-        if (list.isEmpty()) {
+        Kline k = aggregator.getLatestKline(symbol, period);
+        if (k == null) {
             return null;
         }
-        Kline k = list.get(list.size() - 1);
         Map<String, Object> data = new LinkedHashMap<>();
         data.put("openTime", k.getOpenTime());
         data.put("open", k.getOpen());
@@ -188,34 +257,12 @@ public class MarketWebSocketHandler extends TextWebSocketHandler {
         }
     }
 
-    /** 向 session 发送文本帧；失败则清理订阅。 */
+    /** 向 session 发送文本帧（经该连接的出站队列，不阻塞调用线程）。 */
     public void send(WebSocketSession session, String payload) {
-        if (payload == null) {
-            return;
-        }
-        try {
-            if (session.isOpen()) {
-                session.sendMessage(new TextMessage(payload));
-            } else {
-                subscriptions.remove(session);
-            }
-        } catch (Exception e) {
-            log.warn("[market-ws] 发送失败 sessionId={} err={}", session.getId(), e.getMessage());
-            subscriptions.remove(session);
-        }
+        broadcaster.send(session, payload);
     }
 
     private void sendError(WebSocketSession session, String message) {
         send(session, buildMessage(Map.of("channel", "error", "message", message)));
     }
-
-    /** 当前订阅表（仅供定时推送遍历；weakly-consistent 并发安全）。 */
-    public Map<WebSocketSession, Set<String>> subscriptions() {
-        return subscriptions;
-    }
-
-    /** 移除某 session 的订阅（失效连接清理用）。 */
-    public void removeSession(WebSocketSession session) {
-        subscriptions.remove(session);
-    }
 }
@@ -0,0 +1,362 @@
+package com.web3.exchange.market.config;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 行情 WebSocket 广播器：频道 → 订阅者集合，<b>一个频道一次序列化、多路分发</b>。
+ * <p>
+ * 每个连接一个有界出站队列，{@link #broadcast} 只把同一个 {@link TextMessage} 引用放入各订阅者队列即返回，
+ * 真正的 {@code sendMessage} 在 {@code market-ws-send-*} 线程池中按连接串行执行（同一连接同时只有一个发送者，
+ * 满足容器对单连接发送不可并发的要求）；每次最多连续发送 {@link #DRAIN_BATCH} 帧后让出线程，其余连接不被长队列饿死。
+ * </p>
+ * <p>慢消费者策略（{@code market.ws.slow-consumer-policy}）只作用于广播的行情帧，
+ * 经 {@link #send} 发出的控制帧（订阅确认 / pong / error / 订阅快照）不计入容量、不会被丢弃：
+ * <ul>
+ *   <li>{@code drop}（默认）：队列满时丢弃最旧一帧行情——行情帧后一帧覆盖前一帧，丢旧留新；</li>
+ *   <li>{@code disconnect}：队列满时关闭连接（{@link CloseStatus#SESSION_NOT_RELIABLE}），由客户端重连后重新订阅。</li>
+ * </ul>
+ * 无论哪种策略，单帧发送阻塞超过 {@code market.ws.send-time-limit-ms} 的连接都会被关闭：{@code market-ws-watchdog}
+ * 定时巡检正在发送的连接，不依赖下一帧到来；关闭在独立的 {@code market-ws-close-*} 线程执行
+ * （关闭底层连接使阻塞中的发送线程抛错返回），不占用也不排队在发送线程池上。</p>
+ */
+@Component
+public class MarketWsBroadcaster {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketWsBroadcaster.class);
+
+    /** 单次 drain 最多连续发送的帧数，超过后重新提交让出发送线程 */
+    static final int DRAIN_BATCH = 64;
+
+    /** 频道 → 订阅者（ticker:{symbol} / kline:{symbol}:{period}） */
+    private final Map<String, Set<Subscriber>> channels = new ConcurrentHashMap<>();
+    /** sessionId → 订阅者 */
+    private final Map<String, Subscriber> sessions = new ConcurrentHashMap<>();
+
+    private final int queueCapacity;
+    private final boolean disconnectSlow;
+    private final long sendTimeLimitNanos;
+    private final ExecutorService sendPool;
+    /** 关闭连接专用（关闭可能阻塞在慢连接上，不能占用发送线程） */
+    private final ExecutorService closePool;
+    /** 发送超时巡检 */
+    private final ScheduledExecutorService watchdog;
+    private final AtomicLong dropped = new AtomicLong();
+
+    public MarketWsBroadcaster(@Value("${market.ws.send-queue-size:256}") int queueCapacity,
+                               @Value("${market.ws.slow-consumer-policy:drop}") String slowConsumerPolicy,
+                               @Value("${market.ws.send-time-limit-ms:10000}") long sendTimeLimitMs,
+                               @Value("${market.ws.send-threads:0}") int sendThreads) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.disconnectSlow = "disconnect".equalsIgnoreCase(slowConsumerPolicy);
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, sendTimeLimitMs));
+        int threads = sendThreads > 0 ? sendThreads : Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger seq = new AtomicInteger();
+        this.sendPool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "market-ws-send-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        AtomicInteger closeSeq = new AtomicInteger();
+        this.closePool = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "market-ws-close-" + closeSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "market-ws-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        long checkMs = Math.max(10, Math.min(1000, sendTimeLimitMs / 2));
+        watchdog.scheduleWithFixedDelay(this::checkSendTimeouts, checkMs, checkMs, TimeUnit.MILLISECONDS);
+        log.info("[market-ws] 广播器就绪 sendThreads={} queue={} policy={} sendTimeLimitMs={}",
+                threads, this.queueCapacity, disconnectSlow ? "disconnect" : "drop", sendTimeLimitMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        watchdog.shutdownNow();
+        sendPool.shutdownNow();
+        closePool.shutdownNow();
+    }
+
+    /** 巡检：单帧发送已超过时限的连接直接断开（关闭底层连接使阻塞的发送线程返回）。 */
+    void checkSendTimeouts() {
+        long now = System.nanoTime();
+        for (Subscriber sub : sessions.values()) {
+            long started = sub.sendStartNanos;
+            if (started != 0 && now - started > sendTimeLimitNanos) {
+                sub.disconnect("单帧发送超时");
+            }
+        }
+    }
+
+    /** 登记新连接。 */
+    public void register(WebSocketSession session) {
+        sessions.put(session.getId(), new Subscriber(session));
+    }
+
+    /** 注销连接并退订其全部频道（幂等）。 */
+    public void unregister(WebSocketSession session) {
+        Subscriber sub = sessions.remove(session.getId());
+        if (sub != null) {
+            sub.closed = true;
+            for (String channel : sub.channels) {
+                leave(channel, sub);
+            }
+            sub.channels.clear();
+        }
+    }
+
+    /**
+     * 订阅频道（重复订阅幂等）。
+     *
+     * @return 是否为新订阅
+     */
+    public boolean subscribe(WebSocketSession session, String channel) {
+        Subscriber sub = sessions.computeIfAbsent(session.getId(), k -> new Subscriber(session));
+        if (sub.channels.add(channel)) {
+            // 与 leave 的「空集合即移除」在同一 compute 内串行，避免加入一个刚被移除的集合
+            channels.compute(channel, (k, set) -> {
+                Set<Subscriber> s = set != null ? set : ConcurrentHashMap.newKeySet();
+                s.add(sub);
+                return s;
+            });
+            return true;
+        }
+        return false;
+    }
+
+    /** 取消订阅频道。 */
+    public void unsubscribe(WebSocketSession session, String channel) {
+        Subscriber sub = sessions.get(session.getId());
+        if (sub != null && sub.channels.remove(channel)) {
+            leave(channel, sub);
+        }
+    }
+
+    private void leave(String channel, Subscriber sub) {
+        channels.computeIfPresent(channel, (k, set) -> {
+            set.remove(sub);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /** 当前有订阅者的频道（weakly-consistent 快照）。 */
+    public List<String> activeChannels() {
+        return new ArrayList<>(channels.keySet());
+    }
+
+    /** 某频道是否有订阅者。 */
+    public boolean hasSubscribers(String channel) {
+        return channels.containsKey(channel);
+    }
+
+    /**
+     * 向频道全部订阅者分发同一帧（调用方只序列化一次）。
+     *
+     * @return 入队的订阅者数
+     */
+    public int broadcast(String channel, String payload) {
+        return payload == null ? 0 : broadcast(channel, new TextMessage(payload));
+    }
+
+    /**
+     * 向频道全部订阅者分发同一帧（文本或二进制）。
+     *
+     * @return 入队的订阅者数
+     */
+    public int broadcast(String channel, WebSocketMessage<?> frame) {
+        Set<Subscriber> subs = channels.get(channel);
+        if (subs == null || frame == null) {
+            return 0;
+        }
+        int n = 0;
+        for (Subscriber sub : subs) {
+            if (sub.offer(frame, true)) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /** 向单个连接发送（订阅确认 / pong / error），与推送帧共用该连接的出站队列。 */
+    public void send(WebSocketSession session, String payload) {
+        if (payload != null) {
+            send(session, new TextMessage(payload));
+        }
+    }
+
+    /** 向单个连接发送一帧（文本或二进制），作为控制帧不受慢消费者丢弃策略影响。 */
+    public void send(WebSocketSession session, WebSocketMessage<?> frame) {
+        Subscriber sub = sessions.get(session.getId());
+        if (sub != null) {
+            sub.offer(frame, false);
+        }
+    }
+
+    /** 在线连接数。 */
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    /** 累计因慢消费丢弃的帧数。 */
+    public long droppedFrames() {
+        return dropped.get();
+    }
+
+    /** 出站队列中的一帧；droppable=false 的控制帧不计入容量、溢出时不被丢弃 */
+    private record Outbound(WebSocketMessage<?> message, boolean droppable) {
+    }
+
+    /**
+     * 单个连接：订阅的频道 + 有界出站队列。{@link #draining} 保证同一时刻至多一个发送线程在写该连接。
+     * {@link #queued} 只计行情帧，与队列中行情帧数量同增同减（每个元素恰好被移除一次、减一次）。
+     */
+    private final class Subscriber {
+        final WebSocketSession session;
+        final Set<String> channels = ConcurrentHashMap.newKeySet();
+        final ConcurrentLinkedQueue<Outbound> queue = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicBoolean closing = new AtomicBoolean();
+        /** 当前帧开始发送的时刻（nanoTime，0 = 未在发送） */
+        volatile long sendStartNanos;
+        volatile boolean closed;
+
+        Subscriber(WebSocketSession session) {
+            this.session = session;
+        }
+
+        /**
+         * 入队（不阻塞）；连接已关闭或按策略被断开返回 false。
+         *
+         * @param droppable 行情帧 true（受容量与慢消费者策略约束），控制帧 false
+         */
+        boolean offer(WebSocketMessage<?> frame, boolean droppable) {
+            if (closed) {
+                return false;
+            }
+            long started = sendStartNanos;
+            if (started != 0 && System.nanoTime() - started > sendTimeLimitNanos) {
+                disconnect("单帧发送超时");
+                return false;
+            }
+            if (droppable && queued.get() >= queueCapacity) {
+                if (disconnectSlow) {
+                    disconnect("出站队列已满");
+                    return false;
+                }
+                dropOldestMarketFrame();
+            }
+            Outbound out = new Outbound(frame, droppable);
+            if (droppable) {
+                queued.incrementAndGet();
+            }
+            queue.offer(out);
+            if (draining.compareAndSet(false, true)) {
+                sendPool.execute(this::drain);
+            }
+            return true;
+        }
+
+        /** 丢弃最旧的一帧行情（跳过控制帧）；并发时 remove 只会成功一次，计数随之只减一次。 */
+        private void dropOldestMarketFrame() {
+            for (Outbound o : queue) {
+                if (o.droppable() && queue.remove(o)) {
+                    queued.decrementAndGet();
+                    dropped.incrementAndGet();
+                    return;
+                }
+            }
+        }
+
+        private void drain() {
+            int sent = 0;
+            while (true) {
+                if (sent >= DRAIN_BATCH && !queue.isEmpty()) {
+                    // 让出发送线程：保持 draining 标志，排到其它连接之后继续
+                    sendPool.execute(this::drain);
+                    return;
+                }
+                Outbound out = queue.poll();
+                if (out == null) {
+                    draining.set(false);
+                    // 释放标志后复查：避免与 offer 的 CAS 交错导致帧滞留
+                    if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (out.droppable()) {
+                    queued.decrementAndGet();
+                }
+                if (closed) {
+                    continue;
+                }
+                WebSocketMessage<?> frame = out.message();
+                sent++;
+                sendStartNanos = System.nanoTime();
+                try {
+                    if (session.isOpen()) {
+                        // 二进制帧多连接共享同一缓冲区：各自发送独立 position 的视图
+                        session.sendMessage(frame instanceof BinaryMessage bin
+                                ? new BinaryMessage(bin.getPayload().duplicate(), bin.isLast()) : frame);
+                    } else {
+                        unregister(session);
+                    }
+                } catch (Exception e) {
+                    log.warn("[market-ws] 发送失败 sessionId={} err={}", session.getId(), e.getMessage());
+                    unregister(session);
+                } finally {
+                    sendStartNanos = 0;
+                }
+            }
+        }
+
+        void disconnect(String reason) {
+            if (!closing.compareAndSet(false, true)) {
+                return;
+            }
+            log.warn("[market-ws] 慢消费者断开 sessionId={} reason={} queued={}", session.getId(), reason, queued.get());
+            unregister(session);
+            Outbound out;
+            while ((out = queue.poll()) != null) {
+                if (out.droppable()) {
+                    queued.decrementAndGet();
+                }
+            }
+            // 关闭可能阻塞在同一条慢连接上，放到独立关闭线程执行
+            closePool.execute(() -> {
+                try {
+                    session.close(CloseStatus.SESSION_NOT_RELIABLE);
+                } catch (Exception e) {
+                    log.debug("[market-ws] 关闭慢连接异常 sessionId={} err={}", session.getId(), e.getMessage());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.web3.exchange.market.config;
+
+import com.web3.exchange.market.market.KlineInterval;
+import com.web3.exchange.market.market.MarketAggregator;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 行情变化驱动的 WebSocket 推送（合并分发器），取代原先 1s 定时全量轮询。
+ * <p>
+ * {@link MarketAggregator} 成交聚合 / 外部 ticker、K线注入后回调 {@link #onTickerChanged} / {@link #onKlineChanged}，
+ * 只把<b>有订阅者</b>的频道放入脏集合并唤醒分发线程 {@code market-ws-dispatch}；无人订阅的交易对只多一次 map 查找。
+ * </p>
+ * <p>
+ * 分发线程取出脏频道，每个频道按 {@code market.ws.ticker-min-interval-ms} / {@code market.ws.kline-min-interval-ms}
+ * 限频：距上次推送已满最小间隔则立即取最新数据序列化一次、经 {@link MarketWsBroadcaster} 分发；
+ * 未满则留在脏集合、到期再推。间隔内的多次变化合并为一帧（推的总是最新值），静止的频道不产生任何推送。
+ * </p>
+ */
+@Component
+public class MarketWsDispatcher implements MarketAggregator.ChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(MarketWsDispatcher.class);
+
+    private static final KlineInterval[] INTERVALS = KlineInterval.values();
+
+    private final MarketAggregator aggregator;
+    private final MarketWebSocketHandler handler;
+    private final MarketWsBroadcaster broadcaster;
+    private final long tickerMinIntervalNanos;
+    private final long klineMinIntervalNanos;
+
+    /** 待推送频道（同一频道多次变化只占一个位置） */
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    /** 频道 → 上次推送时刻（nanoTime）；频道无订阅者后移除 */
+    private final ConcurrentHashMap<String, Long> lastPushNanos = new ConcurrentHashMap<>();
+    /** symbol → 频道 key（[0] = ticker，[1 + ordinal] = kline，后半段为对应二进制订阅），避免每笔成交拼字符串 */
+    private final ConcurrentHashMap<String, String[]> channelKeys = new ConcurrentHashMap<>();
+
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    public MarketWsDispatcher(MarketAggregator aggregator, MarketWebSocketHandler handler, MarketWsBroadcaster broadcaster,
+                              @Value("${market.ws.ticker-min-interval-ms:50}") long tickerMinIntervalMs,
+                              @Value("${market.ws.kline-min-interval-ms:250}") long klineMinIntervalMs) {
+        this.aggregator = aggregator;
+        this.handler = handler;
+        this.broadcaster = broadcaster;
+        this.tickerMinIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, tickerMinIntervalMs));
+        this.klineMinIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, klineMinIntervalMs));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        Thread t = new Thread(this::loop, "market-ws-dispatch");
+        t.setDaemon(true);
+        worker = t;
+        t.start();
+        aggregator.setChangeListener(this);
+        log.info("[market-ws] 变化推送就绪 tickerMinIntervalMs={} klineMinIntervalMs={}",
+                TimeUnit.NANOSECONDS.toMillis(tickerMinIntervalNanos), TimeUnit.NANOSECONDS.toMillis(klineMinIntervalNanos));
+    }
+
+    @PreDestroy
+    public void stop() {
+        aggregator.setChangeListener(null);
+        running = false;
+        Thread t = worker;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    @Override
+    public void onTickerChanged(String symbol) {
+        markDirty(symbol, 0);
+    }
+
+    @Override
+    public void onKlineChanged(String symbol, KlineInterval interval) {
+        markDirty(symbol, 1 + interval.ordinal());
+    }
+
+    /** 同一行情频道的 JSON / 二进制两种订阅各自标脏。 */
+    private void markDirty(String symbol, int index) {
+        String[] k = keys(symbol);
+        markDirty(k[index]);
+        markDirty(k[k.length / 2 + index]);
+    }
+
+    private String[] keys(String symbol) {
+        return channelKeys.computeIfAbsent(symbol, s -> {
+            int n = 1 + INTERVALS.length;
+            String[] k = new String[n * 2];
+            k[0] = "ticker:" + s;
+            for (KlineInterval iv : INTERVALS) {
+                k[1 + iv.ordinal()] = "kline:" + s + ":" + iv.intervalName();
+            }
+            for (int i = 0; i < n; i++) {
+                k[n + i] = k[i] + MarketWebSocketHandler.BINARY_SUFFIX;
+            }
+            return k;
+        });
+    }
+
+    /** 标记频道待推送（无订阅者直接忽略）。 */
+    void markDirty(String channel) {
+        if (!broadcaster.hasSubscribers(channel)) {
+            return;
+        }
+        if (dirty.add(channel)) {
+            Thread t = worker;
+            if (t != null) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            long next;
+            try {
+                next = dispatch(System.nanoTime());
+            } catch (Exception e) {
+                log.warn("[market-ws] 推送分发异常: {}", e.getMessage());
+                next = System.nanoTime() + klineMinIntervalNanos;
+            }
+            if (!running) {
+                return;
+            }
+            if (next == Long.MAX_VALUE) {
+                LockSupport.park(this);
+            } else {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(this, wait);
+                }
+            }
+        }
+    }
+
+    /**
+     * 推送一轮已到期的脏频道。
+     *
+     * @return 下一个未到期频道的到期时刻（nanoTime），无待推送返回 {@link Long#MAX_VALUE}
+     */
+    long dispatch(long now) {
+        long next = Long.MAX_VALUE;
+        for (String key : dirty) {
+            Long last = lastPushNanos.get(key);
+            if (last != null) {
+                long due = last + minIntervalNanos(key);
+                if (due - now > 0) {
+                    next = Math.min(next, due);
+                    continue;
+                }
+            }
+            // 先出脏集合再取数：取数期间的新变化会重新入集，不会丢
+            dirty.remove(key);
+            WebSocketMessage<?> frame = handler.buildChannelFrame(key);
+            if (frame == null) {
+                continue;
+            }
+            broadcaster.broadcast(key, frame);
+            if (broadcaster.hasSubscribers(key)) {
+                lastPushNanos.put(key, now);
+            } else {
+                lastPushNanos.remove(key);
+            }
+        }
+        return next;
+    }
+
+    private long minIntervalNanos(String key) {
+        return key.startsWith("ticker:") ? tickerMinIntervalNanos : klineMinIntervalNanos;
+    }
+
+    /** 当前待推送频道数（诊断用）。 */
+    public int pendingChannels() {
+        return dirty.size();
+    }
+}
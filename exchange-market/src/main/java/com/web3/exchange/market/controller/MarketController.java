@@ -35,22 +35,29 @@ public class MarketController {
     }
 
     /**
-     * K线列表：按窗口时间升序返回最近 N 根。
+     * K线列表：按窗口时间升序返回最近 N 根；带 startTime/endTime 时返回该区间内（从最早起）最多 N 根。
      * @param interval 周期 1m/5m/15m/1h/4h/1d（兼容别名 period）
      * @param limit 默认 200，最大 1000
+     * @param startTime 可选，openTime 下界（epoch millis，含）
+     * @param endTime 可选，openTime 上界（epoch millis，含）
      */
     @Operation(summary = "K线列表")
     @GetMapping("/kline/list")
     public Result<List<KlineVO>> klineList(@RequestParam("symbol") String symbol,
                                            @RequestParam(value = "interval", required = false) String interval,
                                            @RequestParam(value = "period", required = false) String period,
-                                           @RequestParam(value = "limit", defaultValue = "200") Integer limit) {
+                                           @RequestParam(value = "limit", defaultValue = "200") Integer limit,
+                                           @RequestParam(value = "startTime", required = false) Long startTime,
+                                           @RequestParam(value = "endTime", required = false) Long endTime) {
         String iv = interval != null && !interval.isBlank() ? interval : period;
         if (iv == null || iv.isBlank()) {
             return Result.badRequest("缺少周期参数 interval/period (1m/5m/15m/1h/4h/1d)");
         }
         int cap = limit == null ? 200 : Math.min(Math.max(limit, 1), 1000);
-        List<Kline> klines = aggregator.getKlines(symbol, iv, cap);
+        List<Kline> klines = startTime == null && endTime == null
+                ? aggregator.getKlines(symbol, iv, cap)
+                : aggregator.getKlines(symbol, iv, startTime == null ? 0L : startTime,
+                        endTime == null ? Long.MAX_VALUE : endTime, cap);
         List<KlineVO> vos = new ArrayList<>(klines.size());
         for (Kline k : klines) {
             KlineVO vo = new KlineVO();
@@ -108,15 +115,17 @@ public class MarketController {
         return vo;
     }
 
-    /** 真实订单簿深度（Binance @depth20 实时盘口）。 */
+    /** 真实订单簿深度（Binance 快照 + @depth 增量重建的本地盘口，limit 档，上限见 market.depth.max-levels）。 */
     @GetMapping("/depth")
-    public Result<Map<String, Object>> depth(@RequestParam("symbol") String symbol) {
-        var snap = aggregator.getExternalDepth(symbol);
+    public Result<Map<String, Object>> depth(@RequestParam("symbol") String symbol,
+                                             @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        var snap = aggregator.getExternalDepth(symbol, Math.max(1, limit));
         if (snap == null) {
             return Result.notFound("暂无深度: " + symbol);
         }
         Map<String, Object> out = new LinkedHashMap<>();
         out.put("symbol", symbol);
+        out.put("lastUpdateId", snap.getUpdateId());
         out.put("bids", snap.getBids().stream()
                 .map(l -> Map.of("price", l.getPrice(), "quantity", l.getQuantity())).toList());
         out.put("asks", snap.getAsks().stream()
@@ -0,0 +1,244 @@
+package com.web3.exchange.market.external;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.web3.exchange.market.market.LocalOrderBook;
+import com.web3.exchange.market.market.MarketAggregator;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Binance 本地订单簿同步：{@code @depth} 增量流 + 一次 REST 快照，按 updateId 续接，结果写入
+ * {@link MarketAggregator} 的 {@link LocalOrderBook}。
+ * <p>
+ * 流程（Binance 官方 "How to manage a local order book"）：簿未同步时增量先进缓冲并异步拉快照；
+ * 快照到达后重置本地簿，丢弃缓冲中 {@code u <= lastUpdateId} 的事件、续接其余事件；
+ * 之后增量直接应用，{@code U} 不连续（断档）即回到缓冲 + 重拉快照。快照比缓冲首条事件还旧时同样重拉。
+ * </p>
+ * <p>
+ * 每条增量只发布实际变化的档位（数量未变、删除不存在的档不发布）；快照整簿发布一次，且只在缓冲增量全部续接成功后
+ * 按"快照 → 续接增量"的顺序发布，续接断档的快照不对外发布。
+ * </p>
+ * <p>
+ * 快照拉取失败、缺 lastUpdateId 或无法续接缓冲事件均计一次失败，按 {@code retryDelayMs} 起指数退避
+ * （封顶 {@link #MAX_RETRY_DELAY_MS}），期间增量照常缓冲（超过 {@code bufferLimit} 丢最旧）；同步成功后清零。
+ * </p>
+ */
+@Slf4j
+final class BinanceDepthSync {
+
+    /** 快照连续失败时退避间隔上限（毫秒） */
+    static final long MAX_RETRY_DELAY_MS = 60_000L;
+
+    /** REST 深度快照加载（生产走 Binance /api/v3/depth，测试用录制的夹具）。 */
+    @FunctionalInterface
+    interface SnapshotLoader {
+        /** 返回 {@code {"lastUpdateId":..,"bids":[["price","qty"],..],"asks":[..]}}。 */
+        JsonNode load(String binanceSymbol) throws Exception;
+    }
+
+    /** 同步结果发布（档位为 {price, qty} 最小单位）。 */
+    interface Publisher {
+        /** 快照重置后的整簿。 */
+        void onSnapshot(String symbol, long lastUpdateId, List<long[]> bids, List<long[]> asks);
+
+        /** 一条增量中实际变化的档位（qty = 0 表示删除）。 */
+        void onDiff(String symbol, long firstUpdateId, long finalUpdateId, List<long[]> bids, List<long[]> asks);
+    }
+
+    private final MarketAggregator aggregator;
+    private final SnapshotLoader loader;
+    private final Executor executor;
+    private final Publisher publisher;
+    private final int quoteDecimals;
+    private final int bufferLimit;
+    private final long retryDelayMs;
+
+    private final ConcurrentHashMap<String, State> states = new ConcurrentHashMap<>();
+
+    BinanceDepthSync(MarketAggregator aggregator, SnapshotLoader loader, Executor executor, Publisher publisher,
+                     int quoteDecimals, int bufferLimit, long retryDelayMs) {
+        this.aggregator = aggregator;
+        this.loader = loader;
+        this.executor = executor;
+        this.publisher = publisher;
+        this.quoteDecimals = quoteDecimals;
+        this.bufferLimit = Math.max(1, bufferLimit);
+        this.retryDelayMs = Math.max(0L, retryDelayMs);
+    }
+
+    /** 单交易对同步状态（方法内按对象加锁）。 */
+    private static final class State {
+        final ArrayDeque<Diff> buffer = new ArrayDeque<>();
+        boolean loading;
+        long retryAt;
+        /** 连续失败次数（决定退避间隔） */
+        int failures;
+    }
+
+    private record Diff(long first, long last, long[] bids, long[] asks) {
+    }
+
+    /** 一条增量实际变化的档位（待发布）。 */
+    private record Changed(long first, long last, List<long[]> bids, List<long[]> asks) {
+    }
+
+    /**
+     * 处理一条 {@code depthUpdate}（WS 线程调用）。
+     *
+     * @param symbol        系统交易对（BTC/USDT）
+     * @param binanceSymbol Binance 交易对（BTCUSDT），用于拉快照
+     */
+    void onDiff(String symbol, String binanceSymbol, long firstUpdateId, long finalUpdateId, long[] bids, long[] asks) {
+        State st = states.computeIfAbsent(symbol, s -> new State());
+        Diff d = new Diff(firstUpdateId, finalUpdateId, bids, asks);
+        synchronized (st) {
+            if (!st.loading) {
+                List<Changed> changes = new ArrayList<>(1);
+                LocalOrderBook.Result r = apply(symbol, d, changes);
+                if (r == LocalOrderBook.Result.APPLIED || r == LocalOrderBook.Result.STALE) {
+                    publish(symbol, changes);
+                    return;
+                }
+                if (r == LocalOrderBook.Result.GAP) {
+                    log.info("[binance-ws] {} 深度增量断档 U={}，重新拉取快照", symbol, firstUpdateId);
+                }
+            }
+            if (st.buffer.size() >= bufferLimit) {
+                st.buffer.pollFirst();
+            }
+            st.buffer.addLast(d);
+            requestSnapshot(st, symbol, binanceSymbol);
+        }
+    }
+
+    /** 应用一条增量，APPLIED 且有变化档位时追加到 changes（由调用方决定何时发布）。调用方持 st 锁。 */
+    private LocalOrderBook.Result apply(String symbol, Diff d, List<Changed> changes) {
+        List<long[]> changedBids = new ArrayList<>();
+        List<long[]> changedAsks = new ArrayList<>();
+        LocalOrderBook.Result r = aggregator.applyExternalDepthDiff(symbol, d.first, d.last, d.bids, d.asks,
+                (bid, price, qty) -> (bid ? changedBids : changedAsks).add(new long[]{price, qty}));
+        if (r == LocalOrderBook.Result.APPLIED && (!changedBids.isEmpty() || !changedAsks.isEmpty())) {
+            changes.add(new Changed(d.first, d.last, changedBids, changedAsks));
+        }
+        return r;
+    }
+
+    private void publish(String symbol, List<Changed> changes) {
+        for (Changed c : changes) {
+            publisher.onDiff(symbol, c.first, c.last, c.bids, c.asks);
+        }
+    }
+
+    /** 记一次快照失败并按指数退避设置下次可拉取时间。调用方持 st 锁。 */
+    private void backoff(State st) {
+        st.failures++;
+        long delay = retryDelayMs << Math.min(st.failures - 1, 16);
+        st.retryAt = System.currentTimeMillis() + Math.max(retryDelayMs, Math.min(delay, MAX_RETRY_DELAY_MS));
+    }
+
+    /** 异步拉快照（已在拉取或处于失败退避期则跳过）。调用方持 st 锁。 */
+    private void requestSnapshot(State st, String symbol, String binanceSymbol) {
+        if (st.loading || System.currentTimeMillis() < st.retryAt) {
+            return;
+        }
+        st.loading = true;
+        executor.execute(() -> loadSnapshot(st, symbol, binanceSymbol));
+    }
+
+    private void loadSnapshot(State st, String symbol, String binanceSymbol) {
+        JsonNode snap;
+        try {
+            snap = loader.load(binanceSymbol);
+        } catch (Exception e) {
+            synchronized (st) {
+                st.loading = false;
+                backoff(st);
+                log.warn("[binance-ws] {} 深度快照拉取失败（连续 {} 次），{}ms 后重试: {}", symbol, st.failures,
+                        st.retryAt - System.currentTimeMillis(), e.getMessage());
+            }
+            return;
+        }
+        long lastUpdateId = snap.path("lastUpdateId").asLong(-1L);
+        long[] bids = parseLevels(snap.path("bids"), quoteDecimals);
+        long[] asks = parseLevels(snap.path("asks"), quoteDecimals);
+        synchronized (st) {
+            st.loading = false;
+            if (lastUpdateId < 0) {
+                backoff(st);
+                log.warn("[binance-ws] {} 深度快照缺少 lastUpdateId，{}ms 后重试", symbol,
+                        st.retryAt - System.currentTimeMillis());
+                return;
+            }
+            aggregator.resetExternalDepth(symbol, lastUpdateId, bids, asks);
+            List<Changed> replayed = new ArrayList<>();
+            Diff d;
+            while ((d = st.buffer.pollFirst()) != null) {
+                if (apply(symbol, d, replayed) == LocalOrderBook.Result.GAP) {
+                    // 快照早于缓冲首条可续接事件：保留该事件，退避后重拉更新的快照；本次快照与续接结果均不发布
+                    st.buffer.addFirst(d);
+                    backoff(st);
+                    log.info("[binance-ws] {} 快照 lastUpdateId={} 无法续接 U={}，{}ms 后重新拉取", symbol, lastUpdateId,
+                            d.first, st.retryAt - System.currentTimeMillis());
+                    requestSnapshot(st, symbol, binanceSymbol);
+                    return;
+                }
+            }
+            st.failures = 0;
+            publisher.onSnapshot(symbol, lastUpdateId, toLevels(bids), toLevels(asks));
+            publish(symbol, replayed);
+            log.info("[binance-ws] {} 本地订单簿已同步 lastUpdateId={} bids={} asks={}",
+                    symbol, lastUpdateId, bids.length / 2, asks.length / 2);
+        }
+    }
+
+    /** 某交易对缓冲中的增量数（诊断用）。 */
+    int buffered(String symbol) {
+        State st = states.get(symbol);
+        if (st == null) {
+            return 0;
+        }
+        synchronized (st) {
+            return st.buffer.size();
+        }
+    }
+
+    /**
+     * 解析 Binance 档位数组 {@code [["price","qty"], ...]} 为扁平 {@code [price0, qty0, ...]}（decimals 位最小单位）。
+     */
+    static long[] parseLevels(JsonNode arr, int decimals) {
+        if (arr == null || !arr.isArray()) {
+            return new long[0];
+        }
+        long[] out = new long[arr.size() * 2];
+        int n = 0;
+        for (JsonNode lvl : arr) {
+            if (!lvl.isArray() || lvl.size() < 2) continue;
+            out[n++] = toMin(lvl.get(0).asText(), decimals);
+            out[n++] = toMin(lvl.get(1).asText(), decimals);
+        }
+        return n == out.length ? out : java.util.Arrays.copyOf(out, n);
+    }
+
+    /** 十进制字符串 → 最小单位（与 {@link BinanceWsPriceSource} 同一换算，同一价格串在快照与增量中得到同一键）。 */
+    static long toMin(String s, int decimals) {
+        if (s == null || s.isBlank()) return 0;
+        try {
+            return Math.round(Double.parseDouble(s) * Math.pow(10, decimals));
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    private static List<long[]> toLevels(long[] flat) {
+        List<long[]> out = new ArrayList<>(flat.length / 2);
+        for (int i = 0; i + 1 < flat.length; i += 2) {
+            out.add(new long[]{flat[i], flat[i + 1]});
+        }
+        return out;
+    }
+}
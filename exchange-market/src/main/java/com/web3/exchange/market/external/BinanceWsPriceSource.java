@@ -12,12 +12,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.client.standard.StandardWebSocketClient;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -27,6 +29,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Binance WebSocket 真实行情源（毫秒级实时，免墙域名 data-stream.binance.vision）。
  * <p>常驻连接订阅 8 主流币对的 {@code @ticker}（24h快照）与 {@code @kline_1m/5m/15m/1h/4h/1d} 流，
  * 实时更新 MarketAggregator（覆盖 CoinGecko 轮询，延迟从秒级降到毫秒级）。</p>
+ * <p>深度订阅 {@code @depth@100ms} 增量流，由 {@link BinanceDepthSync} 结合 REST 快照按 updateId 重建本地订单簿，
+ * 只发布变化档位。</p>
  * <p><b>断线重连</b>：连接关闭后定时(5s)自动重连，可观测。</p>
  */
 @Slf4j
@@ -35,6 +39,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class BinanceWsPriceSource extends TextWebSocketHandler {
 
     private static final String WS_URL = "wss://data-stream.binance.vision/stream?streams=";
+    /** REST 深度快照（行情专用域名，与 WS 同源） */
+    private static final String DEPTH_SNAPSHOT_URL = "https://data-api.binance.vision/api/v3/depth?symbol={symbol}&limit={limit}";
     /** 交易对（Binance 用 BTCUSDT 形式）→ 系统 symbol（BTC/USDT） */
     private static final String[] STREAMS = {
             "btcusdt", "ethusdt", "bnbusdt", "xrpusdt",
@@ -43,6 +49,8 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
     private static final String[] KLINE_INTERVALS = {"1m", "5m", "15m", "1h", "4h", "1d"};
 
     private final MarketAggregator aggregator;
+    /** 共享 HTTP 客户端（{@code MarketHttpConfig}，带连接/读超时） */
+    private final RestTemplate restTemplate;
     private final MarketEventProducer eventProducer;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
@@ -53,11 +61,30 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
     @Value("${server-settings.external-price.quote-decimals:8}")
     private int quoteDecimals;
 
+    @Value("${market.depth.snapshot-limit:1000}")
+    private int depthSnapshotLimit;
+
+    @Value("${market.depth.buffer-size:1000}")
+    private int depthBufferSize;
+
+    @Value("${market.depth.snapshot-retry-ms:5000}")
+    private long depthSnapshotRetryMs;
+
+    /** 深度快照拉取线程（串行，避免同时为 8 个交易对打 REST） */
+    private final ExecutorService depthSnapshotExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "binance-depth-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private BinanceDepthSync depthSync;
+
     /** 已建立的 WS 会话集合（分连接订阅，避免单连接流数超限）。 */
     private final java.util.concurrent.CopyOnWriteArrayList<WebSocketSession> sessions = new java.util.concurrent.CopyOnWriteArrayList<>();
 
     @PostConstruct
     public void start() {
+        depthSync = new BinanceDepthSync(aggregator, this::loadDepthSnapshot, depthSnapshotExecutor,
+                new DepthPublisher(), quoteDecimals, depthBufferSize, depthSnapshotRetryMs);
         // 连接所有订阅连接；失败由重连机制兜底
         try {
             connectAll();
@@ -70,7 +97,7 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
     /** 建立全部订阅连接（ticker+kline 一连接、depth 一连接，避免超长 URL）。 */
     private void connectAll() throws Exception {
         connect(buildMarketUrl(), "market");   // ticker + kline
-        connect(buildDepthUrl(), "depth");     // depth20
+        connect(buildDepthUrl(), "depth");     // depth 增量
     }
 
     private void connect(String url, String label) throws Exception {
@@ -104,7 +131,7 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
         boolean first = true;
         for (String base : STREAMS) {
             if (!first) url.append("/");
-            url.append(base).append("@depth20");
+            url.append(base).append("@depth@100ms");
             first = false;
         }
         return url.toString();
@@ -121,9 +148,8 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
                 handleTicker(data);
             } else if ("kline".equals(e)) {
                 handleKline(data.path("k"));
-            } else if (data.has("bids") && data.has("asks")) {
-                // depth20 快照流：data 含 lastUpdateId/bids/asks，symbol 取自 stream 名
-                handleDepth(root.path("stream").asText(), data);
+            } else if ("depthUpdate".equals(e)) {
+                handleDepthUpdate(data);
             }
         } catch (Exception ex) {
             log.debug("[binance-ws] 解析消息失败: {}", ex.getMessage());
@@ -168,34 +194,49 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
         eventProducer.publish(KafkaTopics.MARKET_TICKER, ev);
     }
 
-    /** 处理 @depth20 订单簿快照：data.bids/asks 各档[price,qty]。symbol 取自 stream 名(btcusdt@depth20)。 */
-    private void handleDepth(String stream, JsonNode d) {
-        String base = stream.substring(0, stream.indexOf('@'));
-        String symbol = toSystemSymbol(base);
+    /** 处理 @depth 增量：U/u 为本条首末 updateId，b/a 为变化档位（qty=0 删除）。 */
+    private void handleDepthUpdate(JsonNode d) {
+        String raw = d.path("s").asText();
+        String symbol = toSystemSymbol(raw);
         if (symbol == null) return;
-        java.util.List<long[]> bids = parseLevels(d.path("bids"));
-        java.util.List<long[]> asks = parseLevels(d.path("asks"));
-        aggregator.updateExternalDepth(symbol, bids, asks);
+        depthSync.onDiff(symbol, raw.toUpperCase(), d.path("U").asLong(), d.path("u").asLong(),
+                BinanceDepthSync.parseLevels(d.path("b"), quoteDecimals),
+                BinanceDepthSync.parseLevels(d.path("a"), quoteDecimals));
+    }
 
-        // 发布到 Kafka 行情管道
-        MarketEvent ev = new MarketEvent();
-        ev.setType("depth");
-        ev.setSymbol(symbol);
-        ev.setBids(bids);
-        ev.setAsks(asks);
-        eventProducer.publish(KafkaTopics.MARKET_DEPTH, ev);
+    private JsonNode loadDepthSnapshot(String binanceSymbol) throws Exception {
+        String json = restTemplate.getForObject(DEPTH_SNAPSHOT_URL, String.class, binanceSymbol, depthSnapshotLimit);
+        return objectMapper.readTree(json);
     }
 
-    private java.util.List<long[]> parseLevels(JsonNode arr) {
-        java.util.List<long[]> out = new java.util.ArrayList<>();
-        if (arr == null || !arr.isArray()) return out;
-        for (JsonNode lvl : arr) {
-            if (!lvl.isArray() || lvl.size() < 2) continue;
-            long price = toMin(lvl.get(0).asText());
-            long qty = toMin(lvl.get(1).asText());
-            out.add(new long[]{price, qty});
+    /** 本地订单簿变化发布到 Kafka 行情管道：快照整簿一次，之后只发变化档位。 */
+    private class DepthPublisher implements BinanceDepthSync.Publisher {
+        @Override
+        public void onSnapshot(String symbol, long lastUpdateId, java.util.List<long[]> bids, java.util.List<long[]> asks) {
+            MarketEvent ev = depthEvent(symbol, bids, asks);
+            ev.setDepthSnapshot(true);
+            ev.setFinalUpdateId(lastUpdateId);
+            eventProducer.publish(KafkaTopics.MARKET_DEPTH, ev);
+        }
+
+        @Override
+        public void onDiff(String symbol, long firstUpdateId, long finalUpdateId,
+                           java.util.List<long[]> bids, java.util.List<long[]> asks) {
+            MarketEvent ev = depthEvent(symbol, bids, asks);
+            ev.setDepthSnapshot(false);
+            ev.setFirstUpdateId(firstUpdateId);
+            ev.setFinalUpdateId(finalUpdateId);
+            eventProducer.publish(KafkaTopics.MARKET_DEPTH, ev);
+        }
+
+        private MarketEvent depthEvent(String symbol, java.util.List<long[]> bids, java.util.List<long[]> asks) {
+            MarketEvent ev = new MarketEvent();
+            ev.setType("depth");
+            ev.setSymbol(symbol);
+            ev.setBids(bids);
+            ev.setAsks(asks);
+            return ev;
         }
-        return out;
     }
 
     private void handleKline(JsonNode k) {
@@ -249,6 +290,7 @@ public class BinanceWsPriceSource extends TextWebSocketHandler {
     public void shutdown() {
         connected.set(false);
         reconnectExecutor.shutdownNow();
+        depthSnapshotExecutor.shutdownNow();
         for (WebSocketSession s : sessions) {
             try { s.close(); } catch (Exception ignored) {}
         }
@@ -43,6 +43,8 @@ public class CoinGeckoPriceSource {
     }};
 
     private final MarketAggregator aggregator;
+    /** 共享 HTTP 客户端（{@code MarketHttpConfig}，带连接/读超时） */
+    private final RestTemplate restTemplate;
 
     @Value("${server-settings.external-price.quote-decimals:8}")
     private int quoteDecimals;
@@ -50,7 +52,6 @@ public class CoinGeckoPriceSource {
     @Value("${server-settings.external-price.quantity:100000000}")
     private long quantity;
 
-    private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper mapper = new ObjectMapper()
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
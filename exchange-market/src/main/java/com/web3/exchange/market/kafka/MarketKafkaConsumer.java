@@ -54,6 +54,29 @@ public class MarketKafkaConsumer {
             containerFactory = "marketKafkaListenerContainerFactory")
     public void onDepth(MarketEvent e) {
         if (e == null || e.getSymbol() == null) return;
-        aggregator.updateExternalDepth(e.getSymbol(), e.getBids(), e.getAsks());
+        if (e.getFinalUpdateId() == null) {
+            // 旧版事件：整份档位替换
+            aggregator.updateExternalDepth(e.getSymbol(), e.getBids(), e.getAsks());
+        } else if (Boolean.TRUE.equals(e.getDepthSnapshot())) {
+            // 只接受比本地簿更新的快照，避免生产端已续接过的簿被回退
+            if (e.getFinalUpdateId() > aggregator.externalBook(e.getSymbol()).lastUpdateId()) {
+                aggregator.resetExternalDepth(e.getSymbol(), e.getFinalUpdateId(), flatten(e.getBids()), flatten(e.getAsks()));
+            }
+        } else {
+            // 与生产端本地已应用的同一增量重复时按 updateId 判为 STALE 忽略；断档则置未同步，等下一份快照
+            long first = e.getFirstUpdateId() == null ? e.getFinalUpdateId() : e.getFirstUpdateId();
+            aggregator.applyExternalDepthDiff(e.getSymbol(), first, e.getFinalUpdateId(),
+                    flatten(e.getBids()), flatten(e.getAsks()), null);
+        }
+    }
+
+    private static long[] flatten(java.util.List<long[]> levels) {
+        if (levels == null) return new long[0];
+        long[] out = new long[levels.size() * 2];
+        for (int i = 0; i < levels.size(); i++) {
+            out[2 * i] = levels.get(i)[0];
+            out[2 * i + 1] = levels.get(i)[1];
+        }
+        return out;
     }
 }
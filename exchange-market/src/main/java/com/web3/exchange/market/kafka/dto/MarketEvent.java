@@ -34,6 +34,12 @@ public class MarketEvent {
     // ---- depth 字段（bids/asks 为 [price, qty] 最小单位） ----
     private java.util.List<long[]> bids;
     private java.util.List<long[]> asks;
+    /** true = 整簿快照（finalUpdateId 为快照 lastUpdateId）；false = 增量，bids/asks 只含变化档位，qty=0 表示删除 */
+    private Boolean depthSnapshot;
+    /** 增量首个 updateId（Binance U） */
+    private Long firstUpdateId;
+    /** 增量末个 updateId / 快照 lastUpdateId（Binance u） */
+    private Long finalUpdateId;
 
     /** 事件产生时间戳（epoch millis），用于重放/审计。 */
     private Long eventTime;
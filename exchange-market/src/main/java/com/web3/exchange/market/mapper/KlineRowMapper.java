@@ -19,21 +19,16 @@ import java.util.List;
 @Mapper
 public interface KlineRowMapper extends BaseMapper<KlineRow> {
 
-    /** 单行 upsert（已关闭窗口最终态写库）。 */
-    @Insert("INSERT INTO t_kline (id, symbol, period, window_start, open, high, low, close, volume, quote_volume, create_time, update_time) "
-            + "VALUES (#{id}, #{symbol}, #{period}, #{windowStart}, #{open}, #{high}, #{low}, #{close}, #{volume}, #{quoteVolume}, NOW(), NOW()) "
+    /** 多行 upsert：一条 INSERT ... VALUES (...),(...) ON DUPLICATE KEY UPDATE 写一批（调用方控制批大小）。 */
+    @Insert("<script>"
+            + "INSERT INTO t_kline (id, symbol, period, window_start, open, high, low, close, volume, quote_volume, create_time, update_time) VALUES "
+            + "<foreach collection='rows' item='r' separator=','>"
+            + "(#{r.id}, #{r.symbol}, #{r.period}, #{r.windowStart}, #{r.open}, #{r.high}, #{r.low}, #{r.close}, #{r.volume}, #{r.quoteVolume}, NOW(), NOW())"
+            + "</foreach> "
             + "ON DUPLICATE KEY UPDATE high = VALUES(high), low = VALUES(low), close = VALUES(close), "
-            + "volume = VALUES(volume), quote_volume = VALUES(quote_volume), version = version + 1, update_time = NOW()")
-    int upsert(KlineRow row);
-
-    /** 批量 upsert（循环单条，简单可靠；量级小，足够）。 */
-    default int upsertBatch(List<KlineRow> rows) {
-        int n = 0;
-        for (KlineRow r : rows) {
-            n += upsert(r);
-        }
-        return n;
-    }
+            + "volume = VALUES(volume), quote_volume = VALUES(quote_volume), version = version + 1, update_time = NOW()"
+            + "</script>")
+    int upsertBatch(@Param("rows") List<KlineRow> rows);
 
     /** 按周期取最近 N 条（重启重建内存用），窗口时间倒序限制条数。 */
     @Select("SELECT * FROM t_kline WHERE is_deleted = 0 AND period = #{period} "
@@ -6,27 +6,35 @@ import java.util.Set;
 /**
  * K线时间周期枚举（毫秒）。
  * <p>窗口对齐到 UTC 整点边界：{@code openTime = (tradeTimeMs / millis) * millis}。</p>
+ * <p>{@link #code} 是对外协议（二进制帧 period 字段）使用的稳定编号，与声明顺序无关；新增周期取未用过的编号，已发布编号不得改动。</p>
  */
 public enum KlineInterval {
-    M1("1m", 60_000L),
-    M5("5m", 300_000L),
-    M15("15m", 900_000L),
-    H1("1h", 3_600_000L),
-    H4("4h", 14_400_000L),
-    D1("1d", 86_400_000L);
+    M1("1m", 60_000L, 0),
+    M5("5m", 300_000L, 1),
+    M15("15m", 900_000L, 2),
+    H1("1h", 3_600_000L, 3),
+    H4("4h", 14_400_000L, 4),
+    D1("1d", 86_400_000L, 5);
 
     private final String name;
     private final long millis;
+    private final int code;
 
-    KlineInterval(String name, long millis) {
+    KlineInterval(String name, long millis, int code) {
         this.name = name;
         this.millis = millis;
+        this.code = code;
     }
 
     public String intervalName() {
         return name;
     }
 
+    /** 协议编号（0..255）。 */
+    public int code() {
+        return code;
+    }
+
     public long millis() {
         return millis;
     }
@@ -0,0 +1,317 @@
+package com.web3.exchange.market.market;
+
+import com.web3.exchange.market.market.model.Kline;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * 单个 (symbol, interval) 的定长 K线环：按窗口序号 {@code epoch = openTime / periodMs} 取模定位槽位，
+ * OHLCV 以 long 列存储。
+ * <p>
+ * 写：当前根更新 / 新开一根都是 O(1) 原地写列；新窗口覆盖 {@code capacity} 根之前的旧窗口（即最多保留最近
+ * capacity 个窗口，内存固定）。比最新窗口早 capacity 根以上的写入直接丢弃。
+ * </p>
+ * <p>
+ * 读：从目标窗口序号按时间顺序逐槽读取，槽内 openTime 与期望一致才是有效根（无成交的窗口自然跳过），
+ * 天然有序、无需排序。写持写锁，读持读锁，临界区只有数组访问。
+ * </p>
+ * <p>
+ * 落库：记录自上次 {@link #drainDirty} 以来被改动的最早窗口序号；环首次变脏时把自己交给 {@code dirtySink}
+ * （聚合器的脏环队列），持久化只处理队列中的环、只取改动过的根，不扫描全量。
+ * </p>
+ */
+public final class KlineRing {
+
+    /** 空槽 openTime 标记 */
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final String symbol;
+    private final KlineInterval interval;
+    private final long periodMs;
+    private final int capacity;
+    private final StampedLock lock = new StampedLock();
+
+    private final long[] openTimes;
+    private final long[] opens;
+    private final long[] highs;
+    private final long[] lows;
+    private final long[] closes;
+    private final long[] volumes;
+    private final long[] quoteVolumes;
+    /** 最新窗口序号（无数据为 Long.MIN_VALUE） */
+    private long latestEpoch = Long.MIN_VALUE;
+    /** 自上次落库以来改动过的最早窗口序号（Long.MAX_VALUE = 无改动） */
+    private long dirtyFrom = Long.MAX_VALUE;
+    /** 是否已在脏环队列中 */
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private final Consumer<KlineRing> dirtySink;
+
+    public KlineRing(String symbol, KlineInterval interval, int capacity) {
+        this(symbol, interval, capacity, null);
+    }
+
+    public KlineRing(String symbol, KlineInterval interval, int capacity, Consumer<KlineRing> dirtySink) {
+        this.symbol = symbol;
+        this.dirtySink = dirtySink;
+        this.interval = interval;
+        this.periodMs = interval.millis();
+        this.capacity = Math.max(2, capacity);
+        this.openTimes = new long[this.capacity];
+        Arrays.fill(openTimes, NONE);
+        this.opens = new long[this.capacity];
+        this.highs = new long[this.capacity];
+        this.lows = new long[this.capacity];
+        this.closes = new long[this.capacity];
+        this.volumes = new long[this.capacity];
+        this.quoteVolumes = new long[this.capacity];
+    }
+
+    /**
+     * 聚合一笔成交到 openTime 所在窗口（不存在则开新根）。
+     *
+     * @return 是否写入（过旧窗口返回 false）
+     */
+    public boolean onTrade(long openTime, long price, long quantity, long quoteAmount) {
+        openTime = align(openTime);
+        long stamp = lock.writeLock();
+        try {
+            int i = prepare(openTime);
+            if (i < 0) {
+                return false;
+            }
+            if (openTimes[i] != openTime) {
+                openTimes[i] = openTime;
+                opens[i] = price;
+                highs[i] = price;
+                lows[i] = price;
+                closes[i] = price;
+                volumes[i] = quantity;
+                quoteVolumes[i] = quoteAmount;
+            } else {
+                if (price > highs[i]) {
+                    highs[i] = price;
+                }
+                if (price < lows[i]) {
+                    lows[i] = price;
+                }
+                closes[i] = price;                  // 最新成交价即收盘价
+                volumes[i] += quantity;
+                quoteVolumes[i] += quoteAmount;
+            }
+            touch(openTime);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        signalDirty();
+        return true;
+    }
+
+    /**
+     * 整根覆盖写入（外部真实 K线）。
+     *
+     * @return 是否写入（过旧窗口返回 false）
+     */
+    public boolean put(long openTime, long open, long high, long low, long close, long volume, long quoteVolume) {
+        openTime = align(openTime);
+        long stamp = lock.writeLock();
+        try {
+            int i = prepare(openTime);
+            if (i < 0) {
+                return false;
+            }
+            write(i, openTime, open, high, low, close, volume, quoteVolume);
+            touch(openTime);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        signalDirty();
+        return true;
+    }
+
+    /**
+     * DB 回填一根：该窗口已有数据则不覆盖（以内存实时聚合为准），回填的根本就在库里，不标脏。
+     *
+     * @return 是否写入
+     */
+    public boolean restore(long openTime, long open, long high, long low, long close, long volume, long quoteVolume) {
+        openTime = align(openTime);
+        long stamp = lock.writeLock();
+        try {
+            int i = prepare(openTime);
+            if (i < 0 || openTimes[i] == openTime) {
+                return false;
+            }
+            write(i, openTime, open, high, low, close, volume, quoteVolume);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void write(int i, long openTime, long open, long high, long low, long close, long volume, long quoteVolume) {
+        openTimes[i] = openTime;
+        opens[i] = open;
+        highs[i] = high;
+        lows[i] = low;
+        closes[i] = close;
+        volumes[i] = volume;
+        quoteVolumes[i] = quoteVolume;
+    }
+
+    /** 记录改动窗口（调用方持写锁）。 */
+    private void touch(long openTime) {
+        long epoch = Math.floorDiv(openTime, periodMs);
+        if (epoch < dirtyFrom) {
+            dirtyFrom = epoch;
+        }
+    }
+
+    /** 首次变脏时入脏环队列（锁外调用）。 */
+    private void signalDirty() {
+        if (dirtySink != null && queued.compareAndSet(false, true)) {
+            dirtySink.accept(this);
+        }
+    }
+
+    /**
+     * 取出自上次调用以来改动过的根（按时间升序，含当前未关闭的一根）并清除脏标记。
+     * 此后的写入会重新入队，不会漏。
+     */
+    public List<Kline> drainDirty() {
+        long stamp = lock.writeLock();
+        try {
+            queued.set(false);
+            if (dirtyFrom == Long.MAX_VALUE || latestEpoch == Long.MIN_VALUE) {
+                dirtyFrom = Long.MAX_VALUE;
+                return List.of();
+            }
+            long from = Math.max(dirtyFrom, latestEpoch - capacity + 1);
+            dirtyFrom = Long.MAX_VALUE;
+            return collect(from, latestEpoch, capacity);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** 落库失败时把 openTime 起的窗口重新标脏，下一轮重写（upsert 幂等）。 */
+    public void markDirty(long openTime) {
+        long stamp = lock.writeLock();
+        try {
+            touch(align(openTime));
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        signalDirty();
+    }
+
+    /** 定位 openTime 的槽位并推进最新窗口；过旧返回 -1。调用方持写锁。 */
+    private int prepare(long openTime) {
+        long epoch = Math.floorDiv(openTime, periodMs);
+        if (latestEpoch != Long.MIN_VALUE && epoch <= latestEpoch - capacity) {
+            return -1;
+        }
+        if (epoch > latestEpoch) {
+            latestEpoch = epoch;
+        }
+        return slot(epoch);
+    }
+
+    private long align(long openTime) {
+        return Math.floorDiv(openTime, periodMs) * periodMs;
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) capacity);
+    }
+
+    /** 最近 limit 根（按时间升序）。 */
+    public List<Kline> latest(int limit) {
+        long stamp = lock.readLock();
+        try {
+            if (latestEpoch == Long.MIN_VALUE) {
+                return List.of();
+            }
+            int n = Math.min(Math.max(limit, 1), capacity);
+            // 倒序找到第 n 根有效根的起点，再正序输出
+            long from = latestEpoch;
+            int found = 0;
+            for (long e = latestEpoch; e > latestEpoch - capacity && found < n; e--) {
+                if (openTimes[slot(e)] == e * periodMs) {
+                    found++;
+                    from = e;
+                }
+            }
+            return collect(from, latestEpoch, found);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * openTime 落在 [startTime, endTime] 的 K线（按时间升序，最多 limit 根，超出时取最早的 limit 根）。
+     */
+    public List<Kline> range(long startTime, long endTime, int limit) {
+        long stamp = lock.readLock();
+        try {
+            if (latestEpoch == Long.MIN_VALUE || endTime < startTime) {
+                return List.of();
+            }
+            long from = Math.max(-Math.floorDiv(-Math.max(startTime, 0L), periodMs), latestEpoch - capacity + 1);
+            long to = Math.min(Math.floorDiv(endTime, periodMs), latestEpoch);
+            return collect(from, to, Math.min(Math.max(limit, 1), capacity));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** 正序收集 [fromEpoch, toEpoch] 内的有效根，最多 max 根。调用方持读锁。 */
+    private List<Kline> collect(long fromEpoch, long toEpoch, int max) {
+        List<Kline> out = new ArrayList<>(Math.max(0, Math.min(max, (int) Math.min(capacity, toEpoch - fromEpoch + 1))));
+        for (long e = fromEpoch; e <= toEpoch && out.size() < max; e++) {
+            int i = slot(e);
+            if (openTimes[i] == e * periodMs) {
+                out.add(toKline(i));
+            }
+        }
+        return out;
+    }
+
+    /** 最新一根（无数据返回 null）。 */
+    public Kline last() {
+        long stamp = lock.readLock();
+        try {
+            if (latestEpoch == Long.MIN_VALUE) {
+                return null;
+            }
+            int i = slot(latestEpoch);
+            return openTimes[i] == latestEpoch * periodMs ? toKline(i) : null;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Kline toKline(int i) {
+        Kline k = new Kline(symbol, interval.intervalName(), openTimes[i], opens[i], volumes[i], quoteVolumes[i]);
+        k.setHigh(highs[i]);
+        k.setLow(lows[i]);
+        k.setClose(closes[i]);
+        return k;
+    }
+
+    public String symbol() {
+        return symbol;
+    }
+
+    public KlineInterval interval() {
+        return interval;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,307 @@
+package com.web3.exchange.market.market;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 外部交易所（Binance）单交易对的本地 L2 订单簿：由一次 REST 快照 + {@code @depth} 增量流按 updateId 续接重建。
+ * <p>
+ * 存储：每侧一对有序 long 数组（价格 / 数量），<b>最优档在数组末尾</b>（bids 升序、asks 降序），
+ * 盘口附近的改量 / 插入 / 删除只移动末尾少量元素；二分定位，不为档位分配对象。档数上限 {@code maxLevels}，
+ * 满时丢弃最差档。
+ * </p>
+ * <p>
+ * 续接规则（Binance 官方本地订单簿流程）：{@code u <= lastUpdateId} 的事件已包含在快照内，丢弃；
+ * 快照后的第一条事件须满足 {@code U <= lastUpdateId + 1 <= u}，之后每条须满足 {@code U == 上一条 u + 1}，
+ * 否则返回 {@link Result#GAP} 并把簿置为未同步，由调用方重新拉快照。
+ * </p>
+ * <p>
+ * 写持写锁，读持读锁；查询可取任意档数。
+ * </p>
+ */
+public final class LocalOrderBook {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** 增量应用结果 */
+    public enum Result {
+        /** 已应用 */
+        APPLIED,
+        /** 已包含在当前簿内（u <= lastUpdateId），忽略 */
+        STALE,
+        /** updateId 不连续，簿已置为未同步，需重新拉快照 */
+        GAP,
+        /** 尚未加载快照 */
+        NOT_SYNCED
+    }
+
+    /** 实际变化档位回调（qty = 0 表示该档删除）。 */
+    @FunctionalInterface
+    public interface LevelListener {
+        void onLevel(boolean bid, long price, long quantity);
+    }
+
+    private final String symbol;
+    private final int maxLevels;
+    private final StampedLock lock = new StampedLock();
+
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+    /** 已应用到的最后一个 updateId；-1 = 未同步 */
+    private long lastUpdateId = -1L;
+    /** 快照后尚未收到第一条增量 */
+    private boolean awaitingFirst;
+
+    public LocalOrderBook(String symbol, int maxLevels) {
+        this.symbol = symbol;
+        this.maxLevels = Math.max(1, maxLevels);
+    }
+
+    /**
+     * 用快照整体替换本簿。
+     *
+     * @param bids 扁平档位 {@code [price0, qty0, price1, qty1, ...]}，顺序任意，qty = 0 的档忽略
+     * @param asks 同上
+     */
+    public void reset(long lastUpdateId, long[] bids, long[] asks) {
+        long stamp = lock.writeLock();
+        try {
+            this.bids.clear();
+            this.asks.clear();
+            for (int i = 0; i + 1 < bids.length; i += 2) {
+                this.bids.set(bids[i], bids[i + 1]);
+            }
+            for (int i = 0; i + 1 < asks.length; i += 2) {
+                this.asks.set(asks[i], asks[i + 1]);
+            }
+            this.lastUpdateId = Math.max(0L, lastUpdateId);
+            this.awaitingFirst = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 按 updateId 校验并应用一条增量事件。
+     *
+     * @param firstUpdateId 事件首个 updateId（Binance {@code U}）
+     * @param finalUpdateId 事件末个 updateId（Binance {@code u}）
+     * @param bids          扁平档位，qty = 0 表示删除该档
+     * @param asks          同上
+     * @param listener      实际变化档位回调（数量未变 / 删除不存在的档不回调），可为 null
+     */
+    public Result apply(long firstUpdateId, long finalUpdateId, long[] bids, long[] asks, LevelListener listener) {
+        long stamp = lock.writeLock();
+        try {
+            if (lastUpdateId < 0) {
+                return Result.NOT_SYNCED;
+            }
+            if (finalUpdateId <= lastUpdateId) {
+                return Result.STALE;
+            }
+            boolean continuous = awaitingFirst
+                    ? firstUpdateId <= lastUpdateId + 1
+                    : firstUpdateId == lastUpdateId + 1;
+            if (!continuous) {
+                lastUpdateId = -1L;
+                return Result.GAP;
+            }
+            applySide(this.bids, bids, listener);
+            applySide(this.asks, asks, listener);
+            lastUpdateId = finalUpdateId;
+            awaitingFirst = false;
+            return Result.APPLIED;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private static void applySide(Side side, long[] levels, LevelListener listener) {
+        for (int i = 0; i + 1 < levels.length; i += 2) {
+            long price = levels[i];
+            long qty = levels[i + 1];
+            if (side.set(price, qty) && listener != null) {
+                listener.onLevel(side.bid, price, qty);
+            }
+        }
+    }
+
+    /** 置为未同步（连接断开等），等待下一次快照。 */
+    public void invalidate() {
+        long stamp = lock.writeLock();
+        try {
+            lastUpdateId = -1L;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /** 是否已由快照建立且增量连续。 */
+    public boolean isSynced() {
+        long stamp = lock.readLock();
+        try {
+            return lastUpdateId >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long lastUpdateId() {
+        long stamp = lock.readLock();
+        try {
+            return lastUpdateId;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 前 limit 档深度快照（bids 价格降序、asks 价格升序）；未同步返回 null。
+     *
+     * @param limit 档数，<= 0 表示全部
+     */
+    public MarketAggregator.DepthSnapshot snapshot(int limit) {
+        long stamp = lock.readLock();
+        try {
+            if (lastUpdateId < 0) {
+                return null;
+            }
+            MarketAggregator.DepthSnapshot snap = new MarketAggregator.DepthSnapshot();
+            bids.copyTo(snap.getBids(), limit);
+            asks.copyTo(snap.getAsks(), limit);
+            snap.setUpdateId(lastUpdateId);
+            return snap;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** 最优买价（无则 0）。 */
+    public long bestBid() {
+        long stamp = lock.readLock();
+        try {
+            return bids.best();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** 最优卖价（无则 0）。 */
+    public long bestAsk() {
+        long stamp = lock.readLock();
+        try {
+            return asks.best();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /** 当前档数 {bids, asks}。 */
+    public int[] levelCounts() {
+        long stamp = lock.readLock();
+        try {
+            return new int[]{bids.count, asks.count};
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public String symbol() {
+        return symbol;
+    }
+
+    /** 单侧有序档位：末尾为最优档（bid 升序、ask 降序）。调用方持锁。 */
+    private final class Side {
+        private final boolean bid;
+        private long[] prices = new long[INITIAL_CAPACITY];
+        private long[] qtys = new long[INITIAL_CAPACITY];
+        private int count;
+
+        Side(boolean bid) {
+            this.bid = bid;
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        /**
+         * 设置某价位数量（0 = 删除）。
+         *
+         * @return 档位是否实际变化
+         */
+        boolean set(long price, long qty) {
+            int idx = search(price);
+            if (idx >= 0) {
+                if (qty <= 0) {
+                    System.arraycopy(prices, idx + 1, prices, idx, count - idx - 1);
+                    System.arraycopy(qtys, idx + 1, qtys, idx, count - idx - 1);
+                    count--;
+                    return true;
+                }
+                if (qtys[idx] == qty) {
+                    return false;
+                }
+                qtys[idx] = qty;
+                return true;
+            }
+            if (qty <= 0) {
+                return false;
+            }
+            int ip = -idx - 1;
+            if (count >= maxLevels) {
+                if (ip == 0) {
+                    return false; // 比最差档还差，超出档数上限
+                }
+                // 丢弃最差档（下标 0）腾位
+                System.arraycopy(prices, 1, prices, 0, ip - 1);
+                System.arraycopy(qtys, 1, qtys, 0, ip - 1);
+                prices[ip - 1] = price;
+                qtys[ip - 1] = qty;
+                return true;
+            }
+            if (count == prices.length) {
+                int cap = Math.min(maxLevels, prices.length << 1);
+                prices = Arrays.copyOf(prices, cap);
+                qtys = Arrays.copyOf(qtys, cap);
+            }
+            System.arraycopy(prices, ip, prices, ip + 1, count - ip);
+            System.arraycopy(qtys, ip, qtys, ip + 1, count - ip);
+            prices[ip] = price;
+            qtys[ip] = qty;
+            count++;
+            return true;
+        }
+
+        /** 二分（bid 升序、ask 降序）；未找到返回 {@code -(插入点) - 1}。 */
+        private int search(long price) {
+            int lo = 0;
+            int hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                long p = prices[mid];
+                if (p == price) {
+                    return mid;
+                }
+                if (bid ? p < price : p > price) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return -(lo + 1);
+        }
+
+        long best() {
+            return count == 0 ? 0L : prices[count - 1];
+        }
+
+        /** 从最优档起复制前 limit 档。 */
+        void copyTo(java.util.List<MarketAggregator.DepthSnapshot.Level> out, int limit) {
+            int n = limit <= 0 ? count : Math.min(limit, count);
+            for (int i = count - 1; i >= count - n; i--) {
+                out.add(new MarketAggregator.DepthSnapshot.Level(prices[i], qtys[i]));
+            }
+        }
+    }
+}
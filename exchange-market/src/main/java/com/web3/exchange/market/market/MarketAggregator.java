@@ -3,29 +3,39 @@ package com.web3.exchange.market.market;
 import com.web3.exchange.common.order.dto.TradeSettleDTO;
 import com.web3.exchange.market.market.model.Kline;
 import com.web3.exchange.market.market.model.Ticker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * 内存 K线/ticker 聚合器——消费 ORDER-TRADE 成交流水，按 UTC 整点窗口切分聚合 OHLCV。
  * <p>
- * <b>数据结构</b>：{@code symbol -> interval -> openTime -> Kline}（外层 ConcurrentHashMap，
- * 内层亦并发容器），单 key 更新用 {@code ConcurrentHashMap.compute} 保证原子，同窗口 OHLC
- * 更新不丢、不乱，不同 symbol/周期互不阻塞。
+ * <b>数据结构</b>：{@code symbol -> KlineRing[周期]}，每个 (symbol, interval) 一个定长时间索引环
+ * （{@link KlineRing}，容量 {@code market.kline.capacity}），long 列存 OHLCV：当前根更新 O(1)，
+ * 区间读取按窗口序号顺序切片、无需排序；内存随交易对数线性、不随运行时长增长。不同 symbol/周期互不阻塞。
  * </p>
  * <p>
  * <b>精度</b>：price/quantity/quoteAmount 一律 Long 最小单位累加/比较，不做除法。
  * </p>
  * <p>
- * <b>幂等</b>：按 tradeNo 内存去重（重启即重建，与「行情可重放、非强一致」特性一致）。
+ * <b>幂等</b>：按 tradeNo 在有界滚动窗口内去重（{@link TradeDedup}，{@code market.dedup.*}；
+ * 重启即重建，超出窗口的重放不再识别，与「行情可重放、非强一致」特性一致）。外部行情注入的成交单号本身唯一，不参与去重。
+ * </p>
+ * <p>
+ * <b>变更通知</b>：成交聚合与外部 ticker / K线注入后回调 {@link ChangeListener}（只报「哪个频道变了」，不带数据），
+ * 由 WebSocket 推送侧合并后按需取数推送。
  * </p>
  */
 @Component
@@ -33,16 +43,72 @@ public class MarketAggregator {
 
     private static final Logger log = LoggerFactory.getLogger(MarketAggregator.class);
 
-    /** symbol -> interval -> openTime -> Kline */
-    private final ConcurrentHashMap<String, ConcurrentHashMap<String, ConcurrentHashMap<Long, Kline>>> store =
-            new ConcurrentHashMap<>();
+    private static final KlineInterval[] INTERVALS = KlineInterval.values();
+
+    /** symbol -> K线环（下标 = KlineInterval.ordinal()） */
+    private final ConcurrentHashMap<String, KlineRing[]> store = new ConcurrentHashMap<>();
+
+    /** symbol -> 滚动 24h 统计（对象锁保护） */
+    private final ConcurrentHashMap<String, RollingTicker> rollingTickers = new ConcurrentHashMap<>();
+
+    /** 有未落库改动的 K线环（每个环至多在队列中出现一次，见 {@link KlineRing#drainDirty}） */
+    private final ConcurrentLinkedQueue<KlineRing> dirtyRings = new ConcurrentLinkedQueue<>();
 
-    /** 已聚合成交号去重（tradeNo:symbol），保证同一成交只聚合一次。 */
-    private final Set<String> seenTrades = ConcurrentHashMap.newKeySet();
+    /** 每个 (symbol, interval) 保留的最近窗口数 */
+    private final int klineCapacity;
+    /** 外部本地订单簿每侧档数上限 */
+    private final int depthMaxLevels;
+
+    /** 已聚合成交号去重（窗口内同一成交只聚合一次；有界，不随运行时长增长）。 */
+    private final TradeDedup seenTrades;
+
+    public MarketAggregator() {
+        this(1440, 30 * 60_000L, 6, 2_000_000, 5000);
+    }
+
+    @Autowired
+    public MarketAggregator(@Value("${market.kline.capacity:1440}") int klineCapacity,
+                            @Value("${market.dedup.window-ms:1800000}") long dedupWindowMs,
+                            @Value("${market.dedup.buckets:6}") int dedupBuckets,
+                            @Value("${market.dedup.max-entries:2000000}") int dedupMaxEntries,
+                            @Value("${market.depth.max-levels:5000}") int depthMaxLevels) {
+        this.klineCapacity = Math.max(MAX_KLINE_PER_QUERY, klineCapacity);
+        this.seenTrades = new TradeDedup(dedupWindowMs, dedupBuckets, dedupMaxEntries);
+        this.depthMaxLevels = Math.max(1, depthMaxLevels);
+    }
+
+    /** 注册去重指标：窗口内条数、到期 / 容量淘汰累计数（actuator 存在时）。 */
+    @Autowired(required = false)
+    void bindMetrics(MeterRegistry registry) {
+        Gauge.builder("market.trade.dedup.size", seenTrades, TradeDedup::size)
+                .description("去重窗口内成交数").register(registry);
+        FunctionCounter.builder("market.trade.dedup.evicted", seenTrades, TradeDedup::expiredCount)
+                .tag("reason", "expired").description("到期淘汰的去重条目").register(registry);
+        FunctionCounter.builder("market.trade.dedup.evicted", seenTrades, TradeDedup::overflowCount)
+                .tag("reason", "capacity").description("超容量提前淘汰的去重条目").register(registry);
+    }
 
     /** 每 (symbol, interval) 返回最多 K线根数上限（防内存无限增长，查询时过滤即可）。 */
     private static final int MAX_KLINE_PER_QUERY = 1000;
 
+    /** 行情变更回调（单一监听者，未设置则不通知）。 */
+    private volatile ChangeListener changeListener;
+
+    /**
+     * 行情变更回调：在聚合线程（MQ 消费 / 外部行情线程）同步调用，实现须轻量、不阻塞。
+     */
+    public interface ChangeListener {
+        /** 该交易对 ticker 可能已变化。 */
+        void onTickerChanged(String symbol);
+
+        /** 该交易对某周期的最新 K线已变化。 */
+        void onKlineChanged(String symbol, KlineInterval interval);
+    }
+
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
     /**
      * 聚合一笔成交：对每个启用周期做 OHLCV 更新。
      */
@@ -67,13 +133,17 @@ public class MarketAggregator {
         dto.setPrice(price);
         dto.setQuantity(quantity);
         dto.setQuoteAmount(price * quantity);
-        onTrade(dto);
+        aggregate(dto, System.currentTimeMillis(), false);
     }
 
     /**
      * 在指定时刻聚合一笔成交（供测试注入精确时间戳做跨窗口/同窗口断言）。
      */
     void onTradeAt(TradeSettleDTO dto, long nowMs) {
+        aggregate(dto, nowMs, true);
+    }
+
+    private void aggregate(TradeSettleDTO dto, long nowMs, boolean dedup) {
         String tradeNo = dto.getTradeNo();
         String symbol = dto.getSymbol();
         if (tradeNo == null || symbol == null || dto.getPrice() == null
@@ -82,25 +152,24 @@ public class MarketAggregator {
             return;
         }
         // 幂等去重：同一成交只聚合一次
-        if (!seenTrades.add(tradeNo + ":" + symbol)) {
+        if (dedup && !seenTrades.add(tradeNo, nowMs)) {
             log.debug("[market] 重复成交，跳过聚合。tradeNo={}", tradeNo);
             return;
         }
+        KlineRing[] rings = rings(symbol);
         for (KlineInterval iv : KlineInterval.enabled()) {
-            long openTime = (nowMs / iv.millis()) * iv.millis();
-            ConcurrentHashMap<Long, Kline> map = intervalMap(symbol, iv);
-            map.compute(openTime, (k, cur) -> {
-                if (cur == null) {
-                    return new Kline(symbol, iv.intervalName(), k,
-                            dto.getPrice(), dto.getQuantity(), dto.getQuoteAmount());
-                }
-                cur.setHigh(Math.max(cur.getHigh(), dto.getPrice()));
-                cur.setLow(Math.min(cur.getLow(), dto.getPrice()));
-                cur.setClose(dto.getPrice());                       // 最新成交价即收盘价
-                cur.setVolume(cur.getVolume() + dto.getQuantity());
-                cur.setQuoteVolume(cur.getQuoteVolume() + dto.getQuoteAmount());
-                return cur;
-            });
+            rings[iv.ordinal()].onTrade(nowMs, dto.getPrice(), dto.getQuantity(), dto.getQuoteAmount());
+        }
+        RollingTicker rolling = rollingTickers.computeIfAbsent(symbol, RollingTicker::new);
+        synchronized (rolling) {
+            rolling.onTrade(nowMs, dto.getPrice(), dto.getQuantity(), dto.getQuoteAmount());
+        }
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onTickerChanged(symbol);
+            for (KlineInterval iv : KlineInterval.enabled()) {
+                listener.onKlineChanged(symbol, iv);
+            }
         }
         log.debug("[market] 已聚合成交 {} {} price={} qty={} quote={}", symbol, tradeNo,
                 dto.getPrice(), dto.getQuantity(), dto.getQuoteAmount());
@@ -110,32 +179,35 @@ public class MarketAggregator {
      * 查询某交易对某周期的 K线（按窗口时间升序，最多 limit 根，默认取最近 N 根）。
      */
     public List<Kline> getKlines(String symbol, String interval, int limit) {
+        KlineRing ring = ring(symbol, interval);
+        return ring == null ? List.of() : ring.latest(Math.min(Math.max(limit, 1), MAX_KLINE_PER_QUERY));
+    }
+
+    /**
+     * 查询 openTime 落在 [startTime, endTime] 的 K线（按窗口时间升序，最多 limit 根）。
+     */
+    public List<Kline> getKlines(String symbol, String interval, long startTime, long endTime, int limit) {
+        KlineRing ring = ring(symbol, interval);
+        return ring == null ? List.of() : ring.range(startTime, endTime, Math.min(Math.max(limit, 1), MAX_KLINE_PER_QUERY));
+    }
+
+    /** 某交易对某周期的最新一根（无则 null）。 */
+    public Kline getLatestKline(String symbol, String interval) {
+        KlineRing ring = ring(symbol, interval);
+        return ring == null ? null : ring.last();
+    }
+
+    private KlineRing ring(String symbol, String interval) {
         KlineInterval iv = KlineInterval.fromName(interval);
-        if (iv == null) {
-            return List.of();
-        }
-        ConcurrentHashMap<String, ConcurrentHashMap<Long, Kline>> byInterval = store.get(symbol);
-        if (byInterval == null) {
-            return List.of();
-        }
-        ConcurrentHashMap<Long, Kline> map = byInterval.get(iv.intervalName());
-        if (map == null || map.isEmpty()) {
-            return List.of();
-        }
-        int cap = Math.min(Math.max(limit, 1), MAX_KLINE_PER_QUERY);
-        List<Kline> list = new ArrayList<>(map.values());
-        list.sort(Comparator.comparingLong(Kline::getOpenTime));
-        if (list.size() > cap) {
-            return new ArrayList<>(list.subList(list.size() - cap, list.size()));
-        }
-        return list;
+        KlineRing[] rings = iv == null ? null : store.get(symbol);
+        return rings == null ? null : rings[iv.ordinal()];
     }
 
     /** symbol -> 权威 24h ticker 快照（外部真实行情覆盖，优先级高于 K线推导） */
     private final ConcurrentHashMap<String, Ticker> externalTickers = new ConcurrentHashMap<>();
 
-    /** symbol -> 真实订单簿深度（Binance @depth20，每档 {price, qty} 最小单位） */
-    private final ConcurrentHashMap<String, DepthSnapshot> externalDepths = new ConcurrentHashMap<>();
+    /** symbol -> 外部本地 L2 订单簿（Binance 快照 + @depth 增量重建，每档 {price, qty} 最小单位） */
+    private final ConcurrentHashMap<String, LocalOrderBook> externalBooks = new ConcurrentHashMap<>();
 
     /** 订单簿深度快照（Level 数组，价格/数量均为 Long 最小单位）。 */
     @lombok.Data
@@ -151,17 +223,56 @@ public class MarketAggregator {
         }
     }
 
-    /** 注入真实订单簿深度（Binance @depth20）。覆盖同 symbol 快照。 */
+    /** 取（不存在则创建）某交易对的外部本地订单簿。 */
+    public LocalOrderBook externalBook(String symbol) {
+        return externalBooks.computeIfAbsent(symbol, s -> new LocalOrderBook(s, depthMaxLevels));
+    }
+
+    /**
+     * 用 REST 快照重置外部本地订单簿（扁平档位 {@code [price0, qty0, ...]}）。
+     */
+    public void resetExternalDepth(String symbol, long lastUpdateId, long[] bids, long[] asks) {
+        externalBook(symbol).reset(lastUpdateId, bids, asks);
+    }
+
+    /**
+     * 应用一条外部深度增量（Binance {@code depthUpdate}，按 U / u 校验连续性）。
+     *
+     * @param listener 实际变化档位回调，可为 null
+     */
+    public LocalOrderBook.Result applyExternalDepthDiff(String symbol, long firstUpdateId, long finalUpdateId,
+                                                        long[] bids, long[] asks, LocalOrderBook.LevelListener listener) {
+        return externalBook(symbol).apply(firstUpdateId, finalUpdateId, bids, asks, listener);
+    }
+
+    /**
+     * 以整份档位替换外部深度（兼容不带 updateId 的旧版 depth 事件）。之后的增量按首条规则从 updateId 0 续接。
+     */
     public void updateExternalDepth(String symbol, java.util.List<long[]> bids, java.util.List<long[]> asks) {
-        DepthSnapshot snap = new DepthSnapshot();
-        for (long[] b : bids) snap.getBids().add(new DepthSnapshot.Level(b[0], b[1]));
-        for (long[] a : asks) snap.getAsks().add(new DepthSnapshot.Level(a[0], a[1]));
-        externalDepths.put(symbol, snap);
+        externalBook(symbol).reset(0L, flatten(bids), flatten(asks));
     }
 
-    /** 读取某交易对真实深度（无则 null）。 */
+    private static long[] flatten(java.util.List<long[]> levels) {
+        if (levels == null) {
+            return new long[0];
+        }
+        long[] out = new long[levels.size() * 2];
+        for (int i = 0; i < levels.size(); i++) {
+            out[2 * i] = levels.get(i)[0];
+            out[2 * i + 1] = levels.get(i)[1];
+        }
+        return out;
+    }
+
+    /** 读取某交易对真实深度前 20 档（无或未同步则 null）。 */
     public DepthSnapshot getExternalDepth(String symbol) {
-        return externalDepths.get(symbol);
+        return getExternalDepth(symbol, 20);
+    }
+
+    /** 读取某交易对真实深度前 limit 档（limit <= 0 为全部；无或未同步则 null）。 */
+    public DepthSnapshot getExternalDepth(String symbol, int limit) {
+        LocalOrderBook book = externalBooks.get(symbol);
+        return book == null ? null : book.snapshot(limit);
     }
 
     /**
@@ -173,11 +284,11 @@ public class MarketAggregator {
                                    long volume, long quoteVolume) {
         KlineInterval iv = KlineInterval.fromName(interval);
         if (iv == null) return;
-        Kline k = new Kline(symbol, iv.intervalName(), openTime, close, volume, quoteVolume);
-        k.setOpen(open);
-        k.setHigh(high);
-        k.setLow(low);
-        intervalMap(symbol, iv).put(openTime, k);
+        rings(symbol)[iv.ordinal()].put(openTime, open, high, low, close, volume, quoteVolume);
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onKlineChanged(symbol, iv);
+        }
     }
 
     /**
@@ -187,49 +298,34 @@ public class MarketAggregator {
     public void updateExternalTicker(Ticker t) {
         if (t == null || t.getSymbol() == null) return;
         externalTickers.put(t.getSymbol(), t);
+        ChangeListener listener = changeListener;
+        if (listener != null) {
+            listener.onTickerChanged(t.getSymbol());
+        }
     }
 
     /**
-     * 单交易对 ticker——优先返回外部真实行情快照；否则由 D1 K线派生（内部模拟成交兜底）。
+     * 单交易对 ticker——优先返回外部真实行情快照；否则取成交滚动 24h 统计（内部撮合成交兜底）。
      */
     public Ticker getTicker(String symbol) {
         Ticker ext = externalTickers.get(symbol);
         if (ext != null) {
             return ext;
         }
-        List<Kline> d1 = getKlines(symbol, "1d", 100);
-        if (d1.isEmpty()) {
+        return getRollingTicker(symbol, System.currentTimeMillis());
+    }
+
+    /**
+     * 截至 nowMs 的滚动 24h ticker（窗口为最近 1440 个分钟桶）：推进窗口后 O(1) 读取；从未成交返回 null。
+     */
+    Ticker getRollingTicker(String symbol, long nowMs) {
+        RollingTicker rolling = rollingTickers.get(symbol);
+        if (rolling == null) {
             return null;
         }
-        Kline latest = d1.get(d1.size() - 1);
-        long last = latest.getClose();
-        long open = latest.getOpen();
-        long high = latest.getHigh();
-        long low = latest.getLow();
-        long volume = latest.getVolume();
-        long quoteVolume = latest.getQuoteVolume();
-        long count = 1;
-        // 合并前 1 个 D1 窗口（近似覆盖 24h）
-        if (d1.size() >= 2) {
-            Kline prev = d1.get(d1.size() - 2);
-            high = Math.max(high, prev.getHigh());
-            low = Math.min(low, prev.getLow());
-            volume += prev.getVolume();
-            quoteVolume += prev.getQuoteVolume();
-            count++;
+        synchronized (rolling) {
+            return rolling.snapshot(nowMs);
         }
-        long change = open == 0L ? 0L : (last - open) * 10000L / open;
-        Ticker t = new Ticker();
-        t.setSymbol(symbol);
-        t.setLastPrice(last);
-        t.setOpenPrice(open);
-        t.setHigh24h(high);
-        t.setLow24h(low);
-        t.setVolume24h(volume);
-        t.setQuoteVolume24h(quoteVolume);
-        t.setChange24h(change);
-        t.setCount24h(count);
-        return t;
     }
 
     /** 全市场 ticker 列表。 */
@@ -245,9 +341,9 @@ public class MarketAggregator {
         return result;
     }
 
-    /** 是否已消费到某成交（测试/诊断用）。 */
+    /** 去重窗口内是否已消费到某成交（测试/诊断用）。 */
     public boolean hasTrade(String tradeNo) {
-        return seenTrades.stream().anyMatch(s -> s.startsWith(tradeNo + ":"));
+        return seenTrades.contains(tradeNo);
     }
 
     /**
@@ -259,24 +355,36 @@ public class MarketAggregator {
         if (iv == null) {
             return;
         }
-        Kline k = new Kline(row.getSymbol(), row.getPeriod(), row.getWindowStart(),
-                row.getOpen(), row.getVolume(), row.getQuoteVolume());
-        k.setHigh(row.getHigh());
-        k.setLow(row.getLow());
-        k.setClose(row.getClose());
-        ConcurrentHashMap<Long, Kline> map = intervalMap(row.getSymbol(), iv);
-        map.putIfAbsent(row.getWindowStart(), k);
+        rings(row.getSymbol())[iv.ordinal()].restore(row.getWindowStart(), row.getOpen(), row.getHigh(), row.getLow(),
+                row.getClose(), row.getVolume(), row.getQuoteVolume());
+        if (iv == KlineInterval.M1) {
+            // 1m 已关闭窗口同时回填滚动 24h 统计，重启后 ticker 不从零开始（笔数无法还原）
+            RollingTicker rolling = rollingTickers.computeIfAbsent(row.getSymbol(), RollingTicker::new);
+            synchronized (rolling) {
+                rolling.restoreMinute(row.getWindowStart(), row.getOpen(), row.getHigh(), row.getLow(),
+                        row.getClose(), row.getVolume(), row.getQuoteVolume());
+            }
+        }
+    }
+
+    /** 获取某 symbol 的各周期 K线环（惰性创建）。 */
+    private KlineRing[] rings(String symbol) {
+        return store.computeIfAbsent(symbol, s -> {
+            KlineRing[] rings = new KlineRing[INTERVALS.length];
+            for (KlineInterval iv : INTERVALS) {
+                rings[iv.ordinal()] = new KlineRing(s, iv, klineCapacity, dirtyRings::offer);
+            }
+            return rings;
+        });
     }
 
-    /** 获取某 symbol×interval 的窗口 map（惰性建内层容器）。 */
-    private ConcurrentHashMap<Long, Kline> intervalMap(String symbol, KlineInterval iv) {
-        ConcurrentHashMap<String, ConcurrentHashMap<Long, Kline>> byInterval =
-                store.computeIfAbsent(symbol, k -> new ConcurrentHashMap<>());
-        return byInterval.computeIfAbsent(iv.intervalName(), k -> new ConcurrentHashMap<>());
+    /** 取出一个有未落库改动的 K线环（无则 null），供持久化增量写库。 */
+    public KlineRing pollDirtyRing() {
+        return dirtyRings.poll();
     }
 
-    /** 暴露内部 store 供持久化扫描/测试（返回内部引用仅供只读遍历）。 */
-    public Map<String, ConcurrentHashMap<String, ConcurrentHashMap<Long, Kline>>> rawStore() {
+    /** 暴露内部 K线环供诊断/测试（返回内部引用仅供只读遍历）。 */
+    public Map<String, KlineRing[]> rawStore() {
         return store;
     }
 }
@@ -0,0 +1,281 @@
+package com.web3.exchange.market.market;
+
+import com.web3.exchange.market.market.model.Ticker;
+
+import java.util.Arrays;
+
+/**
+ * 单交易对的滚动 24h 统计：1440 个分钟桶组成的环，窗口为 {@code (当前分钟 - 1440, 当前分钟]}。
+ * <p>
+ * 成交量 / 成交额 / 笔数为窗口内累加和，分钟滚出窗口时减去该桶；最高 / 最低价用单调队列维护
+ * （队首即窗口极值，当前分钟的极值只会单向变化，入队时弹出被支配的队尾）；开盘价为窗口内最早非空桶的 open，
+ * 最早桶滚出时向后找下一个非空桶（每个桶每轮至多经过一次，均摊 O(1)）。读取只推进时间后取字段，O(1)。
+ * </p>
+ * <p>
+ * 写入早于当前分钟的桶（DB 回填 / 时钟回拨）时累加和照常更新，单调队列标记为失效、下次读取时按桶重建。
+ * 非线程安全，由 {@link MarketAggregator} 按交易对加锁调用。
+ * </p>
+ */
+final class RollingTicker {
+
+    static final int WINDOW_MINUTES = 1440;
+    private static final long MINUTE = 60_000L;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private final String symbol;
+
+    /** 桶所属分钟（epoch minute），NONE = 空桶 */
+    private final long[] minutes = new long[WINDOW_MINUTES];
+    private final long[] opens = new long[WINDOW_MINUTES];
+    private final long[] highs = new long[WINDOW_MINUTES];
+    private final long[] lows = new long[WINDOW_MINUTES];
+    private final long[] volumes = new long[WINDOW_MINUTES];
+    private final long[] quoteVolumes = new long[WINDOW_MINUTES];
+    private final long[] counts = new long[WINDOW_MINUTES];
+
+    private final MonotonicQueue maxQueue = new MonotonicQueue(true);
+    private final MonotonicQueue minQueue = new MonotonicQueue(false);
+    private boolean queuesStale;
+
+    /** 窗口右端（当前分钟），NONE = 尚无数据 */
+    private long headMinute = NONE;
+    /** 窗口内最早非空桶的分钟（NONE = 窗口为空） */
+    private long openMinute = NONE;
+    private long volume;
+    private long quoteVolume;
+    private long count;
+    /** 最新成交价（窗口清空后仍保留，作为无成交时的 lastPrice） */
+    private long lastPrice;
+    private long lastTradeMinute = NONE;
+
+    RollingTicker(String symbol) {
+        this.symbol = symbol;
+        Arrays.fill(minutes, NONE);
+    }
+
+    /** 聚合一笔成交（nowMs 为成交 / 到达时刻）。 */
+    void onTrade(long nowMs, long price, long quantity, long quoteAmount) {
+        long m = Math.floorDiv(nowMs, MINUTE);
+        if (headMinute != NONE && m <= headMinute - WINDOW_MINUTES) {
+            return; // 已滚出窗口
+        }
+        advance(m);
+        int i = slot(m);
+        if (minutes[i] != m) {
+            minutes[i] = m;
+            opens[i] = price;
+            highs[i] = price;
+            lows[i] = price;
+            volumes[i] = 0;
+            quoteVolumes[i] = 0;
+            counts[i] = 0;
+            if (openMinute == NONE || m < openMinute) {
+                openMinute = m;
+            }
+        } else {
+            highs[i] = Math.max(highs[i], price);
+            lows[i] = Math.min(lows[i], price);
+        }
+        volumes[i] += quantity;
+        quoteVolumes[i] += quoteAmount;
+        counts[i]++;
+        volume += quantity;
+        quoteVolume += quoteAmount;
+        count++;
+        if (m == headMinute) {
+            if (!queuesStale) {
+                maxQueue.push(m, highs[i]);
+                minQueue.push(m, lows[i]);
+            }
+        } else {
+            queuesStale = true; // 写入历史分钟：队列顺序被打破，读取时重建
+        }
+        if (lastTradeMinute == NONE || m >= lastTradeMinute) {
+            lastTradeMinute = m;
+            lastPrice = price;
+        }
+    }
+
+    /**
+     * 回填一根已关闭的 1m K线（重启重建）；该分钟已有数据则忽略。
+     */
+    void restoreMinute(long openTime, long open, long high, long low, long close, long vol, long quoteVol) {
+        long m = Math.floorDiv(openTime, MINUTE);
+        if (headMinute != NONE && m <= headMinute - WINDOW_MINUTES) {
+            return;
+        }
+        advance(m);
+        int i = slot(m);
+        if (minutes[i] == m) {
+            return;
+        }
+        minutes[i] = m;
+        opens[i] = open;
+        highs[i] = high;
+        lows[i] = low;
+        volumes[i] = vol;
+        quoteVolumes[i] = quoteVol;
+        counts[i] = 0; // K线不含笔数
+        volume += vol;
+        quoteVolume += quoteVol;
+        if (openMinute == NONE || m < openMinute) {
+            openMinute = m;
+        }
+        queuesStale = true;
+        if (lastTradeMinute == NONE || m >= lastTradeMinute) {
+            lastTradeMinute = m;
+            lastPrice = close;
+        }
+    }
+
+    /** 24h 快照（nowMs 时刻）；从未有成交返回 null。 */
+    Ticker snapshot(long nowMs) {
+        if (lastTradeMinute == NONE) {
+            return null;
+        }
+        advance(Math.floorDiv(nowMs, MINUTE));
+        Ticker t = new Ticker();
+        t.setSymbol(symbol);
+        t.setLastPrice(lastPrice);
+        if (openMinute == NONE) {
+            // 24h 内无成交：保留最新价，量为 0
+            t.setOpenPrice(lastPrice);
+            t.setHigh24h(lastPrice);
+            t.setLow24h(lastPrice);
+            t.setVolume24h(0L);
+            t.setQuoteVolume24h(0L);
+            t.setChange24h(0L);
+            t.setCount24h(0L);
+            return t;
+        }
+        if (queuesStale) {
+            rebuildQueues();
+        }
+        long open = opens[slot(openMinute)];
+        t.setOpenPrice(open);
+        t.setHigh24h(maxQueue.peek());
+        t.setLow24h(minQueue.peek());
+        t.setVolume24h(volume);
+        t.setQuoteVolume24h(quoteVolume);
+        t.setChange24h(open == 0L ? 0L : (lastPrice - open) * 10000L / open);
+        t.setCount24h(count);
+        return t;
+    }
+
+    /** 窗口右端推进到 m：滚出窗口的桶从累加和、单调队列、开盘指针中移除。 */
+    private void advance(long m) {
+        if (headMinute == NONE) {
+            headMinute = m;
+            return;
+        }
+        if (m <= headMinute) {
+            return;
+        }
+        long expireTo = m - WINDOW_MINUTES; // 分钟 <= expireTo 的桶滚出
+        if (expireTo - (headMinute - WINDOW_MINUTES) >= WINDOW_MINUTES) {
+            // 跨度超过整个窗口：全部清空
+            Arrays.fill(minutes, NONE);
+            volume = 0;
+            quoteVolume = 0;
+            count = 0;
+            openMinute = NONE;
+            maxQueue.clear();
+            minQueue.clear();
+            queuesStale = false;
+        } else {
+            for (long e = headMinute - WINDOW_MINUTES + 1; e <= expireTo; e++) {
+                int i = slot(e);
+                if (minutes[i] == e) {
+                    volume -= volumes[i];
+                    quoteVolume -= quoteVolumes[i];
+                    count -= counts[i];
+                    minutes[i] = NONE;
+                }
+            }
+            maxQueue.expire(expireTo);
+            minQueue.expire(expireTo);
+            if (openMinute != NONE && openMinute <= expireTo) {
+                openMinute = NONE;
+                for (long e = expireTo + 1; e <= headMinute; e++) {
+                    if (minutes[slot(e)] == e) {
+                        openMinute = e;
+                        break;
+                    }
+                }
+            }
+        }
+        headMinute = m;
+    }
+
+    private void rebuildQueues() {
+        maxQueue.clear();
+        minQueue.clear();
+        for (long e = headMinute - WINDOW_MINUTES + 1; e <= headMinute; e++) {
+            int i = slot(e);
+            if (minutes[i] == e) {
+                maxQueue.push(e, highs[i]);
+                minQueue.push(e, lows[i]);
+            }
+        }
+        queuesStale = false;
+    }
+
+    private static int slot(long minute) {
+        return (int) Math.floorMod(minute, (long) WINDOW_MINUTES);
+    }
+
+    /**
+     * 滑动窗口极值单调队列（环形数组，元素为 (分钟, 值)）：max 队列值自队首向队尾严格递减，min 队列严格递增。
+     * 同一分钟重复入队时先弹出被新值支配的队尾（含该分钟的旧值），因此每分钟至多一个元素。
+     */
+    private static final class MonotonicQueue {
+        private final boolean max;
+        private final long[] keys = new long[WINDOW_MINUTES + 1];
+        private final long[] values = new long[WINDOW_MINUTES + 1];
+        private int head;
+        private int size;
+
+        MonotonicQueue(boolean max) {
+            this.max = max;
+        }
+
+        void push(long minute, long value) {
+            while (size > 0) {
+                int tail = index(size - 1);
+                boolean dominated = max ? values[tail] <= value : values[tail] >= value;
+                if (!dominated && keys[tail] != minute) {
+                    break;
+                }
+                if (!dominated) {
+                    return; // 同分钟已有更优值
+                }
+                size--;
+            }
+            int tail = index(size);
+            keys[tail] = minute;
+            values[tail] = value;
+            size++;
+        }
+
+        /** 移除分钟 <= expireTo 的队首元素。 */
+        void expire(long expireTo) {
+            while (size > 0 && keys[head] <= expireTo) {
+                head = (head + 1) % keys.length;
+                size--;
+            }
+        }
+
+        long peek() {
+            return values[head];
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        private int index(int offset) {
+            return (head + offset) % keys.length;
+        }
+    }
+}
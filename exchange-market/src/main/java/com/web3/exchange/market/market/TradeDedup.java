@@ -0,0 +1,224 @@
+package com.web3.exchange.market.market;
+
+import java.util.Arrays;
+
+/**
+ * 有界的成交去重集合：按时间分桶滚动过期，内存上限固定。
+ * <p>
+ * 去重窗口 {@code windowMs} 均分为 {@code buckets} 个时间桶，成交号记入当前时刻所在的桶；
+ * 时间跨过一个桶宽就整桶清空最旧的桶（到期淘汰）。查询检查全部存活桶，因此窗口内的重复投递一定能识别，
+ * 超出窗口的重放不再去重（行情可重放、非强一致，见 {@link MarketAggregator}）。
+ * 条目总数达到 {@code maxEntries} 时提前清空最旧的非空桶（容量淘汰），保证高峰期也不无限增长。
+ * </p>
+ * <p>
+ * 键：撮合成交号是雪花 id（{@code IdWorker}，19 位）的十进制串，直接解析为 long（超出 long 范围同其他格式）；其他格式取 64 位哈希。每个桶是开放寻址的 long 集合，
+ * 不再为每笔成交保留字符串。方法整体加锁，临界区只有几次数组访问。
+ * </p>
+ */
+final class TradeDedup {
+
+    /** 空槽标记；真实键为 0 时改写为 {@link #ZERO_KEY} */
+    private static final long EMPTY = 0L;
+    private static final long ZERO_KEY = 0x9E3779B97F4A7C15L;
+
+    private final long bucketMillis;
+    private final int maxEntries;
+    private final LongSet[] ring;
+    /** ring[i] 当前承载的桶序号（epoch = nowMs / bucketMillis），-1 = 空 */
+    private final long[] epochs;
+    private long currentEpoch = Long.MIN_VALUE;
+    private int size;
+    private long expired;
+    private long overflowed;
+
+    TradeDedup(long windowMs, int buckets, int maxEntries) {
+        int n = Math.max(2, buckets);
+        this.bucketMillis = Math.max(1L, windowMs / n);
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ring = new LongSet[n];
+        this.epochs = new long[n];
+        for (int i = 0; i < n; i++) {
+            ring[i] = new LongSet();
+            epochs[i] = -1L;
+        }
+    }
+
+    /**
+     * 记录一笔成交。
+     *
+     * @return 首次出现返回 true；窗口内已出现过返回 false
+     */
+    synchronized boolean add(String tradeNo, long nowMs) {
+        long key = keyOf(tradeNo);
+        for (LongSet set : ring) {
+            if (set.contains(key)) {
+                return false;
+            }
+        }
+        rotate(Math.max(0L, nowMs) / bucketMillis);
+        if (size >= maxEntries) {
+            evictOldest();
+        }
+        LongSet current = ring[slot(currentEpoch)];
+        current.add(key);
+        size++;
+        return true;
+    }
+
+    /** 窗口内是否出现过该成交号。 */
+    synchronized boolean contains(String tradeNo) {
+        long key = keyOf(tradeNo);
+        for (LongSet set : ring) {
+            if (set.contains(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 推进到 epoch：跨过的桶整桶清空（时钟回拨时继续写当前桶）。 */
+    private void rotate(long epoch) {
+        if (epoch <= currentEpoch) {
+            return;
+        }
+        long from = currentEpoch == Long.MIN_VALUE ? epoch : Math.max(currentEpoch + 1, epoch - ring.length + 1);
+        for (long e = from; e <= epoch; e++) {
+            int i = slot(e);
+            if (epochs[i] != e) {
+                expired += ring[i].size();
+                size -= ring[i].size();
+                ring[i].clear();
+                epochs[i] = e;
+            }
+        }
+        currentEpoch = epoch;
+    }
+
+    /** 容量淘汰：清空最旧的非空桶；只剩当前桶时清空当前桶。 */
+    private void evictOldest() {
+        for (int k = ring.length - 1; k >= 0; k--) {
+            int i = slot(currentEpoch - k);
+            if (ring[i].size() > 0) {
+                overflowed += ring[i].size();
+                size -= ring[i].size();
+                ring[i].clear();
+                return;
+            }
+        }
+    }
+
+    private int slot(long epoch) {
+        return (int) Math.floorMod(epoch, (long) ring.length);
+    }
+
+    /** 成交号 → long 键：纯数字（雪花 id）直接解析，否则 FNV-1a 64 位哈希。 */
+    static long keyOf(String tradeNo) {
+        int len = tradeNo.length();
+        // 雪花 id 最长 19 位：逐位累加，越过 Long.MAX_VALUE 则改走哈希
+        boolean numeric = len > 0 && len <= 19;
+        long key = 0L;
+        for (int i = 0; numeric && i < len; i++) {
+            int d = tradeNo.charAt(i) - '0';
+            numeric = d >= 0 && d <= 9 && key <= (Long.MAX_VALUE - d) / 10;
+            key = key * 10 + d;
+        }
+        if (!numeric) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < len; i++) {
+                h ^= tradeNo.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            key = h;
+        }
+        return key == EMPTY ? ZERO_KEY : key;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /** 累计到期淘汰条数。 */
+    synchronized long expiredCount() {
+        return expired;
+    }
+
+    /** 累计因容量上限提前淘汰的条数。 */
+    synchronized long overflowCount() {
+        return overflowed;
+    }
+
+    /** 开放寻址（线性探测）long 集合，0 为空槽；清空时若曾扩容过大则缩回初始容量以释放内存。 */
+    private static final class LongSet {
+        private static final int INITIAL_CAPACITY = 1024;
+
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        boolean contains(long key) {
+            long[] t = table;
+            int mask = t.length - 1;
+            int i = mix(key) & mask;
+            while (true) {
+                long v = t[i];
+                if (v == EMPTY) {
+                    return false;
+                }
+                if (v == key) {
+                    return true;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        void add(long key) {
+            if ((size + 1) * 2 > table.length) {
+                resize(table.length << 1);
+            }
+            insert(table, key);
+            size++;
+        }
+
+        void clear() {
+            if (size == 0) {
+                return;
+            }
+            if (table.length > INITIAL_CAPACITY * 4) {
+                table = new long[INITIAL_CAPACITY];
+            } else {
+                Arrays.fill(table, EMPTY);
+            }
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] next = new long[capacity];
+            for (long v : table) {
+                if (v != EMPTY) {
+                    insert(next, v);
+                }
+            }
+            table = next;
+        }
+
+        private static void insert(long[] t, long key) {
+            int mask = t.length - 1;
+            int i = mix(key) & mask;
+            while (t[i] != EMPTY) {
+                if (t[i] == key) {
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            t[i] = key;
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
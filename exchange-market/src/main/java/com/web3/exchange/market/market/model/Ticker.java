@@ -3,7 +3,7 @@ package com.web3.exchange.market.market.model;
 import lombok.Data;
 
 /**
- * 交易对实时快照（ticker），全部 Long 最小单位。由 K线聚合结果派生。
+ * 交易对实时快照（ticker），全部 Long 最小单位。由成交滚动 24h 分钟桶统计（RollingTicker）得出，外部行情快照优先。
  */
 @Data
 public class Ticker {
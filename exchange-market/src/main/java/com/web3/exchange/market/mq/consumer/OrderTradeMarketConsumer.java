@@ -1,6 +1,7 @@
 package com.web3.exchange.market.mq.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web3.exchange.common.order.dto.TradeSettleBatchDTO;
 import com.web3.exchange.common.order.dto.TradeSettleDTO;
 import com.web3.exchange.market.market.MarketAggregator;
 import com.web3.exchange.market.mq.Topics;
@@ -12,6 +13,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * ORDER-TRADE 行情消费者——订阅 order 的成交事件，聚合 K线/ticker。
@@ -20,7 +22,7 @@ import java.nio.charset.StandardCharsets;
  * （RocketMQ 同主题不同消费组分别消费，见 docs/mq-topics.md）。
  * </p>
  * <p>
- * 消息体 = {@link TradeSettleDTO}（KEYS = tradeNo）。行情为可重放聚合，重复投递/重投
+ * 消息体 = {@link TradeSettleBatchDTO}（Tag = BATCH，KEYS = batchNo）或单笔 {@link TradeSettleDTO}（KEYS = tradeNo）。行情为可重放聚合，重复投递/重投
  * 由 {@link MarketAggregator} 按 tradeNo 内存去重收敛，不重复累计 volume。
  * </p>
  */
@@ -45,22 +47,28 @@ public class OrderTradeMarketConsumer implements RocketMQListener<MessageExt> {
     @Override
     public void onMessage(MessageExt msg) {
         String bizKey = msg.getKeys() != null ? msg.getKeys() : msg.getMsgId();
-        // 解析结算指令
-        TradeSettleDTO dto;
+        // 解析结算指令：Tag=BATCH 为批量消息体，否则为单笔
+        List<TradeSettleDTO> trades;
         try {
             String body = new String(msg.getBody(), StandardCharsets.UTF_8);
-            dto = objectMapper.readValue(body, TradeSettleDTO.class);
+            trades = TradeSettleBatchDTO.TAG.equals(msg.getTags())
+                    ? objectMapper.readValue(body, TradeSettleBatchDTO.class).getTrades()
+                    : List.of(objectMapper.readValue(body, TradeSettleDTO.class));
         } catch (Exception e) {
             log.error("消费 ORDER-TRADE 消息体解析失败。bizKey={}, err={}", bizKey, e.getMessage(), e);
             throw new IllegalArgumentException("ORDER-TRADE 消息体解析失败: " + bizKey, e); // 触发重投
         }
-        if (dto == null || dto.getTradeNo() == null || dto.getSymbol() == null) {
-            log.error("ORDER-TRADE 消息体不完整，触发重投。bizKey={}", bizKey);
-            throw new IllegalArgumentException("ORDER-TRADE 消息体不完整: " + bizKey);
+        for (TradeSettleDTO dto : trades) {
+            if (dto == null || dto.getTradeNo() == null || dto.getSymbol() == null) {
+                log.error("ORDER-TRADE 消息体不完整，触发重投。bizKey={}", bizKey);
+                throw new IllegalArgumentException("ORDER-TRADE 消息体不完整: " + bizKey);
+            }
         }
-        // 聚合 K线 + ticker（内部按 tradeNo 幂等去重）
-        aggregator.onTrade(dto);
-        log.info("[market] 消费 ORDER-TRADE 聚合行情成功。tradeNo={} symbol={} price={} qty={} quote={}",
-                dto.getTradeNo(), dto.getSymbol(), dto.getPrice(), dto.getQuantity(), dto.getQuoteAmount());
+        // 聚合 K线 + ticker（内部按 tradeNo 幂等去重，批次重投不重复累计）
+        for (TradeSettleDTO dto : trades) {
+            aggregator.onTrade(dto);
+        }
+        log.info("[market] 消费 ORDER-TRADE 聚合行情成功。bizKey={} 成交{}笔 symbol={}",
+                bizKey, trades.size(), trades.isEmpty() ? null : trades.get(0).getSymbol());
     }
 }
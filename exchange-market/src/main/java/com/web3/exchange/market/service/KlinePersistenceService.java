@@ -4,31 +4,35 @@ import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.web3.exchange.market.entity.KlineRow;
 import com.web3.exchange.market.mapper.KlineRowMapper;
 import com.web3.exchange.market.market.KlineInterval;
+import com.web3.exchange.market.market.KlineRing;
 import com.web3.exchange.market.market.MarketAggregator;
 import com.web3.exchange.market.market.model.Kline;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * K线持久化服务——内存+DB 双轨的「已关闭窗口」落库与重启重建。
+ * K线持久化服务——内存+DB 双轨的增量落库与重启重建。
  * <p>
- * <b>落库</b>：@Scheduled 周期扫描内存聚合的 <b>已关闭窗口</b>（openTime + period ≤ now），
- * 经 {@code uk_symbol_period_window} 唯一索引 + ON DUPLICATE KEY UPDATE 幂等 upsert，
- * 同窗口重复只更新同一行；已落库的窗口用 {@code persistedKeys} 去重，避免重复写。
+ * <b>落库</b>：@Scheduled 周期取聚合器的<b>脏环队列</b>（自上次落库后有改动的 (symbol, period)），
+ * 每个环只取改动过的窗口——已关闭窗口的最终态与当前未关闭的一根——同一窗口在一个周期内的多次更新合并为一行，
+ * 按 {@code market.persist.batch-size} 分批多行 upsert（{@code uk_symbol_period_window} + ON DUPLICATE KEY UPDATE 幂等）。
+ * 无成交的交易对不产生任何写入，不再全量扫描内存。写库失败的环重新标脏，下一周期重写。
  * </p>
  * <p>
  * <b>重建</b>：{@link #rebuild()} 在应用就绪（ApplicationReadyEvent）时从 t_kline 读各周期最近 N 条
- * 回填内存 store，实现「重启不丢历史 K线」；回填窗口标记为已持久化，后续不被重复落库。
+ * 回填内存 store（含重启前最后落库的未关闭窗口），实现「重启不丢历史 K线」；回填不标脏、不被重复落库。
+ * 停机前 {@link #flush()} 再落一次，未关闭窗口的最新值也不丢。
  * </p>
  */
 @Service
@@ -38,68 +42,72 @@ public class KlinePersistenceService {
 
     private final KlineRowMapper klineRowMapper;
     private final MarketAggregator aggregator;
-
-    /** 已落库窗口 key：symbol:period:openTime（重启后由回填初始化，避免重复写）。 */
-    private final Set<String> persistedKeys = ConcurrentHashMap.newKeySet();
+    private final int batchSize;
 
     /** 每周期重建/回填的最近窗口数上限。 */
     private static final int REBUILD_LIMIT = 2000;
 
-    public KlinePersistenceService(KlineRowMapper klineRowMapper, MarketAggregator aggregator) {
+    public KlinePersistenceService(KlineRowMapper klineRowMapper, MarketAggregator aggregator,
+                                   @Value("${market.persist.batch-size:500}") int batchSize) {
         this.klineRowMapper = klineRowMapper;
         this.aggregator = aggregator;
+        this.batchSize = Math.max(1, batchSize);
     }
 
     /** 应用就绪后从 DB 重建内存 K线（重启不丢历史）。 */
     @EventListener(ApplicationReadyEvent.class)
     public void rebuild() {
-        List<KlineRow> rows = new ArrayList<>();
-        for (KlineInterval iv : KlineInterval.enabled()) {
-            rows.addAll(klineRowMapper.selectRecentByPeriod(iv.intervalName(), REBUILD_LIMIT));
-        }
         int n = 0;
-        for (KlineRow r : rows) {
-            aggregator.restoreFromDb(r);
-            persistedKeys.add(r.getSymbol() + ":" + r.getPeriod() + ":" + r.getWindowStart());
-            n++;
+        for (KlineInterval iv : KlineInterval.enabled()) {
+            for (KlineRow r : klineRowMapper.selectRecentByPeriod(iv.intervalName(), REBUILD_LIMIT)) {
+                aggregator.restoreFromDb(r);
+                n++;
+            }
         }
-        log.info("[market] K线从 DB 重建完成，回填 {} 条已关闭窗口", n);
+        log.info("[market] K线从 DB 重建完成，回填 {} 条窗口", n);
     }
 
     /**
-     * 周期落库：扫描内存聚合的已关闭窗口，幂等 upsert 到 t_kline。
+     * 周期落库：取脏环改动过的窗口，分批多行 upsert 到 t_kline。
      */
     @Scheduled(fixedRateString = "${market.persist.interval-ms:5000}")
-    public void persistClosedWindows() {
-        long now = System.currentTimeMillis();
+    public void persistDirtyWindows() {
+        // 环 → 本轮取出的最早 openTime（写库失败时据此重新标脏）
+        Map<KlineRing, Long> drained = new LinkedHashMap<>();
         List<KlineRow> toWrite = new ArrayList<>();
-        for (Map.Entry<String, ConcurrentHashMap<String, ConcurrentHashMap<Long, Kline>>> bySymbol
-                : aggregator.rawStore().entrySet()) {
-            String symbol = bySymbol.getKey();
-            for (Map.Entry<String, ConcurrentHashMap<Long, Kline>> byInterval : bySymbol.getValue().entrySet()) {
-                KlineInterval iv = KlineInterval.fromName(byInterval.getKey());
-                if (iv == null) {
-                    continue;
-                }
-                long periodMs = iv.millis();
-                for (Kline k : byInterval.getValue().values()) {
-                    boolean closed = k.getOpenTime() + periodMs <= now;
-                    if (!closed) {
-                        continue;
-                    }
-                    String key = symbol + ":" + byInterval.getKey() + ":" + k.getOpenTime();
-                    if (persistedKeys.add(key)) {
-                        toWrite.add(toRow(symbol, byInterval.getKey(), k));
-                    }
-                }
+        KlineRing ring;
+        while ((ring = aggregator.pollDirtyRing()) != null) {
+            List<Kline> bars = ring.drainDirty();
+            if (bars.isEmpty()) {
+                continue;
+            }
+            drained.put(ring, bars.get(0).getOpenTime());
+            for (Kline k : bars) {
+                toWrite.add(toRow(ring.symbol(), ring.interval().intervalName(), k));
             }
         }
-        if (!toWrite.isEmpty()) {
-            int n = klineRowMapper.upsertBatch(toWrite);
-            log.debug("[market] K线落库 {} 条已关闭窗口", n);
+        if (toWrite.isEmpty()) {
+            return;
+        }
+        int written = 0;
+        try {
+            for (int from = 0; from < toWrite.size(); from += batchSize) {
+                written += klineRowMapper.upsertBatch(toWrite.subList(from, Math.min(from + batchSize, toWrite.size())));
+            }
+            log.debug("[market] K线落库 {} 个窗口，{} 个 (symbol, period)，affected={}", toWrite.size(), drained.size(), written);
+        } catch (Exception e) {
+            // 部分批次可能已提交；upsert 幂等，整轮重新标脏即可
+            drained.forEach(KlineRing::markDirty);
+            log.warn("[market] K线落库失败，{} 个 (symbol, period) 下轮重写: {}", drained.size(), e.getMessage());
         }
     }
 
+    /** 停机前落一次库（含未关闭窗口）。 */
+    @PreDestroy
+    public void flush() {
+        persistDirtyWindows();
+    }
+
     private KlineRow toRow(String symbol, String period, Kline k) {
         KlineRow row = new KlineRow();
         row.setId(IdWorker.getId());
@@ -0,0 +1,82 @@
+package com.web3.exchange.market.config;
+
+import com.web3.exchange.market.market.KlineInterval;
+import com.web3.exchange.market.market.model.Kline;
+import com.web3.exchange.market.market.model.Ticker;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * MarketBinaryCodec 单测：按文档布局（小端、i64 最小单位）逐字段解码校验；period 为 {@link KlineInterval#code} 稳定编号。
+ */
+class MarketBinaryCodecTest {
+
+    @Test
+    void ticker_layout() {
+        Ticker t = new Ticker();
+        t.setLastPrice(930_000_000_000L);
+        t.setChange24h(-120L);
+        t.setHigh24h(955_000_000_000L);
+        t.setLow24h(925_000_000_000L);
+        t.setVolume24h(3_000_000_000L);
+        // quoteVolume24h 缺省 → 0
+        t.setOpenPrice(931_100_000_000L);
+        t.setCount24h(42L);
+        ByteBuffer buf = MarketBinaryCodec.encodeTicker("BTC/USDT", t);
+        assertEquals(3 + 8 + 8 * 8, buf.remaining());
+        ByteBuffer in = buf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(MarketBinaryCodec.VERSION, in.get());
+        assertEquals(MarketBinaryCodec.TYPE_TICKER, in.get());
+        assertEquals("BTC/USDT", symbol(in));
+        assertEquals(930_000_000_000L, in.getLong());
+        assertEquals(-120L, in.getLong());
+        assertEquals(955_000_000_000L, in.getLong());
+        assertEquals(925_000_000_000L, in.getLong());
+        assertEquals(3_000_000_000L, in.getLong());
+        assertEquals(0L, in.getLong());
+        assertEquals(931_100_000_000L, in.getLong());
+        assertEquals(42L, in.getLong());
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    void kline_layout() {
+        Kline k = new Kline("ETH/USDT", "1h", 1_728_000_000_000L, 100L, 7L, 700L);
+        k.setHigh(130L);
+        k.setLow(90L);
+        k.setClose(120L);
+        ByteBuffer in = MarketBinaryCodec.encodeKline("ETH/USDT", KlineInterval.H1, k).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(MarketBinaryCodec.VERSION, in.get());
+        assertEquals(MarketBinaryCodec.TYPE_KLINE, in.get());
+        assertEquals("ETH/USDT", symbol(in));
+        assertEquals(3, in.get()); // 协议编号，不随枚举顺序变化
+        long[] expect = {1_728_000_000_000L, 100L, 130L, 90L, 120L, 7L, 700L};
+        for (long v : expect) {
+            assertEquals(v, in.getLong());
+        }
+        assertEquals(0, in.remaining());
+    }
+
+    @Test
+    void intervalCodes_areUniqueAndFitInOneByte() {
+        Set<Integer> codes = new HashSet<>();
+        for (KlineInterval iv : KlineInterval.values()) {
+            assertEquals(iv.code() & 0xFF, iv.code());
+            assertTrue(codes.add(iv.code()), "编号重复: " + iv);
+        }
+    }
+
+    private static String symbol(ByteBuffer in) {
+        byte[] b = new byte[in.get() & 0xFF];
+        in.get(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,43 @@
+package com.web3.exchange.market.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web3.exchange.market.market.MarketAggregator;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * MarketWebSocketHandler 单测：unsubscribe 未带 format 时 JSON 与二进制订阅一并取消，带 format 时只取消该格式。
+ */
+class MarketWebSocketHandlerTest {
+
+    private final MarketWsBroadcaster broadcaster = mock(MarketWsBroadcaster.class);
+    private final MarketWebSocketHandler handler =
+            new MarketWebSocketHandler(new ObjectMapper(), new MarketAggregator(), broadcaster);
+    private final WebSocketSession session = mock(WebSocketSession.class);
+
+    @Test
+    void unsubscribeWithoutFormat_removesBothVariants() {
+        handler.handleTextMessage(session,
+                new TextMessage("{\"op\":\"unsubscribe\",\"channel\":\"kline\",\"symbol\":\"BTC/USDT\",\"period\":\"1m\"}"));
+        verify(broadcaster).unsubscribe(session, "kline:BTC/USDT:1m");
+        verify(broadcaster).unsubscribe(session, "kline:BTC/USDT:1m" + MarketWebSocketHandler.BINARY_SUFFIX);
+    }
+
+    @Test
+    void unsubscribeWithFormat_removesOnlyThatVariant() {
+        handler.handleTextMessage(session,
+                new TextMessage("{\"op\":\"unsubscribe\",\"channel\":\"ticker\",\"symbol\":\"BTC/USDT\",\"format\":\"binary\"}"));
+        verify(broadcaster).unsubscribe(session, "ticker:BTC/USDT" + MarketWebSocketHandler.BINARY_SUFFIX);
+        verify(broadcaster, never()).unsubscribe(session, "ticker:BTC/USDT");
+
+        handler.handleTextMessage(session,
+                new TextMessage("{\"op\":\"unsubscribe\",\"channel\":\"ticker\",\"symbol\":\"ETH/USDT\",\"format\":\"json\"}"));
+        verify(broadcaster).unsubscribe(session, "ticker:ETH/USDT");
+        verify(broadcaster, never()).unsubscribe(session, "ticker:ETH/USDT" + MarketWebSocketHandler.BINARY_SUFFIX);
+    }
+}
@@ -0,0 +1,166 @@
+package com.web3.exchange.market.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * MarketWsBroadcaster 单测：同一帧分发给频道全部订阅者、退订即停推、慢消费者 drop / disconnect 策略、
+ * 控制帧不被丢弃、发送超时由巡检断开（不依赖下一帧、不占用发送线程）。
+ */
+class MarketWsBroadcasterTest {
+
+    private MarketWsBroadcaster broadcaster;
+
+    @AfterEach
+    void tearDown() {
+        if (broadcaster != null) {
+            broadcaster.shutdown();
+        }
+    }
+
+    @Test
+    void broadcast_sharesOneFrameAcrossSubscribers() throws Exception {
+        broadcaster = new MarketWsBroadcaster(16, "drop", 10_000, 2);
+        List<WebSocketMessage<?>> a = new CopyOnWriteArrayList<>();
+        List<WebSocketMessage<?>> b = new CopyOnWriteArrayList<>();
+        WebSocketSession s1 = session("s1", a, null);
+        WebSocketSession s2 = session("s2", b, null);
+        broadcaster.register(s1);
+        broadcaster.register(s2);
+        broadcaster.subscribe(s1, "ticker:BTC/USDT");
+        broadcaster.subscribe(s1, "ticker:BTC/USDT"); // 幂等
+        broadcaster.subscribe(s2, "ticker:BTC/USDT");
+
+        assertEquals(2, broadcaster.broadcast("ticker:BTC/USDT", "{\"p\":1}"));
+        assertEquals(0, broadcaster.broadcast("ticker:ETH/USDT", "{\"p\":2}"));
+        awaitSize(a, 1);
+        awaitSize(b, 1);
+        assertSame(a.get(0), b.get(0), "同一频道只构建一个帧对象");
+
+        broadcaster.unsubscribe(s2, "ticker:BTC/USDT");
+        assertEquals(1, broadcaster.broadcast("ticker:BTC/USDT", "{\"p\":3}"));
+        broadcaster.unregister(s1);
+        assertFalse(broadcaster.hasSubscribers("ticker:BTC/USDT"));
+        assertTrue(broadcaster.activeChannels().isEmpty());
+    }
+
+    @Test
+    void slowConsumer_dropPolicy_keepsNewestFrames() throws Exception {
+        broadcaster = new MarketWsBroadcaster(2, "drop", 10_000, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+        WebSocketSession slow = session("slow", sent, release);
+        broadcaster.register(slow);
+        broadcaster.subscribe(slow, "kline:BTC/USDT:1m");
+
+        broadcaster.broadcast("kline:BTC/USDT:1m", "0"); // 被发送线程取走后阻塞
+        awaitSize(sent, 1);
+        for (int i = 1; i <= 5; i++) {
+            broadcaster.broadcast("kline:BTC/USDT:1m", String.valueOf(i));
+        }
+        assertEquals(3, broadcaster.droppedFrames());
+        release.countDown();
+        awaitSize(sent, 3);
+        assertEquals(List.of("0", "4", "5"), sent.stream().map(m -> (String) m.getPayload()).toList());
+    }
+
+    @Test
+    void slowConsumer_disconnectPolicy_closesSession() throws Exception {
+        broadcaster = new MarketWsBroadcaster(2, "disconnect", 10_000, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+        WebSocketSession slow = session("slow", sent, release);
+        broadcaster.register(slow);
+        broadcaster.subscribe(slow, "ticker:BTC/USDT");
+
+        broadcaster.broadcast("ticker:BTC/USDT", "0");
+        awaitSize(sent, 1);
+        broadcaster.broadcast("ticker:BTC/USDT", "1");
+        broadcaster.broadcast("ticker:BTC/USDT", "2");
+        assertEquals(0, broadcaster.broadcast("ticker:BTC/USDT", "3"), "队列满即断开");
+        assertFalse(broadcaster.hasSubscribers("ticker:BTC/USDT"));
+        assertEquals(0, broadcaster.sessionCount());
+        release.countDown();
+        verify(slow, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    @Test
+    void dropPolicy_neverDropsControlFrames() throws Exception {
+        broadcaster = new MarketWsBroadcaster(2, "drop", 10_000, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+        WebSocketSession slow = session("slow", sent, release);
+        broadcaster.register(slow);
+        broadcaster.subscribe(slow, "ticker:BTC/USDT");
+
+        broadcaster.broadcast("ticker:BTC/USDT", "0");
+        awaitSize(sent, 1);
+        broadcaster.send(slow, "ack");
+        for (int i = 1; i <= 4; i++) {
+            broadcaster.broadcast("ticker:BTC/USDT", String.valueOf(i));
+        }
+        assertEquals(2, broadcaster.droppedFrames(), "只丢行情帧");
+        release.countDown();
+        awaitSize(sent, 4);
+        assertEquals(List.of("0", "ack", "3", "4"), sent.stream().map(m -> (String) m.getPayload()).toList());
+    }
+
+    @Test
+    void watchdog_closesStuckSession_withoutNextFrameOrFreeSendThread() throws Exception {
+        broadcaster = new MarketWsBroadcaster(4, "drop", 100, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+        WebSocketSession stuck = session("stuck", sent, release);
+        broadcaster.register(stuck);
+        broadcaster.subscribe(stuck, "ticker:BTC/USDT");
+
+        broadcaster.broadcast("ticker:BTC/USDT", "0"); // 唯一的发送线程阻塞在此连接上
+        awaitSize(sent, 1);
+        verify(stuck, timeout(2000)).close(CloseStatus.SESSION_NOT_RELIABLE);
+        assertEquals(0, broadcaster.sessionCount());
+        assertFalse(broadcaster.hasSubscribers("ticker:BTC/USDT"));
+        release.countDown();
+    }
+
+    /** 记录发送帧的 session；release 非空时首帧发送阻塞到放行，模拟慢客户端。 */
+    private static WebSocketSession session(String id, List<WebSocketMessage<?>> sink, CountDownLatch release) throws Exception {
+        WebSocketSession s = mock(WebSocketSession.class);
+        when(s.getId()).thenReturn(id);
+        when(s.isOpen()).thenReturn(true);
+        doAnswer(inv -> {
+            sink.add(inv.getArgument(0));
+            if (release != null) {
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(s).sendMessage(any());
+        return s;
+    }
+
+    private static void awaitSize(List<?> list, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (list.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(size, list.size());
+    }
+}
@@ -0,0 +1,94 @@
+package com.web3.exchange.market.config;
+
+import com.web3.exchange.market.market.KlineInterval;
+import com.web3.exchange.market.market.MarketAggregator;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * MarketWsDispatcher 单测：无订阅者不入脏集合、最小间隔内多次变化合并为一帧、到期补推最新值。
+ * 直接驱动 {@code dispatch(now)}，不启动分发线程。
+ */
+class MarketWsDispatcherTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final MarketWebSocketHandler handler = mock(MarketWebSocketHandler.class);
+    private final MarketWsBroadcaster broadcaster = mock(MarketWsBroadcaster.class);
+    private final MarketWsDispatcher dispatcher =
+            new MarketWsDispatcher(new MarketAggregator(), handler, broadcaster, 50, 250);
+
+    @Test
+    void idleChannel_costsNothing() {
+        when(broadcaster.hasSubscribers(anyString())).thenReturn(false);
+        dispatcher.onTickerChanged("BTC/USDT");
+        dispatcher.onKlineChanged("BTC/USDT", KlineInterval.M1);
+        assertEquals(0, dispatcher.pendingChannels());
+        assertEquals(Long.MAX_VALUE, dispatcher.dispatch(0));
+        verify(handler, never()).buildChannelFrame(anyString());
+    }
+
+    @Test
+    void changesWithinInterval_conflateIntoOneFrame() {
+        String key = "ticker:BTC/USDT";
+        when(broadcaster.hasSubscribers(key)).thenReturn(true);
+        TextMessage t1 = new TextMessage("t1");
+        TextMessage t2 = new TextMessage("t2");
+        doReturn(t1, t2).when(handler).buildChannelFrame(key);
+
+        // 首次变化立即推
+        dispatcher.onTickerChanged("BTC/USDT");
+        long t0 = 1_000 * MS;
+        assertEquals(Long.MAX_VALUE, dispatcher.dispatch(t0));
+        verify(broadcaster).broadcast(key, t1);
+
+        // 50ms 内的多次变化只留一个脏位，未到期不推，返回到期时刻
+        for (int i = 0; i < 100; i++) {
+            dispatcher.onTickerChanged("BTC/USDT");
+        }
+        assertEquals(1, dispatcher.pendingChannels());
+        assertEquals(t0 + 50 * MS, dispatcher.dispatch(t0 + 10 * MS));
+        verify(broadcaster, times(1)).broadcast(anyString(), any(WebSocketMessage.class));
+
+        // 到期推送最新值
+        assertEquals(Long.MAX_VALUE, dispatcher.dispatch(t0 + 50 * MS));
+        verify(broadcaster).broadcast(key, t2);
+        assertEquals(0, dispatcher.pendingChannels());
+    }
+
+    @Test
+    void klineUsesItsOwnInterval() {
+        String key = "kline:BTC/USDT:1m";
+        when(broadcaster.hasSubscribers(key)).thenReturn(true);
+        TextMessage k = new TextMessage("k");
+        doReturn(k).when(handler).buildChannelFrame(key);
+
+        dispatcher.onKlineChanged("BTC/USDT", KlineInterval.M1);
+        dispatcher.dispatch(0);
+        dispatcher.onKlineChanged("BTC/USDT", KlineInterval.M1);
+        assertEquals(250 * MS, dispatcher.dispatch(100 * MS));
+        verify(broadcaster, times(1)).broadcast(key, k);
+    }
+
+    @Test
+    void binarySubscribers_markedSeparately() {
+        String bin = "ticker:BTC/USDT" + MarketWebSocketHandler.BINARY_SUFFIX;
+        when(broadcaster.hasSubscribers(anyString())).thenReturn(false);
+        when(broadcaster.hasSubscribers(bin)).thenReturn(true);
+        dispatcher.onTickerChanged("BTC/USDT");
+        assertEquals(1, dispatcher.pendingChannels(), "只有二进制订阅者时只标二进制频道");
+    }
+}
@@ -0,0 +1,152 @@
+package com.web3.exchange.market.external;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web3.exchange.market.market.MarketAggregator;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * BinanceDepthSync 单测：用录制的 REST 快照与 @depth 增量夹具（test/resources/binance）回放，
+ * 验证等待快照期间缓冲、丢弃快照前事件、续接、只发布变化档位、断档重拉（续接成功才发布快照、失败退避）。
+ */
+class BinanceDepthSyncTest {
+
+    private static final String SYMBOL = "BTC/USDT";
+    private static final long P = 100_000_000L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final MarketAggregator aggregator = new MarketAggregator();
+    /** 手动执行的快照线程：测试决定快照何时"到达" */
+    private final ArrayDeque<Runnable> pending = new ArrayDeque<>();
+    private final AtomicInteger snapshotLoads = new AtomicInteger();
+    private final List<String> published = new ArrayList<>();
+
+    private BinanceDepthSync sync = sync(0);
+
+    private BinanceDepthSync sync(long retryDelayMs) {
+        return new BinanceDepthSync(aggregator,
+                s -> {
+                    snapshotLoads.incrementAndGet();
+                    return fixture("binance/depth-snapshot-btcusdt.json");
+                },
+                pending::add,
+                new BinanceDepthSync.Publisher() {
+                    @Override
+                    public void onSnapshot(String symbol, long lastUpdateId, List<long[]> bids, List<long[]> asks) {
+                        published.add("snapshot:" + lastUpdateId + ":" + bids.size() + ":" + asks.size());
+                    }
+
+                    @Override
+                    public void onDiff(String symbol, long firstUpdateId, long finalUpdateId, List<long[]> bids, List<long[]> asks) {
+                        published.add("diff:" + finalUpdateId + ":" + bids.size() + ":" + asks.size());
+                    }
+                }, 8, 100, retryDelayMs);
+    }
+
+    @Test
+    void replay_bufferedThenLive() throws Exception {
+        List<JsonNode> diffs = diffs();
+        feed(diffs.get(0));
+        feed(diffs.get(1));
+        assertNull(aggregator.getExternalDepth(SYMBOL));
+        assertEquals(2, sync.buffered(SYMBOL));
+        assertEquals(1, pending.size()); // 只拉一次快照
+
+        pending.poll().run();
+        // u=995 在快照内丢弃；996..1002 续接：64300.10 数量未变不发布，删 64300.00、新增 ask 64300.30
+        assertEquals(List.of("snapshot:1000:3:3", "diff:1002:1:1"), published);
+        assertEquals(0, sync.buffered(SYMBOL));
+
+        feed(diffs.get(2));
+        feed(diffs.get(3));
+        // 1003..1004：删除不存在的 64305.00 不发布
+        assertEquals(List.of("snapshot:1000:3:3", "diff:1002:1:1", "diff:1004:1:1", "diff:1005:1:0"), published);
+
+        MarketAggregator.DepthSnapshot depth = aggregator.getExternalDepth(SYMBOL, 0);
+        assertNotNull(depth);
+        assertEquals(1005L, depth.getUpdateId());
+        assertEquals(List.of(6430015L * P / 100, 6430010L * P / 100, 6429950L * P / 100),
+                depth.getBids().stream().map(MarketAggregator.DepthSnapshot.Level::getPrice).toList());
+        assertEquals(250_000_000L, depth.getBids().get(2).getQuantity());
+        assertEquals(List.of(6430030L * P / 100, 6430050L * P / 100, 6430100L * P / 100),
+                depth.getAsks().stream().map(MarketAggregator.DepthSnapshot.Level::getPrice).toList());
+        assertEquals(1, snapshotLoads.get());
+    }
+
+    @Test
+    void gap_triggersResync() throws Exception {
+        List<JsonNode> diffs = diffs();
+        feed(diffs.get(1));
+        pending.poll().run();
+        // 跳过 1003..1004，直接来 1005：断档 → 置未同步、缓冲并重拉快照
+        feed(diffs.get(3));
+        assertNull(aggregator.getExternalDepth(SYMBOL));
+        assertEquals(1, sync.buffered(SYMBOL));
+        assertEquals(1, pending.size());
+
+        // 夹具快照 lastUpdateId=1000 仍早于缓冲事件 U=1005：再次断档，继续重拉
+        pending.poll().run();
+        assertEquals(1, sync.buffered(SYMBOL));
+        assertEquals(1, pending.size());
+        assertEquals(2, snapshotLoads.get());
+        assertNull(aggregator.getExternalDepth(SYMBOL));
+        // 无法续接的快照不对外发布
+        assertEquals(List.of("snapshot:1000:3:3", "diff:1002:1:1"), published);
+    }
+
+    @Test
+    void gap_unstitchableSnapshot_backsOffBeforeNextLoad() throws Exception {
+        sync = sync(60_000);
+        List<JsonNode> diffs = diffs();
+        feed(diffs.get(1));
+        pending.poll().run();
+        feed(diffs.get(3)); // 断档：首次重拉不退避
+        assertEquals(1, pending.size());
+
+        pending.poll().run(); // 快照仍早于 U=1005 → 记失败进入退避
+        assertEquals(0, pending.size());
+        feed(diffs.get(3));
+        assertEquals(0, pending.size(), "退避期内后续增量只缓冲、不重拉");
+        assertEquals(2, snapshotLoads.get());
+        assertEquals(List.of("snapshot:1000:3:3", "diff:1002:1:1"), published);
+    }
+
+    private void feed(JsonNode msg) {
+        JsonNode d = msg.path("data");
+        sync.onDiff(SYMBOL, d.path("s").asText(), d.path("U").asLong(), d.path("u").asLong(),
+                BinanceDepthSync.parseLevels(d.path("b"), 8), BinanceDepthSync.parseLevels(d.path("a"), 8));
+    }
+
+    private List<JsonNode> diffs() throws Exception {
+        List<JsonNode> out = new ArrayList<>();
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream("binance/depth-diffs-btcusdt.jsonl");
+             BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (!line.isBlank()) {
+                    out.add(mapper.readTree(line));
+                }
+            }
+        }
+        return out;
+    }
+
+    private JsonNode fixture(String path) throws Exception {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+            return mapper.readTree(in);
+        }
+    }
+}
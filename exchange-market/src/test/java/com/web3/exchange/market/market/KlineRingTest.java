@@ -0,0 +1,99 @@
+package com.web3.exchange.market.market;
+
+import com.web3.exchange.market.market.model.Kline;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * KlineRing 单测：当前根原地更新、稀疏窗口跳过、满环覆盖最老窗口、区间切片、DB 回填不覆盖实时聚合、脏窗口增量取出。
+ */
+class KlineRingTest {
+
+    private static final long M = 60_000L;
+
+    @Test
+    void update_and_latest_skipGaps() {
+        KlineRing ring = new KlineRing("BTC/USDT", KlineInterval.M1, 8);
+        assertNull(ring.last());
+        ring.onTrade(10 * M + 5_000L, 100L, 1L, 100L);
+        ring.onTrade(10 * M + 50_000L, 90L, 2L, 180L);
+        ring.onTrade(13 * M, 120L, 1L, 120L);            // 11、12 分钟无成交
+
+        Kline k10 = ring.latest(8).get(0);
+        assertEquals(10 * M, k10.getOpenTime());
+        assertEquals(100L, k10.getOpen());
+        assertEquals(90L, k10.getLow());
+        assertEquals(90L, k10.getClose());
+        assertEquals(3L, k10.getVolume());
+        assertEquals(280L, k10.getQuoteVolume());
+
+        List<Kline> all = ring.latest(8);
+        assertEquals(List.of(10 * M, 13 * M), all.stream().map(Kline::getOpenTime).toList());
+        assertEquals(13 * M, ring.last().getOpenTime());
+        assertEquals(List.of(13 * M), ring.latest(1).stream().map(Kline::getOpenTime).toList());
+    }
+
+    @Test
+    void fullRing_overwritesOldest_andRejectsTooOld() {
+        KlineRing ring = new KlineRing("BTC/USDT", KlineInterval.M1, 4);
+        for (int i = 0; i < 6; i++) {
+            ring.onTrade(i * M, 100L + i, 1L, 100L);
+        }
+        assertEquals(List.of(2 * M, 3 * M, 4 * M, 5 * M), ring.latest(10).stream().map(Kline::getOpenTime).toList());
+        assertFalse(ring.onTrade(M, 1L, 1L, 1L), "早于环内最老窗口的写入丢弃");
+        assertTrue(ring.onTrade(3 * M, 200L, 1L, 200L), "环内旧窗口仍可更新");
+        assertEquals(200L, ring.range(3 * M, 3 * M, 10).get(0).getHigh());
+    }
+
+    @Test
+    void range_ascendingSlice() {
+        KlineRing ring = new KlineRing("BTC/USDT", KlineInterval.M1, 16);
+        for (int i = 0; i < 10; i++) {
+            ring.onTrade(i * M, 100L, 1L, 100L);
+        }
+        assertEquals(List.of(3 * M, 4 * M, 5 * M), ring.range(3 * M - 1, 5 * M + 1, 10).stream().map(Kline::getOpenTime).toList());
+        assertEquals(List.of(3 * M, 4 * M), ring.range(3 * M, 9 * M, 2).stream().map(Kline::getOpenTime).toList());
+        assertTrue(ring.range(20 * M, 30 * M, 10).isEmpty());
+    }
+
+    @Test
+    void put_restoreDoesNotOverwriteLive() {
+        KlineRing ring = new KlineRing("BTC/USDT", KlineInterval.H1, 4);
+        ring.onTrade(0, 100L, 1L, 100L);
+        assertFalse(ring.restore(0, 1L, 1L, 1L, 1L, 1L, 1L));
+        assertEquals(100L, ring.last().getClose());
+        assertTrue(ring.put(0, 1L, 2L, 1L, 2L, 5L, 10L));
+        assertEquals(5L, ring.last().getVolume());
+    }
+
+    @Test
+    void drainDirty_onlyChangedWindows_enqueueOnce() {
+        List<KlineRing> queue = new ArrayList<>();
+        KlineRing ring = new KlineRing("BTC/USDT", KlineInterval.M1, 16, queue::add);
+        ring.restore(0, 1L, 1L, 1L, 1L, 1L, 1L);
+        assertTrue(queue.isEmpty(), "回填不标脏");
+
+        ring.onTrade(5 * M, 100L, 1L, 100L);
+        ring.onTrade(6 * M, 110L, 1L, 110L);
+        ring.onTrade(6 * M + 1, 120L, 1L, 120L);
+        assertEquals(1, queue.size(), "同一环只入队一次");
+        assertEquals(List.of(5 * M, 6 * M), ring.drainDirty().stream().map(Kline::getOpenTime).toList());
+        assertTrue(ring.drainDirty().isEmpty());
+
+        ring.onTrade(6 * M + 2, 130L, 1L, 130L);             // 只有当前根变化
+        assertEquals(2, queue.size());
+        List<Kline> open = ring.drainDirty();
+        assertEquals(1, open.size());
+        assertEquals(130L, open.get(0).getClose());
+
+        ring.markDirty(5 * M);                               // 写库失败重新标脏
+        assertEquals(List.of(5 * M, 6 * M), ring.drainDirty().stream().map(Kline::getOpenTime).toList());
+    }
+}
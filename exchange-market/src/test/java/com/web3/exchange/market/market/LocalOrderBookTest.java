@@ -0,0 +1,71 @@
+package com.web3.exchange.market.market;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LocalOrderBook 单测：快照后首条 / 后续增量的 updateId 校验、只回调实际变化档位、任意档数查询、档数上限。
+ */
+class LocalOrderBookTest {
+
+    @Test
+    void diff_sequenceValidation() {
+        LocalOrderBook book = new LocalOrderBook("BTC/USDT", 100);
+        assertEquals(LocalOrderBook.Result.NOT_SYNCED, book.apply(1, 2, new long[0], new long[0], null));
+        assertNull(book.snapshot(10));
+
+        book.reset(100, new long[]{99, 1, 98, 2}, new long[]{101, 1});
+        assertEquals(LocalOrderBook.Result.STALE, book.apply(90, 100, new long[]{99, 5}, new long[0], null));
+        // 首条：U <= lastUpdateId + 1 <= u
+        assertEquals(LocalOrderBook.Result.APPLIED, book.apply(95, 103, new long[]{99, 5}, new long[0], null));
+        // 之后必须 U == 上一条 u + 1
+        assertEquals(LocalOrderBook.Result.APPLIED, book.apply(104, 104, new long[0], new long[]{102, 3}, null));
+        assertEquals(104L, book.lastUpdateId());
+        assertEquals(5L, book.snapshot(1).getBids().get(0).getQuantity());
+        assertEquals(List.of(101L, 102L),
+                book.snapshot(0).getAsks().stream().map(MarketAggregator.DepthSnapshot.Level::getPrice).toList());
+        assertEquals(LocalOrderBook.Result.GAP, book.apply(106, 107, new long[0], new long[0], null));
+        assertFalse(book.isSynced());
+        assertEquals(LocalOrderBook.Result.NOT_SYNCED, book.apply(108, 108, new long[0], new long[0], null));
+    }
+
+    @Test
+    void apply_reportsOnlyChangedLevels_andQueriesAnyDepth() {
+        LocalOrderBook book = new LocalOrderBook("BTC/USDT", 100);
+        book.reset(10, new long[]{98, 2, 99, 1, 97, 3}, new long[]{101, 1, 102, 2});
+        List<long[]> changed = new ArrayList<>();
+        LocalOrderBook.Result r = book.apply(11, 11,
+                new long[]{99, 1, 97, 0, 96, 0, 100, 4},   // 99 未变、96 不存在：不回调
+                new long[]{101, 0},
+                (bid, price, qty) -> changed.add(new long[]{bid ? 1 : 0, price, qty}));
+        assertEquals(LocalOrderBook.Result.APPLIED, r);
+        assertEquals(3, changed.size());
+        assertEquals(List.of("1:97:0", "1:100:4", "0:101:0"),
+                changed.stream().map(c -> c[0] + ":" + c[1] + ":" + c[2]).toList());
+
+        MarketAggregator.DepthSnapshot all = book.snapshot(0);
+        assertEquals(List.of(100L, 99L, 98L), all.getBids().stream().map(MarketAggregator.DepthSnapshot.Level::getPrice).toList());
+        assertEquals(List.of(102L), all.getAsks().stream().map(MarketAggregator.DepthSnapshot.Level::getPrice).toList());
+        assertEquals(11L, all.getUpdateId());
+        assertEquals(2, book.snapshot(2).getBids().size());
+        assertEquals(100L, book.bestBid());
+        assertEquals(102L, book.bestAsk());
+    }
+
+    @Test
+    void maxLevels_dropsWorstLevel() {
+        LocalOrderBook book = new LocalOrderBook("BTC/USDT", 3);
+        book.reset(1, new long[]{10, 1, 11, 1, 12, 1}, new long[0]);
+        assertEquals(LocalOrderBook.Result.APPLIED, book.apply(2, 2, new long[]{9, 1, 13, 1}, new long[0], null));
+        assertEquals(List.of(13L, 12L, 11L),
+                book.snapshot(0).getBids().stream().map(MarketAggregator.DepthSnapshot.Level::getPrice).toList());
+        assertTrue(book.isSynced());
+    }
+}
@@ -131,6 +131,39 @@ class MarketAggregatorTest {
         assertNull(agg.getTicker("ETH/USDT"));
     }
 
+    @Test
+    void ticker_rolling24h_acrossUtcDayBoundary() {
+        long day = 86_400_000L;
+        long t0 = 10 * day + 23 * 3_600_000L;                              // 第 10 天 23:00 UTC
+        agg.onTradeAt(trade("R1", 100L, 10L, 1000L), t0);
+        agg.onTradeAt(trade("R2", 150L, 10L, 1500L), t0 + 30 * 60_000L);
+        agg.onTradeAt(trade("R3", 80L, 10L, 800L), t0 + 2 * 3_600_000L); // 次日 01:00，跨 UTC 日界
+
+        Ticker t = agg.getRollingTicker("BTC/USDT", t0 + 2 * 3_600_000L);
+        assertEquals(100L, t.getOpenPrice(), "开盘取 24h 窗口内首笔，不随 UTC 日界重置");
+        assertEquals(150L, t.getHigh24h());
+        assertEquals(80L, t.getLow24h());
+        assertEquals(30L, t.getVolume24h());
+        assertEquals(3L, t.getCount24h());
+        assertEquals(80L, t.getLastPrice());
+        assertEquals(-2000L, t.getChange24h());
+
+        // 23:00 的成交滚出窗口：最高价回落、开盘价前移
+        Ticker later = agg.getRollingTicker("BTC/USDT", t0 + day + 20 * 60_000L);
+        assertEquals(150L, later.getOpenPrice());
+        assertEquals(150L, later.getHigh24h());
+        assertEquals(20L, later.getVolume24h());
+        Ticker after = agg.getRollingTicker("BTC/USDT", t0 + day + 40 * 60_000L);
+        assertEquals(80L, after.getOpenPrice());
+        assertEquals(80L, after.getHigh24h());
+        assertEquals(1L, after.getCount24h());
+
+        // 24h 无成交：保留最新价，量为 0
+        Ticker idle = agg.getRollingTicker("BTC/USDT", t0 + 3 * day);
+        assertEquals(80L, idle.getLastPrice());
+        assertEquals(0L, idle.getVolume24h());
+    }
+
     @Test
     void getKlines_limitDescendingReturn() {
         long base = 10 * 60_000L;
@@ -0,0 +1,77 @@
+package com.web3.exchange.market.market;
+
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TradeDedup 单测：窗口内去重、整桶到期淘汰、超容量淘汰最旧桶、非数字成交号哈希键、19 位雪花成交号直接作 long 键。
+ */
+class TradeDedupTest {
+
+    @Test
+    void duplicateWithinWindow_rejected_thenExpires() {
+        TradeDedup dedup = new TradeDedup(60_000L, 6, 1_000); // 桶宽 10s
+        assertTrue(dedup.add("1790000000000000001", 0));
+        assertFalse(dedup.add("1790000000000000001", 55_000L), "窗口内重复投递");
+        assertTrue(dedup.contains("1790000000000000001"));
+
+        // 跨过整个窗口后旧桶被清空
+        assertTrue(dedup.add("1790000000000000002", 61_000L));
+        assertFalse(dedup.contains("1790000000000000001"));
+        assertEquals(1, dedup.expiredCount());
+        assertEquals(1, dedup.size());
+    }
+
+    @Test
+    void capacity_evictsOldestBucket() {
+        TradeDedup dedup = new TradeDedup(60_000L, 6, 4);
+        dedup.add("1", 0);
+        dedup.add("2", 0);
+        dedup.add("3", 10_000L);
+        dedup.add("4", 20_000L);
+        assertTrue(dedup.add("5", 20_000L)); // 满 → 淘汰 0s 桶（1、2）
+        assertEquals(2, dedup.overflowCount());
+        assertEquals(3, dedup.size());
+        assertFalse(dedup.contains("1"));
+        assertTrue(dedup.contains("3"));
+        assertTrue(dedup.contains("5"));
+    }
+
+    @Test
+    void manyEntries_growAndClear() {
+        TradeDedup dedup = new TradeDedup(2_000L, 2, 1_000_000);
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(dedup.add("T" + i, 0));
+        }
+        for (int i = 0; i < 50_000; i += 997) {
+            assertFalse(dedup.add("T" + i, 500L));
+        }
+        assertEquals(50_000, dedup.size());
+        dedup.add("0", 5_000L); // 窗口整体滚过
+        assertEquals(1, dedup.size());
+        assertEquals(50_000, dedup.expiredCount());
+        assertTrue(dedup.contains("0"));
+        assertFalse(dedup.contains("T1"));
+    }
+
+    @Test
+    void nineteenDigitSnowflakeIds_keyedAsLong() {
+        long id = IdWorker.getId();
+        assertEquals(19, Long.toString(id).length());
+        assertEquals(id, TradeDedup.keyOf(Long.toString(id)));
+        assertEquals(id + 1, TradeDedup.keyOf(Long.toString(id + 1)));
+        assertEquals(Long.MAX_VALUE, TradeDedup.keyOf(Long.toString(Long.MAX_VALUE)));
+        // 越过 long 上限不溢出成负数，改走哈希
+        assertTrue(TradeDedup.keyOf("9223372036854775808") != Long.MIN_VALUE);
+        assertTrue(TradeDedup.keyOf("9999999999999999999") != TradeDedup.keyOf("9999999999999999998"));
+
+        TradeDedup dedup = new TradeDedup(60_000L, 6, 1_000);
+        assertTrue(dedup.add(Long.toString(id), 0));
+        assertTrue(dedup.add(Long.toString(id + 1), 0));
+        assertFalse(dedup.add(Long.toString(id), 1_000L));
+    }
+}
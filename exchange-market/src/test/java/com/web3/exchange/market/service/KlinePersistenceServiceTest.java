@@ -0,0 +1,112 @@
+package com.web3.exchange.market.service;
+
+import com.web3.exchange.market.entity.KlineRow;
+import com.web3.exchange.market.mapper.KlineRowMapper;
+import com.web3.exchange.market.market.KlineInterval;
+import com.web3.exchange.market.market.MarketAggregator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * KlinePersistenceService 单测（真实聚合器，K线经 Binance kline 流入口注入 + 记录批次的 Mapper 替身）：同窗口多次更新合并为一行、
+ * 按 batch-size 分批、无改动不写库、写库失败整轮重新标脏下轮重写、停机 flush 带出未关闭窗口的最新值。
+ */
+class KlinePersistenceServiceTest {
+
+    private static final String SYMBOL = "BTC/USDT";
+    /** 10:00 UTC 整点：1m 与更大周期的窗口起点 */
+    private static final long T = 10 * 3_600_000L;
+
+    private final MarketAggregator aggregator = new MarketAggregator();
+    private final KlineRowMapper mapper = mock(KlineRowMapper.class);
+    /** 每次 upsertBatch 的行（拷贝，调用方传入的是子列表视图） */
+    private final List<List<KlineRow>> batches = new ArrayList<>();
+    private final KlinePersistenceService service = new KlinePersistenceService(mapper, aggregator, 4);
+
+    private int failNext;
+
+    {
+        when(mapper.upsertBatch(anyList())).thenAnswer(inv -> {
+            if (failNext > 0) {
+                failNext--;
+                throw new IllegalStateException("db down");
+            }
+            List<KlineRow> rows = new ArrayList<>(inv.getArgument(0));
+            batches.add(rows);
+            return rows.size();
+        });
+    }
+
+    /** 注入一根 K线（open 固定 100，high/low 取 100 与 close 的极值）。 */
+    private void kline(String interval, long openTime, long close, long volume) {
+        aggregator.applyExternalKline(SYMBOL, interval, openTime, 100, Math.max(100, close), Math.min(100, close),
+                close, volume, close * volume);
+    }
+
+    /** 每个启用周期在 T 开一根窗口。 */
+    private void allIntervals(long close, long volume) {
+        for (KlineInterval iv : KlineInterval.enabled()) {
+            kline(iv.intervalName(), T, close, volume);
+        }
+    }
+
+    private List<KlineRow> written() {
+        return batches.stream().flatMap(List::stream).toList();
+    }
+
+    @Test
+    void persist_mergesUpdatesPerWindow_andSplitsIntoBatches() {
+        allIntervals(110, 1);
+        kline("1m", T, 120, 2);
+        kline("1m", T, 90, 3);        // 同窗口多次推送，只落最后一版
+        kline("1m", T + 60_000, 95, 1); // 下一根 1m
+
+        service.persistDirtyWindows();
+
+        // 1m 两个窗口 + 其余 5 个周期各一个窗口
+        List<KlineRow> rows = written();
+        int expected = KlineInterval.enabled().size() + 1;
+        assertEquals(expected, rows.size());
+        assertEquals((expected + 3) / 4, batches.size());
+        assertTrue(batches.stream().allMatch(b -> b.size() <= 4));
+        Set<String> keys = new HashSet<>();
+        for (KlineRow r : rows) {
+            assertTrue(keys.add(r.getPeriod() + "@" + r.getWindowStart()), "同窗口只写一行");
+        }
+        KlineRow first1m = rows.stream()
+                .filter(r -> r.getPeriod().equals("1m") && r.getWindowStart() == T).findFirst().orElseThrow();
+        assertEquals(90L, first1m.getClose());
+        assertEquals(3L, first1m.getVolume());
+
+        batches.clear();
+        service.persistDirtyWindows();
+        assertTrue(batches.isEmpty(), "无新改动不写库");
+    }
+
+    @Test
+    void persist_failure_rewritesWholeRoundNextTime_andFlushCarriesLatestOpenWindow() {
+        allIntervals(110, 1);
+        failNext = 1;
+        service.persistDirtyWindows();
+        assertTrue(batches.isEmpty());
+
+        kline("1m", T, 130, 2); // 失败后同窗口继续更新
+        service.flush();
+
+        List<KlineRow> rows = written();
+        assertEquals(KlineInterval.enabled().size(), rows.size(), "失败那一轮的全部窗口都被重写");
+        KlineRow m1 = rows.stream().filter(r -> r.getPeriod().equals("1m")).findFirst().orElseThrow();
+        assertEquals(130L, m1.getClose());
+        assertEquals(2L, m1.getVolume());
+    }
+}
@@ -1,6 +1,7 @@
 package com.web3.exchange.notify.mq.consumer;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web3.exchange.common.order.dto.TradeSettleBatchDTO;
 import com.web3.exchange.common.order.dto.TradeSettleDTO;
 import com.web3.exchange.notify.entity.Notification;
 import com.web3.exchange.notify.mq.Topics;
@@ -15,13 +16,14 @@ import org.springframework.stereotype.Component;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
 
 /**
  * ORDER-TRADE 通知消费者——消费撮合成交事件，为买卖双方各生成一条成交通知。
  * <p>
  * 映射（见 docs/notify-domain.md §4）：一笔成交给 {@code buyUserId} 与 {@code sellUserId}
  * 各生成一条 {@code TRADE_FILLED} 通知，biz_ref 分别取 {@code tradeNo:BUY} / {@code tradeNo:SELL}，
- * 保证同一用户同一笔成交与买卖双方各自幂等、各得一条。
+ * 保证同一用户同一笔成交与买卖双方各自幂等、各得一条。批量消息（Tag = BATCH）逐笔生成。
  * </p>
  * <p>
  * <b>幂等（双层）</b>：① 消费层 Redis SETNX（bizKey=tradeNo，TTL 24h），重复投递直接 ACK 跳过；
@@ -65,26 +67,34 @@ public class OrderTradeNotifyConsumer implements RocketMQListener<MessageExt> {
             return;
         }
 
-        // 2. 解析成交结算指令
-        TradeSettleDTO dto;
+        // 2. 解析成交结算指令：Tag=BATCH 为批量消息体，否则为单笔
+        List<TradeSettleDTO> trades;
         try {
             String body = new String(msg.getBody(), StandardCharsets.UTF_8);
-            dto = objectMapper.readValue(body, TradeSettleDTO.class);
+            trades = TradeSettleBatchDTO.TAG.equals(msg.getTags())
+                    ? objectMapper.readValue(body, TradeSettleBatchDTO.class).getTrades()
+                    : List.of(objectMapper.readValue(body, TradeSettleDTO.class));
         } catch (Exception e) {
+            redisTemplate.delete(DEDUP_KEY_PREFIX + bizKey);
             log.error("消费 ORDER-TRADE 消息体解析失败。bizKey={}, err={}", bizKey, e.getMessage(), e);
             throw new IllegalArgumentException("ORDER-TRADE 消息体解析失败: " + bizKey, e); // 触发重投
         }
-        if (dto == null || dto.getTradeNo() == null || dto.getBuyUserId() == null || dto.getSellUserId() == null) {
-            log.error("ORDER-TRADE 消息体不完整，触发重投。bizKey={}", bizKey);
-            throw new IllegalArgumentException("ORDER-TRADE 消息体不完整: " + bizKey);
+        for (TradeSettleDTO dto : trades) {
+            if (dto == null || dto.getTradeNo() == null || dto.getBuyUserId() == null || dto.getSellUserId() == null) {
+                redisTemplate.delete(DEDUP_KEY_PREFIX + bizKey);
+                log.error("ORDER-TRADE 消息体不完整，触发重投。bizKey={}", bizKey);
+                throw new IllegalArgumentException("ORDER-TRADE 消息体不完整: " + bizKey);
+            }
         }
 
-        // 3. 买卖双方各生成一条 TRADE_FILLED 通知
-        boolean buyerInserted = notificationService.createWithIdempotent(buildNotification(dto, true));
-        boolean sellerInserted = notificationService.createWithIdempotent(buildNotification(dto, false));
-        log.info("消费 ORDER-TRADE 生成通知。tradeNo={}, symbol={}, buy={}, sell={}, buyerInserted={}, sellerInserted={}",
-                dto.getTradeNo(), dto.getSymbol(), dto.getBuyUserId(), dto.getSellUserId(),
-                buyerInserted, sellerInserted);
+        // 3. 每笔成交买卖双方各生成一条 TRADE_FILLED 通知（唯一索引兜底，批次重投不重复通知）
+        for (TradeSettleDTO dto : trades) {
+            boolean buyerInserted = notificationService.createWithIdempotent(buildNotification(dto, true));
+            boolean sellerInserted = notificationService.createWithIdempotent(buildNotification(dto, false));
+            log.info("消费 ORDER-TRADE 生成通知。tradeNo={}, symbol={}, buy={}, sell={}, buyerInserted={}, sellerInserted={}",
+                    dto.getTradeNo(), dto.getSymbol(), dto.getBuyUserId(), dto.getSellUserId(),
+                    buyerInserted, sellerInserted);
+        }
     }
 
     /**
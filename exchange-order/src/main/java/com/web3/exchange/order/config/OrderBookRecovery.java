@@ -3,6 +3,7 @@ package com.web3.exchange.order.config;
 import com.web3.exchange.order.engine.MatchingEngine;
 import com.web3.exchange.order.entity.Order;
 import com.web3.exchange.order.mapper.OrderMapper;
+import com.web3.exchange.order.service.EngineJournalService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.ApplicationListener;
@@ -19,6 +20,8 @@ import java.util.stream.Collectors;
  * 重新灌入内存订单簿。已冻结部分直接入簿（不重复冻结/过户），靠 asset 幂等 requestId 兜底；
  * 市价单一次性撮合不落簿，无需恢复。
  * </p>
+ * <p>开启引擎事件日志（{@code order.matching.journal.enabled}）时优先从快照 + 日志尾部恢复，
+ * 无可用快照/日志时才走上述 DB 重建，重建后立即拍快照作为下次恢复起点。</p>
  */
 @Slf4j
 @Component
@@ -26,14 +29,25 @@ public class OrderBookRecovery implements ApplicationListener<ApplicationReadyEv
 
     private final OrderMapper orderMapper;
     private final MatchingEngine matchingEngine;
+    private final EngineJournalService engineJournal;
 
-    public OrderBookRecovery(OrderMapper orderMapper, MatchingEngine matchingEngine) {
+    public OrderBookRecovery(OrderMapper orderMapper, MatchingEngine matchingEngine,
+                             EngineJournalService engineJournal) {
         this.orderMapper = orderMapper;
         this.matchingEngine = matchingEngine;
+        this.engineJournal = engineJournal;
     }
 
     @Override
     public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (engineJournal.recover()) {
+            return;
+        }
+        rebuildFromDb();
+        engineJournal.attach();
+    }
+
+    private void rebuildFromDb() {
         List<Order> active = orderMapper.selectAllActiveLimitOrders();
         if (active.isEmpty()) {
             log.info("[order] 启动重建订单簿：无活跃限价单");
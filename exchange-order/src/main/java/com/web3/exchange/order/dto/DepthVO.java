@@ -10,7 +10,7 @@ import java.util.List;
 
 /**
  * 深度盘口视图（对外返回）。金额一律 Long 最小单位，不做除法。
- * <p>数据源：MatchingEngine 内存盘口（books ConcurrentHashMap）聚合。</p>
+ * <p>数据源：MatchingEngine 增量维护的前 N 档深度快照（更深档位加锁聚合）。</p>
  */
 @Data
 @Schema(description = "深度盘口视图")
@@ -29,6 +29,10 @@ public class DepthVO implements Serializable {
     @Schema(description = "卖盘（价格升序）")
     private List<DepthLevel> asks = new ArrayList<>();
 
+    /** 盘口更新序号：与 L2 增量同一序列，客户端续接增量时丢弃 updateId &lt;= 该值的增量 */
+    @Schema(description = "盘口更新序号（L2 增量续接用）")
+    private Long lastUpdateId;
+
     public DepthVO() {
     }
 
@@ -0,0 +1,196 @@
+package com.web3.exchange.order.engine;
+
+import com.web3.exchange.order.constant.OrderConstant;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 单个交易对的前 N 档深度缓存：撮合线程在交易对锁内按变化档位原地修补，读侧乐观读无锁复制。
+ * <p>
+ * 写：每条改变盘口的命令结束时 {@link #apply} 一次——对每个变化档位在有序数组中二分定位后改量 / 插入 / 删除
+ * （删除后从订单簿取窗口外的下一档补位），不遍历盘口、不分配对象；updateId 加一。
+ * </p>
+ * <p>
+ * 读：{@link StampedLock#tryOptimisticRead} 复制数组并校验，失败重试；不阻塞撮合线程。
+ * 物化出的 {@link DepthView} 按 updateId 缓存，盘口未变时重复读取不再复制。
+ * </p>
+ */
+final class DepthCache {
+
+    /** 乐观读连续失败次数上限，超过后退化为读锁（只在写入极其密集时出现） */
+    private static final int OPTIMISTIC_RETRIES = 8;
+
+    private final String symbol;
+    private final int capacity;
+    private final StampedLock sl = new StampedLock();
+
+    private final long[] bidPrices;
+    private final long[] bidQtys;
+    private final long[] askPrices;
+    private final long[] askQtys;
+    private int bidCount;
+    private int askCount;
+    private long updateId;
+    private long timestamp;
+
+    /** 最近一次物化的快照（同 updateId 直接复用） */
+    private volatile DepthView materialized;
+
+    DepthCache(String symbol, int capacity) {
+        this.symbol = symbol;
+        this.capacity = capacity;
+        this.bidPrices = new long[capacity];
+        this.bidQtys = new long[capacity];
+        this.askPrices = new long[capacity];
+        this.askQtys = new long[capacity];
+    }
+
+    /**
+     * 应用一条命令的档位变化（调用方持有交易对锁；book 已是命令后的最终状态）。
+     *
+     * @return 新的 updateId
+     */
+    long apply(OrderBook book, List<OrderBook.PriceLevel> changed, long now) {
+        long stamp = sl.writeLock();
+        try {
+            for (int i = 0, n = changed.size(); i < n; i++) {
+                OrderBook.PriceLevel level = changed.get(i);
+                boolean bid = level.side == OrderConstant.SIDE_BUY;
+                patch(book, level.side, bid ? bidPrices : askPrices, bid ? bidQtys : askQtys, bid,
+                        level.price, book.levelQuantity(level.side, level.price));
+            }
+            timestamp = now;
+            return ++updateId;
+        } finally {
+            sl.unlockWrite(stamp);
+        }
+    }
+
+    private void patch(OrderBook book, int side, long[] prices, long[] qtys, boolean bid, long price, long qty) {
+        int count = bid ? bidCount : askCount;
+        int idx = search(prices, count, price, bid);
+        if (idx >= 0) {
+            if (qty > 0) {
+                qtys[idx] = qty;
+                return;
+            }
+            // 删除并从簿内补位：窗口外紧随当前末档的下一非空档
+            System.arraycopy(prices, idx + 1, prices, idx, count - idx - 1);
+            System.arraycopy(qtys, idx + 1, qtys, idx, count - idx - 1);
+            count--;
+            OrderBook.PriceLevel next = count == 0 ? book.firstLevel(side) : book.levelAfter(side, prices[count - 1]);
+            if (next != null) {
+                prices[count] = next.price;
+                qtys[count] = next.quantity;
+                count++;
+            }
+        } else if (qty > 0) {
+            int ip = -idx - 1;
+            if (ip >= capacity) {
+                return; // 窗口外
+            }
+            int move = Math.min(count, capacity - 1) - ip;
+            if (move > 0) {
+                System.arraycopy(prices, ip, prices, ip + 1, move);
+                System.arraycopy(qtys, ip, qtys, ip + 1, move);
+            }
+            prices[ip] = price;
+            qtys[ip] = qty;
+            count = Math.min(count + 1, capacity);
+        }
+        if (bid) {
+            bidCount = count;
+        } else {
+            askCount = count;
+        }
+    }
+
+    /** 有序数组二分（bids 降序、asks 升序）；未找到返回 {@code -(插入点) - 1}。 */
+    private static int search(long[] prices, int count, long price, boolean bid) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long p = prices[mid];
+            if (p == price) {
+                return mid;
+            }
+            if (bid ? p > price : p < price) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -(lo + 1);
+    }
+
+    /** 当前 updateId（乐观读）。 */
+    long updateId() {
+        long stamp = sl.tryOptimisticRead();
+        long id = updateId;
+        if (!sl.validate(stamp)) {
+            stamp = sl.readLock();
+            try {
+                id = updateId;
+            } finally {
+                sl.unlockRead(stamp);
+            }
+        }
+        return id;
+    }
+
+    /** 取最新快照（无锁乐观复制；盘口未变时复用上次物化结果）。 */
+    DepthView view() {
+        for (int attempt = 0; attempt < OPTIMISTIC_RETRIES; attempt++) {
+            long stamp = sl.tryOptimisticRead();
+            if (stamp == 0L) {
+                Thread.onSpinWait();
+                continue;
+            }
+            DepthView cached = materialized;
+            long id = updateId;
+            if (cached != null && cached.updateId() == id) {
+                if (sl.validate(stamp)) {
+                    return cached;
+                }
+                continue;
+            }
+            DepthView v = copy(id);
+            if (sl.validate(stamp)) {
+                materialized = v;
+                return v;
+            }
+        }
+        long stamp = sl.readLock();
+        try {
+            DepthView v = copy(updateId);
+            materialized = v;
+            return v;
+        } finally {
+            sl.unlockRead(stamp);
+        }
+    }
+
+    private DepthView copy(long id) {
+        int nb = Math.min(Math.max(bidCount, 0), capacity);
+        int na = Math.min(Math.max(askCount, 0), capacity);
+        return new DepthView(symbol, id, timestamp, interleave(bidPrices, bidQtys, nb), interleave(askPrices, askQtys, na));
+    }
+
+    private static long[] interleave(long[] prices, long[] qtys, int n) {
+        long[] out = new long[n << 1];
+        for (int i = 0; i < n; i++) {
+            out[i << 1] = prices[i];
+            out[(i << 1) + 1] = qtys[i];
+        }
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "DepthCache{" + symbol + ", updateId=" + updateId + ", bids=" + Arrays.toString(Arrays.copyOf(bidPrices, bidCount))
+                + ", asks=" + Arrays.toString(Arrays.copyOf(askPrices, askCount)) + '}';
+    }
+}
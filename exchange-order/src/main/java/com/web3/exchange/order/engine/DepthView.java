@@ -0,0 +1,93 @@
+package com.web3.exchange.order.engine;
+
+import com.web3.exchange.order.dto.DepthLevel;
+import com.web3.exchange.order.dto.DepthVO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 某交易对前 N 档深度的不可变快照（由 {@link DepthCache} 乐观读复制得到，读侧不加锁）。
+ * <p>
+ * 每条改变盘口的命令（撮合 / 撤单 / 挂单恢复）使 {@link #updateId} 加一，调用方可据此判断两次读取间盘口是否变化。
+ * </p>
+ * <p>档位以 {@code [price0, qty0, price1, qty1, ...]} 交错存放：bids 价格降序、asks 价格升序，最小单位。</p>
+ */
+public final class DepthView {
+
+    private final String symbol;
+    private final long updateId;
+    private final long timestamp;
+    private final long[] bids;
+    private final long[] asks;
+
+    DepthView(String symbol, long updateId, long timestamp, long[] bids, long[] asks) {
+        this.symbol = symbol;
+        this.updateId = updateId;
+        this.timestamp = timestamp;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    public String symbol() {
+        return symbol;
+    }
+
+    /** 本快照反映到的最后一次盘口更新序号。 */
+    public long updateId() {
+        return updateId;
+    }
+
+    /** 发布时间（epoch ms）。 */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public int bidLevels() {
+        return bids.length >> 1;
+    }
+
+    public int askLevels() {
+        return asks.length >> 1;
+    }
+
+    public long bidPrice(int i) {
+        return bids[i << 1];
+    }
+
+    public long bidQuantity(int i) {
+        return bids[(i << 1) + 1];
+    }
+
+    public long askPrice(int i) {
+        return asks[i << 1];
+    }
+
+    public long askQuantity(int i) {
+        return asks[(i << 1) + 1];
+    }
+
+    long[] rawBids() {
+        return bids;
+    }
+
+    long[] rawAsks() {
+        return asks;
+    }
+
+    /** 转为对外视图，各取前 {@code limit} 档。 */
+    public DepthVO toVO(int limit) {
+        DepthVO vo = new DepthVO(symbol, levels(bids, limit), levels(asks, limit));
+        vo.setLastUpdateId(updateId);
+        return vo;
+    }
+
+    private static List<DepthLevel> levels(long[] side, int limit) {
+        int n = Math.min(Math.max(limit, 0), side.length >> 1);
+        List<DepthLevel> list = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            list.add(new DepthLevel(side[i << 1], side[(i << 1) + 1]));
+        }
+        return list;
+    }
+}
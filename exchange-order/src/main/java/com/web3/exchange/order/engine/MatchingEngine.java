@@ -9,10 +9,13 @@ import com.web3.exchange.order.entity.Trade;
 import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
 import org.springframework.stereotype.Component;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
-import java.util.LinkedHashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -25,24 +28,344 @@ import java.util.concurrent.locks.ReentrantLock;
  * </p>
  * <p>
  * 撮合规则（docs/order-domain.md §5.3）：
- * 买盘取最高价、卖盘取最低价（价格优先，TreeMap 有序保证）；同价 FIFO（时间优先）；
+ * 买盘取最高价、卖盘取最低价（价格优先，TreeMap 有序保证）；同价 FIFO（时间优先，档内双向链表）；
  * <b>成交价 = 挂单（maker）的挂单价</b>；市价买单按 quote_amount 预算、市价卖单按 quantity 撮合。
  * </p>
+ * <p>
+ * 深度：每条改变盘口的命令结束时（仍在交易对锁内）按本次变化的价格档原地修补前 {@link #DEPTH_LEVELS} 档
+ * {@link DepthCache}，{@link #depth} 乐观读无锁取 {@link DepthView} 快照。
+ * </p>
  */
 @Component
 public class MatchingEngine {
 
+    /** 增量维护的深度档数（与深度接口上限一致；更深的查询回退到加锁聚合） */
+    public static final int DEPTH_LEVELS = 50;
+
     private final ConcurrentHashMap<String, OrderBook> books = new ConcurrentHashMap<>();
     private final ConcurrentHashMap<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    /** 交易对 → 增量维护的前 N 档深度 */
+    private final ConcurrentHashMap<String, DepthCache> depthCaches = new ConcurrentHashMap<>();
+    /** 撮合结果监听（可选，写后置落库等） */
+    private volatile MatchListener matchListener;
+    /** 命令事件日志（可选，快照 + 日志尾部重放恢复） */
+    private volatile EventLog eventLog;
+    /** 成交价监听（可选，条件单触发） */
+    private volatile TradePriceListener tradePriceListener;
+
+    /**
+     * 撮合结果监听：在交易对锁内、撮合完成后同步回调，回调顺序即同交易对撮合顺序。
+     * 实现须轻量（拷贝快照/入队），不得做 DB/RPC 往返。
+     */
+    public interface MatchListener {
+        void onMatched(Order taker, MatchResult result);
+    }
+
+    /** 注册撮合结果监听（null 取消）。 */
+    public void setMatchListener(MatchListener listener) {
+        this.matchListener = listener;
+    }
+
+    /**
+     * 命令事件日志：在交易对锁内同步回调，记录每条改变订单簿的命令及其结果，
+     * 按日志顺序重放（{@link #replayMatch}/{@link #replayCancel}）可确定性地重建订单簿。
+     * 锁内只做编码与入队，释放锁后再经 {@link #awaitDurable} 等待本线程记录写入日志，命令才返回给调用方。
+     */
+    public interface EventLog {
+        /** 撮合命令：吃单进入撮合前的镜像 + 精度上下文（撮合前调用）。 */
+        void beforeMatch(Order taker, PrecisionContext ctx);
 
-    /** 某一交易对撮合后：生成的成交 + 被改动、需落库更新的挂单。 */
+        /** 撮合结果：吃单终态 + 成交（与 {@link #beforeMatch} 成对、同线程调用）。 */
+        void afterMatch(Order taker, MatchResult result);
+
+        /** 撤单命令：仅在簿中确实移除了订单时调用。 */
+        void onCancel(Order removed);
+
+        /** 等待本线程最近一条记录写入日志（交易对锁外调用）。 */
+        default void awaitDurable() {
+        }
+    }
+
+    /** 注册命令事件日志（null 取消）。须在订单簿恢复完成后再注册，避免重放过程被重复记录。 */
+    public void setEventLog(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    /**
+     * 成交价监听：在交易对锁内、每条产生成交的撮合命令之后同步回调本次成交价区间（扫多档时 low &lt; high）。
+     * 实现须轻量（比较阈值/入队），不得在回调内再提交撮合。
+     */
+    public interface TradePriceListener {
+        void onTradePrices(String symbol, long low, long high);
+    }
+
+    /** 注册成交价监听（null 取消）。 */
+    public void setTradePriceListener(TradePriceListener listener) {
+        this.tradePriceListener = listener;
+    }
+
+    /** 订单簿遍历回调（交易对锁内调用，orders 为买盘降序 + 卖盘升序、档内 FIFO）。 */
+    public interface BookVisitor {
+        void visit(String symbol, List<Order> orders);
+    }
+
+    /**
+     * 逐交易对在锁内遍历订单簿（快照用）。回调内不得再调用本引擎的加锁方法。
+     */
+    public void forEachBook(BookVisitor visitor) {
+        for (String symbol : books.keySet()) {
+            ReentrantLock lock = locks.computeIfAbsent(symbol, k -> new ReentrantLock());
+            lock.lock();
+            try {
+                OrderBook book = books.get(symbol);
+                if (book == null) {
+                    continue;
+                }
+                List<Order> orders = book.allBids();
+                orders.addAll(book.allAsks());
+                visitor.visit(symbol, orders);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 某一交易对撮合后：成交事件 + 被改动、需落库更新的挂单。
+     * <p>
+     * 撮合热路径只向预分配的原始类型数组追加成交事件（maker 引用、价格、数量、名义额），
+     * 不创建 {@link Trade}、不生成字符串成交号、不逐笔取时间；{@link #fills()} 把成交拷贝为与缓冲解耦的原始类型快照，
+     * {@link #trades()} 在锁外首次调用时才分配成交 id 并物化为实体（结果缓存，同一结果多次调用得到同一批成交）。
+     * 可复用：{@link MatchingEngine#match(Order, PrecisionContext, MatchResult)} 传入同一实例时先清空再写入，
+     * 调用方须在下一次复用前消费完毕。
+     * </p>
+     */
     public static class MatchResult {
-        public final List<Trade> trades = new ArrayList<>();
-        /** 被成交改动 remaining/status 的挂单（其 DB 行需同步更新） */
-        public final Set<Order> changedMakers = new LinkedHashSet<>();
+        private static final int INITIAL_CAPACITY = 16;
+
+        private Order taker;
+        private int size;
+        private Order[] makers;
+        private long[] prices;
+        private long[] quantities;
+        private long[] quoteAmounts;
+        private Order[] changed;
+        private int changedSize;
+        /** 撮合时刻（epoch 毫秒） */
+        private long timestamp;
+        private LocalDateTime time;
+        private Fills fills;
+
+        // 吃单累计量：撮合中只改原始类型，结束时一次写回 Order（避免逐笔装箱）
+        private long takerRemaining;
+        private long takerFilled;
+        private long takerFilledQuote;
+        private long takerBudget;
+        private int takerTradeCount;
+
+        public MatchResult() {
+            this(INITIAL_CAPACITY);
+        }
+
+        /** @param capacity 预分配的成交事件容量（超出自动翻倍扩容） */
+        public MatchResult(int capacity) {
+            int n = Math.max(1, capacity);
+            makers = new Order[n];
+            prices = new long[n];
+            quantities = new long[n];
+            quoteAmounts = new long[n];
+            changed = new Order[n];
+        }
+
+        /** 清空并绑定新的吃单（复用缓冲）。 */
+        void begin(Order taker) {
+            Arrays.fill(makers, 0, size, null);
+            Arrays.fill(changed, 0, changedSize, null);
+            this.taker = taker;
+            this.size = 0;
+            this.changedSize = 0;
+            this.timestamp = System.currentTimeMillis();
+            this.time = null;
+            this.fills = null;
+        }
+
+        /** 撮合时刻（每次撮合只创建一次，成交时间/完成时间/撤销时间共用）。 */
+        LocalDateTime time() {
+            if (time == null) {
+                time = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+            }
+            return time;
+        }
+
+        private void addFill(Order maker, long price, long qty, long quoteAmount) {
+            if (size == makers.length) {
+                int n = size << 1;
+                makers = Arrays.copyOf(makers, n);
+                prices = Arrays.copyOf(prices, n);
+                quantities = Arrays.copyOf(quantities, n);
+                quoteAmounts = Arrays.copyOf(quoteAmounts, n);
+            }
+            makers[size] = maker;
+            prices[size] = price;
+            quantities[size] = qty;
+            quoteAmounts[size] = quoteAmount;
+            size++;
+            // 同一挂单只会在连续的成交中出现（始终吃最优档档首），与上一条比较即可去重
+            if (changedSize == 0 || changed[changedSize - 1] != maker) {
+                if (changedSize == changed.length) {
+                    changed = Arrays.copyOf(changed, changedSize << 1);
+                }
+                changed[changedSize++] = maker;
+            }
+        }
 
         public boolean hasTrades() {
-            return !trades.isEmpty();
+            return size > 0;
+        }
+
+        /** 成交笔数。 */
+        public int fillCount() {
+            return size;
+        }
+
+        /** 第 i 笔成交的挂单。 */
+        public Order maker(int i) {
+            return makers[i];
+        }
+
+        /** 第 i 笔成交价（挂单价）。 */
+        public long price(int i) {
+            return prices[i];
+        }
+
+        /** 第 i 笔成交数量。 */
+        public long quantity(int i) {
+            return quantities[i];
+        }
+
+        /** 第 i 笔成交名义额。 */
+        public long quoteAmount(int i) {
+            return quoteAmounts[i];
+        }
+
+        /** 撮合时刻（epoch 毫秒）。 */
+        public long timestamp() {
+            return timestamp;
+        }
+
+        /** 被成交改动 remaining/status 的挂单（按首次成交顺序去重，其 DB 行需同步更新）。 */
+        public List<Order> changedMakers() {
+            return Collections.unmodifiableList(Arrays.asList(changed).subList(0, changedSize));
+        }
+
+        /**
+         * 本次成交的只读拷贝（首次调用时按原始类型数组复制，结果缓存）。可在交易对锁内调用交给其他线程，
+         * 不分配成交 id；之后本结果的 {@link #trades()} 与该拷贝共用同一批成交实体。
+         */
+        public Fills fills() {
+            if (fills == null) {
+                fills = new Fills(this);
+            }
+            return fills;
+        }
+
+        /**
+         * 物化成交实体（锁外调用）：首次调用时为每笔成交分配雪花 id（成交号 = id 的十进制串），
+         * 过户 requestId 为 {@code 成交号:Q / 成交号:B}。
+         */
+        public List<Trade> trades() {
+            return fills().trades();
+        }
+    }
+
+    /**
+     * 一次撮合成交的只读拷贝：吃单标识 + 每笔成交的价格/数量/名义额 + 挂单标识，全部为原始类型或不可变值，
+     * 与可复用的 {@link MatchResult} 缓冲及后续被继续撮合修改的 {@link Order} 解耦。
+     * <p>{@link #trades()} 首次调用时才分配 id 并物化，线程安全，多个线程调用得到同一批成交。</p>
+     */
+    public static final class Fills {
+        private final String symbol;
+        private final Long takerId;
+        private final String takerOrderNo;
+        private final Long takerUserId;
+        private final Integer takerSide;
+        private final long timestamp;
+        private final long[] prices;
+        private final long[] quantities;
+        private final long[] quoteAmounts;
+        private final Long[] makerIds;
+        private final String[] makerOrderNos;
+        private final Long[] makerUserIds;
+        private List<Trade> trades;
+
+        private Fills(MatchResult r) {
+            Order taker = r.taker;
+            int n = r.size;
+            this.symbol = taker.getSymbol();
+            this.takerId = taker.getId();
+            this.takerOrderNo = taker.getOrderNo();
+            this.takerUserId = taker.getUserId();
+            this.takerSide = taker.getSide();
+            this.timestamp = r.timestamp;
+            this.prices = Arrays.copyOf(r.prices, n);
+            this.quantities = Arrays.copyOf(r.quantities, n);
+            this.quoteAmounts = Arrays.copyOf(r.quoteAmounts, n);
+            this.makerIds = new Long[n];
+            this.makerOrderNos = new String[n];
+            this.makerUserIds = new Long[n];
+            for (int i = 0; i < n; i++) {
+                Order maker = r.makers[i];
+                makerIds[i] = maker.getId();
+                makerOrderNos[i] = maker.getOrderNo();
+                makerUserIds[i] = maker.getUserId();
+            }
+        }
+
+        /** 成交笔数。 */
+        public int size() {
+            return prices.length;
+        }
+
+        /** 物化成交实体（首次调用分配 id，结果缓存）。 */
+        public synchronized List<Trade> trades() {
+            if (trades == null) {
+                LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(timestamp), ZoneId.systemDefault());
+                List<Trade> list = new ArrayList<>(prices.length);
+                for (int i = 0; i < prices.length; i++) {
+                    list.add(toTrade(i, time));
+                }
+                trades = list;
+            }
+            return trades;
+        }
+
+        private Trade toTrade(int i, LocalDateTime time) {
+            long id = IdWorker.getId();
+            String tradeNo = Long.toString(id);
+            boolean takerBuys = takerSide == OrderConstant.SIDE_BUY;
+            Trade t = new Trade();
+            t.setId(id);
+            t.setTradeNo(tradeNo);
+            t.setSymbol(symbol);
+            t.setPrice(prices[i]);
+            t.setQuantity(quantities[i]);
+            t.setQuoteAmount(quoteAmounts[i]);
+            t.setTakerOrderNo(takerOrderNo);
+            t.setMakerOrderNo(makerOrderNos[i]);
+            t.setTakerOrderId(takerId);
+            t.setMakerOrderId(makerIds[i]);
+            t.setTakerUserId(takerUserId);
+            t.setMakerUserId(makerUserIds[i]);
+            t.setTakerSide(takerSide);
+            t.setBuyUserId(takerBuys ? takerUserId : makerUserIds[i]);
+            t.setSellUserId(takerBuys ? makerUserIds[i] : takerUserId);
+            t.setTakerFee(0L);
+            t.setMakerFee(0L);
+            t.setSettleStatus(0);
+            t.setSettleQuoteRequestId(tradeNo + ":Q");
+            t.setSettleBaseRequestId(tradeNo + ":B");
+            t.setTradeTime(time);
+            return t;
         }
     }
 
@@ -52,14 +375,52 @@ public class MatchingEngine {
      * @return 是否在簿中移除成功
      */
     public boolean removeBookOrder(Order order) {
+        return takeBookOrder(order) != null;
+    }
+
+    /**
+     * 撤单：从内存订单簿移除某订单并返回簿内对象（撮合后的最新状态），不在簿中返回 null。
+     */
+    public Order takeBookOrder(Order order) {
+        ReentrantLock lock = locks.computeIfAbsent(order.getSymbol(), k -> new ReentrantLock());
+        Order removed;
+        EventLog logged = null;
+        lock.lock();
+        try {
+            OrderBook book = books.get(order.getSymbol());
+            if (book == null) {
+                return null;
+            }
+            removed = book.takeById(order.getSide(), order.getPrice(), order.getId());
+            EventLog log = eventLog;
+            if (removed != null && log != null) {
+                log.onCancel(removed);
+                logged = log;
+            }
+            publishDepth(order.getSymbol(), book);
+        } finally {
+            lock.unlock();
+        }
+        if (logged != null) {
+            logged.awaitDurable();
+        }
+        return removed;
+    }
+
+    /**
+     * 日志重放：撤单（不回调事件日志）。
+     */
+    public Order replayCancel(Order order) {
         ReentrantLock lock = locks.computeIfAbsent(order.getSymbol(), k -> new ReentrantLock());
         lock.lock();
         try {
             OrderBook book = books.get(order.getSymbol());
             if (book == null) {
-                return false;
+                return null;
             }
-            return book.removeById(order.getSide(), order.getPrice(), order.getId());
+            Order removed = book.takeById(order.getSide(), order.getPrice(), order.getId());
+            publishDepth(order.getSymbol(), book);
+            return removed;
         } finally {
             lock.unlock();
         }
@@ -72,13 +433,42 @@ public class MatchingEngine {
         ReentrantLock lock = locks.computeIfAbsent(o.getSymbol(), k -> new ReentrantLock());
         lock.lock();
         try {
-            OrderBook book = books.computeIfAbsent(o.getSymbol(), k -> new OrderBook());
+            OrderBook book = book(o.getSymbol());
             book.add(o);
+            publishDepth(o.getSymbol(), book);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 按订单ID查簿内订单（撮合后的最新 remaining），不在簿中返回 null。 */
+    public Order bookOrder(String symbol, Long orderId) {
+        ReentrantLock lock = locks.computeIfAbsent(symbol, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            OrderBook book = books.get(symbol);
+            return book == null || orderId == null ? null : book.find(orderId);
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * 清空全部订单簿与深度缓存（启动恢复校验失败、改走 DB 重建前调用，不回调事件日志）。
+     */
+    public void clearBooks() {
+        for (String symbol : books.keySet()) {
+            ReentrantLock lock = locks.computeIfAbsent(symbol, k -> new ReentrantLock());
+            lock.lock();
+            try {
+                books.remove(symbol);
+                depthCaches.remove(symbol);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
     /** 某交易对最优买价（盘口空返回 null）。 */
     public Long bestBidPrice(String symbol) {
         return withBook(symbol, OrderBook::bestBid, o -> o == null ? null : o.getPrice());
@@ -102,13 +492,42 @@ public class MatchingEngine {
     }
 
     /**
-     * 某交易对内存盘口深度快照（公开只读行情）。按交易对加锁后聚合，保证盘口一致性。
+     * 市价单扫档估算（下单风控滑点评估用）：按当前盘口逐档吃入时到达的最差价，O(经过的档数)。
+     *
+     * @param side        吃单方向
+     * @param quantity    吃单数量（市价卖）
+     * @param quoteAmount 计价币预算（市价买）
+     * @return 最后触及的档位价；对手盘为空返回 null
+     */
+    public Long estimateSweepPrice(String symbol, int side, long quantity, long quoteAmount, PrecisionContext ctx) {
+        ReentrantLock lock = locks.computeIfAbsent(symbol, k -> new ReentrantLock());
+        lock.lock();
+        try {
+            OrderBook book = books.get(symbol);
+            if (book == null) {
+                return null;
+            }
+            return side == OrderConstant.SIDE_BUY
+                    ? book.sweepPriceByQuote(ctx, quoteAmount)
+                    : book.sweepPrice(OrderConstant.SIDE_BUY, quantity);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 某交易对内存盘口深度（公开只读行情）。{@code limit <= DEPTH_LEVELS} 时直接读取增量维护的快照（无锁，
+     * 不与撮合争用）；更深的查询按交易对加锁后聚合。
      *
      * @param symbol 交易对
      * @param limit  每方向最多返回的档数（≥0）
-     * @return 深度盘口；交易对尚无盘口时返回空 bids/asks
+     * @return 深度盘口（含 lastUpdateId）；交易对尚无盘口时返回空 bids/asks
      */
     public DepthVO depth(String symbol, int limit) {
+        if (limit <= DEPTH_LEVELS) {
+            DepthCache cache = depthCaches.get(symbol);
+            return cache != null ? cache.view().toVO(limit) : new DepthVO(symbol, new ArrayList<>(), new ArrayList<>());
+        }
         ReentrantLock lock = locks.computeIfAbsent(symbol, k -> new ReentrantLock());
         lock.lock();
         try {
@@ -117,12 +536,21 @@ public class MatchingEngine {
                 return new DepthVO(symbol, new ArrayList<>(), new ArrayList<>());
             }
             OrderBook.DepthSnapshot snap = book.depth(limit);
-            return new DepthVO(symbol, toLevels(snap.bids), toLevels(snap.asks));
+            DepthVO vo = new DepthVO(symbol, toLevels(snap.bids), toLevels(snap.asks));
+            DepthCache cache = depthCaches.get(symbol);
+            vo.setLastUpdateId(cache == null ? 0L : cache.updateId());
+            return vo;
         } finally {
             lock.unlock();
         }
     }
 
+    /** 某交易对最新前 {@link #DEPTH_LEVELS} 档深度快照（无锁读取）；交易对尚无盘口变动返回 null。 */
+    public DepthView depthView(String symbol) {
+        DepthCache cache = depthCaches.get(symbol);
+        return cache == null ? null : cache.view();
+    }
+
     /** long[]{price, quantity} → DepthLevel 列表。 */
     private static List<DepthLevel> toLevels(List<long[]> levels) {
         List<DepthLevel> list = new ArrayList<>(levels.size());
@@ -167,137 +595,222 @@ public class MatchingEngine {
      * @return 撮合结果（成交列表 + 需更新的挂单）
      */
     public MatchResult match(Order taker, PrecisionContext ctx) {
+        return match(taker, ctx, new MatchResult());
+    }
+
+    /**
+     * 撮合新订单，结果写入调用方提供的（可复用）缓冲。
+     *
+     * @param into 撮合结果缓冲，先清空再写入
+     */
+    public MatchResult match(Order taker, PrecisionContext ctx, MatchResult into) {
         ReentrantLock lock = locks.computeIfAbsent(taker.getSymbol(), k -> new ReentrantLock());
+        MatchResult result;
+        EventLog log = null;
         lock.lock();
         try {
-            OrderBook book = books.computeIfAbsent(taker.getSymbol(), k -> new OrderBook());
-            return doMatch(book, taker, ctx);
+            OrderBook book = book(taker.getSymbol());
+            log = eventLog;
+            if (log != null) {
+                log.beforeMatch(taker, ctx);
+            }
+            result = doMatch(book, taker, ctx, into);
+            if (log != null) {
+                log.afterMatch(taker, result);
+            }
+            publishDepth(taker.getSymbol(), book);
+            MatchListener listener = matchListener;
+            if (listener != null) {
+                listener.onMatched(taker, result);
+            }
+            TradePriceListener priceListener = tradePriceListener;
+            if (priceListener != null && result.hasTrades()) {
+                long low = Long.MAX_VALUE;
+                long high = Long.MIN_VALUE;
+                for (int i = 0, n = result.fillCount(); i < n; i++) {
+                    low = Math.min(low, result.price(i));
+                    high = Math.max(high, result.price(i));
+                }
+                priceListener.onTradePrices(taker.getSymbol(), low, high);
+            }
         } finally {
             lock.unlock();
         }
+        // 锁外等待日志写入：不同交易对的记录由日志写线程合并成一批写入（fsync 时一批一次）
+        if (log != null) {
+            log.awaitDurable();
+        }
+        return result;
+    }
+
+    /**
+     * 日志重放：按原精度上下文重新撮合一条已记录的命令（不回调监听与事件日志）。
+     * 撮合逻辑为纯函数，同样的簿状态 + 同样的命令得到同样的成交与簿状态（成交号、时间戳除外）。
+     */
+    public MatchResult replayMatch(Order taker, PrecisionContext ctx) {
+        ReentrantLock lock = locks.computeIfAbsent(taker.getSymbol(), k -> new ReentrantLock());
+        lock.lock();
+        try {
+            OrderBook book = book(taker.getSymbol());
+            MatchResult result = doMatch(book, taker, ctx, new MatchResult());
+            publishDepth(taker.getSymbol(), book);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 取或建交易对订单簿（调用方须已持有本交易对的锁）。 */
+    private OrderBook book(String symbol) {
+        return books.computeIfAbsent(symbol, k -> new OrderBook(true));
+    }
+
+    /** 发布本条命令造成的深度变化（调用方须已持有本交易对的锁）：按变化档位修补前 N 档缓存、updateId 加一。 */
+    private void publishDepth(String symbol, OrderBook book) {
+        List<OrderBook.PriceLevel> changed = book.changedLevels();
+        if (changed.isEmpty()) {
+            return;
+        }
+        depthCaches.computeIfAbsent(symbol, k -> new DepthCache(k, DEPTH_LEVELS))
+                .apply(book, changed, System.currentTimeMillis());
+        book.clearChanges();
     }
 
     /**
      * 撮合核心（纯逻辑，不依赖 DB；调用方须已持有本交易对的锁）。
+     * 吃单的剩余/成交累计在 {@link MatchResult} 的原始类型字段上进行，结束时一次写回订单。
      */
-    private MatchResult doMatch(OrderBook book, Order taker, PrecisionContext ctx) {
-        MatchResult result = new MatchResult();
+    private MatchResult doMatch(OrderBook book, Order taker, PrecisionContext ctx, MatchResult result) {
+        result.begin(taker);
         boolean isBuy = taker.getSide() == OrderConstant.SIDE_BUY;
+        boolean isMarketBuy = isBuy && taker.getOrderType() == OrderConstant.TYPE_MARKET;
         int tif = tif(taker);
 
         // ---- 撮合策略前置处理（docs/advanced-orders.md §二）：GTC 走原有逻辑，不改行为 ----
         // PostOnly：只挂单不吃单。若会立即与盘口成交 → 整单拒绝（不成交、不挂单）
         if (tif == OrderConstant.TIF_POST_ONLY) {
-            return doMatchPostOnly(book, taker);
+            return doMatchPostOnly(book, taker, result);
         }
         // FOK：盘口无法全部满足 total quantity → 整单取消（不成交、不挂单）；满足则照常撮合（自然全成交）
         if (tif == OrderConstant.TIF_FOK && !canFillFok(book, taker, ctx)) {
             taker.setStatus(OrderConstant.STATUS_CANCELLED);
-            taker.setCancelTime(java.time.LocalDateTime.now());
+            taker.setCancelTime(result.time());
             return result;
         }
 
+        result.takerRemaining = taker.getRemaining();
+        result.takerFilled = taker.getFilledAmount();
+        result.takerFilledQuote = taker.getFilledQuoteAmount();
+        result.takerTradeCount = taker.getTradeCount();
+        result.takerBudget = isMarketBuy ? taker.getQuoteAmount() : 0L;
+
         if (isBuy) {
             if (taker.getOrderType() == OrderConstant.TYPE_LIMIT) {
                 // 限价买单：持续吃 价格<=N.price 的最优卖单
-                while (taker.getRemaining() > 0) {
+                long limit = taker.getPrice();
+                while (result.takerRemaining > 0) {
                     Order maker = book.bestAsk();
-                    if (maker == null || maker.getPrice() > taker.getPrice()) {
+                    if (maker == null || maker.getPrice() > limit) {
                         break; // 价格不可穿透
                     }
-                    long qty = Math.min(taker.getRemaining(), maker.getRemaining());
-                    fill(taker, maker, qty, result, ctx);
-                    if (maker.getRemaining() == 0) {
-                        book.remove(maker);
-                    }
+                    long qty = Math.min(result.takerRemaining, maker.getRemaining());
+                    fill(maker, qty, result, ctx);
+                    book.reduce(maker, qty);
                 }
             } else {
                 // 市价买单：按 quote_amount 预算逐档吃掉
-                while (taker.getQuoteAmount() > 0) {
+                while (result.takerBudget > 0) {
                     Order maker = book.bestAsk();
                     if (maker == null) {
                         break;
                     }
+                    long makerPrice = maker.getPrice();
                     // 预算能买的最大数量：1 个基础币最小单位的名义额 = ctx.quoteAmount(price, 1)
-                    long unitCost = ctx.quoteAmount(maker.getPrice(), 1L);
+                    long unitCost = ctx.quoteAmount(makerPrice, 1L);
                     if (unitCost <= 0) {
                         break; // 1 个最小单位的预算都不够，无法撮合
                     }
-                    long maxQty = taker.getQuoteAmount() / unitCost;
+                    long maxQty = result.takerBudget / unitCost;
                     if (maxQty <= 0) {
                         break; // 预算不足以买 1 个最小单位
                     }
                     long qty = Math.min(maxQty, maker.getRemaining());
-                    long spent = ctx.quoteAmount(maker.getPrice(), qty);
+                    long spent = ctx.quoteAmount(makerPrice, qty);
                     // 四舍五入兜底：若 round 后 spent 越过预算，回退到不超过预算的最大数量
-                    while (spent > taker.getQuoteAmount() && qty > 0) {
+                    while (spent > result.takerBudget && qty > 0) {
                         qty--;
-                        spent = ctx.quoteAmount(maker.getPrice(), qty);
+                        spent = ctx.quoteAmount(makerPrice, qty);
                     }
                     if (qty == 0) {
                         break;
                     }
-                    fill(taker, maker, qty, result, ctx);
-                    taker.setQuoteAmount(taker.getQuoteAmount() - spent); // 扣减市价买单预算
-                    if (maker.getRemaining() == 0) {
-                        book.remove(maker);
-                    }
+                    fill(maker, qty, result, ctx);
+                    result.takerBudget -= spent; // 扣减市价买单预算
+                    book.reduce(maker, qty);
                 }
             }
         } else {
             if (taker.getOrderType() == OrderConstant.TYPE_LIMIT) {
                 // 限价卖单：持续吃 价格>=N.price 的最优买单
-                while (taker.getRemaining() > 0) {
+                long limit = taker.getPrice();
+                while (result.takerRemaining > 0) {
                     Order maker = book.bestBid();
-                    if (maker == null || maker.getPrice() < taker.getPrice()) {
+                    if (maker == null || maker.getPrice() < limit) {
                         break; // 价格不可穿透
                     }
-                    long qty = Math.min(taker.getRemaining(), maker.getRemaining());
-                    fill(taker, maker, qty, result, ctx);
-                    if (maker.getRemaining() == 0) {
-                        book.remove(maker);
-                    }
+                    long qty = Math.min(result.takerRemaining, maker.getRemaining());
+                    fill(maker, qty, result, ctx);
+                    book.reduce(maker, qty);
                 }
             } else {
                 // 市价卖单：按 quantity 逐档吃掉
-                while (taker.getRemaining() > 0) {
+                while (result.takerRemaining > 0) {
                     Order maker = book.bestBid();
                     if (maker == null) {
                         break;
                     }
-                    long qty = Math.min(taker.getRemaining(), maker.getRemaining());
-                    fill(taker, maker, qty, result, ctx);
-                    if (maker.getRemaining() == 0) {
-                        book.remove(maker);
-                    }
+                    long qty = Math.min(result.takerRemaining, maker.getRemaining());
+                    fill(maker, qty, result, ctx);
+                    book.reduce(maker, qty);
                 }
             }
         }
 
+        // 吃单累计量写回（有成交才写，避免无谓装箱）
+        if (result.size > 0) {
+            taker.setRemaining(result.takerRemaining);
+            taker.setFilledAmount(result.takerFilled);
+            taker.setFilledQuoteAmount(result.takerFilledQuote);
+            taker.setAvgPrice(result.takerFilled == 0 ? 0 : result.takerFilledQuote / result.takerFilled);
+            taker.setTradeCount(result.takerTradeCount);
+            if (isMarketBuy) {
+                taker.setQuoteAmount(result.takerBudget);
+            }
+        }
+
         // 吃单最终状态：remaining==0 → FILLED；限价剩余>0 → 入簿（已成交>0 则 PARTIAL）；市价剩余不落簿
         if (tif == OrderConstant.TIF_IOC || tif == OrderConstant.TIF_FOK) {
             // IOC/FOK：只撮合当前可成交部分，剩余作废不挂单（即使限价）。全部满足→FILLED；否则整单终态取消
-            boolean fullyExecuted = taker.getRemaining() == 0
-                    && (!(isBuy && taker.getOrderType() == OrderConstant.TYPE_MARKET) || taker.getQuoteAmount() == 0);
+            boolean fullyExecuted = result.takerRemaining == 0 && (!isMarketBuy || result.takerBudget == 0);
             if (fullyExecuted) {
                 taker.setStatus(OrderConstant.STATUS_FILLED);
-                taker.setFilledTime(java.time.LocalDateTime.now());
+                taker.setFilledTime(result.time());
             } else {
                 taker.setStatus(OrderConstant.STATUS_CANCELLED);
-                taker.setCancelTime(java.time.LocalDateTime.now());
+                taker.setCancelTime(result.time());
             }
             return result;
         }
-        if (taker.getRemaining() == 0) {
+        if (result.takerRemaining == 0) {
             taker.setStatus(OrderConstant.STATUS_FILLED);
-            taker.setFilledTime(java.time.LocalDateTime.now());
+            taker.setFilledTime(result.time());
         } else if (taker.getOrderType() == OrderConstant.TYPE_LIMIT) {
-            taker.setStatus(taker.getFilledAmount() > 0
+            taker.setStatus(result.takerFilled > 0
                     ? OrderConstant.STATUS_PARTIAL : OrderConstant.STATUS_NEW);
             book.add(taker); // 剩余挂单入簿
         } else {
             // 市价单未完全成交：成交多少算多少，剩余作废不落簿
-            taker.setStatus(taker.getFilledAmount() > 0
+            taker.setStatus(result.takerFilled > 0
                     ? OrderConstant.STATUS_PARTIAL : OrderConstant.STATUS_NEW);
         }
 
@@ -314,8 +827,7 @@ public class MatchingEngine {
      * <p>若买单会与盘口（bestAsk <= 限价）或卖单会与盘口（bestBid >= 限价）立即成交，
      * 则整单拒绝（不成交、不挂单），标记 REJECTED + remark。否则作为 maker 直接入簿。</p>
      */
-    private MatchResult doMatchPostOnly(OrderBook book, Order taker) {
-        MatchResult result = new MatchResult();
+    private MatchResult doMatchPostOnly(OrderBook book, Order taker, MatchResult result) {
         boolean isBuy = taker.getSide() == OrderConstant.SIDE_BUY;
         Order best = isBuy ? book.bestAsk() : book.bestBid();
         boolean wouldCross = (isBuy && best != null && best.getPrice() <= taker.getPrice())
@@ -332,88 +844,50 @@ public class MatchingEngine {
 
     /**
      * FOK 前置评估：盘口能否全部满足 taker 的 total intent。
-     * <p>限价单按 quantity 在可穿透价格内累加剩余；市价买单按预算在盘口全部卖盘上的可花费额累加；
-     * 市价卖单按 quantity 累加买盘全部剩余。满足返回 true（可照常撮合 → 自然全成交）。</p>
+     * <p>限价单按 quantity 累加可穿透价格内的档位缓存量；市价买单按预算累加卖盘逐档名义额；
+     * 市价卖单按 quantity 累加买盘档位缓存量。均在累计满足时提前结束，O(经过的档数)。
+     * 满足返回 true（可照常撮合 → 自然全成交）。</p>
      */
     private boolean canFillFok(OrderBook book, Order taker, PrecisionContext ctx) {
         boolean isBuy = taker.getSide() == OrderConstant.SIDE_BUY;
-        if (isBuy) {
-            if (taker.getOrderType() == OrderConstant.TYPE_LIMIT) {
-                long total = 0;
-                for (Order m : book.asksUpTo(taker.getPrice())) {
-                    total += m.getRemaining();
-                }
-                return total >= taker.getRemaining();
-            }
-            // 市价买单：预算能否被盘口完全消耗（total 可花费名义额）
-            long spendable = 0;
-            for (Order m : book.allAsks()) {
-                spendable += ctx.quoteAmount(m.getPrice(), m.getRemaining());
-            }
-            return spendable >= taker.getQuoteAmount();
+        if (isBuy && taker.getOrderType() == OrderConstant.TYPE_MARKET) {
+            long budget = taker.getQuoteAmount();
+            return book.askNotional(ctx, budget) >= budget;
         }
-        long total = 0;
-        if (taker.getOrderType() == OrderConstant.TYPE_LIMIT) {
-            for (Order m : book.bidsFrom(taker.getPrice())) {
-                total += m.getRemaining();
-            }
-        } else {
-            for (Order m : book.allBids()) {
-                total += m.getRemaining();
-            }
-        }
-        return total >= taker.getRemaining();
+        Long bound = taker.getOrderType() == OrderConstant.TYPE_LIMIT ? taker.getPrice() : null;
+        long need = taker.getRemaining();
+        return book.liquidity(isBuy ? OrderConstant.SIDE_SELL : OrderConstant.SIDE_BUY, bound, need) >= need;
     }
 
     /**
-     * 单笔撮合：按挂单价成交，更新双方 remaining/filled/avg/trade_count，生成 Trade。
+     * 单笔撮合：按挂单价成交，更新挂单 remaining/filled/avg/trade_count 与吃单累计量，追加一条成交事件。
      * 成交名义额用 {@link PrecisionContext#quoteAmount} 精确换算（计价币最小单位，溢出安全）。
+     * 热路径不分配 {@link Trade}、字符串或时间对象（挂单完全成交时复用本次撮合时刻）。
      */
-    private void fill(Order taker, Order maker, long qty, MatchResult result, PrecisionContext ctx) {
+    private void fill(Order maker, long qty, MatchResult result, PrecisionContext ctx) {
         long price = maker.getPrice(); // 成交价 = 挂单（maker）挂单价
         long quoteAmount = ctx.quoteAmount(price, qty);
 
         // 挂单方（maker）
-        maker.setRemaining(maker.getRemaining() - qty);
-        maker.setFilledAmount(maker.getFilledAmount() + qty);
-        maker.setFilledQuoteAmount(maker.getFilledQuoteAmount() + quoteAmount);
-        maker.setAvgPrice(maker.getFilledAmount() == 0 ? 0 : maker.getFilledQuoteAmount() / maker.getFilledAmount());
+        long makerRemaining = maker.getRemaining() - qty;
+        long makerFilled = maker.getFilledAmount() + qty;
+        long makerFilledQuote = maker.getFilledQuoteAmount() + quoteAmount;
+        maker.setRemaining(makerRemaining);
+        maker.setFilledAmount(makerFilled);
+        maker.setFilledQuoteAmount(makerFilledQuote);
+        maker.setAvgPrice(makerFilled == 0 ? 0 : makerFilledQuote / makerFilled);
         maker.setTradeCount(maker.getTradeCount() + 1);
-        maker.setStatus(maker.getRemaining() == 0 ? OrderConstant.STATUS_FILLED : OrderConstant.STATUS_PARTIAL);
-        if (maker.getRemaining() == 0) {
-            maker.setFilledTime(java.time.LocalDateTime.now());
-        }
-
-        // 吃单方（taker）
-        taker.setRemaining(taker.getRemaining() - qty);
-        taker.setFilledAmount(taker.getFilledAmount() + qty);
-        taker.setFilledQuoteAmount(taker.getFilledQuoteAmount() + quoteAmount);
-        taker.setAvgPrice(taker.getFilledAmount() == 0 ? 0 : taker.getFilledQuoteAmount() / taker.getFilledAmount());
-        taker.setTradeCount(taker.getTradeCount() + 1);
-
-        // 生成成交
-        Trade t = new Trade();
-        t.setTradeNo(IdWorker.getIdStr());
-        t.setSymbol(taker.getSymbol());
-        t.setPrice(price);
-        t.setQuantity(qty);
-        t.setQuoteAmount(quoteAmount);
-        t.setTakerOrderNo(taker.getOrderNo());
-        t.setMakerOrderNo(maker.getOrderNo());
-        t.setTakerOrderId(taker.getId());
-        t.setMakerOrderId(maker.getId());
-        t.setTakerUserId(taker.getUserId());
-        t.setMakerUserId(maker.getUserId());
-        t.setTakerSide(taker.getSide());
-        t.setBuyUserId(taker.getSide() == OrderConstant.SIDE_BUY ? taker.getUserId() : maker.getUserId());
-        t.setSellUserId(taker.getSide() == OrderConstant.SIDE_SELL ? taker.getUserId() : maker.getUserId());
-        t.setTakerFee(0L);
-        t.setMakerFee(0L);
-        t.setSettleStatus(0);
-        t.setSettleQuoteRequestId(t.getTradeNo() + ":Q");
-        t.setSettleBaseRequestId(t.getTradeNo() + ":B");
-
-        result.trades.add(t);
-        result.changedMakers.add(maker);
+        maker.setStatus(makerRemaining == 0 ? OrderConstant.STATUS_FILLED : OrderConstant.STATUS_PARTIAL);
+        if (makerRemaining == 0) {
+            maker.setFilledTime(result.time());
+        }
+
+        // 吃单方（taker）：只累计，撮合结束时写回
+        result.takerRemaining -= qty;
+        result.takerFilled += qty;
+        result.takerFilledQuote += quoteAmount;
+        result.takerTradeCount++;
+
+        result.addFill(maker, price, qty, quoteAmount);
     }
 }
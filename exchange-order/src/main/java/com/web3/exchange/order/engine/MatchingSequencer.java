@@ -0,0 +1,206 @@
+package com.web3.exchange.order.engine;
+
+import com.web3.exchange.common.exception.ServiceException;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * 撮合定序器（LMAX 风格，可选模式，{@code order.matching.sequencer.enabled=true} 开启）。
+ * <p>
+ * 交易对按 {@code floorMod(symbol.hashCode(), shards)} 固定映射到分片，每个分片一个<b>专属撮合线程</b>，
+ * 由有界无锁 {@link MpscRingBuffer} 喂入下单/撤单命令；请求线程只做一次 CAS 入队，拿到
+ * {@link CompletableFuture} 等待结果，不再争抢交易对锁。同一交易对的命令恒在同一线程按入队顺序执行，
+ * 撮合仍走 {@link MatchingEngine}，价格优先 + 时间优先语义不变（引擎内交易对锁在单写者下无竞争）。
+ * </p>
+ * <p>未开启时 {@link #submit}/{@link #submitCancel} 在调用线程内直接执行，行为与原先一致。
+ * 入站队列满时快速失败（{@link ServiceException}），不阻塞请求线程。</p>
+ */
+@Slf4j
+@Component
+public class MatchingSequencer {
+
+    /** 空转自旋次数，超过后 park 让出 CPU */
+    private static final int SPIN_TRIES = 1000;
+    /** 空闲时单次 park 时长（纳秒） */
+    private static final long IDLE_PARK_NANOS = 50_000L;
+
+    private final MatchingEngine engine;
+    private final boolean enabled;
+    private final int shards;
+    private final int ringSize;
+
+    private Shard[] workers;
+
+    public MatchingSequencer(MatchingEngine engine,
+                             @Value("${order.matching.sequencer.enabled:false}") boolean enabled,
+                             @Value("${order.matching.sequencer.shards:4}") int shards,
+                             @Value("${order.matching.sequencer.ring-size:65536}") int ringSize) {
+        this.engine = engine;
+        this.enabled = enabled;
+        this.shards = Math.max(1, shards);
+        this.ringSize = ringSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        workers = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            workers[i] = new Shard(i, new MpscRingBuffer<>(ringSize));
+            workers[i].thread.start();
+        }
+        log.info("[order] 撮合定序器已启动 shards={} ringSize={}", shards, workers[0].ring.capacity());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (workers == null) {
+            return;
+        }
+        for (Shard w : workers) {
+            w.running = false;
+            LockSupport.unpark(w.thread);
+        }
+        for (Shard w : workers) {
+            try {
+                w.thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** 是否为定序器模式。 */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提交撮合：定序器模式入所属分片队列，否则当前线程直接撮合。
+     *
+     * @param taker 新下单（含已落库的 id/orderNo/createTime）
+     * @param ctx   该交易对的精度上下文
+     * @return 撮合结果 future
+     */
+    public CompletableFuture<MatchingEngine.MatchResult> submit(Order taker, PrecisionContext ctx) {
+        return dispatch(taker.getSymbol(), () -> engine.match(taker, ctx));
+    }
+
+    /**
+     * 提交撤单（内存簿移除）：与同交易对的撮合命令共享队列，保证撤单与撮合严格有序。
+     *
+     * @return 被移除的簿内订单（最新撮合状态），不在簿中为 null
+     */
+    public CompletableFuture<Order> submitCancel(Order order) {
+        return dispatch(order.getSymbol(), () -> engine.takeBookOrder(order));
+    }
+
+    /** 同步撮合：{@link #submit} 并等待结果（撮合异常原样抛出）。 */
+    public MatchingEngine.MatchResult match(Order taker, PrecisionContext ctx) {
+        return await(submit(taker, ctx));
+    }
+
+    /** 同步撤单：{@link #submitCancel} 并等待结果（被移除的簿内订单，不在簿中为 null）。 */
+    public Order cancel(Order order) {
+        return await(submitCancel(order));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException re) {
+                throw re;
+            }
+            throw e;
+        }
+    }
+
+    private <T> CompletableFuture<T> dispatch(String symbol, Supplier<T> task) {
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(task.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        Shard w = workers[Math.floorMod(symbol.hashCode(), workers.length)];
+        Command<T> cmd = new Command<>(task);
+        if (!w.ring.offer(cmd)) {
+            log.warn("[order] 撮合队列已满 shard={} symbol={}", w.id, symbol);
+            return CompletableFuture.failedFuture(new ServiceException("撮合繁忙，请稍后重试"));
+        }
+        if (w.parked) {
+            LockSupport.unpark(w.thread);
+        }
+        return cmd.future;
+    }
+
+    /** 入站命令：待执行逻辑 + 结果 future。 */
+    private static final class Command<T> {
+        final Supplier<T> task;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+
+        Command(Supplier<T> task) {
+            this.task = task;
+        }
+
+        void run() {
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+    }
+
+    /** 分片：一个撮合线程 + 一条入站环形队列。 */
+    private static final class Shard implements Runnable {
+        final int id;
+        final MpscRingBuffer<Command<?>> ring;
+        final Thread thread;
+        volatile boolean running = true;
+        volatile boolean parked;
+
+        Shard(int id, MpscRingBuffer<Command<?>> ring) {
+            this.id = id;
+            this.ring = ring;
+            this.thread = new Thread(this, "matcher-" + id);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (running || ring.size() > 0) {
+                Command<?> cmd = ring.poll();
+                if (cmd != null) {
+                    cmd.run();
+                    idle = 0;
+                    continue;
+                }
+                if (++idle < SPIN_TRIES) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                parked = true;
+                if (ring.size() == 0 && running) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                parked = false;
+            }
+        }
+    }
+}
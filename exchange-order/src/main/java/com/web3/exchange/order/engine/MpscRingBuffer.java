@@ -0,0 +1,136 @@
+package com.web3.exchange.order.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁多生产者单消费者（MPSC）环形队列，{@link MatchingSequencer} 撮合线程的入站队列。
+ * <p>
+ * 槽位序号法（每槽一个 sequence）：生产者 CAS 抢占 {@code tail} 得到写入位置，写入元素后发布槽位序号 = pos+1；
+ * 唯一消费者按 {@code head} 顺序读取序号已发布的槽位，读完把序号推进一圈（pos+capacity）归还给生产者。
+ * 全程无锁，队满时 {@link #offer} 立即返回 false 由调用方决定拒绝或重试。
+ * </p>
+ * <p>
+ * 容量向上取整为 2 的幂，用位与代替取模。{@code tail}/{@code head} 是对象内的 long 字段（{@code tail} 经
+ * {@link VarHandle} CAS），填充放在逐层继承的父类里：HotSpot 只在同一个类内重排字段，父类字段总排在子类之前，
+ * 因此两个热点字段前后各隔 8 个 long（64 字节），不与对象头、彼此及其它字段落在同一缓存行。
+ * </p>
+ *
+ * @param <E> 元素类型
+ */
+public final class MpscRingBuffer<E> extends MpscRingBufferPad2 {
+
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(MpscRingBufferTail.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("ring capacity must be >= 2: " + requestedCapacity);
+        }
+        int capacity = Integer.highestOneBit(requestedCapacity - 1) << 1;
+        this.mask = capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** 实际容量（2 的幂）。 */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 入队（任意线程）。
+     *
+     * @return 队满返回 false
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException("element");
+        }
+        while (true) {
+            long pos = tail;
+            int idx = (int) (pos & mask);
+            long seq = sequences.get(idx);
+            long diff = seq - pos;
+            if (diff == 0) {
+                if (TAIL.compareAndSet(this, pos, pos + 1)) {
+                    buffer.lazySet(idx, e);
+                    sequences.set(idx, pos + 1); // 发布：消费者可见
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // 槽位尚未被消费者归还 → 队满
+            } else {
+                Thread.onSpinWait(); // 被其它生产者抢先，重读 tail
+            }
+        }
+    }
+
+    /**
+     * 出队（仅限唯一消费者线程）。
+     *
+     * @return 队空返回 null
+     */
+    public E poll() {
+        long pos = head;
+        int idx = (int) (pos & mask);
+        if (sequences.get(idx) != pos + 1) {
+            return null; // 生产者尚未发布
+        }
+        E e = buffer.get(idx);
+        buffer.lazySet(idx, null);
+        sequences.set(idx, pos + mask + 1); // 归还槽位给下一圈生产者
+        head = pos + 1;
+        return e;
+    }
+
+    /** 近似待处理数量（监控用）。 */
+    public int size() {
+        long n = tail - head;
+        return (int) Math.max(0, Math.min(n, capacity()));
+    }
+}
+
+/** tail 之前的填充（与对象头、其它对象隔开）。 */
+abstract class MpscRingBufferPad0 {
+    @SuppressWarnings("unused")
+    private long p00, p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class MpscRingBufferTail extends MpscRingBufferPad0 {
+    /** 生产者写入位置（多生产者 CAS 抢占） */
+    volatile long tail;
+}
+
+/** tail 与 head 之间的填充。 */
+abstract class MpscRingBufferPad1 extends MpscRingBufferTail {
+    @SuppressWarnings("unused")
+    private long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class MpscRingBufferHead extends MpscRingBufferPad1 {
+    /** 消费者读取位置（仅撮合线程写） */
+    long head;
+}
+
+/** head 之后的填充（与子类的 mask/buffer/sequences 隔开）。 */
+abstract class MpscRingBufferPad2 extends MpscRingBufferHead {
+    @SuppressWarnings("unused")
+    private long p20, p21, p22, p23, p24, p25, p26, p27;
+}
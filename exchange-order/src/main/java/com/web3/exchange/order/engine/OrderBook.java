@@ -2,20 +2,31 @@ package com.web3.exchange.order.engine;
 
 import com.web3.exchange.order.constant.OrderConstant;
 import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.Objects;
 import java.util.TreeMap;
 
 /**
  * 内存订单簿（单个交易对的盘口）。
  * <p>
- * 价格优先 + 时间优先的数据结构：用两个 {@link TreeMap} 维护盘口——
+ * 价格优先 + 时间优先的数据结构：用两个 {@link TreeMap} 维护价格档——
  * 买盘 {@link #bids} 按价格<b>降序</b>（价格高者先成交），卖盘 {@link #asks} 按价格<b>升序</b>（价格低者先成交）；
- * 每个价格档用 FIFO {@link PriorityQueue}（按 createTime 升序、id 升序）保证<b>时间优先</b>（同价先到先得）。
+ * 每个价格档 {@link PriceLevel} 是一条<b>双向链表 FIFO 队列</b>（按 createTime 升序、id 升序）保证<b>时间优先</b>（同价先到先得）。
  * </p>
- * <p>本类为<b>纯数据结构</b>，不依赖 DB，可独立单测。</p>
+ * <p>
+ * 复杂度：入簿追加到档尾 O(1)（到达顺序即时间顺序，乱序到达时才向前回溯）；
+ * 撤单经 {@link #index orderId→节点索引} 定位后原地摘链 O(1)；每档缓存挂单剩余量之和，深度聚合、FOK 可成交量评估与
+ * 扫档估算均按档累加、达到需求即止，O(经过的档数)。
+ * 成交扣减挂单 remaining 后须调用 {@link #reduce} 同步档位缓存。
+ * </p>
+ * <p>本类为<b>纯数据结构</b>，不依赖 DB，可独立单测；非线程安全，由 {@link MatchingEngine} 按交易对串行化。</p>
  */
 public class OrderBook {
 
@@ -27,17 +38,80 @@ public class OrderBook {
             .thenComparing(Order::getId, Comparator.nullsLast(Comparator.naturalOrder()));
 
     /** 买盘：价格降序 → 最高买价在 firstEntry */
-    private final TreeMap<Long, PriorityQueue<Order>> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final TreeMap<Long, PriceLevel> bids = new TreeMap<>(Comparator.reverseOrder());
     /** 卖盘：价格升序 → 最低卖价在 firstEntry */
-    private final TreeMap<Long, PriorityQueue<Order>> asks = new TreeMap<>();
+    private final TreeMap<Long, PriceLevel> asks = new TreeMap<>();
+    /** orderId → 链表节点（撤单 O(1) 定位） */
+    private final HashMap<Long, Node> index = new HashMap<>();
+    /** 是否记录档位变化（撮合引擎内的簿开启，供增量深度发布） */
+    private final boolean trackChanges;
+    /** 自上次 {@link #clearChanges} 以来总量变化过的价格档（含已删除档） */
+    private final ArrayList<PriceLevel> changed = new ArrayList<>();
+
+    public OrderBook() {
+        this(false);
+    }
 
-    /** 入簿（仅活跃限价单）。 */
+    /**
+     * @param trackChanges 记录每次变动涉及的价格档（{@link #changedLevels}），调用方须在每条命令后 {@link #clearChanges}
+     */
+    OrderBook(boolean trackChanges) {
+        this.trackChanges = trackChanges;
+    }
+
+    /**
+     * 价格档：同价挂单的双向链表 FIFO 队列 + 缓存的剩余量之和。
+     */
+    static final class PriceLevel {
+        final int side;
+        final long price;
+        Node head;
+        Node tail;
+        /** 本档挂单数 */
+        int count;
+        /** 本档挂单剩余量之和（基础币最小单位） */
+        long quantity;
+        /** 已登记到 {@link #changed} */
+        boolean changed;
+
+        PriceLevel(int side, long price) {
+            this.side = side;
+            this.price = price;
+        }
+    }
+
+    /**
+     * 链表节点：包裹一张挂单，记录入簿时的剩余量（随 {@link #reduce} 扣减），
+     * 保证档位缓存只由簿内操作维护、不受外部改 remaining 影响。
+     */
+    static final class Node {
+        final Order order;
+        final PriceLevel level;
+        Node prev;
+        Node next;
+        long quantity;
+
+        Node(Order order, PriceLevel level, long quantity) {
+            this.order = order;
+            this.level = level;
+            this.quantity = quantity;
+        }
+    }
+
+    /** 入簿（仅活跃限价单）。同一 orderId 重复入簿时以最新一次为准。 */
     public void add(Order o) {
-        if (o.getSide() == OrderConstant.SIDE_BUY) {
-            bids.computeIfAbsent(o.getPrice(), k -> new PriorityQueue<>(FIFO)).add(o);
-        } else {
-            asks.computeIfAbsent(o.getPrice(), k -> new PriorityQueue<>(FIFO)).add(o);
+        Objects.requireNonNull(o.getId(), "入簿订单必须已落库（id 不可为空）");
+        Node existing = index.get(o.getId());
+        if (existing != null) {
+            unlink(existing);
         }
+        boolean isBuy = o.getSide() == OrderConstant.SIDE_BUY;
+        TreeMap<Long, PriceLevel> side = isBuy ? bids : asks;
+        PriceLevel level = side.computeIfAbsent(o.getPrice(),
+                p -> new PriceLevel(isBuy ? OrderConstant.SIDE_BUY : OrderConstant.SIDE_SELL, p));
+        Node node = new Node(o, level, o.getRemaining() == null ? 0L : o.getRemaining());
+        linkFifo(level, node);
+        index.put(o.getId(), node);
     }
 
     /** 最优卖单（最低价，同价最早）；盘口为空返回 null。 */
@@ -50,63 +124,136 @@ public class OrderBook {
         return peek(bids);
     }
 
-    /** 卖盘：价格 <= 上限的所有活跃挂单快照（价格升序，FOK/评估用）。 */
-    public java.util.List<Order> asksUpTo(long priceLimit) {
-        java.util.List<Order> out = new java.util.ArrayList<>();
-        for (Map.Entry<Long, PriorityQueue<Order>> e : asks.entrySet()) {
-            if (e.getKey() > priceLimit) {
+    /** 卖盘全部活跃挂单快照（价格升序，快照/恢复用）。 */
+    public List<Order> allAsks() {
+        return collect(asks.values());
+    }
+
+    /** 买盘全部活跃挂单快照（价格降序，快照/恢复用）。 */
+    public List<Order> allBids() {
+        return collect(bids.values());
+    }
+
+    /**
+     * 某方向盘口在价格界内的可成交量（FOK 评估用）：按优先级逐档累加档位缓存量，累计达到 {@code need} 即返回。
+     * 复杂度 O(经过的档数)，不复制挂单、不遍历档内链表。
+     *
+     * @param side       挂单方向（吃单买 → 卖盘 SIDE_SELL）
+     * @param priceBound 价格界：卖盘为上限、买盘为下限（含）；null 表示不限（市价）
+     * @param need       需求量，累计达到即提前结束
+     * @return 累计量（&lt; need 表示盘口不足）
+     */
+    public long liquidity(int side, Long priceBound, long need) {
+        long total = 0;
+        for (PriceLevel level : levels(side, priceBound)) {
+            total += level.quantity;
+            if (total >= need) {
                 break;
             }
-            out.addAll(e.getValue());
         }
-        return out;
+        return total;
     }
 
-    /** 买盘：价格 >= 下限的所有活跃挂单快照（价格降序，FOK/评估用）。 */
-    public java.util.List<Order> bidsFrom(long priceFloor) {
-        java.util.List<Order> out = new java.util.ArrayList<>();
-        for (Map.Entry<Long, PriorityQueue<Order>> e : bids.entrySet()) {
-            if (e.getKey() < priceFloor) {
+    /**
+     * 卖盘可花费名义额（市价买 FOK 评估用）：逐档按 {@code ctx.quoteAmount(档位价, 档位缓存量)} 累加，
+     * 累计达到 {@code budget} 即返回。每档一次换算（逐单换算的舍入差不超过档内挂单数个最小单位）。
+     */
+    public long askNotional(PrecisionContext ctx, long budget) {
+        long total = 0;
+        for (PriceLevel level : asks.values()) {
+            total += ctx.quoteAmount(level.price, level.quantity);
+            if (total >= budget) {
                 break;
             }
-            out.addAll(e.getValue());
         }
-        return out;
+        return total;
     }
 
-    /** 卖盘全部活跃挂单快照（价格升序，市价 FOK/评估用）。 */
-    public java.util.List<Order> allAsks() {
-        java.util.List<Order> out = new java.util.ArrayList<>();
-        for (PriorityQueue<Order> q : asks.values()) {
-            out.addAll(q);
+    /**
+     * 扫档估算（滑点评估用）：按数量从某方向盘口逐档吃入时到达的最差价。
+     *
+     * @param side 挂单方向
+     * @param qty  吃单数量
+     * @return 最后触及档位价；盘口不足时为该方向最深档价，盘口为空返回 null
+     */
+    public Long sweepPrice(int side, long qty) {
+        Long last = null;
+        long total = 0;
+        for (PriceLevel level : levels(side, null)) {
+            last = level.price;
+            total += level.quantity;
+            if (total >= qty) {
+                break;
+            }
         }
-        return out;
+        return last;
     }
 
-    /** 买盘全部活跃挂单快照（价格降序，市价 FOK/评估用）。 */
-    public java.util.List<Order> allBids() {
-        java.util.List<Order> out = new java.util.ArrayList<>();
-        for (PriorityQueue<Order> q : bids.values()) {
-            out.addAll(q);
+    /**
+     * 扫档估算：市价买按计价币预算逐档吃卖盘时到达的最差价（盘口不足为最深档价，空盘口返回 null）。
+     */
+    public Long sweepPriceByQuote(PrecisionContext ctx, long budget) {
+        Long last = null;
+        long total = 0;
+        for (PriceLevel level : asks.values()) {
+            last = level.price;
+            total += ctx.quoteAmount(level.price, level.quantity);
+            if (total >= budget) {
+                break;
+            }
         }
-        return out;
+        return last;
+    }
+
+    /** 某方向按优先级排列的价格档视图（价格界含边界，null 为全部）；不复制。 */
+    private Iterable<PriceLevel> levels(int side, Long priceBound) {
+        TreeMap<Long, PriceLevel> book = side == OrderConstant.SIDE_BUY ? bids : asks;
+        return priceBound == null ? book.values() : book.headMap(priceBound, true).values();
+    }
+
+    /** 按订单ID查簿内订单，不在簿中返回 null。 */
+    public Order find(long orderId) {
+        Node node = index.get(orderId);
+        return node == null ? null : node.order;
     }
 
     /** 从簿移除（挂单成交归零或撤单）。 */
     public void remove(Order o) {
-        if (o.getSide() == OrderConstant.SIDE_BUY) {
-            removeFrom(bids, o);
-        } else {
-            removeFrom(asks, o);
+        if (o.getId() == null) {
+            return;
+        }
+        Node node = index.get(o.getId());
+        if (node != null) {
+            unlink(node);
+        }
+    }
+
+    /**
+     * 挂单被成交 {@code qty} 后同步档位缓存（调用方已扣减 maker.remaining）；remaining 归零则出簿。
+     */
+    public void reduce(Order maker, long qty) {
+        Node node = index.get(maker.getId());
+        if (node == null) {
+            return;
+        }
+        node.quantity -= qty;
+        node.level.quantity -= qty;
+        touch(node.level);
+        if (maker.getRemaining() == 0) {
+            unlink(node);
         }
     }
 
     /** 移除某一方向的价格档。 */
     public void removePriceLevel(int side, Long price) {
-        if (side == OrderConstant.SIDE_BUY) {
-            bids.remove(price);
-        } else {
-            asks.remove(price);
+        PriceLevel level = (side == OrderConstant.SIDE_BUY ? bids : asks).remove(price);
+        if (level == null) {
+            return;
+        }
+        level.quantity = 0;
+        touch(level);
+        for (Node n = level.head; n != null; n = n.next) {
+            index.remove(n.order.getId());
         }
     }
 
@@ -114,16 +261,19 @@ public class OrderBook {
      * 按订单ID从对应方向的价格档队列中移除（撤单用）。返回是否移除成功。
      */
     public boolean removeById(int side, Long price, Long orderId) {
-        TreeMap<Long, PriorityQueue<Order>> target = side == OrderConstant.SIDE_BUY ? bids : asks;
-        PriorityQueue<Order> q = target.get(price);
-        if (q == null) {
-            return false;
-        }
-        boolean removed = q.removeIf(o -> orderId.equals(o.getId()));
-        if (q.isEmpty()) {
-            target.remove(price);
+        return takeById(side, price, orderId) != null;
+    }
+
+    /**
+     * 按订单ID移除并返回簿内的订单对象（含撮合后的最新 remaining/filled）；不在簿中返回 null。
+     */
+    public Order takeById(int side, Long price, Long orderId) {
+        Node node = orderId == null ? null : index.get(orderId);
+        if (node == null || node.level.side != side || !Objects.equals(node.level.price, price)) {
+            return null;
         }
-        return removed;
+        unlink(node);
+        return node.order;
     }
 
     /**
@@ -133,13 +283,13 @@ public class OrderBook {
      */
     public static class DepthSnapshot {
         /** 买盘：{price, quantity}，价格降序 */
-        public final java.util.List<long[]> bids = new java.util.ArrayList<>();
+        public final List<long[]> bids = new ArrayList<>();
         /** 卖盘：{price, quantity}，价格升序 */
-        public final java.util.List<long[]> asks = new java.util.ArrayList<>();
+        public final List<long[]> asks = new ArrayList<>();
     }
 
     /**
-     * 聚合盘口深度。遍历 bids/asks 每个价格档，把该档 PriorityQueue 里所有 Order.remaining 求和；
+     * 聚合盘口深度。直接读取每档缓存的剩余量之和（无需遍历档内订单）；
      * bids 降序取前 limit 档、asks 升序取前 limit 档。
      *
      * @param limit 每方向最多返回的档数（≥0）
@@ -155,18 +305,14 @@ public class OrderBook {
         return snap;
     }
 
-    /** 单方向聚合：TreeMap 已有序（bids 降序、asks 升序），逐档累加 remaining，取前 limit 档。 */
-    private void aggregate(TreeMap<Long, PriorityQueue<Order>> side, java.util.List<long[]> out, int limit) {
-        for (java.util.Map.Entry<Long, PriorityQueue<Order>> e : side.entrySet()) {
+    /** 单方向聚合：TreeMap 已有序（bids 降序、asks 升序），逐档取缓存量，取前 limit 档。 */
+    private void aggregate(TreeMap<Long, PriceLevel> side, List<long[]> out, int limit) {
+        for (PriceLevel level : side.values()) {
             if (out.size() >= limit) {
                 break;
             }
-            long quantity = 0;
-            for (Order o : e.getValue()) {
-                quantity += o.getRemaining();
-            }
-            if (quantity > 0) {
-                out.add(new long[]{e.getKey(), quantity});
+            if (level.quantity > 0) {
+                out.add(new long[]{level.price, level.quantity});
             }
         }
     }
@@ -178,40 +324,126 @@ public class OrderBook {
 
     /** 盘口挂单总数（买盘+卖盘）。 */
     public int size() {
-        int n = 0;
-        for (PriorityQueue<Order> q : bids.values()) {
-            n += q.size();
-        }
-        for (PriorityQueue<Order> q : asks.values()) {
-            n += q.size();
-        }
-        return n;
+        return index.size();
     }
 
-    private Order peek(TreeMap<Long, PriorityQueue<Order>> side) {
+    private Order peek(TreeMap<Long, PriceLevel> side) {
         if (side.isEmpty()) {
             return null;
         }
-        Map.Entry<Long, PriorityQueue<Order>> e = side.firstEntry();
-        PriorityQueue<Order> q = e.getValue();
-        while (q.isEmpty()) {
-            side.pollFirstEntry();
-            if (side.isEmpty()) {
-                return null;
+        return side.firstEntry().getValue().head.order;
+    }
+
+    /** 按 FIFO 追加：通常直接挂到档尾；若新单时间早于档尾（乱序恢复），向前回溯到正确位置。 */
+    private void linkFifo(PriceLevel level, Node node) {
+        Node after = level.tail;
+        while (after != null && FIFO.compare(after.order, node.order) > 0) {
+            after = after.prev;
+        }
+        if (after == null) {
+            node.next = level.head;
+            if (level.head != null) {
+                level.head.prev = node;
+            }
+            level.head = node;
+        } else {
+            node.prev = after;
+            node.next = after.next;
+            if (after.next != null) {
+                after.next.prev = node;
             }
-            e = side.firstEntry();
-            q = e.getValue();
+            after.next = node;
         }
-        return q.peek();
+        if (node.next == null) {
+            level.tail = node;
+        }
+        level.count++;
+        level.quantity += node.quantity;
+        touch(level);
     }
 
-    private void removeFrom(TreeMap<Long, PriorityQueue<Order>> side, Order o) {
-        PriorityQueue<Order> q = side.get(o.getPrice());
-        if (q != null) {
-            q.remove(o);
-            if (q.isEmpty()) {
-                side.remove(o.getPrice());
+    /** 摘链 + 删索引；档位清空则移除价格档。 */
+    private void unlink(Node node) {
+        PriceLevel level = node.level;
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            level.head = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            level.tail = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        level.count--;
+        level.quantity -= node.quantity;
+        touch(level);
+        index.remove(node.order.getId());
+        if (level.count == 0) {
+            TreeMap<Long, PriceLevel> side = level.side == OrderConstant.SIDE_BUY ? bids : asks;
+            if (side.get(level.price) == level) {
+                side.remove(level.price);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------ 增量深度
+
+    private void touch(PriceLevel level) {
+        if (trackChanges && !level.changed) {
+            level.changed = true;
+            changed.add(level);
+        }
+    }
+
+    /** 自上次清空以来变化过的价格档（按首次变化顺序；同价可能因删后重建出现两个档对象）。 */
+    List<PriceLevel> changedLevels() {
+        return changed;
+    }
+
+    void clearChanges() {
+        for (int i = 0, n = changed.size(); i < n; i++) {
+            changed.get(i).changed = false;
+        }
+        changed.clear();
+    }
+
+    /** 某价格档当前总量（无此档为 0）。 */
+    long levelQuantity(int side, long price) {
+        PriceLevel level = (side == OrderConstant.SIDE_BUY ? bids : asks).get(price);
+        return level == null ? 0L : level.quantity;
+    }
+
+    /** 某方向最优非空档（无则 null）。 */
+    PriceLevel firstLevel(int side) {
+        TreeMap<Long, PriceLevel> book = side == OrderConstant.SIDE_BUY ? bids : asks;
+        Map.Entry<Long, PriceLevel> e = book.firstEntry();
+        while (e != null && e.getValue().quantity <= 0) {
+            e = book.higherEntry(e.getKey());
+        }
+        return e == null ? null : e.getValue();
+    }
+
+    /** 某方向价格劣于 {@code price} 的第一个非空档（bids 取更低价、asks 取更高价；无则 null）。 */
+    PriceLevel levelAfter(int side, long price) {
+        TreeMap<Long, PriceLevel> book = side == OrderConstant.SIDE_BUY ? bids : asks;
+        Map.Entry<Long, PriceLevel> e = book.higherEntry(price);
+        while (e != null && e.getValue().quantity <= 0) {
+            e = book.higherEntry(e.getKey());
+        }
+        return e == null ? null : e.getValue();
+    }
+
+    private static List<Order> collect(Iterable<PriceLevel> levels) {
+        List<Order> out = new ArrayList<>();
+        Iterator<PriceLevel> it = levels.iterator();
+        while (it.hasNext()) {
+            for (Node n = it.next().head; n != null; n = n.next) {
+                out.add(n.order);
             }
         }
+        return out;
     }
 }
@@ -0,0 +1,175 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.entity.Order;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 订单簿二进制快照（配合 {@link EventJournal} 做快照 + 日志尾部重放恢复）。
+ * <p>
+ * 文件 {@code %020d.snap}（名为开始快照时的日志 seq），内容：
+ * {@code [int magic][int version][long seq][int 交易对数]{交易对块}*[int CRC32C]}；
+ * 每个交易对块在该交易对锁内编码，带有锁内读取的日志 seq——该交易对 seq 之前的命令已全部反映在快照中。
+ * 写临时文件 + fsync + 原子改名，只保留最近 {@link #KEEP} 份。
+ * </p>
+ */
+@Slf4j
+public class BookSnapshotStore {
+
+    private static final int MAGIC = 0x4F42534E; // "OBSN"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".snap";
+    private static final int KEEP = 2;
+
+    private final Path dir;
+
+    public BookSnapshotStore(Path dir) {
+        this.dir = dir;
+        try {
+            Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建快照目录失败: " + dir, e);
+        }
+    }
+
+    /** 单个交易对的快照内容。 */
+    public record SymbolBook(String symbol, long seq, List<Order> orders) {
+    }
+
+    /** 一份完整快照：开始时的日志 seq + 各交易对订单簿。 */
+    public record Snapshot(long seq, List<SymbolBook> books) {
+    }
+
+    /**
+     * 编码单个交易对（须在该交易对锁内调用，orders 按盘口优先级排列）。
+     *
+     * @param seq 锁内读取的日志 seq
+     */
+    public static byte[] encodeBook(String symbol, long seq, List<Order> orders) {
+        JournalCodec.Writer w = new JournalCodec.Writer(64 + orders.size() * 96);
+        w.putString(symbol);
+        w.putLong(seq);
+        w.putInt(orders.size());
+        for (Order o : orders) {
+            JournalCodec.putOrder(w, o);
+        }
+        return w.toByteArray();
+    }
+
+    /** 落盘一份快照并清理旧快照。 */
+    public void save(long seq, List<byte[]> books) {
+        int size = 20;
+        for (byte[] b : books) {
+            size += b.length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(size + 4);
+        buf.putInt(MAGIC).putInt(VERSION).putLong(seq).putInt(books.size());
+        for (byte[] b : books) {
+            buf.put(b);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, size);
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        Path target = dir.resolve(String.format("%020d%s", seq, SUFFIX));
+        Path tmp = dir.resolve(target.getFileName() + ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    ch.write(buf);
+                }
+                ch.force(true);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            List<Path> all = snapshots();
+            for (int i = 0; i + KEEP < all.size(); i++) {
+                Files.deleteIfExists(all.get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写订单簿快照失败 seq=" + seq, e);
+        }
+    }
+
+    /** 删除全部快照（日志无法衔接时作废）。 */
+    public void clear() {
+        try {
+            for (Path p : snapshots()) {
+                Files.deleteIfExists(p);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("清理订单簿快照失败: " + dir, e);
+        }
+    }
+
+    /**
+     * 读取最新的完整快照；损坏（CRC 不符）时回退到上一份，全部不可用返回 null。
+     */
+    public Snapshot loadLatest() {
+        List<Path> all;
+        try {
+            all = snapshots();
+        } catch (IOException e) {
+            throw new UncheckedIOException("列出订单簿快照失败: " + dir, e);
+        }
+        for (int i = all.size() - 1; i >= 0; i--) {
+            try {
+                Snapshot s = read(all.get(i));
+                if (s != null) {
+                    return s;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("[order] 订单簿快照 {} 不可用: {}", all.get(i).getFileName(), e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private Snapshot read(Path file) throws IOException {
+        ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (b.capacity() < 24 || b.getInt(0) != MAGIC || b.getInt(4) != VERSION) {
+            log.warn("[order] 订单簿快照 {} 格式不符，跳过", file.getFileName());
+            return null;
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(b.array(), 0, b.capacity() - 4);
+        if ((int) crc.getValue() != b.getInt(b.capacity() - 4)) {
+            log.warn("[order] 订单簿快照 {} 校验失败，跳过", file.getFileName());
+            return null;
+        }
+        b.position(8);
+        long seq = b.getLong();
+        int n = b.getInt();
+        List<SymbolBook> books = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String symbol = JournalCodec.getString(b);
+            long symbolSeq = b.getLong();
+            int count = b.getInt();
+            List<Order> orders = new ArrayList<>(count);
+            for (int j = 0; j < count; j++) {
+                orders.add(JournalCodec.getOrder(b, symbol));
+            }
+            books.add(new SymbolBook(symbol, symbolSeq, orders));
+        }
+        return new Snapshot(seq, books);
+    }
+
+    private List<Path> snapshots() throws IOException {
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+    }
+}
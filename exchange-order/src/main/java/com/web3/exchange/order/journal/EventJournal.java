@@ -0,0 +1,438 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * 撮合引擎命令事件日志：内存映射、按段滚动的追加写日志（{@link MatchingEngine.EventLog} 实现）。
+ * <p>
+ * 每条被引擎接受的命令（撮合 / 撤单）连同其结果编码为一条二进制记录，分配全局单调 seq 后写入当前段的
+ * {@link MappedByteBuffer}（写入即进入页缓存，进程崩溃不丢；{@code fsync=true} 时每批 force 到盘）。
+ * 段文件名为该段第一条记录的 seq（{@code %020d.seg}），写满后滚动到新段；快照完成后由
+ * {@link #truncateBefore} 删除已被快照覆盖的旧段。
+ * </p>
+ * <p>
+ * 记录格式：{@code [int 长度][int CRC32C][long seq][byte 类型][载荷]}，长度 0 表示段内数据结束；
+ * 长度越界或 CRC 不符视为崩溃时写了一半的尾部，打开时截掉。
+ * </p>
+ * <p>
+ * 组提交：回调在交易对锁内执行，只在线程本地缓冲里编码、算 CRC、原子分配 seq，再把记录副本投进无锁队列，
+ * 不持有任何全局锁、不做文件 I/O。单个写线程 {@code engine-journal-writer} 取出队列中的记录，按 seq 重排后
+ * 连续写入映射区，一批至多一次 force；命令在释放交易对锁后经 {@link #awaitDurable()} 等到自己的 seq 写入才返回。
+ * 写入失败时日志停写、等待方抛异常，并回调 {@link #onFailure} 登记的处理（作废纪元）。
+ * </p>
+ */
+@Slf4j
+public class EventJournal implements MatchingEngine.EventLog, Closeable {
+
+    private static final String SUFFIX = ".seg";
+    /** 记录头：长度 + CRC */
+    private static final int HEADER = 8;
+    /** 关闭时等待在途记录写完的上限 */
+    private static final long CLOSE_WAIT_MS = 5000;
+
+    /** 已编码、待写线程写入的一条记录 */
+    private record Pending(long seq, byte[] bytes) {
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean fsync;
+    private final ThreadLocal<JournalCodec.Writer> scratch = ThreadLocal.withInitial(() -> new JournalCodec.Writer(1024));
+    private final ThreadLocal<CRC32C> crcs = ThreadLocal.withInitial(CRC32C::new);
+    /** 本线程最近追加的 seq（{@link #awaitDurable()} 等待目标） */
+    private final ThreadLocal<long[]> appended = ThreadLocal.withInitial(() -> new long[1]);
+
+    /** 已分配的最大 seq */
+    private final AtomicLong assigned = new AtomicLong();
+    private final ConcurrentLinkedQueue<Pending> queue = new ConcurrentLinkedQueue<>();
+    /** 已连续写入映射区（fsync 时已落盘）的最大 seq */
+    private volatile long durableSeq;
+    private volatile RuntimeException failure;
+    private volatile Runnable failureHandler;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+    private final Thread writer;
+
+    /** 以下只由写线程（构造与关闭时由调用线程）访问 */
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    /** 当前段首条 seq */
+    private long segmentFirstSeq;
+    /** 到达顺序与 seq 不一致的记录暂存于此，补齐前序后再写 */
+    private final PriorityQueue<Pending> reorder = new PriorityQueue<>((a, b) -> Long.compare(a.seq, b.seq));
+
+    public EventJournal(Path dir, int segmentBytes, boolean fsync) {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(dir);
+            List<Path> segments = segments(dir);
+            long last = 0;
+            if (segments.isEmpty()) {
+                roll(1, segmentBytes);
+            } else {
+                Path active = segments.get(segments.size() - 1);
+                segmentFirstSeq = firstSeqOf(active);
+                long[] seen = {segmentFirstSeq - 1};
+                channel = FileChannel.open(active, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+                int end = scanSegment(segment, 0L, r -> seen[0] = r.seq);
+                recoverTail(end);
+                segment.position(end);
+                last = seen[0];
+            }
+            assigned.set(last);
+            durableSeq = last;
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开引擎事件日志失败: " + dir, e);
+        }
+        writer = new Thread(this::writeLoop, "engine-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // ------------------------------------------------------------------ EventLog
+
+    @Override
+    public void beforeMatch(Order taker, PrecisionContext ctx) {
+        JournalCodec.Writer w = begin(JournalRecord.TYPE_MATCH, taker.getSymbol());
+        w.putInt(ctx.getPricePrecision());
+        w.putInt(ctx.getAmountPrecision());
+        w.putInt(ctx.getQuoteDecimals());
+        JournalCodec.putOrder(w, taker);
+    }
+
+    @Override
+    public void afterMatch(Order taker, MatchingEngine.MatchResult result) {
+        JournalCodec.Writer w = scratch.get();
+        w.putSmallInt(taker.getStatus());
+        w.putNullableLong(taker.getRemaining());
+        int n = result.fillCount();
+        w.putInt(n);
+        for (int i = 0; i < n; i++) {
+            w.putLong(result.maker(i).getId());
+            w.putLong(result.price(i));
+            w.putLong(result.quantity(i));
+            w.putLong(result.quoteAmount(i));
+        }
+        append(w);
+    }
+
+    @Override
+    public void onCancel(Order removed) {
+        JournalCodec.Writer w = begin(JournalRecord.TYPE_CANCEL, removed.getSymbol());
+        w.putLong(removed.getId());
+        w.putSmallInt(removed.getSide());
+        w.putNullableLong(removed.getPrice());
+        append(w);
+    }
+
+    @Override
+    public void awaitDurable() {
+        awaitDurable(appended.get()[0]);
+    }
+
+    // ------------------------------------------------------------------ 写
+
+    /**
+     * 最新已分配 seq（快照在交易对锁内读取，作为该交易对的重放起点；快照落盘前须 {@link #awaitDurable(long)}）。
+     */
+    public long lastSeq() {
+        return assigned.get();
+    }
+
+    /** 等待 seq 及之前的记录全部写入（fsync 时已落盘）；日志写入失败时抛出该异常。 */
+    public void awaitDurable(long seq) {
+        int spins = 0;
+        while (durableSeq < seq) {
+            RuntimeException f = failure;
+            if (f != null) {
+                throw f;
+            }
+            if (++spins < 200) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(50_000);
+            }
+        }
+    }
+
+    /** 登记写入失败时的回调（写线程上调用一次）。 */
+    public void onFailure(Runnable handler) {
+        this.failureHandler = handler;
+    }
+
+    /** 仍保留的最早段首 seq（早于它的记录已被删除）。 */
+    public long firstSeq() {
+        try {
+            List<Path> segments = segments(dir);
+            return segments.isEmpty() ? assigned.get() + 1 : firstSeqOf(segments.get(0));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private JournalCodec.Writer begin(byte type, String symbol) {
+        JournalCodec.Writer w = scratch.get();
+        w.clear();
+        w.putInt(0);   // 长度占位
+        w.putInt(0);   // CRC 占位
+        w.putLong(0L); // seq 占位
+        w.putByte(type);
+        w.putString(symbol);
+        return w;
+    }
+
+    /** 交易对锁内：分配 seq、补全记录头后投递给写线程（同一交易对的 seq 随锁单调）。 */
+    private void append(JournalCodec.Writer w) {
+        RuntimeException f = failure;
+        if (f != null) {
+            throw f;
+        }
+        ByteBuffer buf = w.buf;
+        int size = buf.position();
+        long seq = assigned.incrementAndGet();
+        buf.putLong(HEADER, seq);
+        CRC32C crc = crcs.get();
+        crc.reset();
+        crc.update(buf.array(), HEADER, size - HEADER);
+        buf.putInt(0, size - HEADER);
+        buf.putInt(4, (int) crc.getValue());
+        queue.offer(new Pending(seq, Arrays.copyOf(buf.array(), size)));
+        appended.get()[0] = seq;
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            Pending p;
+            while ((p = queue.poll()) != null) {
+                reorder.add(p);
+            }
+            long next = durableSeq + 1;
+            long written = next - 1;
+            try {
+                while (!reorder.isEmpty() && reorder.peek().seq == next) {
+                    write(reorder.poll());
+                    written = next++;
+                }
+                if (written > durableSeq) {
+                    if (fsync) {
+                        segment.force();
+                    }
+                    durableSeq = written;
+                    continue;
+                }
+            } catch (IOException e) {
+                fail(new UncheckedIOException("引擎事件日志写入失败 seq=" + next, e));
+                return;
+            } catch (RuntimeException e) {
+                fail(new IllegalStateException("引擎事件日志写入失败 seq=" + next, e));
+                return;
+            }
+            writerParked = true;
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            writerParked = false;
+        }
+    }
+
+    private void write(Pending p) throws IOException {
+        int size = p.bytes.length;
+        // 需给段尾留出 4 字节结束标记（长度 0）
+        if (segment.remaining() < size + 4) {
+            roll(p.seq, Math.max(segmentBytes, size + 4));
+        }
+        segment.put(p.bytes);
+    }
+
+    private void fail(RuntimeException e) {
+        log.error("[order] {}，日志停写", e.getMessage(), e);
+        failure = e;
+        Runnable handler = failureHandler;
+        if (handler != null) {
+            handler.run();
+        }
+    }
+
+    /** 关闭当前段并新建以 {@code firstSeq} 命名的段。 */
+    private void roll(long firstSeq, int bytes) throws IOException {
+        if (channel != null) {
+            segment.force();
+            channel.close();
+        }
+        Path file = dir.resolve(String.format("%020d%s", firstSeq, SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        segmentFirstSeq = firstSeq;
+        log.info("[order] 引擎事件日志新段 {} ({} bytes)", file.getFileName(), bytes);
+    }
+
+    /** 有效数据之后若残留半条记录，清零以免新记录与残片拼接。 */
+    private void recoverTail(int end) {
+        if (end + 4 <= segment.capacity() && segment.getInt(end) != 0) {
+            log.warn("[order] 引擎事件日志 {} 尾部不完整，自 offset={} 截断", segmentFirstSeq, end);
+            for (int i = end; i < segment.capacity(); i++) {
+                segment.put(i, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * 删除记录全部 &lt;= {@code seq} 的旧段（当前写入段永远保留）。
+     */
+    public synchronized void truncateBefore(long seq) {
+        try {
+            List<Path> segments = segments(dir);
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                if (firstSeqOf(segments.get(i + 1)) - 1 > seq) {
+                    break;
+                }
+                Files.deleteIfExists(segments.get(i));
+                log.info("[order] 引擎事件日志删除已快照段 {}", segments.get(i).getFileName());
+            }
+        } catch (IOException e) {
+            log.warn("[order] 引擎事件日志清理旧段失败: {}", e.getMessage());
+        }
+    }
+
+    /** 等在途记录写完（至多 {@value #CLOSE_WAIT_MS}ms）后停写线程并关闭当前段。 */
+    @Override
+    public synchronized void close() throws IOException {
+        long deadline = System.currentTimeMillis() + CLOSE_WAIT_MS;
+        while (durableSeq < assigned.get() && failure == null && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(CLOSE_WAIT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (durableSeq < assigned.get()) {
+            log.warn("[order] 引擎事件日志关闭时仍有未写入记录 (written={}, assigned={})", durableSeq, assigned.get());
+        }
+        if (channel != null) {
+            segment.force();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // ------------------------------------------------------------------ 读
+
+    /**
+     * 顺序扫描目录下所有段，回调 seq &gt; {@code afterSeq} 的完整记录（离线重放工具与启动恢复共用）。
+     *
+     * @return 扫描到的最大 seq
+     */
+    public static long scan(Path dir, long afterSeq, Consumer<JournalRecord> handler) {
+        long[] last = {afterSeq};
+        try {
+            for (Path file : segments(dir)) {
+                try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    scanSegment(buf, afterSeq, r -> {
+                        last[0] = r.seq;
+                        handler.accept(r);
+                    });
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读引擎事件日志失败: " + dir, e);
+        }
+        return last[0];
+    }
+
+    /** 扫描单段，返回有效数据结束位置。 */
+    private static int scanSegment(ByteBuffer seg, long afterSeq, Consumer<JournalRecord> handler) {
+        int pos = 0;
+        CRC32C crc = new CRC32C();
+        while (pos + HEADER <= seg.capacity()) {
+            int len = seg.getInt(pos);
+            if (len <= 0 || pos + HEADER + len > seg.capacity()) {
+                break;
+            }
+            ByteBuffer payload = seg.duplicate().position(pos + HEADER).limit(pos + HEADER + len).slice();
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != seg.getInt(pos + 4)) {
+                break;
+            }
+            long seq = payload.getLong(0);
+            if (seq > afterSeq) {
+                handler.accept(decode(payload));
+            }
+            pos += HEADER + len;
+        }
+        return pos;
+    }
+
+    private static JournalRecord decode(ByteBuffer b) {
+        JournalRecord r = new JournalRecord();
+        r.seq = b.getLong();
+        r.type = b.get();
+        r.symbol = JournalCodec.getString(b);
+        if (r.type == JournalRecord.TYPE_MATCH) {
+            r.ctx = new PrecisionContext(b.getInt(), b.getInt(), b.getInt());
+            r.order = JournalCodec.getOrder(b, r.symbol);
+            r.statusAfter = JournalCodec.getSmallInt(b);
+            r.remainingAfter = JournalCodec.getNullableLong(b);
+            int n = b.getInt();
+            for (int i = 0; i < n; i++) {
+                r.fills.add(new JournalRecord.Fill(b.getLong(), b.getLong(), b.getLong(), b.getLong()));
+            }
+        } else {
+            Order o = new Order();
+            o.setSymbol(r.symbol);
+            o.setId(b.getLong());
+            o.setSide(JournalCodec.getSmallInt(b));
+            o.setPrice(JournalCodec.getNullableLong(b));
+            r.order = o;
+        }
+        return r;
+    }
+
+    private static List<Path> segments(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> s = Files.list(dir)) {
+            return s.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+    }
+
+    private static long firstSeqOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+}
@@ -0,0 +1,172 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.entity.Order;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 事件日志 / 订单簿快照共用的二进制编码（大端，定长字段 + 带长度前缀的 UTF-8 字符串）。
+ * <p>只编码撮合与盘口所需的订单字段（id、订单号、用户、方向、类型、价格、数量、成交进度、createTime 等），
+ * 冻结额、触发条件等非撮合字段仍以 t_order 为准。</p>
+ */
+final class JournalCodec {
+
+    private JournalCodec() {
+    }
+
+    /** 可增长的写缓冲（复用，避免每条记录分配）。 */
+    static final class Writer {
+        ByteBuffer buf;
+
+        Writer(int initial) {
+            this.buf = ByteBuffer.allocate(initial);
+        }
+
+        void clear() {
+            buf.clear();
+        }
+
+        int position() {
+            return buf.position();
+        }
+
+        void ensure(int n) {
+            if (buf.remaining() < n) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + n));
+                buf.flip();
+                bigger.put(buf);
+                buf = bigger;
+            }
+        }
+
+        void putByte(int v) {
+            ensure(1);
+            buf.put((byte) v);
+        }
+
+        void putInt(int v) {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        void putLong(long v) {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        void putBytes(byte[] b) {
+            ensure(b.length);
+            buf.put(b);
+        }
+
+        /** 可空 Long：1 字节存在标记 + 8 字节值。 */
+        void putNullableLong(Long v) {
+            putByte(v == null ? 0 : 1);
+            if (v != null) {
+                putLong(v);
+            }
+        }
+
+        /** 可空 Integer（取值在 byte 范围内，如方向/类型/状态），null 记为 -1。 */
+        void putSmallInt(Integer v) {
+            putByte(v == null ? -1 : v);
+        }
+
+        void putString(String s) {
+            if (s == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            putInt(b.length);
+            putBytes(b);
+        }
+
+        void putTime(LocalDateTime t) {
+            putByte(t == null ? 0 : 1);
+            if (t != null) {
+                putLong(t.toEpochSecond(ZoneOffset.UTC));
+                putInt(t.getNano());
+            }
+        }
+
+        byte[] toByteArray() {
+            byte[] out = new byte[buf.position()];
+            System.arraycopy(buf.array(), 0, out, 0, out.length);
+            return out;
+        }
+    }
+
+    static Long getNullableLong(ByteBuffer b) {
+        return b.get() == 0 ? null : b.getLong();
+    }
+
+    static Integer getSmallInt(ByteBuffer b) {
+        byte v = b.get();
+        return v == -1 ? null : (int) v;
+    }
+
+    static String getString(ByteBuffer b) {
+        int len = b.getInt();
+        if (len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static LocalDateTime getTime(ByteBuffer b) {
+        if (b.get() == 0) {
+            return null;
+        }
+        long sec = b.getLong();
+        int nano = b.getInt();
+        return LocalDateTime.ofEpochSecond(sec, nano, ZoneOffset.UTC);
+    }
+
+    /** 编码订单撮合镜像（不含 symbol，由外层记录/快照分组携带）。 */
+    static void putOrder(Writer w, Order o) {
+        w.putLong(o.getId());
+        w.putString(o.getOrderNo());
+        w.putNullableLong(o.getUserId());
+        w.putSmallInt(o.getSide());
+        w.putSmallInt(o.getOrderType());
+        w.putSmallInt(o.getTimeInForce());
+        w.putSmallInt(o.getStatus());
+        w.putNullableLong(o.getPrice());
+        w.putNullableLong(o.getQuantity());
+        w.putNullableLong(o.getQuoteAmount());
+        w.putNullableLong(o.getRemaining());
+        w.putNullableLong(o.getFilledAmount());
+        w.putNullableLong(o.getFilledQuoteAmount());
+        w.putNullableLong(o.getAvgPrice());
+        w.putInt(o.getTradeCount() == null ? 0 : o.getTradeCount());
+        w.putTime(o.getCreateTime());
+    }
+
+    static Order getOrder(ByteBuffer b, String symbol) {
+        Order o = new Order();
+        o.setSymbol(symbol);
+        o.setId(b.getLong());
+        o.setOrderNo(getString(b));
+        o.setUserId(getNullableLong(b));
+        o.setSide(getSmallInt(b));
+        o.setOrderType(getSmallInt(b));
+        o.setTimeInForce(getSmallInt(b));
+        o.setStatus(getSmallInt(b));
+        o.setPrice(getNullableLong(b));
+        o.setQuantity(getNullableLong(b));
+        o.setQuoteAmount(getNullableLong(b));
+        o.setRemaining(getNullableLong(b));
+        o.setFilledAmount(getNullableLong(b));
+        o.setFilledQuoteAmount(getNullableLong(b));
+        o.setAvgPrice(getNullableLong(b));
+        o.setTradeCount(b.getInt());
+        o.setCreateTime(getTime(b));
+        return o;
+    }
+}
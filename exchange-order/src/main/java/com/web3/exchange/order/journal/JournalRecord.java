@@ -0,0 +1,36 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 引擎事件日志中解码出的一条命令记录（{@link EventJournal#scan} 产出）。
+ */
+public class JournalRecord {
+
+    /** 撮合命令 + 结果 */
+    public static final byte TYPE_MATCH = 1;
+    /** 撤单命令（簿中确有移除） */
+    public static final byte TYPE_CANCEL = 2;
+
+    public long seq;
+    public byte type;
+    public String symbol;
+    /** MATCH：吃单进入撮合前的镜像；CANCEL：被撤订单（id/side/price） */
+    public Order order;
+    /** MATCH：撮合使用的精度上下文 */
+    public PrecisionContext ctx;
+    /** MATCH：撮合后吃单状态 */
+    public Integer statusAfter;
+    /** MATCH：撮合后吃单剩余 */
+    public Long remainingAfter;
+    /** MATCH：本次撮合产生的成交（按成交顺序） */
+    public final List<Fill> fills = new ArrayList<>();
+
+    /** 记录的单笔成交（重放校验用）。 */
+    public record Fill(long makerOrderId, long price, long quantity, long quoteAmount) {
+    }
+}
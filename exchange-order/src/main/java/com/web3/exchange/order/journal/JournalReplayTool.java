@@ -0,0 +1,73 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.dto.DepthLevel;
+import com.web3.exchange.order.dto.DepthVO;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 离线确定性重放工具（事故分析用，不依赖 Spring/DB）。
+ * <p>
+ * 用法：{@code java -cp exchange-order.jar -Dloader.main=com.web3.exchange.order.journal.JournalReplayTool
+ * org.springframework.boot.loader.launch.PropertiesLauncher <journal-dir> [--symbol BTC/USDT] [--from-start] [--depth N]}
+ * <br>默认加载最新快照后重放日志尾部；{@code --from-start} 忽略快照、从第一条记录重放（需日志未被清理）。
+ * 逐条比对重放成交与日志记录，输出不一致明细与各交易对的最终盘口；存在不一致时退出码为 1。
+ * </p>
+ */
+public final class JournalReplayTool {
+
+    private JournalReplayTool() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("用法: JournalReplayTool <journal-dir> [--symbol SYMBOL] [--from-start] [--depth N]");
+            System.exit(2);
+        }
+        Path dir = Path.of(args[0]);
+        String symbol = null;
+        boolean fromStart = false;
+        int depth = 5;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--symbol" -> symbol = args[++i];
+                case "--from-start" -> fromStart = true;
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("未知参数: " + args[i]);
+            }
+        }
+
+        MatchingEngine engine = new MatchingEngine();
+        BookSnapshotStore.Snapshot snap = fromStart ? null : new BookSnapshotStore(dir).loadLatest();
+        long start = System.nanoTime();
+        JournalReplayer.Result r = JournalReplayer.restore(engine, snap, dir, true, symbol);
+        long ms = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("快照 seq=%d 恢复挂单 %d，重放命令 %d 条，末条 seq=%d，耗时 %dms%n",
+                r.snapshotSeq(), r.restoredOrders(), r.replayed(), r.lastSeq(), ms);
+        List<String> symbols = new ArrayList<>();
+        engine.forEachBook((s, orders) -> symbols.add(s));
+        for (String s : symbols) {
+            DepthVO d = engine.depth(s, depth);
+            System.out.printf("%s 挂单 %d%n  bids %s%n  asks %s%n", s, engine.orderCount(s),
+                    format(d.getBids()), format(d.getAsks()));
+        }
+        if (!r.mismatches().isEmpty()) {
+            System.out.println("重放与记录不一致 " + r.mismatches().size() + " 处：");
+            r.mismatches().forEach(m -> System.out.println("  " + m));
+            System.exit(1);
+        }
+        System.out.println("重放结果与日志记录一致");
+    }
+
+    private static String format(List<DepthLevel> levels) {
+        StringBuilder sb = new StringBuilder();
+        for (DepthLevel l : levels) {
+            sb.append('[').append(l.getPrice()).append(" x ").append(l.getQuantity()).append(']');
+        }
+        return sb.toString();
+    }
+}
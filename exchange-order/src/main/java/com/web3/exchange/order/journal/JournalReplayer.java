@@ -0,0 +1,104 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 快照 + 日志尾部重放：把 {@link BookSnapshotStore.Snapshot} 灌入引擎，再按 seq 顺序重放其后的命令。
+ * <p>启动恢复与离线重放工具（{@link JournalReplayTool}）共用；{@code verify=true} 时逐条比对重放产生的成交
+ * （maker、价格、数量、名义额）及吃单终态与日志记录是否一致，用于事故分析时确认撮合的确定性。</p>
+ */
+public final class JournalReplayer {
+
+    /** 最多保留的不一致明细条数 */
+    private static final int MAX_MISMATCHES = 100;
+
+    private JournalReplayer() {
+    }
+
+    /** 重放统计。 */
+    public record Result(long snapshotSeq, int restoredOrders, long replayed, long lastSeq, List<String> mismatches) {
+    }
+
+    /**
+     * @param engine  目标引擎（不应注册事件日志/监听，避免重放被重复记录）
+     * @param snap    快照，null 表示从日志第一条开始
+     * @param dir     日志目录
+     * @param verify  是否比对记录的撮合结果
+     * @param symbol  只恢复该交易对，null 为全部
+     */
+    public static Result restore(MatchingEngine engine, BookSnapshotStore.Snapshot snap, Path dir,
+                                 boolean verify, String symbol) {
+        long base = snap == null ? 0L : snap.seq();
+        Map<String, Long> symbolSeq = new HashMap<>();
+        int restored = 0;
+        if (snap != null) {
+            for (BookSnapshotStore.SymbolBook book : snap.books()) {
+                if (symbol != null && !symbol.equals(book.symbol())) {
+                    continue;
+                }
+                symbolSeq.put(book.symbol(), book.seq());
+                for (Order o : book.orders()) {
+                    engine.addRestingOrder(o);
+                }
+                restored += book.orders().size();
+            }
+        }
+        List<String> mismatches = new ArrayList<>();
+        long[] replayed = {0};
+        long last = EventJournal.scan(dir, base, r -> {
+            if (symbol != null && !symbol.equals(r.symbol)) {
+                return;
+            }
+            if (r.seq <= symbolSeq.getOrDefault(r.symbol, base)) {
+                return; // 已反映在该交易对的快照中
+            }
+            replayed[0]++;
+            if (r.type == JournalRecord.TYPE_CANCEL) {
+                if (engine.replayCancel(r.order) == null && verify) {
+                    addMismatch(mismatches, r.seq + " 撤单 " + r.order.getId() + " 重放时不在簿中");
+                }
+                return;
+            }
+            MatchingEngine.MatchResult mr = engine.replayMatch(r.order, r.ctx);
+            if (verify) {
+                verify(r, mr, mismatches);
+            }
+        });
+        return new Result(base, restored, replayed[0], last, mismatches);
+    }
+
+    private static void verify(JournalRecord r, MatchingEngine.MatchResult mr, List<String> out) {
+        if (mr.fillCount() != r.fills.size()) {
+            addMismatch(out, r.seq + " 订单 " + r.order.getId() + " 成交笔数 记录=" + r.fills.size() + " 重放=" + mr.fillCount());
+            return;
+        }
+        for (int i = 0; i < r.fills.size(); i++) {
+            JournalRecord.Fill f = r.fills.get(i);
+            long makerId = mr.maker(i).getId();
+            if (f.makerOrderId() != makerId || f.price() != mr.price(i)
+                    || f.quantity() != mr.quantity(i) || f.quoteAmount() != mr.quoteAmount(i)) {
+                addMismatch(out, r.seq + " 订单 " + r.order.getId() + " 第" + (i + 1) + "笔成交 记录=" + f
+                        + " 重放=[maker=" + makerId + ", price=" + mr.price(i)
+                        + ", qty=" + mr.quantity(i) + ", quote=" + mr.quoteAmount(i) + "]");
+            }
+        }
+        if (!Objects.equals(r.statusAfter, r.order.getStatus()) || !Objects.equals(r.remainingAfter, r.order.getRemaining())) {
+            addMismatch(out, r.seq + " 订单 " + r.order.getId() + " 终态 记录=" + r.statusAfter + "/" + r.remainingAfter
+                    + " 重放=" + r.order.getStatus() + "/" + r.order.getRemaining());
+        }
+    }
+
+    private static void addMismatch(List<String> out, String line) {
+        if (out.size() < MAX_MISMATCHES) {
+            out.add(line);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.web3.exchange.order.journal;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 撮合结果本地持久日志（写后置落库的崩溃恢复依据）。
+ * <p>
+ * 每条 {@link MatchRecord} 分配单调递增 seq，以一行 JSON 追加写入 {@code match.journal}；{@link #appendAll}
+ * 把一批记录合成一次 write + 一次 fsync（组提交）。批量落库提交后调用 {@link #checkpoint} 把已落库的最大 seq
+ * 原子写入 {@code match.checkpoint}。重启时 {@link #pending} 返回 seq &gt; checkpoint 的记录供重放；
+ * 崩溃时写了一半的尾行解析失败即视为未写入。
+ * </p>
+ * <p>
+ * 追加时记下 checkpoint 之后每条记录的结束偏移，checkpoint 推进时随之推进「存活起点」，不再重读文件：
+ * 全部落库（checkpoint == 最新 seq）时截断；已落库前缀超过 {@code compactBytes} 时把存活尾部按字节拷到新段
+ * 原子替换（不解析 JSON，耗时只与未落库尾部相关）。
+ * </p>
+ */
+@Slf4j
+public class MatchJournal implements Closeable {
+
+    private static final String JOURNAL = "match.journal";
+    private static final String CHECKPOINT = "match.checkpoint";
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+    private final Path dir;
+    private final boolean fsync;
+    private final long compactBytes;
+    private FileChannel channel;
+    /** 最新已追加 seq */
+    private long lastSeq;
+    /** 已落库 seq */
+    private long checkpoint;
+    /** 最近一次读取时完整记录的字节长度 */
+    private long validBytes;
+    /** checkpoint 之后各记录的 {seq, 结束偏移}，按 seq 升序 */
+    private final ArrayDeque<long[]> offsets = new ArrayDeque<>();
+    /** 首条未落库记录的起始偏移（之前的字节均已落库） */
+    private long liveOffset;
+
+    public MatchJournal(Path dir, boolean fsync, long compactBytes) {
+        this.dir = dir;
+        this.fsync = fsync;
+        this.compactBytes = compactBytes;
+        try {
+            Files.createDirectories(dir);
+            Path cp = dir.resolve(CHECKPOINT);
+            this.checkpoint = Files.exists(cp) ? Long.parseLong(Files.readString(cp).trim()) : 0L;
+            this.lastSeq = checkpoint;
+            readAll();
+            this.channel = open();
+            if (validBytes < channel.size()) {
+                // 截掉崩溃残留的半行，否则后续追加会拼接到残行上而无法解析
+                channel.truncate(validBytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开撮合日志失败: " + dir, e);
+        }
+    }
+
+    /**
+     * 追加一条记录并分配 seq。
+     *
+     * @return 分配的 seq
+     */
+    public long append(MatchRecord record) {
+        appendAll(List.of(record));
+        return record.seq;
+    }
+
+    /**
+     * 按顺序追加一批记录并逐条分配 seq：一次 write，开启 fsync 时整批只 force 一次。
+     *
+     * @return 本批最后一条的 seq（空批返回当前最新 seq）
+     */
+    public synchronized long appendAll(List<MatchRecord> records) {
+        if (records.isEmpty()) {
+            return lastSeq;
+        }
+        long firstSeq = lastSeq + 1;
+        try {
+            long position = channel.size();
+            long[][] ends = new long[records.size()][];
+            StringBuilder sb = new StringBuilder();
+            int bytes = 0;
+            for (int i = 0; i < records.size(); i++) {
+                MatchRecord r = records.get(i);
+                r.seq = firstSeq + i;
+                String line = mapper.writeValueAsString(r) + "\n";
+                sb.append(line);
+                bytes += line.getBytes(StandardCharsets.UTF_8).length;
+                ends[i] = new long[]{r.seq, position + bytes};
+            }
+            ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (fsync) {
+                channel.force(false);
+            }
+            lastSeq = firstSeq + records.size() - 1;
+            for (long[] e : ends) {
+                offsets.addLast(e);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写撮合日志失败 seq=" + firstSeq, e);
+        }
+        return lastSeq;
+    }
+
+    /** 尚未落库（seq &gt; checkpoint）的记录，按 seq 升序。 */
+    public synchronized List<MatchRecord> pending() {
+        List<MatchRecord> out = new ArrayList<>();
+        for (MatchRecord r : readAll()) {
+            if (r.seq > checkpoint) {
+                out.add(r);
+            }
+        }
+        return out;
+    }
+
+    /** 记录已落库的最大 seq（原子替换 checkpoint 文件），并按需截断/压缩日志。 */
+    public synchronized void checkpoint(long seq) {
+        if (seq <= checkpoint) {
+            return;
+        }
+        try {
+            Path tmp = dir.resolve(CHECKPOINT + ".tmp");
+            Files.writeString(tmp, Long.toString(seq));
+            Files.move(tmp, dir.resolve(CHECKPOINT), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            checkpoint = seq;
+            while (!offsets.isEmpty() && offsets.peekFirst()[0] <= seq) {
+                liveOffset = offsets.pollFirst()[1];
+            }
+            if (checkpoint == lastSeq) {
+                channel.truncate(0);
+                offsets.clear();
+                liveOffset = 0;
+            } else if (liveOffset > compactBytes) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("写撮合日志 checkpoint 失败 seq=" + seq, e);
+        }
+    }
+
+    /** 已落库 seq。 */
+    public synchronized long checkpointSeq() {
+        return checkpoint;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    /** 滚动到新段：把存活尾部 [liveOffset, size) 按字节拷到临时文件后原子替换并重新打开。 */
+    private void roll() throws IOException {
+        Path tmp = dir.resolve(JOURNAL + ".tmp");
+        long dead = liveOffset;
+        long live;
+        try (FileChannel src = FileChannel.open(dir.resolve(JOURNAL), StandardOpenOption.READ);
+             FileChannel dst = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            live = src.size() - dead;
+            long copied = 0;
+            while (copied < live) {
+                copied += src.transferTo(dead + copied, live - copied, dst);
+            }
+            dst.force(false);
+        }
+        channel.close();
+        Files.move(tmp, dir.resolve(JOURNAL), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = open();
+        for (long[] e : offsets) {
+            e[1] -= dead;
+        }
+        liveOffset = 0;
+        log.info("[order] 撮合日志滚动新段 丢弃已落库{}字节 保留{}字节/{}条 checkpoint={}", dead, live, offsets.size(), checkpoint);
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(dir.resolve(JOURNAL),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /** 读全部完整记录（仅启动时调用），同时重建 lastSeq、存活起点与各未落库记录的结束偏移。 */
+    private List<MatchRecord> readAll() {
+        Path file = dir.resolve(JOURNAL);
+        List<MatchRecord> out = new ArrayList<>();
+        validBytes = 0;
+        liveOffset = 0;
+        offsets.clear();
+        if (!Files.exists(file)) {
+            return out;
+        }
+        try {
+            byte[] data = Files.readAllBytes(file);
+            int start = 0;
+            for (int i = 0; i < data.length; i++) {
+                if (data[i] != '\n') {
+                    continue;
+                }
+                String line = new String(data, start, i - start, StandardCharsets.UTF_8);
+                if (!line.isBlank()) {
+                    MatchRecord r;
+                    try {
+                        r = mapper.readValue(line, MatchRecord.class);
+                    } catch (IOException torn) {
+                        log.warn("[order] 撮合日志记录不完整，忽略其后内容: {}", torn.getMessage());
+                        return out;
+                    }
+                    out.add(r);
+                    lastSeq = Math.max(lastSeq, r.seq);
+                    if (r.seq > checkpoint) {
+                        offsets.addLast(new long[]{r.seq, i + 1L});
+                    } else if (offsets.isEmpty()) {
+                        liveOffset = i + 1L;
+                    }
+                }
+                start = i + 1;
+                validBytes = start;
+            }
+            if (start < data.length) {
+                log.warn("[order] 撮合日志尾部不完整（{} 字节），已忽略", data.length - start);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读撮合日志失败: " + file, e);
+        }
+        return out;
+    }
+}
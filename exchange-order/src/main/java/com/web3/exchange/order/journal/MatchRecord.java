@@ -0,0 +1,57 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.entity.Trade;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 写后置日志的一条记录：一次撮合产生的成交 + 被改动订单的<b>状态快照</b>（吃单 + 变动挂单）。
+ * <p>
+ * 快照在撮合返回后立刻拷贝（内存 Order 会被后续撮合继续修改），落库时按快照绝对值覆盖，
+ * 因此按 seq 顺序重放是幂等的：成交按 trade_no 唯一键去重，订单取最后一次快照。
+ * </p>
+ */
+public class MatchRecord {
+
+    /** 本地日志序号（单调递增，崩溃恢复的断点） */
+    public long seq;
+    /** 本次撮合生成的成交（已分配 id） */
+    public List<Trade> trades = new ArrayList<>();
+    /** 本次撮合改动的订单快照（吃单在前，挂单按成交顺序） */
+    public List<OrderState> orders = new ArrayList<>();
+
+    public MatchRecord() {
+    }
+
+    public MatchRecord(List<Trade> trades, List<OrderState> orders) {
+        this.trades = trades;
+        this.orders = orders;
+    }
+
+    /**
+     * 订单撮合后状态快照（仅 t_order 中被撮合改动的列）。
+     */
+    public record OrderState(Long id,
+                             Long remaining,
+                             Long quoteAmount,
+                             Long filledAmount,
+                             Long filledQuoteAmount,
+                             Long avgPrice,
+                             Integer tradeCount,
+                             Integer status,
+                             Integer triggerStatus,
+                             LocalDateTime filledTime,
+                             LocalDateTime cancelTime,
+                             String remark) {
+
+        /** 拷贝订单当前撮合状态。 */
+        public static OrderState of(Order o) {
+            return new OrderState(o.getId(), o.getRemaining(), o.getQuoteAmount(), o.getFilledAmount(),
+                    o.getFilledQuoteAmount(), o.getAvgPrice(), o.getTradeCount(), o.getStatus(),
+                    o.getTriggerStatus(), o.getFilledTime(), o.getCancelTime(), o.getRemark());
+        }
+    }
+}
@@ -35,16 +35,9 @@ public interface OrderMapper extends BaseMapper<Order> {
     List<Order> selectAllActiveLimitOrders();
 
     /**
-     * 加载某交易对全部待触发条件单（trigger_status=0 且 trigger_type>0），用于行情触发任务（idx_trigger_status_symbol）。
+     * 加载全部待触发条件单，按 create_time 升序，用于启动构建内存触发索引（idx_trigger_status_symbol）。
      */
-    @Select("SELECT * FROM t_order WHERE symbol = #{symbol} AND trigger_type > 0 AND trigger_status = 0 "
+    @Select("SELECT * FROM t_order WHERE trigger_type > 0 AND trigger_status = 0 "
             + "AND status = 0 AND is_deleted = 0 ORDER BY create_time ASC")
-    List<Order> selectPendingConditionalOrders(@Param("symbol") String symbol);
-
-    /**
-     * 加载存在待触发条件单的交易对去重列表，供行情触发任务拉取行情。
-     */
-    @Select("SELECT DISTINCT symbol FROM t_order WHERE trigger_type > 0 AND trigger_status = 0 "
-            + "AND status = 0 AND is_deleted = 0")
-    List<String> selectPendingTriggerSymbols();
+    List<Order> selectAllPendingConditionalOrders();
 }
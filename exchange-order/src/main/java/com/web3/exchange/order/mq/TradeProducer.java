@@ -1,9 +1,11 @@
 package com.web3.exchange.order.mq;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web3.exchange.common.order.dto.TradeSettleBatchDTO;
 import com.web3.exchange.common.order.dto.TradeSettleDTO;
 import com.web3.exchange.order.entity.Trade;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.rocketmq.client.producer.LocalTransactionState;
 import org.apache.rocketmq.client.producer.TransactionSendResult;
 import org.apache.rocketmq.common.message.MessageConst;
 import org.apache.rocketmq.spring.core.RocketMQTemplate;
@@ -11,8 +13,10 @@ import org.springframework.messaging.Message;
 import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
 /**
- * ORDER-TRADE 事务消息生产者——成交结算指令经 <b>RocketMQ 事务消息</b>发送。
+ * ORDER-TRADE 事务消息生产者——成交结算指令经 <b>RocketMQ 事务消息</b>批量发送。
  * <p>
  * 目的：实现「order 本地写库（t_order/t_trade）+ 发 ORDER-TRADE 消息」的<b>原子一致</b>。
  * 采用 {@code sendMessageInTransaction}，配合 {@link TradeTransactionListener}：本地成交
@@ -20,8 +24,10 @@ import org.springframework.stereotype.Component;
  * 本地成交一定已持久化，从而驱动「下单→撮合→成交→事务消息→过户」的最终一致性闭环。
  * </p>
  * <p>
- * 消息体 = {@link TradeSettleDTO}（结算指令，含 tradeNo/买卖双方/price/quantity/quoteAmount/
- * symbol 等），{@code KEYS = tradeNo} 供 asset 消费端幂等去重；过户幂等号 = tradeNo:Q / tradeNo:B。
+ * 消息体 = {@link TradeSettleBatchDTO}（Tag = BATCH）：一个吃单的全部成交（写后置模式下为一个落库批次）
+ * 合成一条，每笔为完整的 {@link TradeSettleDTO}（tradeNo/买卖双方/price/quantity/quoteAmount/symbol 等）；
+ * {@code KEYS = batchNo} 供消费端幂等去重，过户幂等号仍为 tradeNo:Q / tradeNo:B。
+ * 扫 100 档只有一次 broker 往返与一次本地事务查库。
  * </p>
  *
  * @see TradeTransactionListener
@@ -33,6 +39,9 @@ public class TradeProducer {
     /** ORDER-TRADE 主题（见 docs/mq-topics.md） */
     public static final String TOPIC_ORDER_TRADE = "ORDER-TRADE";
 
+    /** 单条批量消息最多承载的成交笔数（约 300B/笔，远低于 broker 4MB 消息上限） */
+    static final int MAX_TRADES_PER_MESSAGE = 1000;
+
     private final RocketMQTemplate rocketMQTemplate;
     private final ObjectMapper objectMapper;
 
@@ -42,29 +51,40 @@ public class TradeProducer {
     }
 
     /**
-     * 发送一笔成交的 ORDER-TRADE 事务消息。
-     * <p>必须在本地 t_trade 提交<b>之后</b>调用：本方法内部 sendMessageInTransaction 会
-     * 触发 {@link TradeTransactionListener#executeLocalTransaction}，其按 tradeNo 查库，
-     * 成交已提交则 COMMIT、未提交则 ROLLBACK，从而保证「本地落库与消息可达」原子一致。</p>
+     * 批量发送 ORDER-TRADE 事务消息：每 {@link #MAX_TRADES_PER_MESSAGE} 笔成交一条半消息。
+     * <p>必须在本地 t_trade 提交<b>之后</b>调用：sendMessageInTransaction 会触发
+     * {@link TradeTransactionListener#executeLocalTransaction}，按首笔 tradeNo 查库，已提交则 COMMIT、
+     * 未提交则 ROLLBACK。同一批成交须在同一本地事务内提交，首笔存在即整批已提交。</p>
      *
-     * @param trade 已落库（已提交）的成交
-     * @return 事务发送结果（含最终本地事务状态）
+     * @param trades 已落库（已提交）的成交，按撮合顺序
+     * @return 全部分片均 COMMIT 返回 true；任一分片失败返回 false（调用方整批置 settle_status=2，补偿按 requestId 幂等）
      */
-    public TransactionSendResult sendTradeSettle(Trade trade) {
-        TradeSettleDTO dto = toDTO(trade);
-        String json;
-        try {
-            json = objectMapper.writeValueAsString(dto);
-        } catch (Exception e) {
-            throw new IllegalStateException("序列化 ORDER-TRADE 消息体失败: " + trade.getTradeNo(), e);
+    public boolean sendTradeSettleBatch(List<Trade> trades) {
+        boolean allCommitted = true;
+        for (int from = 0; from < trades.size(); from += MAX_TRADES_PER_MESSAGE) {
+            List<Trade> chunk = trades.subList(from, Math.min(trades.size(), from + MAX_TRADES_PER_MESSAGE));
+            String firstTradeNo = chunk.get(0).getTradeNo();
+            TradeSettleBatchDTO batch = new TradeSettleBatchDTO();
+            batch.setBatchNo(TradeSettleBatchDTO.batchNoOf(firstTradeNo));
+            for (Trade t : chunk) {
+                batch.getTrades().add(toDTO(t));
+            }
+            String json;
+            try {
+                json = objectMapper.writeValueAsString(batch);
+            } catch (Exception e) {
+                throw new IllegalStateException("序列化 ORDER-TRADE 批量消息体失败: " + batch.getBatchNo(), e);
+            }
+            Message<String> msg = MessageBuilder.withPayload(json)
+                    .setHeader(MessageConst.PROPERTY_KEYS, batch.getBatchNo())
+                    .build();
+            TransactionSendResult result = rocketMQTemplate.sendMessageInTransaction(
+                    TOPIC_ORDER_TRADE + ":" + TradeSettleBatchDTO.TAG, msg, firstTradeNo);
+            log.info("[order] 已发送 ORDER-TRADE 批量事务消息 batchNo={} 成交{}笔 state={} msgId={}",
+                    batch.getBatchNo(), chunk.size(), result.getLocalTransactionState(), result.getMsgId());
+            allCommitted &= result.getLocalTransactionState() == LocalTransactionState.COMMIT_MESSAGE;
         }
-        Message<String> msg = MessageBuilder.withPayload(json)
-                .setHeader(MessageConst.PROPERTY_KEYS, trade.getTradeNo())
-                .build();
-        TransactionSendResult result = rocketMQTemplate.sendMessageInTransaction(TOPIC_ORDER_TRADE, msg, trade.getTradeNo());
-        log.info("[order] 已发送 ORDER-TRADE 事务消息 tradeNo={} state={} msgId={}",
-                trade.getTradeNo(), result.getLocalTransactionState(), result.getMsgId());
-        return result;
+        return allCommitted;
     }
 
     /** 成交 → 结算指令（消息体）。 */
@@ -2,6 +2,7 @@ package com.web3.exchange.order.mq;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.web3.exchange.common.order.dto.TradeSettleBatchDTO;
 import com.web3.exchange.common.order.dto.TradeSettleDTO;
 import com.web3.exchange.order.entity.Trade;
 import com.web3.exchange.order.mapper.TradeMapper;
@@ -28,6 +29,9 @@ import org.springframework.stereotype.Component;
  * <b>checkLocalTransaction</b>：半消息超时回查，同上按 tradeNo 查库返回对应状态，兜底
  * 「DB 已提交但 broker 未收到 COMMIT」的极端场景，保证最终投递。
  * </p>
+ * <p>
+ * 批量消息（{@link TradeSettleBatchDTO}）按首笔 tradeNo 判断：同批成交在同一本地事务内提交，首笔存在即整批已提交。
+ * </p>
  */
 @Slf4j
 @Component
@@ -68,14 +72,15 @@ public class TradeTransactionListener implements RocketMQLocalTransactionListene
         return tradeMapper.exists(new LambdaQueryWrapper<Trade>().eq(Trade::getTradeNo, tradeNo));
     }
 
-    /** 从事务消息（spring Message）中提取 tradeNo：优先 KEYS，其次解析消息体。 */
+    /** 从事务消息（spring Message）中提取 tradeNo：优先 KEYS（批次号还原为首笔 tradeNo），其次解析消息体。 */
     private String extractTradeNo(Message<?> msg) {
         if (msg == null) {
             return null;
         }
         Object keys = msg.getHeaders().get(MessageConst.PROPERTY_KEYS);
         if (keys != null && !keys.toString().isBlank()) {
-            return keys.toString();
+            String first = TradeSettleBatchDTO.firstTradeNoOf(keys.toString());
+            return first != null ? first : keys.toString();
         }
         try {
             Object payload = msg.getPayload();
@@ -8,7 +8,7 @@ import com.web3.exchange.common.model.Result;
 import com.web3.exchange.order.constant.OrderConstant;
 import com.web3.exchange.order.dto.CancelOrderRequest;
 import com.web3.exchange.order.dto.OrderVO;
-import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.engine.MatchingSequencer;
 import com.web3.exchange.order.entity.Order;
 import com.web3.exchange.order.feign.AssetClient;
 import com.web3.exchange.order.mapper.OrderMapper;
@@ -32,13 +32,21 @@ import java.time.LocalDateTime;
 public class CancelService {
 
     private final OrderMapper orderMapper;
-    private final MatchingEngine matchingEngine;
+    private final MatchingSequencer matchingSequencer;
+    private final MatchWriteBehindService matchWriteBehind;
+    private final TriggerOrderIndex triggerIndex;
     private final AssetClient assetClient;
+    private final EngineJournalService engineJournal;
 
-    public CancelService(OrderMapper orderMapper, MatchingEngine matchingEngine, AssetClient assetClient) {
+    public CancelService(OrderMapper orderMapper, MatchingSequencer matchingSequencer,
+                         MatchWriteBehindService matchWriteBehind, TriggerOrderIndex triggerIndex,
+                         AssetClient assetClient, EngineJournalService engineJournal) {
         this.orderMapper = orderMapper;
-        this.matchingEngine = matchingEngine;
+        this.matchingSequencer = matchingSequencer;
+        this.matchWriteBehind = matchWriteBehind;
+        this.triggerIndex = triggerIndex;
         this.assetClient = assetClient;
+        this.engineJournal = engineJournal;
     }
 
     /**
@@ -60,8 +68,26 @@ public class CancelService {
             throw new ServiceException("订单已终态(status=" + st + ")，不可撤单");
         }
 
-        // 1) 从内存订单簿移除（同一交易对锁内，与撮合串行）
-        matchingEngine.removeBookOrder(order);
+        // 1) 从内存订单簿移除（同一交易对锁内或同一撮合线程，与撮合串行）；本事务回滚则作废引擎事件日志
+        engineJournal.guardTransaction();
+        Order resting = matchingSequencer.cancel(order);
+        // 条件单（未触发，trigger_type>0 且 trigger_status=0）不在盘口
+        boolean isPendingConditional = order.getTriggerType() != null && order.getTriggerType() > 0
+                && order.getTriggerStatus() != null && order.getTriggerStatus() == OrderConstant.TRIGGER_STATUS_PENDING;
+        boolean writeBehind = matchWriteBehind.isEnabled() && !isPendingConditional
+                && order.getOrderType() == OrderConstant.TYPE_LIMIT;
+        if (writeBehind) {
+            if (resting == null) {
+                // 写后置模式：DB 仍为 NEW/PARTIAL 但簿内已无此单 → 已在内存全部成交、快照尚未落库
+                throw new ServiceException("订单状态已变化，撤单失败，请刷新重试");
+            }
+            // DB 行可能落后于内存撮合：以簿内最新成交进度计算解冻剩余
+            order.setRemaining(resting.getRemaining());
+            order.setFilledAmount(resting.getFilledAmount());
+            order.setFilledQuoteAmount(resting.getFilledQuoteAmount());
+            order.setAvgPrice(resting.getAvgPrice());
+            order.setTradeCount(resting.getTradeCount());
+        }
 
         // 2) 状态机流转：乐观锁 + WHERE status IN(0,1) 并发防护
         LambdaUpdateWrapper<Order> uw = new LambdaUpdateWrapper<>();
@@ -69,9 +95,7 @@ public class CancelService {
                 .in(Order::getStatus, OrderConstant.STATUS_NEW, OrderConstant.STATUS_PARTIAL)
                 .set(Order::getStatus, OrderConstant.STATUS_CANCELLED)
                 .set(Order::getCancelTime, LocalDateTime.now());
-        // 条件单（未触发，trigger_type>0 且 trigger_status=0）撤单 → 同步置 trigger_status=2(已取消)
-        boolean isPendingConditional = order.getTriggerType() != null && order.getTriggerType() > 0
-                && order.getTriggerStatus() != null && order.getTriggerStatus() == OrderConstant.TRIGGER_STATUS_PENDING;
+        // 条件单（未触发）撤单 → 同步置 trigger_status=2(已取消)
         if (isPendingConditional) {
             uw.set(Order::getTriggerStatus, OrderConstant.TRIGGER_STATUS_CANCELLED);
         }
@@ -84,6 +108,12 @@ public class CancelService {
         order.setCancelTime(LocalDateTime.now());
         if (isPendingConditional) {
             order.setTriggerStatus(OrderConstant.TRIGGER_STATUS_CANCELLED);
+            // 移出内存触发索引
+            triggerIndex.remove(order.getId());
+        }
+        if (writeBehind) {
+            // 终态快照追加到写后置日志，落在该单此前所有撮合快照之后，避免被旧快照覆盖回 PARTIAL
+            matchWriteBehind.submitState(order);
         }
 
         // 3) 解冻剩余冻结（成交部分已过户，无需再解冻）
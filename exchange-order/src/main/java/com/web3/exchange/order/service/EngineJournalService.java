@@ -0,0 +1,323 @@
+package com.web3.exchange.order.service;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.journal.BookSnapshotStore;
+import com.web3.exchange.order.journal.EventJournal;
+import com.web3.exchange.order.journal.JournalRecord;
+import com.web3.exchange.order.journal.JournalReplayer;
+import com.web3.exchange.order.mapper.OrderMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * 撮合引擎事件日志 + 订单簿快照（可选，{@code order.matching.journal.enabled=true} 开启）。
+ * <p>
+ * 引擎接受的每条撮合/撤单命令及其结果写入内存映射的分段日志 {@link EventJournal}；
+ * 定时（{@code snapshot-interval-ms}）与停机时逐交易对在锁内拍二进制快照，快照后删除已覆盖的旧段。
+ * 启动时 {@link #recover} 加载最新快照并重放日志尾部，替代逐单查询 t_order 重建订单簿，恢复耗时与挂单总量无关、
+ * 只与快照间隔内的命令数相关。
+ * </p>
+ * <p>日志从无到有（首次开启）或无法衔接（快照之后的段已缺失）时返回 false，由 {@code OrderBookRecovery}
+ * 回退到 DB 重建，随后 {@link #attach} 立即拍一份快照作为新的起点。</p>
+ * <p>
+ * 纪元校验：每次 {@link #attach} 生成新纪元，写入日志目录的 {@code epoch} 文件与 {@code t_engine_journal_epoch}；
+ * 以关闭日志的方式启动时把库中纪元置空。恢复前两者不一致（期间关闭日志运行过、DB 被还原、目录拷自别的环境）
+ * 即判定日志已过期，作废快照并回退 DB 重建，不会恢复出过期订单簿。
+ * </p>
+ * <p>
+ * 与 DB 对账：日志记录的是引擎已执行的命令，DB 却可能没落下它们（写后置队列随进程丢失、同步撮合事务在撮合后回滚）。
+ * 因此同步撮合事务经 {@link #guardTransaction} 登记回滚回调，未提交即作废纪元；重放完成后再把日志保留范围内动过的订单
+ * 与 t_order 逐一比对（挂簿与否、remaining），任一不一致即清空订单簿、回退 DB 重建。日志只截断到上一份快照，
+ * 保证最新快照拍下时尚未提交的撮合仍在比对范围内。
+ * </p>
+ */
+@Slf4j
+@Service
+public class EngineJournalService {
+
+    private static final String EPOCH_FILE = "epoch";
+    private static final String SELECT_EPOCH = "SELECT epoch FROM t_engine_journal_epoch WHERE id = 1";
+    private static final String SAVE_EPOCH = "INSERT INTO t_engine_journal_epoch (id, epoch) VALUES (1, ?) "
+            + "ON DUPLICATE KEY UPDATE epoch = VALUES(epoch)";
+    private static final String CLEAR_EPOCH = "UPDATE t_engine_journal_epoch SET epoch = NULL WHERE id = 1";
+    /** 恢复对账时每批按 id 查询的订单数 */
+    private static final int VERIFY_BATCH = 1000;
+
+    private final MatchingEngine matchingEngine;
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderMapper orderMapper;
+    private final boolean enabled;
+    private final Path dir;
+    private final int segmentBytes;
+    private final boolean fsync;
+
+    private EventJournal journal;
+    private BookSnapshotStore snapshots;
+    private volatile boolean attached;
+    /** 下次快照后日志截断到的 seq（上一份快照的 seq） */
+    private long retainAfter;
+
+    public EngineJournalService(MatchingEngine matchingEngine,
+                                JdbcTemplate jdbcTemplate,
+                                OrderMapper orderMapper,
+                                @Value("${order.matching.journal.enabled:false}") boolean enabled,
+                                @Value("${order.matching.journal.dir:./data/engine-journal}") String dir,
+                                @Value("${order.matching.journal.segment-mb:64}") int segmentMb,
+                                @Value("${order.matching.journal.fsync:false}") boolean fsync) {
+        this.matchingEngine = matchingEngine;
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderMapper = orderMapper;
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentBytes = Math.max(1, segmentMb) * 1024 * 1024;
+        this.fsync = fsync;
+    }
+
+    @PostConstruct
+    public void open() {
+        if (!enabled) {
+            // 本次运行不记日志：作废库中纪元，之后重新开启时旧日志不会被重放
+            try {
+                jdbcTemplate.update(CLEAR_EPOCH);
+            } catch (RuntimeException e) {
+                log.warn("[order] 清除引擎事件日志纪元失败（未建 t_engine_journal_epoch？），重新开启日志前须清空日志目录: {}",
+                        e.getMessage());
+            }
+            return;
+        }
+        journal = new EventJournal(dir, segmentBytes, fsync);
+        // 写入失败后的记录不会进日志，作废纪元，下次启动回退 DB 重建
+        journal.onFailure(() -> invalidate("引擎事件日志写入失败"));
+        snapshots = new BookSnapshotStore(dir);
+    }
+
+    /** 是否开启事件日志。 */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 从快照 + 日志尾部恢复订单簿并与 DB 对账，成功后开始记录新命令。
+     *
+     * @return false 表示未开启、无可用起点或与 DB 不一致（需回退 DB 重建后调用 {@link #attach}）
+     */
+    public boolean recover() {
+        if (!enabled) {
+            return false;
+        }
+        BookSnapshotStore.Snapshot snap = snapshots.loadLatest();
+        long base = snap == null ? 0L : snap.seq();
+        if (snap == null && journal.lastSeq() == 0) {
+            log.info("[order] 引擎事件日志为空，回退 DB 重建订单簿");
+            return false;
+        }
+        String fileEpoch = readEpochFile();
+        List<String> dbEpoch = jdbcTemplate.queryForList(SELECT_EPOCH, String.class);
+        String current = dbEpoch.isEmpty() ? null : dbEpoch.get(0);
+        if (fileEpoch == null || !fileEpoch.equals(current)) {
+            log.warn("[order] 引擎事件日志纪元与库不一致 (journal={}, db={})，日志已过期，拒绝重放并回退 DB 重建订单簿",
+                    fileEpoch, current);
+            snapshots.clear();
+            return false;
+        }
+        if (journal.firstSeq() > base + 1 || journal.lastSeq() < base) {
+            log.warn("[order] 引擎事件日志无法衔接快照 (snapshot={}, firstSeq={}, lastSeq={})，回退 DB 重建订单簿",
+                    base, journal.firstSeq(), journal.lastSeq());
+            snapshots.clear(); // 旧快照作废，DB 重建后以新快照为起点
+            return false;
+        }
+        long start = System.nanoTime();
+        JournalReplayer.Result r = JournalReplayer.restore(matchingEngine, snap, dir, false, null);
+        log.info("[order] 快照+日志恢复订单簿：快照 seq={} 挂单 {}，重放 {} 条至 seq={}，耗时 {}ms",
+                r.snapshotSeq(), r.restoredOrders(), r.replayed(), r.lastSeq(), (System.nanoTime() - start) / 1_000_000);
+        String diverged = verifyAgainstDb();
+        if (diverged != null) {
+            log.warn("[order] 日志重放结果与 DB 不一致 ({})，日志含未落库的撮合，清空订单簿并回退 DB 重建", diverged);
+            matchingEngine.clearBooks();
+            snapshots.clear();
+            return false;
+        }
+        retainAfter = base;
+        attach();
+        return true;
+    }
+
+    /**
+     * 重放结果与 t_order 对账：日志中出现过的订单（吃单、被撤单、被成交的挂单），仍在簿中的须在库中为活跃限价单且
+     * remaining 相同，不在簿中的库中不得仍为活跃挂单。
+     *
+     * @return 第一处不一致的描述，全部一致返回 null
+     */
+    private String verifyAgainstDb() {
+        Map<Long, String> touched = new LinkedHashMap<>();
+        EventJournal.scan(dir, 0L, r -> {
+            touched.put(r.order.getId(), r.symbol);
+            for (JournalRecord.Fill f : r.fills) {
+                touched.put(f.makerOrderId(), r.symbol);
+            }
+        });
+        List<Long> ids = new ArrayList<>(touched.keySet());
+        for (int from = 0; from < ids.size(); from += VERIFY_BATCH) {
+            List<Long> chunk = ids.subList(from, Math.min(from + VERIFY_BATCH, ids.size()));
+            Map<Long, Order> rows = new HashMap<>();
+            for (Order o : orderMapper.selectBatchIds(chunk)) {
+                rows.put(o.getId(), o);
+            }
+            for (Long id : chunk) {
+                Order mem = matchingEngine.bookOrder(touched.get(id), id);
+                Order db = rows.get(id);
+                boolean resting = restingInDb(db);
+                if (mem == null ? resting : !resting || !Objects.equals(mem.getRemaining(), db.getRemaining())) {
+                    return "orderId=" + id + " engine=" + (mem == null ? "-" : mem.getRemaining())
+                            + " db=" + (db == null ? "-" : db.getStatus() + "/" + db.getRemaining());
+                }
+            }
+        }
+        return null;
+    }
+
+    /** 与 {@code OrderMapper.selectAllActiveLimitOrders} 同口径：库中应在盘口上的订单。 */
+    private static boolean restingInDb(Order o) {
+        if (o == null || !Objects.equals(o.getOrderType(), OrderConstant.TYPE_LIMIT)
+                || o.getRemaining() == null || o.getRemaining() <= 0 || o.getStatus() == null) {
+            return false;
+        }
+        if (o.getStatus() != OrderConstant.STATUS_NEW && o.getStatus() != OrderConstant.STATUS_PARTIAL) {
+            return false;
+        }
+        return !(o.getTriggerType() != null && o.getTriggerType() > 0
+                && Objects.equals(o.getTriggerStatus(), OrderConstant.TRIGGER_STATUS_PENDING));
+    }
+
+    /**
+     * 同步撮合事务内、调用引擎之前登记：引擎命令先于事务提交写入日志，事务未提交（回滚/状态未知）时
+     * 日志里就有 DB 没有的撮合/撤单，作废纪元，下次启动回退 DB 重建。未开启日志或不在事务中时不做任何事。
+     */
+    public void guardTransaction() {
+        if (!attached || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    invalidate("同步撮合事务未提交");
+                }
+            }
+        });
+    }
+
+    /** 作废当前纪元（删纪元文件 + 尽力清库中纪元）：本次运行继续记日志，但下次启动不再重放。 */
+    private void invalidate(String reason) {
+        log.warn("[order] {}，引擎事件日志已与 DB 分叉，作废纪元，下次启动回退 DB 重建订单簿", reason);
+        try {
+            Files.deleteIfExists(dir.resolve(EPOCH_FILE));
+        } catch (IOException e) {
+            log.warn("[order] 删除引擎事件日志纪元文件失败: {}", e.getMessage());
+        }
+        try {
+            jdbcTemplate.update(CLEAR_EPOCH);
+        } catch (RuntimeException e) {
+            log.warn("[order] 清除引擎事件日志纪元失败: {}", e.getMessage());
+        }
+    }
+
+    /** 开始记录引擎命令（换新纪元），并立即拍一份快照作为后续恢复起点。 */
+    public void attach() {
+        if (!enabled || attached) {
+            return;
+        }
+        String epoch = UUID.randomUUID().toString();
+        // 先库后文件：中途失败两者不一致，下次启动走 DB 重建，不会误重放
+        jdbcTemplate.update(SAVE_EPOCH, epoch);
+        writeEpochFile(epoch);
+        matchingEngine.setEventLog(journal);
+        attached = true;
+        snapshot();
+    }
+
+    /**
+     * 定时快照：逐交易对锁内编码（锁内读取日志 seq），等快照覆盖的记录全部写入日志后锁外落盘，
+     * 再删除上一份快照已覆盖的旧段。
+     */
+    @Scheduled(fixedDelayString = "${order.matching.journal.snapshot-interval-ms:300000}",
+            initialDelayString = "${order.matching.journal.snapshot-interval-ms:300000}")
+    public synchronized void snapshot() {
+        if (!attached) {
+            return;
+        }
+        long start = System.nanoTime();
+        long seq = journal.lastSeq();
+        List<byte[]> books = new ArrayList<>();
+        matchingEngine.forEachBook((symbol, orders) ->
+                books.add(BookSnapshotStore.encodeBook(symbol, journal.lastSeq(), orders)));
+        // 快照里的每条命令都须在日志中：恢复对账靠日志找出快照拍下时尚未提交的撮合
+        journal.awaitDurable(journal.lastSeq());
+        snapshots.save(seq, books);
+        // 多留一个快照间隔：恢复对账要覆盖最新快照拍下时尚未提交的撮合
+        journal.truncateBefore(retainAfter);
+        retainAfter = seq;
+        log.info("[order] 订单簿快照完成 seq={} 交易对 {} 耗时 {}ms", seq, books.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private String readEpochFile() {
+        Path file = dir.resolve(EPOCH_FILE);
+        try {
+            return Files.exists(file) ? Files.readString(file).trim() : null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读引擎事件日志纪元失败: " + file, e);
+        }
+    }
+
+    private void writeEpochFile(String epoch) {
+        Path tmp = dir.resolve(EPOCH_FILE + ".tmp");
+        try {
+            Files.writeString(tmp, epoch);
+            Files.move(tmp, dir.resolve(EPOCH_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("写引擎事件日志纪元失败: " + dir, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            snapshot();
+        } catch (RuntimeException e) {
+            log.warn("[order] 停机快照失败，下次启动将重放日志: {}", e.getMessage());
+        }
+        matchingEngine.setEventLog(null);
+        attached = false;
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("[order] 关闭引擎事件日志失败: {}", e.getMessage());
+        }
+    }
+}
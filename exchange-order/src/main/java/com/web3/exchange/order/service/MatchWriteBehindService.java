@@ -0,0 +1,345 @@
+package com.web3.exchange.order.service;
+
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.entity.Trade;
+import com.web3.exchange.order.journal.MatchJournal;
+import com.web3.exchange.order.journal.MatchRecord;
+import com.web3.exchange.order.journal.MatchRecord.OrderState;
+import com.web3.exchange.order.mq.TradeProducer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 撮合结果写后置落库（可选模式，{@code order.matching.write-behind.enabled=true} 开启）。
+ * <p>
+ * 作为 {@link MatchingEngine.MatchListener} 在交易对锁内回调 {@link #onMatched}：只拷贝原始类型的成交
+ * （{@link MatchingEngine.Fills}）与订单快照，投递到无锁多生产者队列即返回，锁内不分配成交 id、不做文件 I/O、
+ * 不争用全局锁；锁内投递保证同一订单的快照按撮合顺序入队。后台单线程把队列按 {@code batch-size}/{@code max-delay-ms}
+ * 攒批，先物化成交并把整批追加到本地 {@link MatchJournal}（分配 seq，一次 write + 至多一次 fsync 的组提交），
+ * 再在<b>一个事务</b>内用 JDBC batch 执行：
+ * <ul>
+ *   <li>{@code INSERT IGNORE INTO t_trade}（trade_no 唯一键去重，重放幂等）；</li>
+ *   <li>{@code UPDATE t_order}（同批内同一订单只写最后一次快照，扫 200 档只产生一条吃单 + 每个挂单一条）。</li>
+ * </ul>
+ * 提交后把本批成交合成 ORDER-TRADE 批量事务消息发送（本地成交已提交，监听器回查恒为 COMMIT），发送完成
+ * （或失败已置 settle_status=2 待补偿）后才推进 checkpoint。
+ * </p>
+ * <p>启动时先重放 seq &gt; checkpoint 的日志记录再开始服务（早于 {@code OrderBookRecovery} 从 DB 重建盘口）。
+ * 落库失败不丢批：退避后整批重试。进程在入队后、组提交前崩溃会丢失这一窗口（至多 {@code max-delay-ms}）内的撮合：
+ * 其订单在库中仍是撮合前状态（已冻结、未成交、未发结算），重启按 DB 重建盘口，资金与成交保持一致。
+ * 提交后、发送结算前崩溃时 checkpoint 尚未推进，重启重放该批：成交 INSERT IGNORE、订单快照覆盖写均幂等，
+ * 结算消息重发由 asset 侧 requestId 幂等兜底，不会留下 settle_status=0 且永不结算的成交。</p>
+ */
+@Slf4j
+@Service
+public class MatchWriteBehindService implements MatchingEngine.MatchListener {
+
+    private static final String INSERT_TRADE = "INSERT IGNORE INTO t_trade (id, trade_no, symbol, price, quantity, quote_amount, "
+            + "taker_order_no, maker_order_no, taker_order_id, maker_order_id, taker_user_id, maker_user_id, taker_side, "
+            + "buy_user_id, sell_user_id, taker_fee, maker_fee, settle_status, settle_quote_request_id, settle_base_request_id, "
+            + "trade_time, create_time, create_by, is_deleted) "
+            + "VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,'system',0)";
+
+    private static final String UPDATE_ORDER = "UPDATE t_order SET remaining = ?, quote_amount = ?, filled_amount = ?, "
+            + "filled_quote_amount = ?, avg_price = ?, trade_count = ?, status = ?, "
+            + "trigger_status = COALESCE(?, trigger_status), filled_time = COALESCE(?, filled_time), "
+            + "cancel_time = COALESCE(?, cancel_time), remark = COALESCE(?, remark), update_by = 'system' "
+            + "WHERE id = ?";
+
+    private static final String MARK_SETTLE_FAILED = "UPDATE t_trade SET settle_status = 2 WHERE trade_no = ?";
+
+    /** 落库失败重试退避（毫秒） */
+    private static final long RETRY_BACKOFF_MS = 1000L;
+
+    /** 待落库的一次撮合（或状态补写）：原始类型成交 + 订单快照，由写线程物化为 {@link MatchRecord} */
+    private record Pending(MatchingEngine.Fills fills, List<OrderState> orders) {
+    }
+
+    private final MatchingEngine matchingEngine;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TradeProducer tradeProducer;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long maxDelayMs;
+    private final String journalDir;
+    private final boolean fsync;
+
+    /** 无锁 MPSC：撮合线程/请求线程投递，唯一写线程消费 */
+    private final Queue<Pending> queue = new ConcurrentLinkedQueue<>();
+    private MatchJournal journal;
+    private Thread writer;
+    private volatile boolean running;
+    /** 写线程是否即将 park（生产者据此决定是否 unpark，避免每次投递都唤醒） */
+    private volatile boolean idle;
+
+    public MatchWriteBehindService(MatchingEngine matchingEngine,
+                                   JdbcTemplate jdbcTemplate,
+                                   TransactionTemplate transactionTemplate,
+                                   TradeProducer tradeProducer,
+                                   @Value("${order.matching.write-behind.enabled:false}") boolean enabled,
+                                   @Value("${order.matching.write-behind.batch-size:500}") int batchSize,
+                                   @Value("${order.matching.write-behind.max-delay-ms:5}") long maxDelayMs,
+                                   @Value("${order.matching.write-behind.journal-dir:./data/match-journal}") String journalDir,
+                                   @Value("${order.matching.write-behind.fsync:false}") boolean fsync) {
+        this.matchingEngine = matchingEngine;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.tradeProducer = tradeProducer;
+        this.enabled = enabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxDelayMs = Math.max(0, maxDelayMs);
+        this.journalDir = journalDir;
+        this.fsync = fsync;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        journal = new MatchJournal(Path.of(journalDir), fsync, 64L * 1024 * 1024);
+        List<MatchRecord> pending = journal.pending();
+        if (!pending.isEmpty()) {
+            log.info("[order] 写后置日志重放 {} 条 (checkpoint={})", pending.size(), journal.checkpointSeq());
+            flushWithRetry(pending);
+        }
+        running = true;
+        writer = new Thread(this::runLoop, "match-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        matchingEngine.setMatchListener(this);
+        log.info("[order] 撮合写后置落库已启动 batchSize={} maxDelayMs={} journal={}", batchSize, maxDelayMs, journalDir);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (writer == null) {
+            return;
+        }
+        matchingEngine.setMatchListener(null);
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(10_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("[order] 关闭撮合日志失败: {}", e.getMessage());
+        }
+    }
+
+    /** 是否为写后置模式。 */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 接收一次撮合结果（交易对锁内）：拷贝原始类型成交与订单快照 → 投递无锁队列（不写文件、不等待 DB）。
+     *
+     * @param taker 吃单（撮合后状态）
+     * @param mr    撮合结果
+     */
+    @Override
+    public void onMatched(Order taker, MatchingEngine.MatchResult mr) {
+        // 只复制原始类型成交（不分配 id）：调用方随后 mr.trades() 与写线程物化的是同一批成交
+        MatchingEngine.Fills fills = mr.hasTrades() ? mr.fills() : null;
+        List<OrderState> orders = new ArrayList<>(mr.changedMakers().size() + 1);
+        orders.add(OrderState.of(taker));
+        for (Order maker : mr.changedMakers()) {
+            orders.add(OrderState.of(maker));
+        }
+        enqueue(new Pending(fills, orders));
+    }
+
+    /**
+     * 撮合之外的订单状态补写（如条件单激活被拒后的 trigger_status/remark），
+     * 与撮合快照走同一队列，保证落库顺序在其撮合快照之后。
+     */
+    public void submitState(Order order) {
+        List<OrderState> orders = new ArrayList<>(1);
+        orders.add(OrderState.of(order));
+        enqueue(new Pending(null, orders));
+    }
+
+    private void enqueue(Pending p) {
+        queue.offer(p);
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private void runLoop() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            Pending first = queue.poll();
+            if (first == null) {
+                idle = true;
+                if (queue.isEmpty() && running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                idle = false;
+                continue;
+            }
+            batch.add(first);
+            // 攒批：最多等待 maxDelayMs 凑满 batchSize
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+            while (batch.size() < batchSize) {
+                Pending next = queue.poll();
+                if (next != null) {
+                    batch.add(next);
+                    continue;
+                }
+                long left = deadline - System.nanoTime();
+                if (left <= 0 || !running) {
+                    break;
+                }
+                idle = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(left);
+                }
+                idle = false;
+            }
+            List<MatchRecord> records = appendJournal(batch);
+            batch.clear();
+            if (records != null) {
+                flushWithRetry(records);
+            }
+        }
+    }
+
+    /**
+     * 物化本批成交并组提交到本地日志（分配 seq）。日志写失败时退避重试，直到成功或停机。
+     *
+     * @return 已入日志的记录；停机中断返回 null（本批未入日志，按 DB 中撮合前状态恢复）
+     */
+    private List<MatchRecord> appendJournal(List<Pending> batch) {
+        List<MatchRecord> records = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            records.add(new MatchRecord(p.fills() == null ? new ArrayList<>() : new ArrayList<>(p.fills().trades()),
+                    p.orders()));
+        }
+        while (true) {
+            try {
+                journal.appendAll(records);
+                return records;
+            } catch (Exception e) {
+                log.error("[order] 写后置日志组提交失败 {} 条, {}ms 后重试: {}", records.size(), RETRY_BACKOFF_MS, e.getMessage());
+                if (!running) {
+                    return null;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_BACKOFF_MS));
+            }
+        }
+    }
+
+    /** 落库直到成功（不丢批）；停机中断时保留日志由下次启动重放。 */
+    private void flushWithRetry(List<MatchRecord> batch) {
+        while (true) {
+            try {
+                flush(batch);
+                return;
+            } catch (Exception e) {
+                log.error("[order] 写后置批量落库失败 {} 条, {}ms 后重试: {}", batch.size(), RETRY_BACKOFF_MS, e.getMessage(), e);
+                try {
+                    Thread.sleep(RETRY_BACKOFF_MS);
+                } catch (InterruptedException ie) {
+                    if (!running) {
+                        log.warn("[order] 停机中断，{} 条撮合结果留待下次启动按日志重放", batch.size());
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /** 一个事务内批量写成交 + 合并后的订单快照，提交后发结算消息，发送完成再推进 checkpoint。 */
+    private void flush(List<MatchRecord> batch) {
+        List<Trade> trades = new ArrayList<>();
+        Map<Long, OrderState> latest = new LinkedHashMap<>();
+        long maxSeq = 0;
+        for (MatchRecord r : batch) {
+            trades.addAll(r.trades);
+            for (OrderState s : r.orders) {
+                latest.remove(s.id());
+                latest.put(s.id(), s); // 同一订单只保留最后一次快照
+            }
+            maxSeq = Math.max(maxSeq, r.seq);
+        }
+        List<Object[]> tradeArgs = new ArrayList<>(trades.size());
+        for (Trade t : trades) {
+            tradeArgs.add(new Object[]{t.getId(), t.getTradeNo(), t.getSymbol(), t.getPrice(), t.getQuantity(),
+                    t.getQuoteAmount(), t.getTakerOrderNo(), t.getMakerOrderNo(), t.getTakerOrderId(),
+                    t.getMakerOrderId(), t.getTakerUserId(), t.getMakerUserId(), t.getTakerSide(),
+                    t.getBuyUserId(), t.getSellUserId(), t.getTakerFee(), t.getMakerFee(), t.getSettleStatus(),
+                    t.getSettleQuoteRequestId(), t.getSettleBaseRequestId(), ts(t.getTradeTime()), ts(t.getTradeTime())});
+        }
+        List<Object[]> orderArgs = new ArrayList<>(latest.size());
+        for (OrderState s : latest.values()) {
+            orderArgs.add(new Object[]{s.remaining(), s.quoteAmount(), s.filledAmount(), s.filledQuoteAmount(),
+                    s.avgPrice(), s.tradeCount(), s.status(), s.triggerStatus(), ts(s.filledTime()),
+                    ts(s.cancelTime()), s.remark(), s.id()});
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (!tradeArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_TRADE, tradeArgs);
+            }
+            if (!orderArgs.isEmpty()) {
+                jdbcTemplate.batchUpdate(UPDATE_ORDER, orderArgs);
+            }
+        });
+        log.debug("[order] 写后置落库 {} 次撮合: 成交{}笔 订单{}行 seq≤{}", batch.size(), trades.size(), orderArgs.size(), maxSeq);
+        dispatch(trades);
+        // 发送（或置待补偿）之后才推进：两者之间崩溃则重启重放本批，重发结算消息
+        journal.checkpoint(maxSeq);
+    }
+
+    /** 成交已提交：本批全部成交合成 ORDER-TRADE 批量事务消息；失败则整批置 settle_status=2 待补偿。 */
+    private void dispatch(List<Trade> trades) {
+        if (trades.isEmpty()) {
+            return;
+        }
+        boolean dispatched = false;
+        try {
+            dispatched = tradeProducer.sendTradeSettleBatch(trades);
+        } catch (Exception e) {
+            log.error("[order] 写后置批次成交{}笔发送 ORDER-TRADE 批量事务消息异常, 置 settle_status=2 待补偿: {}",
+                    trades.size(), e.getMessage());
+        }
+        if (dispatched) {
+            return;
+        }
+        List<Object[]> failed = new ArrayList<>(trades.size());
+        for (Trade t : trades) {
+            t.setSettleStatus(2);
+            failed.add(new Object[]{t.getTradeNo()});
+        }
+        jdbcTemplate.batchUpdate(MARK_SETTLE_FAILED, failed);
+    }
+
+    private static Timestamp ts(LocalDateTime t) {
+        return t == null ? null : Timestamp.valueOf(t);
+    }
+}
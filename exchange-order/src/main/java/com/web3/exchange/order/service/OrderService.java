@@ -13,6 +13,7 @@ import com.web3.exchange.order.dto.OrderVO;
 import com.web3.exchange.order.dto.PlaceOrderRequest;
 import com.web3.exchange.order.dto.TradeVO;
 import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.engine.MatchingSequencer;
 import com.web3.exchange.order.entity.Order;
 import com.web3.exchange.order.entity.Symbol;
 import com.web3.exchange.order.entity.Trade;
@@ -47,29 +48,41 @@ public class OrderService {
     private final OrderMapper orderMapper;
     private final TradeMapper tradeMapper;
     private final MatchingEngine matchingEngine;
+    private final MatchingSequencer matchingSequencer;
     private final TradeProducer tradeProducer;
+    private final MatchWriteBehindService matchWriteBehind;
+    private final TriggerOrderIndex triggerIndex;
     private final AssetClient assetClient;
     private final RiskClient riskClient;
     private final TransactionTemplate transactionTemplate;
+    private final EngineJournalService engineJournal;
 
     public OrderService(SymbolService symbolService,
                         OrderCoinService coinService,
                         OrderMapper orderMapper,
                         TradeMapper tradeMapper,
                         MatchingEngine matchingEngine,
+                        MatchingSequencer matchingSequencer,
                         TradeProducer tradeProducer,
+                        MatchWriteBehindService matchWriteBehind,
+                        TriggerOrderIndex triggerIndex,
                         AssetClient assetClient,
                         RiskClient riskClient,
-                        TransactionTemplate transactionTemplate) {
+                        TransactionTemplate transactionTemplate,
+                        EngineJournalService engineJournal) {
         this.symbolService = symbolService;
         this.coinService = coinService;
         this.orderMapper = orderMapper;
         this.tradeMapper = tradeMapper;
         this.matchingEngine = matchingEngine;
+        this.matchingSequencer = matchingSequencer;
         this.tradeProducer = tradeProducer;
+        this.matchWriteBehind = matchWriteBehind;
+        this.triggerIndex = triggerIndex;
         this.assetClient = assetClient;
         this.riskClient = riskClient;
         this.transactionTemplate = transactionTemplate;
+        this.engineJournal = engineJournal;
     }
 
     /** 下单结果（订单视图 + 本次产生的成交）。 */
@@ -108,30 +121,38 @@ public class OrderService {
             return placeConditional(order);
         }
 
-        // 事务：落库 + 冻结 + 撮合 + 落成交/更新双方订单
-        MatchingEngine.MatchResult match = transactionTemplate.execute(status -> {
-            orderMapper.insert(order);
-            // 预冻结：失败则订单 REJECTED（保留记录，不产生资金变动）
-            if (!doFreeze(order)) {
-                order.setStatus(OrderConstant.STATUS_REJECTED);
-                order.setRemark("资金冻结失败");
+        MatchingEngine.MatchResult match;
+        if (matchWriteBehind.isEnabled()) {
+            // 写后置模式：事务只覆盖 落库 + 冻结；撮合在事务外执行，成交/订单快照由 MatchWriteBehindService 批量落库
+            match = insertAndFreeze(order) ? matchingSequencer.match(order, ctx) : null;
+        } else {
+            // 事务：落库 + 冻结 + 撮合 + 落成交/更新双方订单
+            match = transactionTemplate.execute(status -> {
+                orderMapper.insert(order);
+                // 预冻结：失败则订单 REJECTED（保留记录，不产生资金变动）
+                if (!doFreeze(order)) {
+                    order.setStatus(OrderConstant.STATUS_REJECTED);
+                    order.setRemark("资金冻结失败");
+                    orderMapper.updateById(order);
+                    return null;
+                }
+                // 撮合（交易对锁串行化，或定序器模式下投递到该交易对的撮合线程）；撮合与冻结共用同一精度上下文，保证名义额算法一致。
+                // 撮合结果先于提交写入引擎事件日志，本事务回滚则作废日志
+                engineJournal.guardTransaction();
+                MatchingEngine.MatchResult mr = matchingSequencer.match(order, ctx);
+                // 落成交
+                for (Trade t : mr.trades()) {
+                    tradeMapper.insert(t);
+                }
+                // 更新被成交改动的挂单 DB 行
+                for (Order maker : mr.changedMakers()) {
+                    orderMapper.updateById(maker);
+                }
+                // 更新吃单 DB 行
                 orderMapper.updateById(order);
-                return null;
-            }
-            // 撮合（交易对锁串行化）；撮合与冻结共用同一精度上下文，保证名义额算法一致
-            MatchingEngine.MatchResult mr = matchingEngine.match(order, ctx);
-            // 落成交
-            for (Trade t : mr.trades) {
-                tradeMapper.insert(t);
-            }
-            // 更新被成交改动的挂单 DB 行
-            for (Order maker : mr.changedMakers) {
-                orderMapper.updateById(maker);
-            }
-            // 更新吃单 DB 行
-            orderMapper.updateById(order);
-            return mr;
-        });
+                return mr;
+            });
+        }
 
         // 冻结失败 → 已 REJECTED
         if (order.getStatus() == OrderConstant.STATUS_REJECTED) {
@@ -139,27 +160,14 @@ public class OrderService {
             return new PlaceOrderResult(toVO(order), List.of());
         }
 
-        // 事务已提交：逐笔发 ORDER-TRADE 事务消息驱动 asset 过户（订单本地落库与消息可达原子一致）
-        // 事务消息 executeLocalTransaction 按 tradeNo 查库（已提交→COMMIT）保证「本地成交先于消息被消费」。
+        // 事务已提交：本单全部成交合成一条 ORDER-TRADE 批量事务消息驱动 asset 过户（订单本地落库与消息可达原子一致）
+        // 事务消息 executeLocalTransaction 按首笔 tradeNo 查库（已提交→COMMIT）保证「本地成交先于消息被消费」。
+        // 写后置模式下成交尚未落库，由 MatchWriteBehindService 批量提交后再发。
         List<TradeVO> tradeVOs = new ArrayList<>();
-        for (Trade t : match.trades) {
-            boolean dispatched = false;
-            try {
-                org.apache.rocketmq.client.producer.TransactionSendResult r = tradeProducer.sendTradeSettle(t);
-                dispatched = r != null
-                        && r.getLocalTransactionState() == org.apache.rocketmq.client.producer.LocalTransactionState.COMMIT_MESSAGE;
-                if (!dispatched) {
-                    log.warn("[order] 成交{}事务消息未提交, 置 settle_status=2 待补偿", t.getTradeNo());
-                }
-            } catch (Exception e) {
-                log.error("[order] 成交{}发送 ORDER-TRADE 事务消息异常, 置 settle_status=2 待补偿: {}",
-                        t.getTradeNo(), e.getMessage(), e);
-            }
-            if (!dispatched) {
-                // MQ 发送失败兜底：置 settle_status=2，由补偿任务直接 Feign 过户（requestId 幂等，不重复扣账）
-                t.setSettleStatus(2);
-                tradeMapper.updateById(t);
-            }
+        if (!matchWriteBehind.isEnabled()) {
+            dispatchSettle(order, match.trades());
+        }
+        for (Trade t : match.trades()) {
             tradeVOs.add(toTradeVO(t));
         }
         log.info("[order] 下单{}完成 status={} remaining={} 成交{}笔",
@@ -167,12 +175,57 @@ public class OrderService {
         return new PlaceOrderResult(toVO(order), tradeVOs);
     }
 
+    /**
+     * 成交已提交后发 ORDER-TRADE 批量事务消息；未提交/异常时整批置 settle_status=2，
+     * 由补偿任务直接 Feign 过户（requestId 幂等，不重复扣账）。
+     */
+    private void dispatchSettle(Order taker, List<Trade> trades) {
+        if (trades.isEmpty()) {
+            return;
+        }
+        boolean dispatched = false;
+        try {
+            dispatched = tradeProducer.sendTradeSettleBatch(trades);
+            if (!dispatched) {
+                log.warn("[order] 订单{}成交{}笔批量事务消息未提交, 置 settle_status=2 待补偿", taker.getOrderNo(), trades.size());
+            }
+        } catch (Exception e) {
+            log.error("[order] 订单{}成交{}笔发送 ORDER-TRADE 批量事务消息异常, 置 settle_status=2 待补偿: {}",
+                    taker.getOrderNo(), trades.size(), e.getMessage(), e);
+        }
+        if (!dispatched) {
+            List<String> tradeNos = new ArrayList<>(trades.size());
+            for (Trade t : trades) {
+                t.setSettleStatus(2);
+                tradeNos.add(t.getTradeNo());
+            }
+            tradeMapper.update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<Trade>()
+                    .in(Trade::getTradeNo, tradeNos)
+                    .set(Trade::getSettleStatus, 2));
+        }
+    }
+
     /**
      * 条件单下单（docs/advanced-orders.md §三）：<b>下单即冻结、不入撮合盘口</b>。
      * <p>status=NEW + trigger_status=0 落库；冻结按 triggerPrice 名义额（买单）或 quantity（卖单）执行；
-     * 由行情触发任务激活后直接用该冻结额度撮合。冻结失败 → REJECTED（保留记录）。</p>
+     * 加入内存触发索引，由行情触发任务激活后直接用该冻结额度撮合。冻结失败 → REJECTED（保留记录）。</p>
      */
     private PlaceOrderResult placeConditional(Order order) {
+        if (!insertAndFreeze(order)) {
+            log.info("[order] 条件单{}下单被拒(冻结失败),状态 REJECTED", order.getOrderNo());
+            return new PlaceOrderResult(toVO(order), List.of());
+        }
+        triggerIndex.add(order);
+        log.info("[order] 条件单{}下单成功 status=NEW triggerStatus=0(待触发) type={} triggerPrice={} 冻结={}/{}",
+                order.getOrderNo(), order.getTriggerType(), order.getTriggerPrice(),
+                order.getFreezeQuoteAmount(), order.getFreezeBaseAmount());
+        return new PlaceOrderResult(toVO(order), List.of());
+    }
+
+    /**
+     * 事务内落库订单(NEW) + 预冻结；冻结失败置 REJECTED（保留记录）并返回 false。
+     */
+    private boolean insertAndFreeze(Order order) {
         Boolean frozen = transactionTemplate.execute(status -> {
             orderMapper.insert(order);
             if (!doFreeze(order)) {
@@ -183,14 +236,7 @@ public class OrderService {
             }
             return true;
         });
-        if (Boolean.FALSE.equals(frozen)) {
-            log.info("[order] 条件单{}下单被拒(冻结失败),状态 REJECTED", order.getOrderNo());
-            return new PlaceOrderResult(toVO(order), List.of());
-        }
-        log.info("[order] 条件单{}下单成功 status=NEW triggerStatus=0(待触发) type={} triggerPrice={} 冻结={}/{}",
-                order.getOrderNo(), order.getTriggerType(), order.getTriggerPrice(),
-                order.getFreezeQuoteAmount(), order.getFreezeBaseAmount());
-        return new PlaceOrderResult(toVO(order), List.of());
+        return Boolean.TRUE.equals(frozen);
     }
 
     /**
@@ -219,14 +265,18 @@ public class OrderService {
         order.setTriggerStatus(OrderConstant.TRIGGER_STATUS_TRIGGERED);
 
         // 激活为普通单：撮合（用已冻结额度，不重复冻结）
+        if (matchWriteBehind.isEnabled()) {
+            return activateWriteBehind(order, ctx);
+        }
         MatchingEngine.MatchResult match;
         try {
             match = transactionTemplate.execute(status -> {
-                MatchingEngine.MatchResult mr = matchingEngine.match(order, ctx);
-                for (Trade t : mr.trades) {
+                engineJournal.guardTransaction();
+                MatchingEngine.MatchResult mr = matchingSequencer.match(order, ctx);
+                for (Trade t : mr.trades()) {
                     tradeMapper.insert(t);
                 }
-                for (Order maker : mr.changedMakers) {
+                for (Order maker : mr.changedMakers()) {
                     orderMapper.updateById(maker);
                 }
                 orderMapper.updateById(order);
@@ -252,31 +302,42 @@ public class OrderService {
             orderMapper.updateById(order);
         }
 
-        // 逐笔发 ORDER-TRADE 事务消息驱动过户（与下单结算链路一致）
-        for (Trade t : match.trades) {
-            boolean dispatched = false;
-            try {
-                org.apache.rocketmq.client.producer.TransactionSendResult r = tradeProducer.sendTradeSettle(t);
-                dispatched = r != null
-                        && r.getLocalTransactionState() == org.apache.rocketmq.client.producer.LocalTransactionState.COMMIT_MESSAGE;
-                if (!dispatched) {
-                    log.warn("[order] 条件单{}激活成交{}事务消息未提交, 置 settle_status=2 待补偿", order.getOrderNo(), t.getTradeNo());
-                }
-            } catch (Exception e) {
-                log.error("[order] 条件单{}激活成交{}发送事务消息异常, 置 settle_status=2 待补偿: {}",
-                        order.getOrderNo(), t.getTradeNo(), e.getMessage(), e);
-            }
-            if (!dispatched) {
-                t.setSettleStatus(2);
-                tradeMapper.updateById(t);
-            }
-        }
+        // 全部成交合成一条 ORDER-TRADE 批量事务消息驱动过户（与下单结算链路一致）
+        dispatchSettle(order, match.trades());
 
         // OCO：激活某单后，同组其余待触发单自动取消并解冻（docs/advanced-orders.md §四）
         cancelOcoSiblings(order);
 
         log.info("[order] 条件单{}激活完成 status={} remaining={} 成交{}笔",
-                order.getOrderNo(), order.getStatus(), order.getRemaining(), match.trades.size());
+                order.getOrderNo(), order.getStatus(), order.getRemaining(), match.trades().size());
+        return toVO(order);
+    }
+
+    /**
+     * 写后置模式下的条件单激活：撮合结果（含被拒时的 trigger_status/remark）由 MatchWriteBehindService
+     * 批量落库并发结算消息，本方法只负责 OCO 联动。
+     */
+    private OrderVO activateWriteBehind(Order order, PrecisionContext ctx) {
+        MatchingEngine.MatchResult match;
+        try {
+            match = matchingSequencer.match(order, ctx);
+        } catch (Exception e) {
+            log.error("[order] 条件单{}激活失败(异常),置 trigger_status=2: {}", order.getOrderNo(), e.getMessage());
+            orderMapper.update(null, new com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper<Order>()
+                    .eq(Order::getId, order.getId())
+                    .set(Order::getTriggerStatus, OrderConstant.TRIGGER_STATUS_CANCELLED)
+                    .set(Order::getRemark, "条件单激活失败: " + e.getMessage()));
+            return toVO(order);
+        }
+        if (order.getStatus() == OrderConstant.STATUS_REJECTED) {
+            // 撮合快照已在锁内入日志：被拒标记追加一条状态快照，按日志顺序落在撮合快照之后
+            order.setTriggerStatus(OrderConstant.TRIGGER_STATUS_CANCELLED);
+            order.setRemark((order.getRemark() == null ? "" : order.getRemark()) + "|条件单激活后被拒");
+            matchWriteBehind.submitState(order);
+        }
+        cancelOcoSiblings(order);
+        log.info("[order] 条件单{}激活完成(写后置) status={} remaining={} 成交{}笔",
+                order.getOrderNo(), order.getStatus(), order.getRemaining(), match.trades().size());
         return toVO(order);
     }
 
@@ -302,6 +363,7 @@ public class OrderService {
                     .set(Order::getCancelTime, java.time.LocalDateTime.now())
                     .set(Order::getRemark, "OCO 同组单已触发,本单取消"));
             if (updated > 0) {
+                triggerIndex.remove(s.getId());
                 unfreezeConditional(s);
                 log.info("[order] OCO 同组单{}已取消并解冻, 组={}", s.getOrderNo(), group);
             }
@@ -498,6 +560,12 @@ public class OrderService {
                     r.bestBid = d.getBids().get(0).getPrice();
                 }
             }
+            // 市价单无限价：用扫档估算的最差成交价参与滑点校验
+            if (r.price == null && req.getOrderType() != null && req.getOrderType() == OrderConstant.TYPE_MARKET) {
+                r.price = matchingEngine.estimateSweepPrice(req.getSymbol(), req.getSide(),
+                        req.getQuantity() == null ? 0L : req.getQuantity(),
+                        req.getQuoteAmount() == null ? 0L : req.getQuoteAmount(), ctx);
+            }
             com.web3.exchange.common.model.Result<RiskClient.OrderRiskResult> res = riskClient.preCheckOrder(r);
             if (res != null && res.isSuccess() && res.getData() != null && !res.getData().pass) {
                 log.info("[order] 下单{}被风控拦截: {}", req.getSymbol(), res.getData().reason);
@@ -0,0 +1,168 @@
+package com.web3.exchange.order.service;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.entity.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 待触发条件单的内存索引（docs/advanced-orders.md §三）：交易对 → 止盈 / 止损两棵按触发价排序的树。
+ * <p>
+ * 止盈（最新价 &gt;= 触发价）按触发价升序，价格涨到 high 时被穿越的是 {@code headMap(high, true)}；
+ * 止损（最新价 &lt;= 触发价）同样升序，价格跌到 low 时被穿越的是 {@code tailMap(low, true)}。
+ * 每次只取被穿越的区间，不再逐单判断；同价按入索引顺序（启动加载按 create_time）。
+ * </p>
+ * <p>
+ * 启动时由 {@link TriggerOrderTask} 从 t_order 加载，下单 / 撤单 / OCO 取消时同步增删。
+ * 被 {@link #pollCrossed} 取出的条件单即离开索引（激活异常时由 {@link TriggerOrderTask} 放回），
+ * 激活仍以 DB 上 trigger_status 乐观锁为准，索引里残留已撤的单不会被重复激活。
+ * </p>
+ */
+@Component
+public class TriggerOrderIndex {
+
+    private final ConcurrentHashMap<String, SymbolTriggers> symbols = new ConcurrentHashMap<>();
+    /** orderId → 条件单（撤单按 id 定位到交易对 / 方向 / 触发价） */
+    private final ConcurrentHashMap<Long, Order> byId = new ConcurrentHashMap<>();
+
+    /** 单个交易对的条件单：两棵树 + 无锁读取的最近阈值（撮合回调据此快速判断是否有单被穿越）。 */
+    private static final class SymbolTriggers {
+        final TreeMap<Long, LinkedHashMap<Long, Order>> takeProfit = new TreeMap<>();
+        final TreeMap<Long, LinkedHashMap<Long, Order>> stopLoss = new TreeMap<>();
+        /** 最低止盈触发价（无则 Long.MAX_VALUE） */
+        volatile long minTakeProfit = Long.MAX_VALUE;
+        /** 最高止损触发价（无则 Long.MIN_VALUE） */
+        volatile long maxStopLoss = Long.MIN_VALUE;
+
+        TreeMap<Long, LinkedHashMap<Long, Order>> tree(int triggerType) {
+            return triggerType == OrderConstant.TRIGGER_TYPE_TAKE_PROFIT ? takeProfit : stopLoss;
+        }
+
+        void refreshThresholds() {
+            minTakeProfit = takeProfit.isEmpty() ? Long.MAX_VALUE : takeProfit.firstKey();
+            maxStopLoss = stopLoss.isEmpty() ? Long.MIN_VALUE : stopLoss.lastKey();
+        }
+    }
+
+    /**
+     * 加入一笔待触发条件单（已在索引中则忽略）。
+     *
+     * @return 是否新加入
+     */
+    public boolean add(Order order) {
+        Integer type = order.getTriggerType();
+        if (order.getId() == null || order.getTriggerPrice() == null || type == null
+                || (type != OrderConstant.TRIGGER_TYPE_TAKE_PROFIT && type != OrderConstant.TRIGGER_TYPE_STOP_LOSS)) {
+            return false;
+        }
+        if (byId.putIfAbsent(order.getId(), order) != null) {
+            return false;
+        }
+        SymbolTriggers st = symbols.computeIfAbsent(order.getSymbol(), k -> new SymbolTriggers());
+        synchronized (st) {
+            st.tree(type).computeIfAbsent(order.getTriggerPrice(), k -> new LinkedHashMap<>()).put(order.getId(), order);
+            st.refreshThresholds();
+        }
+        return true;
+    }
+
+    /** 批量加入（启动加载）。 */
+    public void addAll(List<Order> orders) {
+        for (Order o : orders) {
+            add(o);
+        }
+    }
+
+    /**
+     * 移除一笔条件单（撤单 / OCO 取消）。
+     *
+     * @return 是否在索引中
+     */
+    public boolean remove(Long orderId) {
+        Order order = orderId == null ? null : byId.remove(orderId);
+        if (order == null) {
+            return false;
+        }
+        SymbolTriggers st = symbols.get(order.getSymbol());
+        if (st == null) {
+            return false;
+        }
+        synchronized (st) {
+            TreeMap<Long, LinkedHashMap<Long, Order>> tree = st.tree(order.getTriggerType());
+            LinkedHashMap<Long, Order> bucket = tree.get(order.getTriggerPrice());
+            if (bucket != null && bucket.remove(orderId) != null && bucket.isEmpty()) {
+                tree.remove(order.getTriggerPrice());
+            }
+            st.refreshThresholds();
+        }
+        return true;
+    }
+
+    /**
+     * 成交价区间 [low, high] 是否穿越了该交易对的任一触发价（无锁，只读两个阈值）。
+     */
+    public boolean crossed(String symbol, long low, long high) {
+        SymbolTriggers st = symbols.get(symbol);
+        return st != null && (high >= st.minTakeProfit || low <= st.maxStopLoss);
+    }
+
+    /**
+     * 取出并移除被成交价区间 [low, high] 穿越的条件单：止盈触发价 &lt;= high、止损触发价 &gt;= low。
+     * 止盈按触发价升序在前，止损按触发价降序在后（越靠近成交价越先激活）。
+     */
+    public List<Order> pollCrossed(String symbol, long low, long high) {
+        SymbolTriggers st = symbols.get(symbol);
+        if (st == null) {
+            return List.of();
+        }
+        List<Order> out = new ArrayList<>();
+        synchronized (st) {
+            drain(st.takeProfit.headMap(high, true), out);
+            drain(st.stopLoss.tailMap(low, true).descendingMap(), out);
+            st.refreshThresholds();
+        }
+        for (Order o : out) {
+            byId.remove(o.getId());
+        }
+        return out;
+    }
+
+    private static void drain(NavigableMap<Long, LinkedHashMap<Long, Order>> range, List<Order> out) {
+        Iterator<Map.Entry<Long, LinkedHashMap<Long, Order>>> it = range.entrySet().iterator();
+        while (it.hasNext()) {
+            out.addAll(it.next().getValue().values());
+            it.remove();
+        }
+    }
+
+    /** 存在待触发条件单的交易对。 */
+    public Set<String> symbols() {
+        Set<String> out = new HashSet<>();
+        for (Map.Entry<String, SymbolTriggers> e : symbols.entrySet()) {
+            SymbolTriggers st = e.getValue();
+            if (st.minTakeProfit != Long.MAX_VALUE || st.maxStopLoss != Long.MIN_VALUE) {
+                out.add(e.getKey());
+            }
+        }
+        return out;
+    }
+
+    /** 索引中的条件单总数。 */
+    public int size() {
+        return byId.size();
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+}
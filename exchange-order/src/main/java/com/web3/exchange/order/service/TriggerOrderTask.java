@@ -3,10 +3,14 @@ package com.web3.exchange.order.service;
 import com.web3.exchange.common.model.Result;
 import com.web3.exchange.order.constant.OrderConstant;
 import com.web3.exchange.order.dto.MarketTicker;
+import com.web3.exchange.order.engine.MatchingEngine;
 import com.web3.exchange.order.entity.Order;
 import com.web3.exchange.order.mapper.OrderMapper;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
@@ -17,42 +21,162 @@ import org.springframework.web.client.RestTemplate;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 /**
- * 条件单行情触发任务（docs/advanced-orders.md §三）。
+ * 条件单行情触发（docs/advanced-orders.md §三）：事件驱动，按内存 {@link TriggerOrderIndex} 只取被穿越的触发价。
  * <p>
- * 每 2s 轮询一次：从 market 服务拉取全市场最新价（GET /api/market/ticker/list），
- * 扫描 t_order 中 trigger_status=0 的条件单（复用 idx_trigger_status_symbol），
- * 按触发条件激活：止盈 lastPrice>=triggerPrice；止损 lastPrice<=triggerPrice。
- * 激活委托 {@link OrderService#activateConditional}（乐观锁防重复激活）。
+ * 作为 {@link MatchingEngine.TradePriceListener} 在撮合锁内收到每次撮合的成交价区间 [low, high]：
+ * 只比较索引的两个阈值（止盈最低价 / 止损最高价），未穿越直接返回；穿越则按交易对合并价格区间、
+ * 投递给后台单线程 {@code order-trigger}，由它从索引取出被穿越的条件单并委托
+ * {@link OrderService#activateConditional} 激活（乐观锁防重复激活）——激活会再次提交撮合，不能在撮合回调内执行。
+ * </p>
+ * <p>
+ * 应用就绪时从 t_order 加载全部待触发条件单构建索引；下单 / 撤单 / OCO 取消由 {@link OrderService}、
+ * {@link CancelService} 同步增删。另按 {@code order.trigger.ticker-interval-ms}（默认 2s）从 market 服务拉取
+ * 最新价（GET /api/market/ticker/list）走同一判定，兜底覆盖本所无成交、仅外部行情变动的交易对；
+ * 该兜底只在索引非空时请求行情，不再扫库。
+ * </p>
+ * <p>
+ * 激活抛异常（抢占前查库失败、交易对暂不可用等）时条件单放回索引，并在下一轮兜底时按原价格区间重试；
+ * 若实际已被抢占 / 取消，重试时 DB 乐观锁不命中即跳过，不会重复激活。
  * </p>
  */
 @Slf4j
 @Component
-public class TriggerOrderTask {
+public class TriggerOrderTask implements MatchingEngine.TradePriceListener, ApplicationListener<ApplicationReadyEvent> {
 
     private final OrderMapper orderMapper;
     private final OrderService orderService;
+    private final MatchingEngine matchingEngine;
+    private final TriggerOrderIndex index;
     private final RestTemplate restTemplate;
     private final String tickerUrl;
 
+    /** 交易对 → 待处理的成交价区间 {low, high}（worker 取走前的多次穿越合并为一次） */
+    private final ConcurrentHashMap<String, long[]> pendingRanges = new ConcurrentHashMap<>();
+    private final BlockingQueue<String> pendingSymbols = new LinkedBlockingQueue<>();
+    /** 交易对 → 激活异常待重试的成交价区间（条件单已放回索引，兜底任务按此区间重新投递） */
+    private final ConcurrentHashMap<String, long[]> retryRanges = new ConcurrentHashMap<>();
+    private Thread worker;
+    private volatile boolean running;
+
     public TriggerOrderTask(OrderMapper orderMapper,
                             OrderService orderService,
+                            MatchingEngine matchingEngine,
+                            TriggerOrderIndex index,
                             RestTemplate orderRestTemplate,
                             @Value("${order.trigger.market-ticker-url:http://127.0.0.1:8106/api/market/ticker/list}")
                             String tickerUrl) {
         this.orderMapper = orderMapper;
         this.orderService = orderService;
+        this.matchingEngine = matchingEngine;
+        this.index = index;
         this.restTemplate = orderRestTemplate;
         this.tickerUrl = tickerUrl;
     }
 
-    /** 条件单行情触发轮询（每 2 秒）。 */
-    @Scheduled(fixedDelay = 2000)
+    /** 应用就绪：加载待触发条件单 → 启动触发线程 → 注册成交价监听。 */
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        List<Order> pending = orderMapper.selectAllPendingConditionalOrders();
+        index.addAll(pending);
+        running = true;
+        worker = new Thread(this::runLoop, "order-trigger");
+        worker.setDaemon(true);
+        worker.start();
+        matchingEngine.setTradePriceListener(this);
+        log.info("[trigger] 条件单触发索引已加载 {} 笔, 涉及交易对 {}", index.size(), index.symbols());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker == null) {
+            return;
+        }
+        matchingEngine.setTradePriceListener(null);
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 撮合锁内回调：未穿越任何触发价时只做两次比较。 */
+    @Override
+    public void onTradePrices(String symbol, long low, long high) {
+        if (index.crossed(symbol, low, high)) {
+            signal(symbol, low, high);
+        }
+    }
+
+    /** 合并价格区间；该交易对尚无待处理区间时入队唤醒触发线程。 */
+    private void signal(String symbol, long low, long high) {
+        long[] range = {low, high};
+        if (pendingRanges.merge(symbol, range, (a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])}) == range) {
+            pendingSymbols.offer(symbol);
+        }
+    }
+
+    private void runLoop() {
+        while (running) {
+            String symbol;
+            try {
+                symbol = pendingSymbols.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (symbol == null) {
+                continue;
+            }
+            long[] range = pendingRanges.remove(symbol);
+            if (range != null) {
+                trigger(symbol, range[0], range[1]);
+            }
+        }
+    }
+
+    /** 从索引取出被 [low, high] 穿越的条件单逐笔激活（触发线程内执行）。 */
+    void trigger(String symbol, long low, long high) {
+        List<Order> crossed = index.pollCrossed(symbol, low, high);
+        int triggered = 0;
+        for (Order o : crossed) {
+            try {
+                orderService.activateConditional(o);
+                triggered++;
+                log.info("[trigger] 条件单{}触发激活 symbol={} type={} range=[{},{}] trigger={}",
+                        o.getOrderNo(), symbol, o.getTriggerType(), low, high, o.getTriggerPrice());
+            } catch (Exception e) {
+                // 已从索引取出：放回并登记重试，否则价格回落后该单再也不会被触发
+                index.add(o);
+                retryRanges.merge(symbol, new long[]{low, high},
+                        (a, b) -> new long[]{Math.min(a[0], b[0]), Math.max(a[1], b[1])});
+                log.error("[trigger] 条件单{}激活异常, 已放回索引待重试 symbol={}: {}",
+                        o.getOrderNo(), symbol, e.getMessage(), e);
+            }
+        }
+        if (triggered > 0) {
+            log.info("[trigger] {} 本次共激活条件单 {} 笔", symbol, triggered);
+        }
+    }
+
+    /** 外部行情兜底（默认每 2 秒）：先重投激活异常的区间，再按 market 最新价判定，穿越的交易对交给触发线程。 */
+    @Scheduled(fixedDelayString = "${order.trigger.ticker-interval-ms:2000}")
     public void scanAndTrigger() {
-        List<String> symbols = orderMapper.selectPendingTriggerSymbols();
-        if (symbols == null || symbols.isEmpty()) {
+        for (String symbol : retryRanges.keySet()) {
+            long[] range = retryRanges.remove(symbol);
+            if (range != null) {
+                signal(symbol, range[0], range[1]);
+            }
+        }
+        if (index.isEmpty()) {
             return;
         }
         // 拉取全市场最新价：symbol -> lastPrice
@@ -61,38 +185,16 @@ public class TriggerOrderTask {
             log.warn("[trigger] market 行情拉取为空或失败,本轮跳过触发");
             return;
         }
-        int triggered = 0;
-        for (String symbol : symbols) {
+        for (String symbol : index.symbols()) {
             Long lastPrice = latest.get(symbol);
-            if (lastPrice == null) {
-                continue;
+            if (lastPrice != null && index.crossed(symbol, lastPrice, lastPrice)) {
+                signal(symbol, lastPrice, lastPrice);
             }
-            for (Order o : orderMapper.selectPendingConditionalOrders(symbol)) {
-                if (shouldTrigger(o, lastPrice)) {
-                    try {
-                        orderService.activateConditional(o);
-                        triggered++;
-                        log.info("[trigger] 条件单{}触发激活 symbol={} type={} last={} trigger={}",
-                                o.getOrderNo(), symbol, o.getTriggerType(), lastPrice, o.getTriggerPrice());
-                    } catch (Exception e) {
-                        log.error("[trigger] 条件单{}激活异常 symbol={}: {}",
-                                o.getOrderNo(), symbol, e.getMessage(), e);
-                    }
-                }
-            }
-        }
-        if (triggered > 0) {
-            log.info("[trigger] 本轮共激活条件单 {} 笔", triggered);
         }
     }
 
-    /** 判断是否满足触发条件：止盈(1)=lastPrice>=triggerPrice；止损(2)=lastPrice<=triggerPrice。 */
-    private boolean shouldTrigger(Order o, long lastPrice) {
-        return matchesTrigger(o.getTriggerType(), o.getTriggerPrice(), lastPrice);
-    }
-
     /**
-     * 触发判定纯逻辑（可独立单测）：止盈=lastPrice>=triggerPrice；止损=lastPrice<=triggerPrice。
+     * 触发判定纯逻辑（与 {@link TriggerOrderIndex} 的区间语义一致，可独立单测）：止盈=lastPrice>=triggerPrice；止损=lastPrice<=triggerPrice。
      *
      * @param triggerType  条件单类型（1=止盈 2=止损）
      * @param triggerPrice 触发价
@@ -12,15 +12,27 @@ import java.math.RoundingMode;
  * 高达 price_precision+amount_precision 位小数的乘积——既可能溢出 long，也未换算成计价币最小单位。
  * </p>
  * <p>
- * 本工具统一换算为 <b>计价币（quote coin）最小单位 long</b>，全程 BigDecimal（任意精度、溢出安全）：
+ * 本工具统一换算为 <b>计价币（quote coin）最小单位 long</b>：
  * <pre>
  *   notional = (price / 10^pricePrecision) × (quantity / 10^amountPrecision) × 10^quoteDecimals
  * </pre>
- * 最终四舍五入（HALF_UP）到 0 位小数。业务层禁止用 double/float 参与金额运算。
+ * 最终四舍五入（HALF_UP）到 0 位小数。price × qty 及其 10 的幂缩放都不溢出 long 时走整数快路径（不分配对象），
+ * 否则回退 BigDecimal（任意精度），两条路径结果逐位一致；结果超出 long 抛异常而非回绕。
+ * 业务层禁止用 double/float 参与金额运算。
  * </p>
  */
 public final class QuoteCalculator {
 
+    /** 10^0 .. 10^18 */
+    private static final long[] POW10 = new long[19];
+
+    static {
+        POW10[0] = 1L;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
     private QuoteCalculator() {
     }
 
@@ -35,6 +47,24 @@ public final class QuoteCalculator {
      * @return 名义额（计价币最小单位，long）；结果超出 long 范围时抛 {@link ArithmeticException} 而非静默回绕
      */
     public static long quoteAmount(long price, long qty, int pricePrecision, int amountPrecision, int quoteDecimals) {
+        // 快路径：乘积与 10 的幂缩放都不溢出 long 时用整数运算（结果与 BigDecimal 完全一致，且不分配对象）
+        int shift = quoteDecimals - pricePrecision - amountPrecision;
+        if (shift > -POW10.length && shift < POW10.length && fitsLong(price, qty)) {
+            long prod = price * qty;
+            if (shift >= 0) {
+                if (fitsLong(prod, POW10[shift])) {
+                    return prod * POW10[shift];
+                }
+            } else {
+                long d = POW10[-shift];
+                long q = prod / d;
+                long r = prod % d;
+                if (Math.abs(r) * 2 >= d) {
+                    q += prod < 0 ? -1 : 1; // HALF_UP：远离 0 方向进位
+                }
+                return q;
+            }
+        }
         BigDecimal p = BigDecimal.valueOf(price).movePointLeft(pricePrecision);
         BigDecimal q = BigDecimal.valueOf(qty).movePointLeft(amountPrecision);
         return p.multiply(q)
@@ -43,6 +73,13 @@ public final class QuoteCalculator {
                 .longValueExact();
     }
 
+    /** a × b 是否不溢出 long。 */
+    private static boolean fitsLong(long a, long b) {
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        return (hi == 0 && lo >= 0) || (hi == -1 && lo < 0);
+    }
+
     /**
      * 精度上下文：封装某交易对/某币种对的 price_precision、amount_precision、quoteDecimals，
      * 供撮合引擎与下单冻结在同一精度约定下复用（保证买卖双方累计 quoteAmount 用同一算法）。
@@ -65,6 +102,18 @@ public final class QuoteCalculator {
             return QuoteCalculator.quoteAmount(price, qty, pricePrecision, amountPrecision, quoteDecimals);
         }
 
+        public int getPricePrecision() {
+            return pricePrecision;
+        }
+
+        public int getAmountPrecision() {
+            return amountPrecision;
+        }
+
+        public int getQuoteDecimals() {
+            return quoteDecimals;
+        }
+
         /** 全 0 精度上下文：quoteAmount = price × qty（撮合单测/无精度场景兜底）。 */
         public static final PrecisionContext ZERO = new PrecisionContext(0, 0, 0);
     }
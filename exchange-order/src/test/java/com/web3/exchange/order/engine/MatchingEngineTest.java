@@ -1,12 +1,15 @@
 package com.web3.exchange.order.engine;
 
 import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.dto.DepthVO;
 import com.web3.exchange.order.entity.Order;
 import com.web3.exchange.order.entity.Trade;
 import org.junit.jupiter.api.Test;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -50,9 +53,9 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 3, 3, 4);
         MatchingEngine.MatchResult r = engine.match(buy);
 
-        assertEquals(1, r.trades.size());
-        assertEquals(99L, r.trades.get(0).getPrice(), "必须先与最低卖价 @99 成交");
-        assertEquals(3L, r.trades.get(0).getQuantity());
+        assertEquals(1, r.trades().size());
+        assertEquals(99L, r.trades().get(0).getPrice(), "必须先与最低卖价 @99 成交");
+        assertEquals(3L, r.trades().get(0).getQuantity());
     }
 
     @Test
@@ -65,8 +68,8 @@ class MatchingEngineTest {
         Order sell = order(10, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 10, 4, 4, 4);
         MatchingEngine.MatchResult r = engine.match(sell);
 
-        assertEquals(1, r.trades.size());
-        assertEquals(11L, r.trades.get(0).getPrice(), "必须先与最高买价 @11 成交");
+        assertEquals(1, r.trades().size());
+        assertEquals(11L, r.trades().get(0).getPrice(), "必须先与最高买价 @11 成交");
     }
 
     @Test
@@ -78,11 +81,11 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 7, 7, 3);
         MatchingEngine.MatchResult r = engine.match(buy);
 
-        assertEquals(2, r.trades.size());
-        assertEquals("O1", r.trades.get(0).getMakerOrderNo(), "先挂单者 A 优先成交");
-        assertEquals(5L, r.trades.get(0).getQuantity());
-        assertEquals("O2", r.trades.get(1).getMakerOrderNo());
-        assertEquals(2L, r.trades.get(1).getQuantity());
+        assertEquals(2, r.trades().size());
+        assertEquals("O1", r.trades().get(0).getMakerOrderNo(), "先挂单者 A 优先成交");
+        assertEquals(5L, r.trades().get(0).getQuantity());
+        assertEquals("O2", r.trades().get(1).getMakerOrderNo());
+        assertEquals(2L, r.trades().get(1).getQuantity());
     }
 
     @Test
@@ -91,8 +94,8 @@ class MatchingEngineTest {
         engine.match(order(1, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 100, 5, 5, 1));
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 3, 3, 2);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertEquals(1, r.trades.size());
-        Trade t = r.trades.get(0);
+        assertEquals(1, r.trades().size());
+        Trade t = r.trades().get(0);
         assertEquals(3L, t.getQuantity(), "qty==min(3,5)");
         assertEquals(100L * 3, t.getQuoteAmount(), "quote==price*qty");
         assertEquals(0L, buy.getRemaining(), "吃单剩余归零 → FILLED");
@@ -105,7 +108,7 @@ class MatchingEngineTest {
         engine.match(order(1, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 101, 5, 5, 1));
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 2, 2, 2);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertTrue(r.trades.isEmpty(), "限价买 @100 不能穿透 @101 卖单");
+        assertTrue(r.trades().isEmpty(), "限价买 @100 不能穿透 @101 卖单");
         assertEquals(OrderConstant.STATUS_NEW, buy.getStatus(), "未成交限价单入簿保持 NEW");
 
         // 独立引擎，避免上一子用例的挂单残留
@@ -113,7 +116,7 @@ class MatchingEngineTest {
         engine2.match(order(2, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 9, 5, 5, 3));
         Order sell = order(11, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 10, 2, 2, 4);
         MatchingEngine.MatchResult r2 = engine2.match(sell);
-        assertTrue(r2.trades.isEmpty(), "限价卖 @10 不能穿透 @9 买单");
+        assertTrue(r2.trades().isEmpty(), "限价卖 @10 不能穿透 @9 买单");
     }
 
     @Test
@@ -123,9 +126,9 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_MARKET, 0, 0, 0, 2);
         buy.setQuoteAmount(1000L);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertEquals(1, r.trades.size());
-        assertEquals(6L, r.trades.get(0).getQuantity());
-        assertEquals(600L, r.trades.get(0).getQuoteAmount());
+        assertEquals(1, r.trades().size());
+        assertEquals(6L, r.trades().get(0).getQuantity());
+        assertEquals(600L, r.trades().get(0).getQuoteAmount());
         assertEquals(400L, buy.getQuoteAmount(), "剩余预算 400 不再成交");
     }
 
@@ -136,11 +139,11 @@ class MatchingEngineTest {
         engine.match(order(2, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 9, 4, 4, 2));
         Order sell = order(10, OrderConstant.SIDE_SELL, OrderConstant.TYPE_MARKET, 0, 5, 5, 3);
         MatchingEngine.MatchResult r = engine.match(sell);
-        assertEquals(2, r.trades.size());
-        assertEquals(10L, r.trades.get(0).getPrice());
-        assertEquals(3L, r.trades.get(0).getQuantity());
-        assertEquals(9L, r.trades.get(1).getPrice());
-        assertEquals(2L, r.trades.get(1).getQuantity());
+        assertEquals(2, r.trades().size());
+        assertEquals(10L, r.trades().get(0).getPrice());
+        assertEquals(3L, r.trades().get(0).getQuantity());
+        assertEquals(9L, r.trades().get(1).getPrice());
+        assertEquals(2L, r.trades().get(1).getQuantity());
         assertEquals(0L, sell.getRemaining(), "不超卖");
     }
 
@@ -155,8 +158,8 @@ class MatchingEngineTest {
         // 后续再买 4 → 吃满剩余 3，卖单 FILLED
         Order buy2 = order(11, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 4, 4, 3);
         MatchingEngine.MatchResult r = engine.match(buy2);
-        assertEquals(1, r.trades.size());
-        assertEquals(3L, r.trades.get(0).getQuantity());
+        assertEquals(1, r.trades().size());
+        assertEquals(3L, r.trades().get(0).getQuantity());
         assertEquals(OrderConstant.STATUS_PARTIAL, buy2.getStatus(), "再买4只成交3 → PARTIAL");
     }
 
@@ -169,7 +172,7 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 3, 3, 2);
         buy.setTimeInForce(OrderConstant.TIF_POST_ONLY);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertTrue(r.trades.isEmpty(), "PostOnly 交叉价不成交");
+        assertTrue(r.trades().isEmpty(), "PostOnly 交叉价不成交");
         assertEquals(OrderConstant.STATUS_REJECTED, buy.getStatus());
         assertEquals("PostOnly订单可能立即成交", buy.getRemark());
         assertEquals(1, engine.orderCount("BTC/USDT"), "拒绝单不挂簿，盘口仅剩原卖单");
@@ -182,7 +185,7 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 3, 3, 2);
         buy.setTimeInForce(OrderConstant.TIF_POST_ONLY);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertTrue(r.trades.isEmpty(), "PostOnly 不交叉不成交");
+        assertTrue(r.trades().isEmpty(), "PostOnly 不交叉不成交");
         assertEquals(OrderConstant.STATUS_NEW, buy.getStatus());
         assertEquals(2, engine.orderCount("BTC/USDT"), "PostOnly 不交叉单挂簿");
     }
@@ -194,8 +197,8 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 7, 7, 2);
         buy.setTimeInForce(OrderConstant.TIF_IOC);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertEquals(1, r.trades.size());
-        assertEquals(5L, r.trades.get(0).getQuantity());
+        assertEquals(1, r.trades().size());
+        assertEquals(5L, r.trades().get(0).getQuantity());
         assertEquals(2L, buy.getRemaining(), "IOC 剩余保留但作废");
         assertEquals(OrderConstant.STATUS_CANCELLED, buy.getStatus(), "IOC 部分成交剩余作废→终态取消");
         assertEquals(0, engine.orderCount("BTC/USDT"), "IOC 剩余不挂簿(卖单已满成)");
@@ -208,7 +211,7 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 3, 3, 2);
         buy.setTimeInForce(OrderConstant.TIF_IOC);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertTrue(r.trades.isEmpty());
+        assertTrue(r.trades().isEmpty());
         assertEquals(OrderConstant.STATUS_CANCELLED, buy.getStatus(), "IOC 未成交剩余作废→取消");
         assertEquals(1, engine.orderCount("BTC/USDT"), "IOC 不挂簿，仅剩原卖单");
     }
@@ -220,7 +223,7 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 7, 7, 2);
         buy.setTimeInForce(OrderConstant.TIF_FOK);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertTrue(r.trades.isEmpty(), "FOK 不足整单不成交");
+        assertTrue(r.trades().isEmpty(), "FOK 不足整单不成交");
         assertEquals(OrderConstant.STATUS_CANCELLED, buy.getStatus());
         assertEquals(1, engine.orderCount("BTC/USDT"), "FOK 取消不挂簿，仅剩原卖单");
     }
@@ -232,9 +235,99 @@ class MatchingEngineTest {
         Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 100, 5, 5, 2);
         buy.setTimeInForce(OrderConstant.TIF_FOK);
         MatchingEngine.MatchResult r = engine.match(buy);
-        assertEquals(1, r.trades.size());
-        assertEquals(5L, r.trades.get(0).getQuantity());
+        assertEquals(1, r.trades().size());
+        assertEquals(5L, r.trades().get(0).getQuantity());
         assertEquals(0L, buy.getRemaining());
         assertEquals(OrderConstant.STATUS_FILLED, buy.getStatus());
     }
+
+    @Test
+    void fok_marketBuy_budgetAcrossLevels() {
+        // 簿内卖 @100 x5 + @101 x5（可花费 1005）：FOK 市价买预算 1006 → 取消；预算 1005 → 两档吃满
+        engine.match(order(1, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 100, 5, 5, 1));
+        engine.match(order(2, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 101, 5, 5, 2));
+
+        Order tooBig = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_MARKET, 0, 0, 0, 3);
+        tooBig.setQuoteAmount(1006L);
+        tooBig.setTimeInForce(OrderConstant.TIF_FOK);
+        assertTrue(engine.match(tooBig).trades().isEmpty());
+        assertEquals(OrderConstant.STATUS_CANCELLED, tooBig.getStatus());
+
+        Order exact = order(11, OrderConstant.SIDE_BUY, OrderConstant.TYPE_MARKET, 0, 0, 0, 4);
+        exact.setQuoteAmount(1005L);
+        exact.setTimeInForce(OrderConstant.TIF_FOK);
+        assertEquals(2, engine.match(exact).trades().size());
+        assertEquals(0L, exact.getQuoteAmount(), "预算恰好花完");
+        assertEquals(0, engine.orderCount("BTC/USDT"));
+    }
+
+    @Test
+    void reusableResult_clearedPerMatch_tradesMaterializedOnce() {
+        // 复用同一结果缓冲（容量 1 触发扩容）：每次撮合先清空；trades() 只物化一次，成交号 = 成交 id
+        MatchingEngine.MatchResult buf = new MatchingEngine.MatchResult(1);
+        engine.match(order(1, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 100, 5, 5, 1));
+        engine.match(order(2, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 101, 5, 5, 2));
+        engine.match(order(3, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 102, 5, 5, 3));
+
+        Order buy = order(10, OrderConstant.SIDE_BUY, OrderConstant.TYPE_LIMIT, 101, 8, 8, 4);
+        engine.match(buy, com.web3.exchange.order.util.QuoteCalculator.PrecisionContext.ZERO, buf);
+        assertEquals(2, buf.fillCount());
+        assertEquals(2, buf.changedMakers().size());
+        MatchingEngine.Fills fills = buf.fills();
+        assertEquals(2, fills.size());
+        List<Trade> trades = buf.trades();
+        assertTrue(trades == buf.trades(), "同一结果只物化一次");
+        assertTrue(trades == fills.trades(), "锁内拷贝的成交与调用方共用同一批实体");
+        assertEquals(String.valueOf(trades.get(0).getId()), trades.get(0).getTradeNo());
+        assertEquals(trades.get(0).getTradeNo() + ":Q", trades.get(0).getSettleQuoteRequestId());
+        assertEquals(8L, buy.getFilledAmount());
+        assertEquals(5L * 100 + 3L * 101, buy.getFilledQuoteAmount(), "吃单累计量撮合结束时写回");
+        assertEquals(2, buy.getTradeCount());
+
+        Order sell = order(11, OrderConstant.SIDE_SELL, OrderConstant.TYPE_LIMIT, 200, 1, 1, 5);
+        engine.match(sell, com.web3.exchange.order.util.QuoteCalculator.PrecisionContext.ZERO, buf);
+        assertEquals(0, buf.fillCount(), "复用前已清空");
+        assertTrue(buf.trades().isEmpty());
+        assertEquals(2, fills.trades().size(), "拷贝与复用缓冲解耦");
+    }
+
+    @Test
+    void depth_incrementalView_matchesFullAggregation() {
+        // 随机挂单/吃单/撤单 2000 步：增量快照前 N 档 == 加锁全量聚合；每条改变盘口的命令 updateId 加一
+        long commands = 0;
+        SplittableRandom rnd = new SplittableRandom(5);
+        List<Order> resting = new ArrayList<>();
+        for (int i = 1; i <= 2000; i++) {
+            if (!resting.isEmpty() && rnd.nextInt(3) == 0) {
+                if (engine.takeBookOrder(resting.remove(rnd.nextInt(resting.size()))) != null) {
+                    commands++; // 已被吃完的挂单不在簿中，撤单不改变盘口
+                }
+                continue;
+            }
+            int side = rnd.nextBoolean() ? OrderConstant.SIDE_BUY : OrderConstant.SIDE_SELL;
+            long price = side == OrderConstant.SIDE_BUY ? 940 + rnd.nextInt(70) : 990 + rnd.nextInt(70);
+            long qty = 1 + rnd.nextInt(20);
+            Order o = order(i, side, OrderConstant.TYPE_LIMIT, price, qty, qty, i);
+            engine.match(o);
+            commands++; // 限价单要么成交要么挂单，必然改变盘口
+            if (o.getRemaining() > 0) {
+                resting.add(o);
+            }
+            if (i % 10 == 0) {
+                DepthVO all = engine.depth("BTC/USDT", 1000);
+                DepthVO cached = engine.depth("BTC/USDT", MatchingEngine.DEPTH_LEVELS);
+                assertEquals(all.getBids().subList(0, Math.min(all.getBids().size(), MatchingEngine.DEPTH_LEVELS)), cached.getBids());
+                assertEquals(all.getAsks().subList(0, Math.min(all.getAsks().size(), MatchingEngine.DEPTH_LEVELS)), cached.getAsks());
+            }
+        }
+
+        DepthVO full = engine.depth("BTC/USDT", 1000);
+        DepthView view = engine.depthView("BTC/USDT");
+        assertEquals(commands, view.updateId(), "每条改变盘口的命令一个 updateId");
+        assertEquals(view.updateId(), full.getLastUpdateId());
+        DepthVO top = engine.depth("BTC/USDT", MatchingEngine.DEPTH_LEVELS);
+        assertEquals(full.getBids().subList(0, top.getBids().size()), top.getBids());
+        assertEquals(full.getAsks().subList(0, top.getAsks().size()), top.getAsks());
+        assertEquals(Math.min(full.getBids().size(), MatchingEngine.DEPTH_LEVELS), view.bidLevels());
+    }
 }
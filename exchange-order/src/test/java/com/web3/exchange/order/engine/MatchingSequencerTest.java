@@ -0,0 +1,139 @@
+package com.web3.exchange.order.engine;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 撮合定序器 / MPSC 环形队列单测：多生产者并发入队不丢不重、定序器模式撮合结果与直连一致。
+ */
+class MatchingSequencerTest {
+
+    private MatchingSequencer sequencer;
+
+    @AfterEach
+    void tearDown() {
+        if (sequencer != null) {
+            sequencer.stop();
+        }
+    }
+
+    private Order order(long id, int side, long price, long qty) {
+        Order o = new Order();
+        o.setId(id);
+        o.setOrderNo("O" + id);
+        o.setUserId(id);
+        o.setSymbol("BTC/USDT");
+        o.setSide(side);
+        o.setOrderType(OrderConstant.TYPE_LIMIT);
+        o.setPrice(price);
+        o.setQuantity(qty);
+        o.setRemaining(qty);
+        o.setFilledAmount(0L);
+        o.setFilledQuoteAmount(0L);
+        o.setAvgPrice(0L);
+        o.setTradeCount(0);
+        o.setCreateTime(LocalDateTime.of(2026, 1, 1, 0, 0).plusNanos(id));
+        return o;
+    }
+
+    @Test
+    void ring_fullAndWrapAround() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(3);
+        assertEquals(4, ring.capacity(), "容量向上取整为 2 的幂");
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(99), "队满返回 false");
+        assertEquals(0, ring.poll());
+        assertTrue(ring.offer(4), "消费一个后可再入队（回绕）");
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, ring.poll());
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void ring_multiProducer_noLossNoDuplicate() throws Exception {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(1024);
+        int producers = 4;
+        int perProducer = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            Thread t = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!ring.offer(base + i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        boolean[] seen = new boolean[producers * perProducer];
+        int[] lastPerProducer = new int[producers];
+        java.util.Arrays.fill(lastPerProducer, -1);
+        int received = 0;
+        while (received < seen.length) {
+            Integer v = ring.poll();
+            if (v == null) {
+                Thread.onSpinWait();
+                continue;
+            }
+            assertFalse(seen[v], "元素重复: " + v);
+            seen[v] = true;
+            int p = v / perProducer;
+            assertTrue(v > lastPerProducer[p], "单生产者内保持 FIFO");
+            lastPerProducer[p] = v;
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(ring.poll());
+    }
+
+    @Test
+    void sequencerMode_matchesLikeDirectEngine() throws Exception {
+        MatchingEngine engine = new MatchingEngine();
+        sequencer = new MatchingSequencer(engine, true, 2, 64);
+        sequencer.start();
+
+        sequencer.match(order(1, OrderConstant.SIDE_SELL, 100, 5), PrecisionContext.ZERO);
+        sequencer.match(order(2, OrderConstant.SIDE_SELL, 100, 5), PrecisionContext.ZERO);
+        CompletableFuture<MatchingEngine.MatchResult> f =
+                sequencer.submit(order(10, OrderConstant.SIDE_BUY, 100, 7), PrecisionContext.ZERO);
+        MatchingEngine.MatchResult r = f.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, r.trades().size());
+        assertEquals("O1", r.trades().get(0).getMakerOrderNo(), "时间优先不变");
+        assertEquals(5L, r.trades().get(0).getQuantity());
+        assertEquals(2L, r.trades().get(1).getQuantity());
+
+        Order rest = order(2, OrderConstant.SIDE_SELL, 100, 3);
+        assertEquals(3L, sequencer.cancel(rest).getRemaining(), "撤单经同一撮合线程串行执行，返回簿内最新状态");
+        assertEquals(0, engine.orderCount("BTC/USDT"));
+    }
+}
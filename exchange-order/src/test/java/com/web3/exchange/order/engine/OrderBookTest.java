@@ -0,0 +1,115 @@
+package com.web3.exchange.order.engine;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 订单簿数据结构单测：档内 FIFO 链表 / orderId 索引撤单 / 档位缓存量 / 按档可成交量与扫档估算。
+ */
+class OrderBookTest {
+
+    private final OrderBook book = new OrderBook();
+
+    private Order order(long id, int side, long price, long remaining, int seq) {
+        Order o = new Order();
+        o.setId(id);
+        o.setOrderNo("O" + id);
+        o.setSymbol("BTC/USDT");
+        o.setSide(side);
+        o.setOrderType(OrderConstant.TYPE_LIMIT);
+        o.setPrice(price);
+        o.setQuantity(remaining);
+        o.setRemaining(remaining);
+        o.setCreateTime(LocalDateTime.of(2026, 1, 1, 0, 0).plusSeconds(seq));
+        return o;
+    }
+
+    @Test
+    void fifo_outOfOrderArrival_sortedByCreateTime() {
+        // 恢复场景乱序入簿：后到的早单应排在档首
+        book.add(order(2, OrderConstant.SIDE_SELL, 100, 5, 2));
+        book.add(order(1, OrderConstant.SIDE_SELL, 100, 5, 1));
+        book.add(order(3, OrderConstant.SIDE_SELL, 100, 5, 3));
+        assertEquals(1L, book.bestAsk().getId());
+        assertEquals(3, book.allAsks().size());
+        assertEquals(3L, book.allAsks().get(2).getId());
+    }
+
+    @Test
+    void removeById_middleOfLevel_keepsQueueAndAggregate() {
+        book.add(order(1, OrderConstant.SIDE_BUY, 100, 5, 1));
+        book.add(order(2, OrderConstant.SIDE_BUY, 100, 7, 2));
+        book.add(order(3, OrderConstant.SIDE_BUY, 100, 9, 3));
+
+        assertFalse(book.removeById(OrderConstant.SIDE_BUY, 101L, 2L), "价格不符不移除");
+        assertFalse(book.removeById(OrderConstant.SIDE_SELL, 100L, 2L), "方向不符不移除");
+        assertTrue(book.removeById(OrderConstant.SIDE_BUY, 100L, 2L));
+        assertFalse(book.removeById(OrderConstant.SIDE_BUY, 100L, 2L), "重复撤单返回 false");
+
+        assertEquals(2, book.size());
+        assertEquals(1L, book.bestBid().getId());
+        OrderBook.DepthSnapshot d = book.depth(5);
+        assertEquals(1, d.bids.size());
+        assertEquals(14L, d.bids.get(0)[1], "档位缓存量 = 5 + 9");
+    }
+
+    @Test
+    void reduce_partialThenFull_updatesLevelAndDropsEmptyLevel() {
+        Order maker = order(1, OrderConstant.SIDE_SELL, 100, 5, 1);
+        book.add(maker);
+        book.add(order(2, OrderConstant.SIDE_SELL, 101, 4, 2));
+
+        maker.setRemaining(3L);
+        book.reduce(maker, 2);
+        assertEquals(3L, book.depth(1).asks.get(0)[1]);
+
+        maker.setRemaining(0L);
+        book.reduce(maker, 3);
+        assertEquals(101L, book.bestAsk().getPrice(), "档位清空后最优价前移");
+        assertEquals(1, book.depth(5).asks.size());
+    }
+
+    @Test
+    void removePriceLevel_clearsIndex() {
+        book.add(order(1, OrderConstant.SIDE_SELL, 100, 5, 1));
+        book.add(order(2, OrderConstant.SIDE_SELL, 100, 5, 2));
+        book.removePriceLevel(OrderConstant.SIDE_SELL, 100L);
+        assertNull(book.bestAsk());
+        assertEquals(0, book.size());
+        assertFalse(book.removeById(OrderConstant.SIDE_SELL, 100L, 1L));
+    }
+
+    @Test
+    void liquidityAndSweep_accumulateLevelsWithinBound() {
+        book.add(order(1, OrderConstant.SIDE_SELL, 100, 5, 1));
+        book.add(order(2, OrderConstant.SIDE_SELL, 100, 3, 2));
+        book.add(order(3, OrderConstant.SIDE_SELL, 101, 4, 3));
+        book.add(order(4, OrderConstant.SIDE_SELL, 103, 6, 4));
+        book.add(order(5, OrderConstant.SIDE_BUY, 99, 2, 5));
+        book.add(order(6, OrderConstant.SIDE_BUY, 97, 7, 6));
+
+        assertEquals(12L, book.liquidity(OrderConstant.SIDE_SELL, 102L, 100), "卖盘 <=102：8 + 4");
+        assertEquals(8L, book.liquidity(OrderConstant.SIDE_SELL, null, 6), "首档已满足即停止累加");
+        assertEquals(2L, book.liquidity(OrderConstant.SIDE_BUY, 98L, 100), "买盘 >=98：仅 @99");
+        assertEquals(9L, book.liquidity(OrderConstant.SIDE_BUY, null, 100));
+
+        // 名义额（全 0 精度）：100×8 + 101×4 = 1204
+        assertEquals(1204L, book.askNotional(PrecisionContext.ZERO, 1204));
+        assertEquals(800L, book.askNotional(PrecisionContext.ZERO, 500), "首档已满足预算即停止");
+
+        assertEquals(101L, book.sweepPrice(OrderConstant.SIDE_SELL, 10));
+        assertEquals(103L, book.sweepPrice(OrderConstant.SIDE_SELL, 1000), "盘口不足取最深档");
+        assertEquals(97L, book.sweepPrice(OrderConstant.SIDE_BUY, 3));
+        assertEquals(101L, book.sweepPriceByQuote(PrecisionContext.ZERO, 1000));
+        assertNull(new OrderBook().sweepPrice(OrderConstant.SIDE_SELL, 1));
+    }
+}
@@ -0,0 +1,159 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.dto.DepthVO;
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 引擎事件日志 / 快照单测：分段滚动、快照 + 尾部重放恢复出与原引擎一致的盘口、重放成交与记录一致、
+ * 多线程并发追加时组提交按 seq 连续落盘。
+ */
+class EventJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private Order order(long id, int side, long price, long qty) {
+        Order o = new Order();
+        o.setId(id);
+        o.setOrderNo("O" + id);
+        o.setUserId(id % 7);
+        o.setSymbol(id % 2 == 0 ? "BTC/USDT" : "ETH/USDT");
+        o.setSide(side);
+        o.setOrderType(OrderConstant.TYPE_LIMIT);
+        o.setPrice(price);
+        o.setQuantity(qty);
+        o.setRemaining(qty);
+        o.setFilledAmount(0L);
+        o.setFilledQuoteAmount(0L);
+        o.setAvgPrice(0L);
+        o.setTradeCount(0);
+        o.setCreateTime(LocalDateTime.of(2026, 1, 1, 0, 0).plusNanos(id * 1000));
+        return o;
+    }
+
+    /** 随机限价单流 + 部分撤单，交易对按 id 奇偶分布。 */
+    private void drive(MatchingEngine engine, long fromId, long toId, Random rnd) {
+        List<Order> resting = new ArrayList<>();
+        for (long id = fromId; id < toId; id++) {
+            int side = rnd.nextBoolean() ? OrderConstant.SIDE_BUY : OrderConstant.SIDE_SELL;
+            Order o = order(id, side, 95 + rnd.nextInt(10), 1 + rnd.nextInt(20));
+            if (rnd.nextInt(10) == 0) {
+                o.setTimeInForce(OrderConstant.TIF_IOC);
+            }
+            engine.match(o, PrecisionContext.ZERO);
+            if (o.getRemaining() > 0 && o.getStatus() != OrderConstant.STATUS_CANCELLED) {
+                resting.add(o);
+            }
+            if (rnd.nextInt(5) == 0 && !resting.isEmpty()) {
+                engine.takeBookOrder(resting.remove(rnd.nextInt(resting.size())));
+            }
+        }
+    }
+
+    private static void assertSameBooks(MatchingEngine expected, MatchingEngine actual) {
+        for (String symbol : List.of("BTC/USDT", "ETH/USDT")) {
+            assertEquals(expected.orderCount(symbol), actual.orderCount(symbol), symbol + " 挂单数");
+            DepthVO e = expected.depth(symbol, 100);
+            DepthVO a = actual.depth(symbol, 100);
+            assertEquals(e.getBids(), a.getBids(), symbol + " 买盘");
+            assertEquals(e.getAsks(), a.getAsks(), symbol + " 卖盘");
+        }
+    }
+
+    @Test
+    void snapshotPlusTailReplay_restoresIdenticalBooks() throws Exception {
+        MatchingEngine live = new MatchingEngine();
+        EventJournal journal = new EventJournal(dir, 16 * 1024, false);
+        BookSnapshotStore store = new BookSnapshotStore(dir);
+        live.setEventLog(journal);
+        Random rnd = new Random(42);
+
+        drive(live, 1, 800, rnd);
+        long seq = journal.lastSeq();
+        List<byte[]> books = new ArrayList<>();
+        live.forEachBook((symbol, orders) -> books.add(BookSnapshotStore.encodeBook(symbol, journal.lastSeq(), orders)));
+        store.save(seq, books);
+        journal.truncateBefore(seq);
+        drive(live, 800, 1600, rnd);
+        journal.close();
+
+        long segments;
+        try (Stream<Path> s = Files.list(dir)) {
+            segments = s.filter(p -> p.toString().endsWith(".seg")).count();
+        }
+        assertTrue(segments > 1, "小段容量下应发生滚动");
+
+        MatchingEngine restored = new MatchingEngine();
+        BookSnapshotStore.Snapshot snap = store.loadLatest();
+        assertNotNull(snap);
+        JournalReplayer.Result r = JournalReplayer.restore(restored, snap, dir, true, null);
+        assertTrue(r.replayed() > 0, "快照之后的命令被重放");
+        assertEquals(List.of(), r.mismatches(), "重放成交与日志记录一致");
+        assertSameBooks(live, restored);
+
+        // 重新打开日志：seq 接续，不覆盖已有记录
+        try (EventJournal reopened = new EventJournal(dir, 16 * 1024, false)) {
+            assertEquals(r.lastSeq(), reopened.lastSeq());
+        }
+    }
+
+    @Test
+    void replayFromStart_withoutSnapshot() throws Exception {
+        MatchingEngine live = new MatchingEngine();
+        try (EventJournal journal = new EventJournal(dir, 1024 * 1024, false)) {
+            live.setEventLog(journal);
+            drive(live, 1, 300, new Random(7));
+        }
+        MatchingEngine restored = new MatchingEngine();
+        JournalReplayer.Result r = JournalReplayer.restore(restored, null, dir, true, null);
+        assertEquals(List.of(), r.mismatches());
+        assertSameBooks(live, restored);
+    }
+
+    @Test
+    void concurrentWriters_groupCommitContiguousSeqs_andReplayMatches() throws Exception {
+        MatchingEngine live = new MatchingEngine();
+        EventJournal journal = new EventJournal(dir, 64 * 1024, false);
+        live.setEventLog(journal);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long from = 1 + t * 10_000L;
+            Random rnd = new Random(t);
+            threads.add(new Thread(() -> drive(live, from, from + 500, rnd)));
+        }
+        threads.forEach(Thread::start);
+        for (Thread t : threads) {
+            t.join();
+        }
+        long assigned = journal.lastSeq();
+        journal.close();
+
+        List<Long> seqs = new ArrayList<>();
+        EventJournal.scan(dir, 0L, r -> seqs.add(r.seq));
+        assertEquals(assigned, seqs.size(), "每条已分配的记录都已写入");
+        for (int i = 0; i < seqs.size(); i++) {
+            assertEquals(i + 1L, seqs.get(i), "按 seq 连续写入");
+        }
+        MatchingEngine restored = new MatchingEngine();
+        JournalReplayer.Result r = JournalReplayer.restore(restored, null, dir, true, null);
+        assertEquals(List.of(), r.mismatches());
+        assertSameBooks(live, restored);
+    }
+}
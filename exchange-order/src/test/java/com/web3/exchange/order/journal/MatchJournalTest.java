@@ -0,0 +1,82 @@
+package com.web3.exchange.order.journal;
+
+import com.web3.exchange.order.entity.Trade;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 撮合写后置日志单测：seq 分配、checkpoint 之后的重放、尾部残行忽略、组提交与滚动新段。
+ */
+class MatchJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private MatchRecord record(String tradeNo) {
+        Trade t = new Trade();
+        t.setTradeNo(tradeNo);
+        List<Trade> trades = new ArrayList<>();
+        trades.add(t);
+        return new MatchRecord(trades, new ArrayList<>());
+    }
+
+    @Test
+    void pendingAfterCheckpoint_survivesReopenAndTornTail() throws Exception {
+        try (MatchJournal j = new MatchJournal(dir, false, 1 << 20)) {
+            assertEquals(1L, j.append(record("T1")));
+            assertEquals(2L, j.append(record("T2")));
+            assertEquals(3L, j.append(record("T3")));
+            j.checkpoint(1);
+        }
+        Files.writeString(dir.resolve("match.journal"), "{\"seq\":4,\"trades\":[{\"tradeNo\"",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (MatchJournal j = new MatchJournal(dir, false, 1 << 20)) {
+            List<MatchRecord> pending = j.pending();
+            assertEquals(2, pending.size(), "仅重放 checkpoint 之后的完整记录");
+            assertEquals("T2", pending.get(0).trades.get(0).getTradeNo());
+            assertEquals(3L, pending.get(1).seq);
+            assertEquals(1L, j.checkpointSeq());
+
+            j.checkpoint(3);
+            assertEquals(0, j.pending().size(), "全部落库后日志截断");
+            assertEquals(4L, j.append(record("T4")), "seq 跨截断继续递增");
+        }
+        try (MatchJournal j = new MatchJournal(dir, false, 1 << 20)) {
+            assertEquals("T4", j.pending().get(0).trades.get(0).getTradeNo(), "残行已截掉，新记录可读");
+        }
+    }
+
+    @Test
+    void appendAll_groupCommits_andCheckpointRollsLiveTail() throws Exception {
+        try (MatchJournal j = new MatchJournal(dir, false, 64)) {
+            assertEquals(3L, j.appendAll(List.of(record("T1"), record("T2"), record("T3"))));
+            assertEquals(4L, j.append(record("T4")));
+            long before = Files.size(dir.resolve("match.journal"));
+
+            // 已落库前缀超过阈值：只把 seq 3、4 的字节拷到新段
+            j.checkpoint(2);
+            assertTrue(Files.size(dir.resolve("match.journal")) < before);
+            assertEquals(5L, j.appendAll(List.of(record("T5"))));
+            j.checkpoint(3);
+        }
+        try (MatchJournal j = new MatchJournal(dir, false, 64)) {
+            List<MatchRecord> pending = j.pending();
+            assertEquals(List.of(4L, 5L), pending.stream().map(r -> r.seq).toList());
+            assertEquals("T4", pending.get(0).trades.get(0).getTradeNo());
+            assertEquals(6L, j.append(record("T6")), "滚动后 seq 连续");
+            j.checkpoint(6);
+            assertEquals(0L, Files.size(dir.resolve("match.journal")));
+        }
+    }
+}
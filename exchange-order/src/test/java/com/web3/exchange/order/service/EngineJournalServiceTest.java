@@ -0,0 +1,193 @@
+package com.web3.exchange.order.service;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.mapper.OrderMapper;
+import com.web3.exchange.order.util.QuoteCalculator.PrecisionContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * EngineJournalService 纪元校验与 DB 对账单测（t_engine_journal_epoch 用内存单行替身，t_order 用内存 Map 替身）：
+ * 纪元一致且重放结果与 DB 一致才算恢复成功；中途以关闭日志方式运行过、同步撮合事务回滚过，或日志含未落库的撮合，
+ * 均拒绝重放、回退 DB 重建。
+ */
+class EngineJournalServiceTest {
+
+    @TempDir
+    Path dir;
+
+    /** t_engine_journal_epoch 的唯一一行 */
+    private final List<String> epochRow = new ArrayList<>();
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    /** t_order 替身：id → 已提交的订单行 */
+    private final Map<Long, Order> db = new HashMap<>();
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+
+    @BeforeEach
+    void setUp() {
+        when(jdbc.queryForList(anyString(), eq(String.class))).thenAnswer(inv -> new ArrayList<>(epochRow));
+        when(jdbc.update(anyString(), any(Object[].class))).thenAnswer(inv -> {
+            epochRow.clear();
+            epochRow.add(inv.getArgument(1));
+            return 1;
+        });
+        when(jdbc.update(anyString())).thenAnswer(inv -> {
+            epochRow.replaceAll(e -> null);
+            return 1;
+        });
+        when(orderMapper.selectBatchIds(any())).thenAnswer(inv -> {
+            List<Order> rows = new ArrayList<>();
+            for (Object id : (Collection<?>) inv.getArgument(0)) {
+                if (db.containsKey(id)) {
+                    rows.add(db.get(id));
+                }
+            }
+            return rows;
+        });
+    }
+
+    private EngineJournalService service(MatchingEngine engine, boolean enabled) {
+        EngineJournalService s = new EngineJournalService(engine, jdbc, orderMapper, enabled, dir.toString(), 1, false);
+        s.open();
+        return s;
+    }
+
+    private static Order order(long id, int side, long price) {
+        Order o = new Order();
+        o.setId(id);
+        o.setOrderNo("O" + id);
+        o.setUserId(id);
+        o.setSymbol("BTC/USDT");
+        o.setSide(side);
+        o.setOrderType(OrderConstant.TYPE_LIMIT);
+        o.setPrice(price);
+        o.setQuantity(10L);
+        o.setRemaining(10L);
+        o.setFilledAmount(0L);
+        o.setFilledQuoteAmount(0L);
+        o.setAvgPrice(0L);
+        o.setTradeCount(0);
+        o.setStatus(OrderConstant.STATUS_NEW);
+        o.setCreateTime(LocalDateTime.of(2026, 1, 1, 0, 0).plusSeconds(id));
+        return o;
+    }
+
+    /** 撮合并把结果作为已提交的库行记下（同步模式事务提交）。 */
+    private void matchAndCommit(MatchingEngine engine, Order taker) {
+        MatchingEngine.MatchResult r = engine.match(taker, PrecisionContext.ZERO);
+        db.put(taker.getId(), copy(taker));
+        for (Order maker : r.changedMakers()) {
+            db.put(maker.getId(), copy(maker));
+        }
+    }
+
+    private static Order copy(Order o) {
+        Order c = order(o.getId(), o.getSide(), o.getPrice());
+        c.setRemaining(o.getRemaining());
+        c.setStatus(o.getRemaining() > 0 ? o.getStatus() : OrderConstant.STATUS_FILLED);
+        return c;
+    }
+
+    /** 首次运行：空日志回退 DB，attach 后挂 3 单并停机。 */
+    private void firstRun() {
+        MatchingEngine engine = new MatchingEngine();
+        EngineJournalService s = service(engine, true);
+        assertFalse(s.recover());
+        s.attach();
+        matchAndCommit(engine, order(1, OrderConstant.SIDE_BUY, 99));
+        matchAndCommit(engine, order(2, OrderConstant.SIDE_BUY, 98));
+        matchAndCommit(engine, order(3, OrderConstant.SIDE_SELL, 101));
+        s.close();
+    }
+
+    @Test
+    void recover_replaysWhenEpochMatches() {
+        firstRun();
+
+        MatchingEngine restored = new MatchingEngine();
+        EngineJournalService s = service(restored, true);
+        assertTrue(s.recover());
+        assertEquals(3, restored.orderCount("BTC/USDT"));
+        s.close();
+    }
+
+    @Test
+    void recover_refusesStaleJournal_afterRunWithJournalDisabled() {
+        firstRun();
+        // 中途以关闭日志方式启动过一次：库中纪元被置空，期间 DB 上的订单变化日志里没有
+        service(new MatchingEngine(), false);
+
+        MatchingEngine restored = new MatchingEngine();
+        EngineJournalService s = service(restored, true);
+        assertFalse(s.recover());
+        assertEquals(0, restored.orderCount("BTC/USDT"));
+        s.close();
+    }
+
+    @Test
+    void recover_refusesJournalWithMatchNeverCommitted() {
+        firstRun();
+        // 卖单吃掉买单 1 后进程崩溃：日志与快照里已有这笔撮合，DB 却没落下（写后置队列丢失/事务未提交）
+        MatchingEngine engine = new MatchingEngine();
+        EngineJournalService s = service(engine, true);
+        assertTrue(s.recover());
+        engine.match(order(4, OrderConstant.SIDE_SELL, 99), PrecisionContext.ZERO);
+        s.close();
+
+        MatchingEngine restored = new MatchingEngine();
+        EngineJournalService again = service(restored, true);
+        assertFalse(again.recover());
+        assertEquals(0, restored.orderCount("BTC/USDT"));
+        assertNull(restored.bookOrder("BTC/USDT", 2L));
+        again.close();
+    }
+
+    @Test
+    void rolledBackTransaction_invalidatesJournal() {
+        firstRun();
+        MatchingEngine engine = new MatchingEngine();
+        EngineJournalService s = service(engine, true);
+        assertTrue(s.recover());
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            s.guardTransaction();
+            engine.match(order(5, OrderConstant.SIDE_BUY, 97), PrecisionContext.ZERO);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        assertFalse(Files.exists(dir.resolve("epoch")));
+        s.close();
+
+        MatchingEngine restored = new MatchingEngine();
+        EngineJournalService again = service(restored, true);
+        assertFalse(again.recover());
+        again.close();
+    }
+}
@@ -0,0 +1,73 @@
+package com.web3.exchange.order.service;
+
+import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.entity.Order;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 条件单内存触发索引单测：只取被成交价区间穿越的触发价，语义与 {@link TriggerOrderTask#matchesTrigger} 一致。
+ */
+class TriggerOrderIndexTest {
+
+    private final TriggerOrderIndex index = new TriggerOrderIndex();
+
+    @Test
+    void pollCrossed_returnsOnlyCrossedThresholds() {
+        index.add(order(1, OrderConstant.TRIGGER_TYPE_TAKE_PROFIT, 50100));
+        index.add(order(2, OrderConstant.TRIGGER_TYPE_TAKE_PROFIT, 50000));
+        index.add(order(3, OrderConstant.TRIGGER_TYPE_TAKE_PROFIT, 50500));
+        index.add(order(4, OrderConstant.TRIGGER_TYPE_STOP_LOSS, 49000));
+        index.add(order(5, OrderConstant.TRIGGER_TYPE_STOP_LOSS, 49500));
+
+        assertFalse(index.crossed("BTC/USDT", 49501, 49999));
+        assertTrue(index.pollCrossed("BTC/USDT", 49501, 49999).isEmpty());
+
+        // 一次扫档成交区间 [49500, 50100]：止盈 50000/50100（升序）、止损 49500 被穿越，边界相等即触发
+        assertTrue(index.crossed("BTC/USDT", 49500, 50100));
+        List<Order> fired = index.pollCrossed("BTC/USDT", 49500, 50100);
+        assertEquals(List.of(2L, 1L, 5L), fired.stream().map(Order::getId).toList());
+        assertEquals(2, index.size());
+
+        // 已取出的不会重复触发
+        assertTrue(index.pollCrossed("BTC/USDT", 49500, 50100).isEmpty());
+        assertFalse(index.crossed("BTC/USDT", 49001, 50499));
+    }
+
+    @Test
+    void remove_and_duplicateAdd() {
+        Order o = order(7, OrderConstant.TRIGGER_TYPE_STOP_LOSS, 30000);
+        assertTrue(index.add(o));
+        assertFalse(index.add(o), "同一订单重复加入忽略");
+        assertTrue(index.crossed("BTC/USDT", 29000, 29000));
+
+        assertTrue(index.remove(7L));
+        assertFalse(index.remove(7L));
+        assertFalse(index.crossed("BTC/USDT", 29000, 29000));
+        assertTrue(index.isEmpty());
+        assertTrue(index.symbols().isEmpty());
+    }
+
+    @Test
+    void invalidTrigger_notIndexed() {
+        assertFalse(index.add(order(8, OrderConstant.TRIGGER_TYPE_NONE, 30000)));
+        assertFalse(index.add(order(9, 99, 30000)));
+        assertTrue(index.isEmpty());
+    }
+
+    private static Order order(long id, int triggerType, long triggerPrice) {
+        Order o = new Order();
+        o.setId(id);
+        o.setOrderNo("T" + id);
+        o.setSymbol("BTC/USDT");
+        o.setTriggerType(triggerType);
+        o.setTriggerPrice(triggerPrice);
+        o.setTriggerStatus(OrderConstant.TRIGGER_STATUS_PENDING);
+        return o;
+    }
+}
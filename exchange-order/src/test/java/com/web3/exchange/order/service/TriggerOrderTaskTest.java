@@ -1,14 +1,24 @@
 package com.web3.exchange.order.service;
 
 import com.web3.exchange.order.constant.OrderConstant;
+import com.web3.exchange.order.engine.MatchingEngine;
+import com.web3.exchange.order.entity.Order;
+import com.web3.exchange.order.mapper.OrderMapper;
 import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 /**
  * 条件单触发判定单测（docs/advanced-orders.md §三）。
- * <p>止盈=最新价>=触发价；止损=最新价<=触发价；边界相等即触发。</p>
+ * <p>止盈=最新价>=触发价；止损=最新价<=触发价；边界相等即触发；激活异常的单放回索引可再次触发。</p>
  */
 class TriggerOrderTaskTest {
 
@@ -34,4 +44,29 @@ class TriggerOrderTaskTest {
         assertFalse(TriggerOrderTask.matchesTrigger(OrderConstant.TRIGGER_TYPE_TAKE_PROFIT, null, 60000L));
         assertFalse(TriggerOrderTask.matchesTrigger(99, 50000L, 60000L));
     }
+
+    @Test
+    void activationFailure_putsOrderBackIntoIndex() {
+        TriggerOrderIndex index = new TriggerOrderIndex();
+        OrderService orderService = mock(OrderService.class);
+        when(orderService.activateConditional(any()))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(null);
+        TriggerOrderTask task = new TriggerOrderTask(mock(OrderMapper.class), orderService, new MatchingEngine(),
+                index, mock(RestTemplate.class), "http://ticker");
+        Order o = new Order();
+        o.setId(1L);
+        o.setSymbol("BTC/USDT");
+        o.setTriggerType(OrderConstant.TRIGGER_TYPE_STOP_LOSS);
+        o.setTriggerPrice(30000L);
+        index.add(o);
+
+        task.trigger("BTC/USDT", 29900L, 29900L);
+        assertEquals(1, index.size(), "激活异常的条件单放回索引");
+        assertTrue(index.crossed("BTC/USDT", 29900L, 29900L));
+
+        task.trigger("BTC/USDT", 29900L, 29900L);
+        assertTrue(index.isEmpty());
+        verify(orderService, times(2)).activateConditional(o);
+    }
 }
@@ -65,4 +65,25 @@ class QuoteCalculatorTest {
         PrecisionContext ctx = new PrecisionContext(8, 8, 6);
         assertEquals(10_000_000_000L, ctx.quoteAmount(1_000_000_000_000L, 100_000_000L));
     }
+
+    @Test
+    void longFastPath_matchesBigDecimal() {
+        // 整数快路径与 BigDecimal 口径逐一比对（含负 shift 的 HALF_UP 与接近溢出的大数）
+        java.util.Random rnd = new java.util.Random(1);
+        for (int i = 0; i < 20_000; i++) {
+            long price = rnd.nextInt(4) == 0 ? Math.abs(rnd.nextLong()) >>> rnd.nextInt(40) : rnd.nextInt(1_000_000);
+            long qty = rnd.nextInt(4) == 0 ? Math.abs(rnd.nextLong()) >>> rnd.nextInt(40) : rnd.nextInt(1_000_000);
+            int pp = rnd.nextInt(10);
+            int ap = rnd.nextInt(10);
+            int qd = rnd.nextInt(10);
+            java.math.BigDecimal exact = java.math.BigDecimal.valueOf(price).movePointLeft(pp)
+                    .multiply(java.math.BigDecimal.valueOf(qty).movePointLeft(ap))
+                    .movePointRight(qd).setScale(0, java.math.RoundingMode.HALF_UP);
+            if (exact.toBigInteger().bitLength() > 63) {
+                continue;
+            }
+            assertEquals(exact.longValueExact(), QuoteCalculator.quoteAmount(price, qty, pp, ap, qd),
+                    price + "x" + qty + " pp=" + pp + " ap=" + ap + " qd=" + qd);
+        }
+    }
 }
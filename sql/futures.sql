@@ -71,6 +71,13 @@ CREATE TABLE IF NOT EXISTS t_funding_settle (
   KEY idx_symbol_time (symbol, funding_time)
 ) ENGINE=InnoDB COMMENT='资金费率结算';
 
+-- 资金费率结算窗口化：每合约每期一条（唯一键保证一期只开一次），按持仓 id 游标分页推进，中断后从 cursor_id 续跑
+ALTER TABLE t_funding_settle
+  ADD COLUMN status INT NOT NULL DEFAULT 1 COMMENT '0结算中 1已完成' AFTER funding_time,
+  ADD COLUMN cursor_id BIGINT NOT NULL DEFAULT 0 COMMENT '已结算到的持仓id(游标)' AFTER status,
+  ADD COLUMN position_count INT NOT NULL DEFAULT 0 COMMENT '已结算持仓数' AFTER cursor_id,
+  ADD UNIQUE KEY uk_symbol_funding_time (symbol, funding_time);
+
 -- 标记价格(每交易对一条,定时刷新)
 CREATE TABLE IF NOT EXISTS t_mark_price (
   id BIGINT PRIMARY KEY,
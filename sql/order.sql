@@ -159,3 +159,16 @@ CREATE TABLE `t_trade` (
     KEY `idx_buy_user` (`buy_user_id`),
     KEY `idx_sell_user` (`sell_user_id`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='成交表';
+
+-- ------------------------------------------------------------
+-- 4. 引擎事件日志纪元 t_engine_journal_epoch（单行 id=1）
+--    开启 order.matching.journal 时每次挂接日志生成新纪元，同时写入本表与日志目录的 epoch 文件；
+--    以关闭日志的方式启动会把纪元置空。启动恢复时两者不一致（期间以未开启日志的方式运行过、
+--    或目录来自别的环境）即拒绝重放，回退 DB 重建订单簿。
+-- ------------------------------------------------------------
+CREATE TABLE IF NOT EXISTS `t_engine_journal_epoch` (
+    `id` int NOT NULL COMMENT '固定为1',
+    `epoch` varchar(64) DEFAULT NULL COMMENT '当前日志纪元(NULL=最近一次启动未开启日志)',
+    `update_time` datetime DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    PRIMARY KEY (`id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='引擎事件日志纪元';